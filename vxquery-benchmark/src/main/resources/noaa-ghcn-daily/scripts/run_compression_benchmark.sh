@@ -0,0 +1,89 @@
+#!/bin/bash
+#
+# Licensed to the Apache Software Foundation (ASF) under one
+# or more contributor license agreements.  See the NOTICE file
+# distributed with this work for additional information
+# regarding copyright ownership.  The ASF licenses this file
+# to you under the Apache License, Version 2.0 (the
+# "License"); you may not use this file except in compliance
+# with the License.  You may obtain a copy of the License at
+# 
+#      http://www.apache.org/licenses/LICENSE-2.0
+# 
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# Compare the collection scan throughput of uncompressed and compressed
+# weather sensor files. A compressed copy of the sensor collection is created
+# for each available compression tool (gzip, bzip2, zstd) and the count_sensor
+# query is run over every copy.
+# First argument: the uncompressed sensors collection folder.
+# Second argument: the working folder for the compressed copies.
+# Third argument: adds options to the VXQuery CLI.
+#
+# run_compression_benchmark.sh /tmp/1.0_partition_ghcnd_all_xml/sensors /tmp/compression_benchmark
+#
+REPEAT=5
+IGNORE=2
+FRAME_SIZE=$((8*1024))
+BUFFER_SIZE=$((32*1024*1024))
+
+if [ -z "${1}" ] || [ -z "${2}" ]
+then
+    echo "Please supply the sensors collection folder and a working folder."
+    exit
+fi
+
+export JAVA_OPTS="$JAVA_OPTS -server -Xmx500M -Djava.util.logging.config.file=./vxquery-benchmark/src/main/resources/noaa-ghcn-daily/scripts/testing_logging.properties"
+
+mkdir -p ${2}/queries ${2}/query_logs
+
+for c in "none" "gzip:gz" "bzip2:bz2" "zstd:zst"
+do
+    tool=${c%%:*}
+    suffix=${c##*:}
+    collection=${1}
+    if [ "${tool}" != "none" ]
+    then
+        if ! which ${tool} >/dev/null
+        then
+            echo "Skipping ${tool}: command not found."
+            continue
+        fi
+        collection=${2}/sensors_${suffix}
+        if [ ! -d ${collection} ]
+        then
+            echo "Creating ${tool} copy of ${1}."
+            mkdir -p ${collection}
+            cp -r ${1}/. ${collection}
+            find ${collection} -name '*.xml' -exec ${tool} -q {} \;
+        fi
+    fi
+
+    query_file=${2}/queries/count_sensor_${tool}.xq
+    cat > ${query_file} <<EOQ
+count(
+    let \$sensor_collection := "${collection}"
+    for \$r in collection(\$sensor_collection)/dataCollection/data
+    return \$r
+)
+EOQ
+
+    log_file=${2}/query_logs/count_sensor_${tool}.$(date +%Y%m%d%H%M).log
+    echo "Running count_sensor over ${collection} (${tool})"
+    sh ./vxquery-cli/target/appassembler/bin/vxq ${query_file} ${3} -timing -frame-size ${FRAME_SIZE} -buffer-size ${BUFFER_SIZE} -repeatexec ${REPEAT} -timing-ignore-queries ${IGNORE} > ${log_file} 2>&1
+
+    size_bytes=$(du -sb ${collection} | cut -f1)
+    uncompressed_bytes=$(du -sb ${1} | cut -f1)
+    average_ms=$(grep "Average execution time" ${log_file} | sed 's/.*: \([0-9.]*\) ms/\1/')
+    echo "  On disk: ${size_bytes} bytes (uncompressed ${uncompressed_bytes} bytes)"
+    echo "  Average execution time: ${average_ms} ms"
+    if [ -n "${average_ms}" ]
+    then
+        echo "  Scan throughput: $(echo "scale=2; ${uncompressed_bytes} / 1048.576 / ${average_ms}" | bc) MB/s of XML"
+    fi
+done
@@ -14,11 +14,12 @@
  */
 package org.apache.vxquery.cli;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.io.StringReader;
 import java.net.InetAddress;
 import java.nio.file.Files;
@@ -29,6 +30,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.namespace.QName;
+
 import org.apache.commons.io.FileUtils;
 import org.apache.hyracks.api.client.HyracksConnection;
 import org.apache.hyracks.api.client.IHyracksClientConnection;
@@ -48,6 +51,7 @@ import org.apache.hyracks.control.common.controllers.CCConfig;
 import org.apache.hyracks.control.common.controllers.NCConfig;
 import org.apache.hyracks.control.nc.NodeControllerService;
 import org.apache.hyracks.control.nc.resources.memory.FrameManager;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.hyracks.dataflow.common.comm.io.ResultFrameTupleAccessor;
 import org.apache.vxquery.compiler.CompilerControlBlock;
 import org.apache.vxquery.compiler.algebricks.VXQueryGlobalDataFactory;
@@ -55,9 +59,12 @@ import org.apache.vxquery.context.DynamicContext;
 import org.apache.vxquery.context.DynamicContextImpl;
 import org.apache.vxquery.context.RootStaticContextImpl;
 import org.apache.vxquery.context.StaticContextImpl;
+import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.result.ResultUtils;
 import org.apache.vxquery.xmlquery.query.Module;
+import org.apache.vxquery.xmlquery.query.PreparedQueryCache;
 import org.apache.vxquery.xmlquery.query.VXQueryCompilationListener;
 import org.apache.vxquery.xmlquery.query.XMLQueryCompiler;
 import org.kohsuke.args4j.Argument;
@@ -71,6 +78,7 @@ public class VXQuery {
     private NodeControllerService[] ncs;
     private IHyracksClientConnection hcc;
     private IHyracksDataset hds;
+    private PreparedQueryCache planCache;
 
     private ResultSetId resultSetId;
     private static List<String> timingMessages = new ArrayList<>();
@@ -142,6 +150,14 @@ public class VXQuery {
      */
     private void execute() throws Exception {
         System.setProperty("vxquery.buffer_size", Integer.toString(opts.bufferSize));
+        System.setProperty("vxquery.scan_threads", Integer.toString(opts.scanThreads));
+        System.setProperty("vxquery.xml_parser", opts.xmlParser);
+        System.setProperty("vxquery.index_threads", Integer.toString(opts.indexThreads));
+        System.setProperty("vxquery.node_dictionary", opts.nodeDictionary);
+        System.setProperty("vxquery.file_splits", opts.fileSplits);
+        System.setProperty("vxquery.broadcast_join_size", Long.toString(opts.broadcastJoinSize));
+        System.setProperty("vxquery.plan_cache_size", Integer.toString(opts.planCacheSize));
+        planCache = new PreparedQueryCache();
 
         if (opts.clientNetIpAddress != null) {
             hcc = new HyracksConnection(opts.clientNetIpAddress, opts.clientNetPort);
@@ -186,12 +202,22 @@ public class VXQuery {
             if (hcc != null) {
                 nodeControllerInfos = hcc.getNodeControllerInfos();
             }
-            XMLQueryCompiler compiler = new XMLQueryCompiler(listener, nodeControllerInfos, opts.frameSize,
-                    opts.availableProcessors, opts.joinHashSize, opts.maximumDataSize, opts.hdfsConf);
-            resultSetId = createResultSetId();
-            CompilerControlBlock ccb = new CompilerControlBlock(new StaticContextImpl(RootStaticContextImpl.INSTANCE),
-                    resultSetId, null);
-            compiler.compile(query, new StringReader(qStr), ccb, opts.optimizationLevel);
+            // A query compiled before for the same cluster, settings and statistics reuses its job specification.
+            String key = PreparedQueryCache.createKey(qStr, nodeControllerInfos, opts.optimizationLevel,
+                    opts.frameSize, opts.availableProcessors, opts.joinHashSize, opts.maximumDataSize, opts.hdfsConf,
+                    opts.resultDirectory, opts.broadcastJoinSize);
+            Module module = planCache.get(key);
+            if (module == null) {
+                XMLQueryCompiler compiler = new XMLQueryCompiler(listener, nodeControllerInfos, opts.frameSize,
+                        opts.availableProcessors, opts.joinHashSize, opts.maximumDataSize, opts.hdfsConf);
+                CompilerControlBlock ccb = new CompilerControlBlock(
+                        new StaticContextImpl(RootStaticContextImpl.INSTANCE), createResultSetId(), null);
+                ccb.setResultDirectory(opts.resultDirectory);
+                compiler.compile(query, new StringReader(qStr), ccb, opts.optimizationLevel);
+                module = compiler.getModule();
+                planCache.put(key, module);
+            }
+            resultSetId = module.getCompilerControlBlock().getResultSetId();
             // if -timing argument passed, show the starting and ending times
             if (opts.timing) {
                 end = new Date();
@@ -201,59 +227,99 @@ public class VXQuery {
                 continue;
             }
 
-            Module module = compiler.getModule();
-            JobSpecification js = module.getHyracksJobSpecification();
-
-            DynamicContext dCtx = new DynamicContextImpl(module.getModuleContext());
-            js.setGlobalJobDataFactory(new VXQueryGlobalDataFactory(dCtx.createFactory()));
-
-            OutputStream resultStream = System.out;
             if (opts.resultFile != null) {
-                resultStream = new FileOutputStream(new File(opts.resultFile));
+                try (OutputStream resultStream = new BufferedOutputStream(
+                        new FileOutputStream(new File(opts.resultFile)))) {
+                    repeatJob(module, resultStream);
+                }
+            } else {
+                repeatJob(module, System.out);
             }
+        }
+    }
 
-            PrintWriter writer = new PrintWriter(resultStream, true);
-            // Repeat execution for number of times provided in -repeatexec argument
-            for (int i = 0; i < opts.repeatExec; ++i) {
-                start = opts.timing ? new Date() : null;
-                runJob(js, writer);
-                // if -timing argument passed, show the starting and ending times
-                if (opts.timing) {
-                    end = new Date();
-                    long currentRun = end.getTime() - start.getTime();
-                    if ((i + 1) > opts.timingIgnoreQueries) {
-                        sumTiming += currentRun;
-                        sumSquaredTiming += currentRun * currentRun;
-                        if (currentRun < minTiming) {
-                            minTiming = currentRun;
-                        }
-                        if (maxTiming < currentRun) {
-                            maxTiming = currentRun;
-                        }
+    /**
+     * Repeat execution for number of times provided in -repeatexec argument. If -timing argument passed, show the
+     * execution time of each run.
+     *
+     * @param module
+     *            Compiled query.
+     * @param out
+     *            Stream for output of job.
+     * @throws Exception
+     */
+    private void repeatJob(Module module, OutputStream out) throws Exception {
+        Date start;
+        Date end;
+        JobSpecification js = module.getHyracksJobSpecification();
+        for (int i = 0; i < opts.repeatExec; ++i) {
+            start = opts.timing ? new Date() : null;
+            // Each execution gets a new dynamic context with the values of the external variables.
+            DynamicContext dCtx = new DynamicContextImpl(module.getModuleContext());
+            bindExternalVariables(dCtx);
+            js.setGlobalJobDataFactory(new VXQueryGlobalDataFactory(dCtx.createFactory()));
+            runJob(js, out);
+            // if -timing argument passed, show the starting and ending times
+            if (opts.timing) {
+                end = new Date();
+                long currentRun = end.getTime() - start.getTime();
+                if ((i + 1) > opts.timingIgnoreQueries) {
+                    sumTiming += currentRun;
+                    sumSquaredTiming += currentRun * currentRun;
+                    if (currentRun < minTiming) {
+                        minTiming = currentRun;
+                    }
+                    if (maxTiming < currentRun) {
+                        maxTiming = currentRun;
                     }
-                    timingMessage("Job (" + (i + 1) + ") execution time: " + currentRun + " ms");
                 }
+                timingMessage("Job (" + (i + 1) + ") execution time: " + currentRun + " ms");
             }
         }
     }
 
+    /**
+     * Binds the external variables passed with -x as xs:string values in the dynamic context of an execution. Names
+     * may be given with a namespace as {uri}local.
+     *
+     * @param dCtx
+     *            Dynamic context of the execution.
+     * @throws IOException
+     */
+    private void bindExternalVariables(DynamicContext dCtx) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        StringValueBuilder svb = new StringValueBuilder();
+        for (Map.Entry<String, String> binding : opts.bindings.entrySet()) {
+            abvs.reset();
+            DataOutput out = abvs.getDataOutput();
+            out.write(ValueTag.XS_STRING_TAG);
+            svb.write(binding.getValue(), out);
+            dCtx.bindVariable(QName.valueOf(binding.getKey()), abvs);
+        }
+    }
+
     /**
      * Creates a Hyracks dataset, if not already existing with the job frame size, and 1 reader. Allocates a new buffer of size specified in the frame of Hyracks
      * node. Creates new dataset reader with the current job ID and result set ID. Outputs the string in buffer for each frame.
      *
      * @param spec
      *            JobSpecification object, containing frame size. Current specified job.
-     * @param writer
-     *            Writer for output of job.
+     * @param out
+     *            Stream for output of job.
      * @throws Exception
      */
-    private void runJob(JobSpecification spec, PrintWriter writer) throws Exception {
+    private void runJob(JobSpecification spec, OutputStream out) throws Exception {
         int nReaders = 1;
         if (hds == null) {
             hds = new HyracksDataset(hcc, spec.getFrameSize(), nReaders);
         }
 
         JobId jobId = hcc.startJob(spec, EnumSet.of(JobFlag.PROFILE_RUNTIME));
+        if (opts.resultDirectory != null) {
+            // The nodes write the result to their result directories.
+            hcc.waitForCompletion(jobId);
+            return;
+        }
 
         FrameManager resultDisplayFrameMgr = new FrameManager(spec.getFrameSize());
         IFrame frame = new VSizeFrame(resultDisplayFrameMgr);
@@ -261,8 +327,8 @@ public class VXQuery {
         IFrameTupleAccessor frameTupleAccessor = new ResultFrameTupleAccessor();
 
         while (reader.read(frame) > 0) {
-            writer.print(ResultUtils.getStringFromBuffer(frame.getBuffer(), frameTupleAccessor));
-            writer.flush();
+            ResultUtils.writeBuffer(frame.getBuffer(), frameTupleAccessor, out);
+            out.flush();
             frame.getBuffer().clear();
         }
 
@@ -370,12 +436,33 @@ public class VXQuery {
         @Option(name = "-join-hash-size", usage = "Join hash size in bytes. (default: 67,108,864)")
         private long joinHashSize = -1;
 
+        @Option(name = "-broadcast-join-size", usage = "Largest collection size in bytes on the build side of a broadcast join. (default: 16,777,216)")
+        private long broadcastJoinSize = 16777216;
+
         @Option(name = "-maximum-data-size", usage = "Maximum possible data size in bytes. (default: 150,323,855,000)")
         private long maximumDataSize = -1;
 
         @Option(name = "-buffer-size", usage = "Disk read buffer size in bytes.")
         private int bufferSize = -1;
 
+        @Option(name = "-scan-threads", usage = "Number of parser threads per collection partition. (default: 1)")
+        private int scanThreads = 1;
+
+        @Option(name = "-xml-parser", usage = "XML parser used to read documents: sax or utf8. (default: sax)")
+        private String xmlParser = "sax";
+
+        @Option(name = "-file-splits", usage = "Files of the collection partitions on a node: static or dynamic. (default: static)")
+        private String fileSplits = "static";
+
+        @Option(name = "-index-threads", usage = "Number of threads building or updating an index. (default: all)")
+        private int indexThreads = -1;
+
+        @Option(name = "-node-dictionary", usage = "Dictionary of path step results: copy or prune. (default: copy)")
+        private String nodeDictionary = "copy";
+
+        @Option(name = "-plan-cache-size", usage = "Number of compiled query plans to keep for reuse. (default: 16)")
+        private int planCacheSize = 16;
+
         @Option(name = "-O", usage = "Optimization Level. (default: Full Optimization)")
         private int optimizationLevel = Integer.MAX_VALUE;
 
@@ -403,13 +490,16 @@ public class VXQuery {
         @Option(name = "-result-file", usage = "File path to save the query result.")
         private String resultFile = null;
 
+        @Option(name = "-result-directory", usage = "Directory on each node to write the query result partitions to.")
+        private String resultDirectory = null;
+
         @Option(name = "-timing", usage = "Produce timing information.")
         private boolean timing;
 
         @Option(name = "-timing-ignore-queries", usage = "Ignore the first X number of quereies.")
         private int timingIgnoreQueries = 2;
 
-        @Option(name = "-x", usage = "Bind an external variable")
+        @Option(name = "-x", usage = "Bind an external variable to an xs:string value as name=value")
         private Map<String, String> bindings = new HashMap<>();
 
         @Option(name = "-hdfs-conf", usage = "Directory path to Hadoop configuration files")
@@ -30,6 +30,8 @@ public class CompilerControlBlock {
 
     private Map<String, File> sourceFileMap;
 
+    private String resultDirectory;
+
     public CompilerControlBlock(StaticContext ctx, ResultSetId resultSetId, Map<String, File> sourceFileMap) {
         this.ctx = ctx;
         this.resultSetId = resultSetId;
@@ -47,4 +49,15 @@ public class CompilerControlBlock {
     public Map<String, File> getSourceFileMap() {
         return sourceFileMap;
     }
+
+    /**
+     * @return the directory each node writes its result partitions to, or null to return the result to the client.
+     */
+    public String getResultDirectory() {
+        return resultDirectory;
+    }
+
+    public void setResultDirectory(String resultDirectory) {
+        this.resultDirectory = resultDirectory;
+    }
 }
@@ -61,17 +61,24 @@ import org.apache.hyracks.algebricks.rewriter.rules.subplan.PushSubplanIntoGroup
 import org.apache.hyracks.algebricks.rewriter.rules.subplan.SubplanOutOfGroupRule;
 import org.apache.vxquery.compiler.rewriter.rules.ConsolidateAssignAggregateRule;
 import org.apache.vxquery.compiler.rewriter.rules.ConsolidateDescandantChild;
+import org.apache.vxquery.compiler.rewriter.rules.ConvertAssignSortDistinctNodesToOperatorsRule;
 import org.apache.vxquery.compiler.rewriter.rules.ConvertAssignToUnnestRule;
+import org.apache.vxquery.compiler.rewriter.rules.ConvertDistinctValuesToDistinctOperatorRule;
 import org.apache.vxquery.compiler.rewriter.rules.ConvertFromAlgebricksExpressionsRule;
 import org.apache.vxquery.compiler.rewriter.rules.ConvertToAlgebricksExpressionsRule;
 import org.apache.vxquery.compiler.rewriter.rules.EliminateSubplanForSingleItemsRule;
 import org.apache.vxquery.compiler.rewriter.rules.EliminateUnnestAggregateSequencesRule;
 import org.apache.vxquery.compiler.rewriter.rules.EliminateUnnestAggregateSubplanRule;
+import org.apache.vxquery.compiler.rewriter.rules.FoldConstantCastExpressionsRule;
 import org.apache.vxquery.compiler.rewriter.rules.IntroduceCollectionRule;
 import org.apache.vxquery.compiler.rewriter.rules.IntroduceIndexingRule;
+import org.apache.vxquery.compiler.rewriter.rules.IntroduceLimitForOrderedSubsequenceRule;
 import org.apache.vxquery.compiler.rewriter.rules.IntroduceTwoStepAggregateRule;
 import org.apache.vxquery.compiler.rewriter.rules.PushChildIntoDataScanRule;
+import org.apache.vxquery.compiler.rewriter.rules.PushChildProjectionIntoDataScanRule;
 import org.apache.vxquery.compiler.rewriter.rules.PushFunctionsOntoEqJoinBranches;
+import org.apache.vxquery.compiler.rewriter.rules.PushValueIntoDataScanRule;
+import org.apache.vxquery.compiler.rewriter.rules.PushValuePredicateIntoDataScanRule;
 import org.apache.vxquery.compiler.rewriter.rules.RemoveRedundantBooleanExpressionsRule;
 import org.apache.vxquery.compiler.rewriter.rules.RemoveRedundantCastExpressionsRule;
 import org.apache.vxquery.compiler.rewriter.rules.RemoveRedundantDataExpressionsRule;
@@ -81,6 +88,8 @@ import org.apache.vxquery.compiler.rewriter.rules.RemoveUnusedSortDistinctNodesR
 import org.apache.vxquery.compiler.rewriter.rules.RemoveUnusedUnnestIterateRule;
 import org.apache.vxquery.compiler.rewriter.rules.ReplaceSourceMapInDocExpression;
 import org.apache.vxquery.compiler.rewriter.rules.SetCollectionDataSourceRule;
+import org.apache.vxquery.compiler.rewriter.rules.SetJoinBuildSideRule;
+import org.apache.vxquery.compiler.rewriter.rules.SetSortKeyTypesRule;
 import org.apache.vxquery.compiler.rewriter.rules.SetVariableIdContextRule;
 import org.apache.vxquery.compiler.rewriter.rules.algebricksalternatives.ExtractFunctionsFromJoinConditionRule;
 import org.apache.vxquery.compiler.rewriter.rules.algebricksalternatives.InlineNestedVariablesRule;
@@ -109,9 +118,6 @@ public class RewriteRuleset {
         normalization.add(new RemoveRedundantVariablesRule());
         normalization.add(new RemoveUnusedAssignAndAggregateRule());
 
-        // TODO Fix the group by operator before putting back in the rule set.
-        //        normalization.add(new ConvertAssignSortDistinctNodesToOperatorsRule());
-
         // Find unnest followed by aggregate in a subplan.
         normalization.add(new EliminateUnnestAggregateSubplanRule());
         normalization.add(new RemoveRedundantVariablesRule());
@@ -142,6 +148,9 @@ public class RewriteRuleset {
         //        normalization.add(new ConsolidateUnnestsRule());
         normalization.add(new RemoveUnusedUnnestIterateRule());
         normalization.add(new PushChildIntoDataScanRule());
+        normalization.add(new PushValueIntoDataScanRule());
+        normalization.add(new PushValuePredicateIntoDataScanRule());
+        normalization.add(new PushChildProjectionIntoDataScanRule());
 
         // Improvement for scalar child expressions
         normalization.add(new EliminateSubplanForSingleItemsRule());
@@ -157,6 +166,15 @@ public class RewriteRuleset {
     public static final List<IAlgebraicRewriteRule> buildXQueryNormalizationRuleCollection() {
         List<IAlgebraicRewriteRule> normalization = new LinkedList<>();
 
+        // Make the values of a collection distinct with a partitioned operator.
+        normalization.add(new ConvertDistinctValuesToDistinctOperatorRule());
+
+        // Limit an order by to the items taken by a subsequence, so partitions only merge their first items.
+        normalization.add(new IntroduceLimitForOrderedSubsequenceRule());
+
+        // Sort the nodes of a collection into document order with partitioned operators.
+        normalization.add(new ConvertAssignSortDistinctNodesToOperatorsRule());
+
         // Find assign for scalar aggregate function followed by an aggregate operator.
         normalization.add(new ConsolidateAssignAggregateRule());
         normalization.add(new RemoveRedundantVariablesRule());
@@ -187,6 +205,7 @@ public class RewriteRuleset {
         normalization.add(new RemoveRedundantDataExpressionsRule());
         normalization.add(new RemoveRedundantPromoteExpressionsRule());
         normalization.add(new RemoveRedundantCastExpressionsRule());
+        normalization.add(new FoldConstantCastExpressionsRule());
         normalization.add(new ConvertToAlgebricksExpressionsRule());
         normalization.add(new RemoveRedundantBooleanExpressionsRule());
         // Clean up
@@ -313,6 +332,8 @@ public class RewriteRuleset {
         List<IAlgebraicRewriteRule> physicalPlanRewrites = new LinkedList<>();
         physicalPlanRewrites.add(new PullSelectOutOfEqJoin());
         physicalPlanRewrites.add(new PushFunctionsOntoEqJoinBranches());
+        // Use collection statistics to choose the build side and broadcast of hash joins.
+        physicalPlanRewrites.add(new SetJoinBuildSideRule());
         physicalPlanRewrites.add(new SetAlgebricksPhysicalOperatorsRule());
         physicalPlanRewrites.add(new SetExecutionModeRule());
         physicalPlanRewrites.add(new EnforceStructuralPropertiesRule());
@@ -338,6 +359,7 @@ public class RewriteRuleset {
         // propagated.
         prepareForJobGenRewrites.add(new PushProjectIntoDataSourceScanRule());
         prepareForJobGenRewrites.add(new ReinferAllTypesRule());
+        prepareForJobGenRewrites.add(new SetSortKeyTypesRule());
         prepareForJobGenRewrites.add(new SetExecutionModeRule());
         return prepareForJobGenRewrites;
     }
@@ -30,6 +30,7 @@ import org.apache.hyracks.algebricks.core.rewriter.base.PhysicalOptimizationConf
 import org.apache.vxquery.compiler.rewriter.rules.propagationpolicies.cardinality.Cardinality;
 import org.apache.vxquery.compiler.rewriter.rules.propagationpolicies.documentorder.DocumentOrder;
 import org.apache.vxquery.compiler.rewriter.rules.propagationpolicies.uniquenodes.UniqueNodes;
+import org.apache.vxquery.metadata.CollectionStatisticsCatalog;
 
 public class VXQueryOptimizationContext extends AlgebricksOptimizationContext {
 
@@ -37,6 +38,8 @@ public class VXQueryOptimizationContext extends AlgebricksOptimizationContext {
     private final Map<ILogicalOperator, HashMap<Integer, UniqueNodes>> uniqueNodesOperatorVariableMap = new HashMap<>();
     private final Map<ILogicalOperator, Cardinality> cardinalityOperatorMap = new HashMap<>();
 
+    private final CollectionStatisticsCatalog statisticsCatalog = CollectionStatisticsCatalog.getInstance();
+
     private int totalDataSources = 0;
     private int collectionId = 0;
 
@@ -61,6 +64,10 @@ public class VXQueryOptimizationContext extends AlgebricksOptimizationContext {
         return ++collectionId;
     }
 
+    public CollectionStatisticsCatalog getStatisticsCatalog() {
+        return statisticsCatalog;
+    }
+
     public Cardinality getCardinalityOperatorMap(ILogicalOperator op) {
         if (cardinalityOperatorMap.containsKey(op)) {
             return cardinalityOperatorMap.get(op);
@@ -30,181 +30,259 @@ import org.apache.hyracks.algebricks.core.algebra.base.LogicalExpressionTag;
 import org.apache.hyracks.algebricks.core.algebra.base.LogicalOperatorTag;
 import org.apache.hyracks.algebricks.core.algebra.base.LogicalVariable;
 import org.apache.hyracks.algebricks.core.algebra.expressions.AbstractFunctionCallExpression;
-import org.apache.hyracks.algebricks.core.algebra.expressions.AggregateFunctionCallExpression;
 import org.apache.hyracks.algebricks.core.algebra.expressions.ScalarFunctionCallExpression;
 import org.apache.hyracks.algebricks.core.algebra.expressions.UnnestingFunctionCallExpression;
 import org.apache.hyracks.algebricks.core.algebra.expressions.VariableReferenceExpression;
+import org.apache.hyracks.algebricks.core.algebra.functions.FunctionIdentifier;
 import org.apache.hyracks.algebricks.core.algebra.functions.IFunctionInfo;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractLogicalOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.AggregateOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.AssignOperator;
-import org.apache.hyracks.algebricks.core.algebra.operators.logical.GroupByOperator;
-import org.apache.hyracks.algebricks.core.algebra.operators.logical.NestedTupleSourceOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.DataSourceScanOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.DistinctOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.OrderOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.OrderOperator.IOrder;
-import org.apache.hyracks.algebricks.core.algebra.operators.logical.SubplanOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.UnnestOperator;
-import org.apache.hyracks.algebricks.core.rewriter.base.IAlgebraicRewriteRule;
+import org.apache.vxquery.compiler.rewriter.VXQueryOptimizationContext;
+import org.apache.vxquery.compiler.rewriter.rules.util.ExpressionToolbox;
+import org.apache.vxquery.compiler.rewriter.rules.util.OperatorToolbox;
+import org.apache.vxquery.context.StaticContext;
 import org.apache.vxquery.functions.BuiltinOperators;
+import org.apache.vxquery.metadata.VXQueryCollectionDataSource;
+import org.apache.vxquery.metadata.VXQueryMetadataProvider;
+import org.apache.vxquery.types.NodeType;
+import org.apache.vxquery.types.SequenceType;
 
-public class ConvertAssignSortDistinctNodesToOperatorsRule implements IAlgebraicRewriteRule {
-
-    @Override
-    public boolean rewritePre(Mutable<ILogicalOperator> opRef, IOptimizationContext context) throws AlgebricksException {
-        return false;
-    }
+/**
+ * The rule replaces sorting the nodes of a collection into document order and removing duplicate nodes with
+ * operators, so the nodes are sorted and made distinct by their node id in parallel. Inside nested plans the
+ * functions stay scalar functions.
+ *
+ * <pre>
+ * Before
+ *
+ *   plan__parent
+ *   ASSIGN( $v2 : sf1( $v1 ) )
+ *   AGGREGATE( $v1 : sequence( $v0 ) )
+ *   plan__child
+ *
+ *   Where sf1 is sort-distinct-nodes-asc(-or-atomics), sort-nodes-asc(-or-atomics) or distinct-nodes-or-atomics,
+ *   $v0 holds nodes from a collection scan in plan__child and plan__parent does not use $v1.
+ *
+ * After
+ *
+ *   plan__parent
+ *   ASSIGN( $v2 : $v1 )
+ *   AGGREGATE( $v1 : sequence( $v3 ) )
+ *   ORDER( $v4, $v5 )                             (sort)
+ *   DISTINCT( $v4, $v5 )                          (distinct)
+ *   ASSIGN( $v4 : tree-id-from-node( $v3 ), $v5 : local-id-from-node( $v3 ) )
+ *   UNNEST( $v3 : iterate( $v0 ) )
+ *   plan__child
+ * </pre>
+ */
+public class ConvertAssignSortDistinctNodesToOperatorsRule extends AbstractUsedVariablesProcessingRule {
+    StaticContext dCtx = null;
 
-    /**
-     * Find where a sort distinct nodes is being used and not required based on input parameters.
-     * Search pattern: assign [function-call: sort-distinct-nodes-asc-or-atomics]
-     */
-    @SuppressWarnings("unused")
     @Override
-    public boolean rewritePost(Mutable<ILogicalOperator> opRef, IOptimizationContext context) {
-        Mutable<ILogicalOperator> nextOperatorRef;
-
-        // Check if assign is for sort-distinct-nodes-asc-or-atomics.
+    protected boolean processOperator(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        if (dCtx == null) {
+            VXQueryOptimizationContext vxqueryCtx = (VXQueryOptimizationContext) context;
+            dCtx = ((VXQueryMetadataProvider) vxqueryCtx.getMetadataProvider()).getStaticContext();
+        }
         AbstractLogicalOperator op = (AbstractLogicalOperator) opRef.getValue();
         if (op.getOperatorTag() != LogicalOperatorTag.ASSIGN) {
             return false;
         }
         AssignOperator assign = (AssignOperator) op;
+        if (assign.getExpressions().size() != 1) {
+            return false;
+        }
 
-        // Check to see if the expression is a function and
-        // sort-distinct-nodes-asc-or-atomics.
-        ILogicalExpression logicalExpression = (ILogicalExpression) assign.getExpressions().get(0).getValue();
+        // Check to see if the expression is one of the sort or distinct node functions.
+        ILogicalExpression logicalExpression = assign.getExpressions().get(0).getValue();
         if (logicalExpression.getExpressionTag() != LogicalExpressionTag.FUNCTION_CALL) {
             return false;
         }
         AbstractFunctionCallExpression functionCall = (AbstractFunctionCallExpression) logicalExpression;
-        if (!functionCall.getFunctionIdentifier().equals(
-                BuiltinOperators.SORT_DISTINCT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())
-                && !functionCall.getFunctionIdentifier().equals(
-                        BuiltinOperators.DISTINCT_NODES_OR_ATOMICS.getFunctionIdentifier())
-                && !functionCall.getFunctionIdentifier().equals(
-                        BuiltinOperators.SORT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())) {
+        FunctionIdentifier fid = functionCall.getFunctionIdentifier();
+        boolean sort = fid.equals(BuiltinOperators.SORT_DISTINCT_NODES_ASC.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.SORT_DISTINCT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.SORT_NODES_ASC.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.SORT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier());
+        boolean distinct = fid.equals(BuiltinOperators.SORT_DISTINCT_NODES_ASC.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.SORT_DISTINCT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.DISTINCT_NODES_OR_ATOMICS.getFunctionIdentifier());
+        if (!sort && !distinct) {
+            return false;
+        }
+        ILogicalExpression argument = functionCall.getArguments().get(0).getValue();
+        if (argument.getExpressionTag() != LogicalExpressionTag.VARIABLE) {
+            return false;
+        }
+        VariableReferenceExpression sequenceVariable = (VariableReferenceExpression) argument;
+        if (usedVariables.contains(sequenceVariable.getVariableReference())) {
             return false;
         }
 
-        // Build a subplan for replacing the sort distinct function with operators.
-        // Nested tuple source.
-        Mutable<ILogicalOperator> inputOperator = getInputOperator(assign.getInputs().get(0));
-        NestedTupleSourceOperator ntsOperator = new NestedTupleSourceOperator(inputOperator);
-        nextOperatorRef = new MutableObject<ILogicalOperator>(ntsOperator);
-
-        // Get variable that is being used for sort and distinct operators.
-        VariableReferenceExpression inputVariableRef = (VariableReferenceExpression) functionCall.getArguments().get(0)
-                .getValue();
-        LogicalVariable inputVariable = inputVariableRef.getVariableReference();
+        // The sequence must be aggregated from the nodes of a collection scan.
+        Mutable<ILogicalOperator> aggregateRef = assign.getInputs().get(0);
+        AbstractLogicalOperator input = (AbstractLogicalOperator) aggregateRef.getValue();
+        if (input.getOperatorTag() != LogicalOperatorTag.AGGREGATE) {
+            return false;
+        }
+        AggregateOperator aggregate = (AggregateOperator) input;
+        if (aggregate.getVariables().size() != 1
+                || aggregate.getVariables().get(0) != sequenceVariable.getVariableReference()) {
+            return false;
+        }
+        ILogicalExpression aggregateExpression = aggregate.getExpressions().get(0).getValue();
+        if (aggregateExpression.getExpressionTag() != LogicalExpressionTag.FUNCTION_CALL
+                || !((AbstractFunctionCallExpression) aggregateExpression).getFunctionIdentifier()
+                        .equals(BuiltinOperators.SEQUENCE.getFunctionIdentifier())) {
+            return false;
+        }
+        Mutable<ILogicalExpression> sequenceArgumentRef = ((AbstractFunctionCallExpression) aggregateExpression)
+                .getArguments().get(0);
+        if (sequenceArgumentRef.getValue().getExpressionTag() != LogicalExpressionTag.VARIABLE) {
+            return false;
+        }
+        LogicalVariable inputVariable = ((VariableReferenceExpression) sequenceArgumentRef.getValue())
+                .getVariableReference();
+        Mutable<ILogicalOperator> aggregateInputRef = aggregate.getInputs().get(0);
+        if (!findOperator((AbstractLogicalOperator) aggregateInputRef.getValue(), LogicalOperatorTag.DATASOURCESCAN)
+                || findOperator((AbstractLogicalOperator) aggregateInputRef.getValue(),
+                        LogicalOperatorTag.NESTEDTUPLESOURCE)
+                || !producesNodes(aggregateInputRef, inputVariable)) {
+            return false;
+        }
 
         // Unnest.
         LogicalVariable unnestVariable = context.newVar();
         UnnestOperator unnestOperator = getUnnestOperator(inputVariable, unnestVariable);
-        unnestOperator.getInputs().add(nextOperatorRef);
-        nextOperatorRef = new MutableObject<ILogicalOperator>(unnestOperator);
+        unnestOperator.getInputs().add(new MutableObject<ILogicalOperator>(aggregateInputRef.getValue()));
+        Mutable<ILogicalOperator> nextOperatorRef = new MutableObject<ILogicalOperator>(unnestOperator);
+        context.computeAndSetTypeEnvironmentForOperator(unnestOperator);
 
-        // Assign Node ID key.
-        LogicalVariable nodeIdKeyVariable = context.newVar();
-        AssignOperator nodeIdAssignOp = getAssignOperator(unnestVariable, nodeIdKeyVariable,
-                BuiltinOperators.ID_FROM_NODE);
+        // Assign Node ID key. Tree ids take 64 bits, so the key is the tree id and the local node id.
+        LogicalVariable treeIdVariable = context.newVar();
+        LogicalVariable localIdVariable = context.newVar();
+        AssignOperator nodeIdAssignOp = getAssignOperator(unnestVariable, treeIdVariable,
+                BuiltinOperators.TREE_ID_FROM_NODE);
+        nodeIdAssignOp.getVariables().add(localIdVariable);
+        nodeIdAssignOp.getExpressions().add(getNodeFunctionExpression(unnestVariable,
+                BuiltinOperators.LOCAL_ID_FROM_NODE));
         nodeIdAssignOp.getInputs().add(nextOperatorRef);
         nextOperatorRef = new MutableObject<ILogicalOperator>(nodeIdAssignOp);
-
-        // Prepare for Order and Distinct.
-        Mutable<ILogicalExpression> nodeIdKeyVariableRef = new MutableObject<ILogicalExpression>(
-                new VariableReferenceExpression(nodeIdKeyVariable));
+        context.computeAndSetTypeEnvironmentForOperator(nodeIdAssignOp);
 
         // Distinct.
-        if (functionCall.getFunctionIdentifier().equals(
-                BuiltinOperators.SORT_DISTINCT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())
-                || functionCall.getFunctionIdentifier().equals(
-                        BuiltinOperators.DISTINCT_NODES_OR_ATOMICS.getFunctionIdentifier())) {
-            LogicalVariable groupByVariable = context.newVar();
-            ILogicalExpression nodeIdKeyVre = new VariableReferenceExpression(nodeIdKeyVariable);
-            GroupByOperator groupByOperator = getGroupByOperator(groupByVariable, nodeIdKeyVre);
-            groupByOperator.getInputs().add(nextOperatorRef);
-            nextOperatorRef = new MutableObject<ILogicalOperator>(groupByOperator);
-        }
-
-//        // Order.
-//        if (functionCall.getFunctionIdentifier().equals(
-//                BuiltinOperators.SORT_DISTINCT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())
-//                || functionCall.getFunctionIdentifier().equals(
-//                        BuiltinOperators.SORT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())) {
-//            OrderOperator orderOperator = getOrderOperator(nodeIdKeyVariableRef);
-//            orderOperator.getInputs().add(nextOperatorRef);
-//            nextOperatorRef = new MutableObject<ILogicalOperator>(orderOperator);
-//        }
-//
-        // Aggregate.
-        LogicalVariable aggregateVariable = assign.getVariables().get(0);
-        AggregateOperator aggregateOperator = getAggregateOperator(unnestVariable, aggregateVariable);
-        aggregateOperator.getInputs().add(nextOperatorRef);
-        nextOperatorRef = new MutableObject<ILogicalOperator>(aggregateOperator);
-
-        // Subplan.
-        SubplanOperator subplanOperator = new SubplanOperator();
-        subplanOperator.getInputs().add(assign.getInputs().get(0));
-        subplanOperator.setRootOp(nextOperatorRef);
-
-        opRef.setValue(subplanOperator);
+        if (distinct) {
+            DistinctOperator distinctOperator = getDistinctOperator(treeIdVariable, localIdVariable);
+            distinctOperator.getInputs().add(nextOperatorRef);
+            nextOperatorRef = new MutableObject<ILogicalOperator>(distinctOperator);
+            context.computeAndSetTypeEnvironmentForOperator(distinctOperator);
+        }
 
+        // Order.
+        if (sort) {
+            OrderOperator orderOperator = getOrderOperator(treeIdVariable, localIdVariable);
+            orderOperator.getInputs().add(nextOperatorRef);
+            nextOperatorRef = new MutableObject<ILogicalOperator>(orderOperator);
+            context.computeAndSetTypeEnvironmentForOperator(orderOperator);
+        }
+
+        // Aggregate the nodes and remove the function.
+        aggregateInputRef.setValue(nextOperatorRef.getValue());
+        sequenceArgumentRef.setValue(new VariableReferenceExpression(unnestVariable));
+        assign.getExpressions().get(0).setValue(sequenceVariable);
         return true;
     }
 
-    private AggregateOperator getAggregateOperator(LogicalVariable unnestVariable, LogicalVariable aggregateVariable) {
-        List<LogicalVariable> aggregateVariables = new ArrayList<LogicalVariable>();
-        aggregateVariables.add(aggregateVariable);
-
-        List<Mutable<ILogicalExpression>> aggregateSequenceArgs = new ArrayList<Mutable<ILogicalExpression>>();
-        Mutable<ILogicalExpression> unnestVariableRef = new MutableObject<ILogicalExpression>(
-                new VariableReferenceExpression(unnestVariable));
-        aggregateSequenceArgs.add(unnestVariableRef);
+    /**
+     * Path steps return nodes. The items of a scan are only known to be nodes after a child step was pushed into it,
+     * since JSON collections return other items.
+     */
+    private boolean producesNodes(Mutable<ILogicalOperator> opRef, LogicalVariable variable) {
+        Mutable<ILogicalOperator> producerRef = OperatorToolbox.findProducerOf(opRef, variable);
+        if (producerRef == null) {
+            return false;
+        }
+        AbstractLogicalOperator producer = (AbstractLogicalOperator) producerRef.getValue();
+        switch (producer.getOperatorTag()) {
+            case DATASOURCESCAN:
+                DataSourceScanOperator datascan = (DataSourceScanOperator) producer;
+                if (!(datascan.getDataSource() instanceof VXQueryCollectionDataSource)) {
+                    return false;
+                }
+                VXQueryCollectionDataSource ds = (VXQueryCollectionDataSource) datascan.getDataSource();
+                return !ds.getChildSeq().isEmpty() && ds.getValueSeq().isEmpty();
+            case UNNEST:
+                return producesNodes(producerRef, ((UnnestOperator) producer).getExpressionRef());
+            case ASSIGN:
+                AssignOperator assign = (AssignOperator) producer;
+                int index = assign.getVariables().indexOf(variable);
+                return producesNodes(producerRef, assign.getExpressions().get(index));
+            default:
+                return false;
+        }
+    }
 
-        List<Mutable<ILogicalExpression>> exprs = new ArrayList<Mutable<ILogicalExpression>>();
-        ILogicalExpression aggregateExp = new AggregateFunctionCallExpression(BuiltinOperators.SEQUENCE, false,
-                aggregateSequenceArgs);
-        Mutable<ILogicalExpression> aggregateExpRef = new MutableObject<ILogicalExpression>(aggregateExp);
-        exprs.add(aggregateExpRef);
+    private boolean producesNodes(Mutable<ILogicalOperator> opRef, Mutable<ILogicalExpression> expressionRef) {
+        ILogicalExpression expression = expressionRef.getValue();
+        if (expression.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+            return producesNodes(opRef, ((VariableReferenceExpression) expression).getVariableReference());
+        }
+        if (expression.getExpressionTag() == LogicalExpressionTag.FUNCTION_CALL
+                && ((AbstractFunctionCallExpression) expression).getFunctionIdentifier()
+                        .equals(BuiltinOperators.ITERATE.getFunctionIdentifier())) {
+            return producesNodes(opRef, ((AbstractFunctionCallExpression) expression).getArguments().get(0));
+        }
+        SequenceType type = ExpressionToolbox.getOutputSequenceType(opRef, expressionRef, dCtx);
+        return type != null && type.getItemType() instanceof NodeType;
+    }
 
-        return new AggregateOperator(aggregateVariables, exprs);
+    private boolean findOperator(AbstractLogicalOperator op, LogicalOperatorTag tag) {
+        if (op.getOperatorTag() == tag) {
+            return true;
+        }
+        for (Mutable<ILogicalOperator> inputRef : op.getInputs()) {
+            if (findOperator((AbstractLogicalOperator) inputRef.getValue(), tag)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private AssignOperator getAssignOperator(LogicalVariable unnestVariable, LogicalVariable outputVariable,
             IFunctionInfo inputFunction) {
+        return new AssignOperator(outputVariable, getNodeFunctionExpression(unnestVariable, inputFunction));
+    }
+
+    private Mutable<ILogicalExpression> getNodeFunctionExpression(LogicalVariable unnestVariable,
+            IFunctionInfo inputFunction) {
         List<Mutable<ILogicalExpression>> nodeArgs = new ArrayList<Mutable<ILogicalExpression>>();
         nodeArgs.add(new MutableObject<ILogicalExpression>(new VariableReferenceExpression(unnestVariable)));
         ScalarFunctionCallExpression unctionExpression = new ScalarFunctionCallExpression(inputFunction, nodeArgs);
-        Mutable<ILogicalExpression> nodeTreeIdExpression = new MutableObject<ILogicalExpression>(unctionExpression);
-        return new AssignOperator(outputVariable, nodeTreeIdExpression);
-    }
-
-    private GroupByOperator getGroupByOperator(LogicalVariable outputVariable, ILogicalExpression variableRef) {
-        GroupByOperator op = new GroupByOperator();
-        op.addGbyExpression(outputVariable, variableRef);
-        return op;
+        return new MutableObject<ILogicalExpression>(unctionExpression);
     }
 
-    private Mutable<ILogicalOperator> getInputOperator(Mutable<ILogicalOperator> opRef) {
-        AbstractLogicalOperator op = (AbstractLogicalOperator) opRef.getValue();
-        switch (op.getOperatorTag()) {
-            case SUBPLAN:
-                SubplanOperator subplan = (SubplanOperator) op;
-                return getInputOperator(subplan.getNestedPlans().get(0).getRoots().get(0));
-            case NESTEDTUPLESOURCE:
-                NestedTupleSourceOperator nts = (NestedTupleSourceOperator) op;
-                return getInputOperator(nts.getDataSourceReference());
-            default:
-                return opRef;
+    private DistinctOperator getDistinctOperator(LogicalVariable... keyVariables) {
+        List<Mutable<ILogicalExpression>> distinctArgs = new ArrayList<Mutable<ILogicalExpression>>();
+        for (LogicalVariable keyVariable : keyVariables) {
+            distinctArgs.add(new MutableObject<ILogicalExpression>(new VariableReferenceExpression(keyVariable)));
         }
+        return new DistinctOperator(distinctArgs);
     }
 
-    @SuppressWarnings("unused")
-    private OrderOperator getOrderOperator(Mutable<ILogicalExpression> variableRef) {
+    private OrderOperator getOrderOperator(LogicalVariable... keyVariables) {
         List<Pair<IOrder, Mutable<ILogicalExpression>>> orderArgs = new ArrayList<Pair<IOrder, Mutable<ILogicalExpression>>>();
-        orderArgs.add(new Pair<IOrder, Mutable<ILogicalExpression>>(OrderOperator.ASC_ORDER, variableRef));
-        OrderOperator oo = new OrderOperator(orderArgs);
-        return oo;
+        for (LogicalVariable keyVariable : keyVariables) {
+            orderArgs.add(new Pair<IOrder, Mutable<ILogicalExpression>>(OrderOperator.ASC_ORDER,
+                    new MutableObject<ILogicalExpression>(new VariableReferenceExpression(keyVariable))));
+        }
+        return new OrderOperator(orderArgs);
     }
 
     private UnnestOperator getUnnestOperator(LogicalVariable inputVariable, LogicalVariable unnestVariable) {
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.rewriter.rules;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.commons.lang3.mutable.MutableObject;
+import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalExpression;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.base.IOptimizationContext;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalExpressionTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalOperatorTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalVariable;
+import org.apache.hyracks.algebricks.core.algebra.expressions.AbstractFunctionCallExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.UnnestingFunctionCallExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.VariableReferenceExpression;
+import org.apache.hyracks.algebricks.core.algebra.functions.FunctionIdentifier;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractLogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AggregateOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AssignOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.DataSourceScanOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.DistinctOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.UnnestOperator;
+import org.apache.vxquery.compiler.rewriter.VXQueryOptimizationContext;
+import org.apache.vxquery.compiler.rewriter.rules.util.ExpressionToolbox;
+import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.functions.BuiltinFunctions;
+import org.apache.vxquery.functions.BuiltinOperators;
+import org.apache.vxquery.metadata.VXQueryCollectionDataSource;
+import org.apache.vxquery.metadata.VXQueryMetadataProvider;
+import org.apache.vxquery.types.Quantifier;
+import org.apache.vxquery.types.SequenceType;
+
+/**
+ * The rule replaces fn:distinct-values over the items of a collection scan with a distinct operator, so the values
+ * are made distinct by a hash partitioned sort in parallel instead of in one scalar function call.
+ *
+ * <pre>
+ * Before
+ *
+ *   plan__parent
+ *   ASSIGN( $v2 : distinct-values( sf1( $v1 ) ) )
+ *   AGGREGATE( $v1 : sequence( $v0 ) )
+ *   plan__child
+ *
+ *   Where sf1 is a chain of data, treat or promote functions applied to each item,
+ *   plan__child scans a collection and plan__parent does not use $v1.
+ *
+ * After
+ *
+ *   plan__parent
+ *   ASSIGN( $v2 : $v1 )
+ *   AGGREGATE( $v1 : sequence( $v3 ) )
+ *   DISTINCT( $v3 )
+ *   UNNEST( $v3 : iterate( sf1( $v0 ) ) )
+ *   plan__child
+ * </pre>
+ */
+public class ConvertDistinctValuesToDistinctOperatorRule extends AbstractUsedVariablesProcessingRule {
+    StaticContext dCtx = null;
+
+    @Override
+    protected boolean processOperator(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        if (dCtx == null) {
+            VXQueryOptimizationContext vxqueryCtx = (VXQueryOptimizationContext) context;
+            dCtx = ((VXQueryMetadataProvider) vxqueryCtx.getMetadataProvider()).getStaticContext();
+        }
+        AbstractLogicalOperator op = (AbstractLogicalOperator) opRef.getValue();
+        if (op.getOperatorTag() != LogicalOperatorTag.ASSIGN) {
+            return false;
+        }
+        AssignOperator assign = (AssignOperator) op;
+        if (assign.getExpressions().size() != 1) {
+            return false;
+        }
+        ILogicalExpression assignExpression = assign.getExpressions().get(0).getValue();
+        if (!isFunction(assignExpression, BuiltinFunctions.FN_DISTINCT_VALUES_1.getFunctionIdentifier())) {
+            return false;
+        }
+        Mutable<ILogicalExpression> argumentRef = ((AbstractFunctionCallExpression) assignExpression).getArguments()
+                .get(0);
+        Mutable<ILogicalExpression> variableRef = findItemVariable(argumentRef);
+        if (variableRef == null) {
+            return false;
+        }
+        VariableReferenceExpression sequenceVariable = (VariableReferenceExpression) variableRef.getValue();
+        if (usedVariables.contains(sequenceVariable.getVariableReference())) {
+            return false;
+        }
+
+        // The sequence must be aggregated from a collection scan.
+        AbstractLogicalOperator input = (AbstractLogicalOperator) assign.getInputs().get(0).getValue();
+        if (input.getOperatorTag() != LogicalOperatorTag.AGGREGATE) {
+            return false;
+        }
+        AggregateOperator aggregate = (AggregateOperator) input;
+        if (aggregate.getVariables().size() != 1
+                || aggregate.getVariables().get(0) != sequenceVariable.getVariableReference()) {
+            return false;
+        }
+        ILogicalExpression aggregateExpression = aggregate.getExpressions().get(0).getValue();
+        if (!isFunction(aggregateExpression, BuiltinOperators.SEQUENCE.getFunctionIdentifier())) {
+            return false;
+        }
+        Mutable<ILogicalOperator> aggregateInputRef = aggregate.getInputs().get(0);
+        if (!scansCollection((AbstractLogicalOperator) aggregateInputRef.getValue())) {
+            return false;
+        }
+
+        // Unnest the items of each tuple.
+        Mutable<ILogicalExpression> sequenceArgumentRef = ((AbstractFunctionCallExpression) aggregateExpression)
+                .getArguments().get(0);
+        variableRef.setValue(sequenceArgumentRef.getValue());
+        List<Mutable<ILogicalExpression>> iterateArgs = new ArrayList<Mutable<ILogicalExpression>>();
+        iterateArgs.add(new MutableObject<ILogicalExpression>(argumentRef.getValue()));
+        LogicalVariable itemVariable = context.newVar();
+        UnnestOperator unnest = new UnnestOperator(itemVariable, new MutableObject<ILogicalExpression>(
+                new UnnestingFunctionCallExpression(BuiltinOperators.ITERATE, iterateArgs)));
+        unnest.getInputs().add(new MutableObject<ILogicalOperator>(aggregateInputRef.getValue()));
+        context.computeAndSetTypeEnvironmentForOperator(unnest);
+
+        // Distinct items.
+        List<Mutable<ILogicalExpression>> distinctArgs = new ArrayList<Mutable<ILogicalExpression>>();
+        distinctArgs.add(new MutableObject<ILogicalExpression>(new VariableReferenceExpression(itemVariable)));
+        DistinctOperator distinct = new DistinctOperator(distinctArgs);
+        distinct.getInputs().add(new MutableObject<ILogicalOperator>(unnest));
+        context.computeAndSetTypeEnvironmentForOperator(distinct);
+
+        // Aggregate the distinct items and remove the function.
+        aggregateInputRef.setValue(distinct);
+        sequenceArgumentRef.setValue(new VariableReferenceExpression(itemVariable));
+        assign.getExpressions().get(0).setValue(sequenceVariable);
+        return true;
+    }
+
+    /**
+     * Find the variable under the functions that apply to each item on their own.
+     */
+    private Mutable<ILogicalExpression> findItemVariable(Mutable<ILogicalExpression> expressionRef) {
+        while (true) {
+            ILogicalExpression expression = expressionRef.getValue();
+            if (expression.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+                return expressionRef;
+            }
+            if (isFunction(expression, BuiltinFunctions.FN_DATA_1.getFunctionIdentifier())) {
+                expressionRef = ((AbstractFunctionCallExpression) expression).getArguments().get(0);
+            } else if (isFunction(expression, BuiltinOperators.TREAT.getFunctionIdentifier())
+                    || isFunction(expression, BuiltinOperators.PROMOTE.getFunctionIdentifier())) {
+                // Checking each item on its own is only the same for any number of items.
+                SequenceType type = ExpressionToolbox.getTypeExpressionTypeArgument(expressionRef, dCtx);
+                if (type == null || type.getQuantifier() != Quantifier.QUANT_STAR) {
+                    return null;
+                }
+                expressionRef = ((AbstractFunctionCallExpression) expression).getArguments().get(0);
+            } else {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Only a plan outside of nested plans produces all items of the collection.
+     */
+    private boolean scansCollection(AbstractLogicalOperator op) {
+        return findOperator(op, LogicalOperatorTag.DATASOURCESCAN)
+                && !findOperator(op, LogicalOperatorTag.NESTEDTUPLESOURCE);
+    }
+
+    private boolean findOperator(AbstractLogicalOperator op, LogicalOperatorTag tag) {
+        if (op.getOperatorTag() == tag && (tag != LogicalOperatorTag.DATASOURCESCAN
+                || ((DataSourceScanOperator) op).getDataSource() instanceof VXQueryCollectionDataSource)) {
+            return true;
+        }
+        for (Mutable<ILogicalOperator> inputRef : op.getInputs()) {
+            if (findOperator((AbstractLogicalOperator) inputRef.getValue(), tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isFunction(ILogicalExpression expression, FunctionIdentifier fid) {
+        return expression.getExpressionTag() == LogicalExpressionTag.FUNCTION_CALL
+                && ((AbstractFunctionCallExpression) expression).getFunctionIdentifier().equals(fid);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.rewriter.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalExpression;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.base.IOptimizationContext;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalExpressionTag;
+import org.apache.hyracks.algebricks.core.algebra.expressions.AbstractFunctionCallExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.ConstantExpression;
+import org.apache.hyracks.algebricks.core.rewriter.base.IAlgebraicRewriteRule;
+import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.hyracks.data.std.primitive.VoidPointable;
+import org.apache.hyracks.dataflow.common.data.accessors.IFrameTupleReference;
+import org.apache.vxquery.compiler.algebricks.VXQueryConstantValue;
+import org.apache.vxquery.compiler.rewriter.rules.util.ExpressionToolbox;
+import org.apache.vxquery.compiler.rewriter.rules.util.OperatorToolbox;
+import org.apache.vxquery.context.DynamicContext;
+import org.apache.vxquery.context.DynamicContextImpl;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.functions.BuiltinOperators;
+import org.apache.vxquery.metadata.VXQueryMetadataProvider;
+import org.apache.vxquery.runtime.functions.cast.CastScalarEvaluatorFactory;
+import org.apache.vxquery.types.BuiltinTypeRegistry;
+import org.apache.vxquery.types.Quantifier;
+import org.apache.vxquery.types.SequenceType;
+
+/**
+ * The rule casts constants while the query is compiled, so constructor functions and casts of literals such as
+ * xs:dateTime("2001-01-01T00:00:00Z") are not evaluated for each tuple. A cast that raises an error is kept and
+ * raises the error when it is evaluated. Casts to xs:QName and xs:NOTATION depend on the in-scope namespaces and are
+ * kept as well.
+ *
+ * <pre>
+ * Before
+ *
+ *   plan__parent
+ *   %OPERATOR( $v1 : cast( \@constant, \@type_expression ) )
+ *   plan__child
+ *
+ * After
+ *
+ *   plan__parent
+ *   %OPERATOR( $v1 : \@constant cast to \@type_expression )
+ *   plan__child
+ * </pre>
+ */
+public class FoldConstantCastExpressionsRule implements IAlgebraicRewriteRule {
+    final int ARG_DATA = 0;
+    final int ARG_TYPE = 1;
+    final List<Mutable<ILogicalExpression>> functionList = new ArrayList<Mutable<ILogicalExpression>>();
+    private final VoidPointable vp = (VoidPointable) VoidPointable.FACTORY.createPointable();
+
+    @Override
+    public boolean rewritePre(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        return false;
+    }
+
+    @Override
+    public boolean rewritePost(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        DynamicContext dCtx = new DynamicContextImpl(
+                ((VXQueryMetadataProvider) context.getMetadataProvider()).getStaticContext());
+        boolean modified = false;
+        for (Mutable<ILogicalExpression> expression : OperatorToolbox.getExpressions(opRef)) {
+            functionList.clear();
+            ExpressionToolbox.findAllFunctionExpressions(expression, BuiltinOperators.CAST.getFunctionIdentifier(),
+                    functionList);
+            for (Mutable<ILogicalExpression> searchM : functionList) {
+                if (foldCast(searchM, dCtx)) {
+                    modified = true;
+                }
+            }
+        }
+        return modified;
+    }
+
+    private boolean foldCast(Mutable<ILogicalExpression> searchM, DynamicContext dCtx) {
+        AbstractFunctionCallExpression searchFunction = (AbstractFunctionCallExpression) searchM.getValue();
+        byte[] value = getConstant(searchFunction.getArguments().get(ARG_DATA).getValue());
+        byte[] typeCode = getConstant(searchFunction.getArguments().get(ARG_TYPE).getValue());
+        if (value == null || typeCode == null || value[0] == ValueTag.SEQUENCE_TAG) {
+            return false;
+        }
+        SequenceType sType = ExpressionToolbox.getTypeExpressionTypeArgument(searchM, dCtx.getStaticContext());
+        if (sType == null || sType.getItemType() == BuiltinTypeRegistry.XS_QNAME
+                || sType.getItemType() == BuiltinTypeRegistry.XS_NOTATION) {
+            return false;
+        }
+        IScalarEvaluator[] args = { createConstantEvaluator(value), createConstantEvaluator(typeCode) };
+        try {
+            CastScalarEvaluatorFactory.createCastEvaluator(args, dCtx).evaluate(null, vp);
+        } catch (HyracksDataException e) {
+            // Keep the cast, so the error is raised if the query evaluates it.
+            return false;
+        }
+        byte[] result = Arrays.copyOfRange(vp.getByteArray(), vp.getStartOffset(),
+                vp.getStartOffset() + vp.getLength());
+        SequenceType resultType = SequenceType.create(sType.getItemType(), Quantifier.QUANT_ONE);
+        searchM.setValue(new ConstantExpression(new VXQueryConstantValue(resultType, result)));
+        return true;
+    }
+
+    private static byte[] getConstant(ILogicalExpression expr) {
+        if (expr.getExpressionTag() != LogicalExpressionTag.CONSTANT
+                || !(((ConstantExpression) expr).getValue() instanceof VXQueryConstantValue)) {
+            return null;
+        }
+        return ((VXQueryConstantValue) ((ConstantExpression) expr).getValue()).getValue();
+    }
+
+    private static IScalarEvaluator createConstantEvaluator(final byte[] bytes) {
+        return new IScalarEvaluator() {
+            @Override
+            public void evaluate(IFrameTupleReference tuple, IPointable result) {
+                result.set(bytes, 0, bytes.length);
+            }
+        };
+    }
+}
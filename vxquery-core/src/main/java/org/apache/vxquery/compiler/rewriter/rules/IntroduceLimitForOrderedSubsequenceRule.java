@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.rewriter.rules;
+
+import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.commons.lang3.mutable.MutableObject;
+import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalExpression;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.base.IOptimizationContext;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalExpressionTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalOperatorTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalVariable;
+import org.apache.hyracks.algebricks.core.algebra.expressions.AbstractFunctionCallExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.ConstantExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.VariableReferenceExpression;
+import org.apache.hyracks.algebricks.core.algebra.functions.FunctionIdentifier;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractLogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AggregateOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AssignOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.LimitOperator;
+import org.apache.hyracks.data.std.primitive.DoublePointable;
+import org.apache.hyracks.data.std.primitive.IntegerPointable;
+import org.apache.hyracks.data.std.primitive.LongPointable;
+import org.apache.vxquery.compiler.algebricks.VXQueryConstantValue;
+import org.apache.vxquery.compiler.rewriter.VXQueryOptimizationContext;
+import org.apache.vxquery.compiler.rewriter.rules.util.ExpressionToolbox;
+import org.apache.vxquery.compiler.rewriter.rules.util.OperatorToolbox;
+import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.functions.BuiltinFunctions;
+import org.apache.vxquery.functions.BuiltinOperators;
+import org.apache.vxquery.metadata.VXQueryMetadataProvider;
+import org.apache.vxquery.types.BuiltinTypeRegistry;
+import org.apache.vxquery.types.Quantifier;
+import org.apache.vxquery.types.SequenceType;
+
+/**
+ * The rule limits the tuples of an order by to the items that fn:subsequence with constant arguments can return, so
+ * the order is followed by a limit. Each partition then only sends its first items to the merge of the sorted
+ * partitions.
+ *
+ * <pre>
+ * Before
+ *
+ *   plan__parent
+ *   ASSIGN( $v2 : subsequence( sf1( $v1 ), start, length ) )
+ *   AGGREGATE( $v1 : sequence( $v0 ) )
+ *   plan__return
+ *   ORDER( ... )
+ *   plan__child
+ *
+ *   Where start and length are constants, sf1 is a chain of treat or promote functions applied to each item,
+ *   $v0 is statically one or more items, plan__return only has assign and subplan operators, plan__child is not in
+ *   a nested plan and plan__parent does not use $v1.
+ *
+ * After
+ *
+ *   plan__parent
+ *   ASSIGN( $v2 : subsequence( sf1( $v1 ), start, length ) )
+ *   AGGREGATE( $v1 : sequence( $v0 ) )
+ *   plan__return
+ *   LIMIT( round(start) + round(length) - 1 )
+ *   ORDER( ... )
+ *   plan__child
+ * </pre>
+ */
+public class IntroduceLimitForOrderedSubsequenceRule extends AbstractUsedVariablesProcessingRule {
+    StaticContext dCtx = null;
+    final TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    final LongPointable longp = (LongPointable) LongPointable.FACTORY.createPointable();
+    final DoublePointable doublep = (DoublePointable) DoublePointable.FACTORY.createPointable();
+
+    @Override
+    protected boolean processOperator(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        if (dCtx == null) {
+            VXQueryOptimizationContext vxqueryCtx = (VXQueryOptimizationContext) context;
+            dCtx = ((VXQueryMetadataProvider) vxqueryCtx.getMetadataProvider()).getStaticContext();
+        }
+        AbstractLogicalOperator op = (AbstractLogicalOperator) opRef.getValue();
+        if (op.getOperatorTag() != LogicalOperatorTag.ASSIGN) {
+            return false;
+        }
+        AssignOperator assign = (AssignOperator) op;
+        if (assign.getExpressions().size() != 1) {
+            return false;
+        }
+        ILogicalExpression assignExpression = assign.getExpressions().get(0).getValue();
+        if (!isFunction(assignExpression, BuiltinFunctions.FN_SUBSEQUENCE_3.getFunctionIdentifier())) {
+            return false;
+        }
+        AbstractFunctionCallExpression subsequence = (AbstractFunctionCallExpression) assignExpression;
+        LogicalVariable sequenceVariable = findItemVariable(subsequence.getArguments().get(0));
+        if (sequenceVariable == null || usedVariables.contains(sequenceVariable)) {
+            return false;
+        }
+        Double start = getNumber(subsequence.getArguments().get(1).getValue(), opRef);
+        Double length = getNumber(subsequence.getArguments().get(2).getValue(), opRef);
+        if (start == null || length == null) {
+            return false;
+        }
+        // Items are returned from the position round(start) to before round(start) + round(length).
+        double limit = Math.rint(start) + Math.rint(length) - 1;
+        if (!(limit >= 1 && limit <= Integer.MAX_VALUE)) {
+            return false;
+        }
+
+        // The sequence must be aggregated from the tuples of an order by. The assigns of the constants can be
+        // between the subsequence and the aggregate.
+        Mutable<ILogicalOperator> inputRef = assign.getInputs().get(0);
+        while (inputRef.getValue().getOperatorTag() == LogicalOperatorTag.ASSIGN) {
+            inputRef = inputRef.getValue().getInputs().get(0);
+        }
+        if (inputRef.getValue().getOperatorTag() != LogicalOperatorTag.AGGREGATE) {
+            return false;
+        }
+        AggregateOperator aggregate = (AggregateOperator) inputRef.getValue();
+        if (aggregate.getVariables().size() != 1 || aggregate.getVariables().get(0) != sequenceVariable
+                || !isFunction(aggregate.getExpressions().get(0).getValue(),
+                        BuiltinOperators.SEQUENCE.getFunctionIdentifier())) {
+            return false;
+        }
+        // The limit counts tuples, so each tuple must add at least one item to the sequence.
+        Mutable<ILogicalExpression> itemRef = ((AbstractFunctionCallExpression) aggregate.getExpressions().get(0)
+                .getValue()).getArguments().get(0);
+        Quantifier quantifier = getQuantifier(inputRef, itemRef);
+        if (quantifier != Quantifier.QUANT_ONE && quantifier != Quantifier.QUANT_PLUS) {
+            return false;
+        }
+        Mutable<ILogicalOperator> orderRef = aggregate.getInputs().get(0);
+        while (orderRef.getValue().getOperatorTag() == LogicalOperatorTag.ASSIGN
+                || orderRef.getValue().getOperatorTag() == LogicalOperatorTag.SUBPLAN) {
+            // Neither changes the number of tuples.
+            orderRef = orderRef.getValue().getInputs().get(0);
+        }
+        AbstractLogicalOperator order = (AbstractLogicalOperator) orderRef.getValue();
+        if (order.getOperatorTag() != LogicalOperatorTag.ORDER
+                || findOperator(order, LogicalOperatorTag.NESTEDTUPLESOURCE)) {
+            return false;
+        }
+
+        // The limit reads its value as an integer without a tag.
+        byte[] limitBytes = new byte[IntegerPointable.TYPE_TRAITS.getFixedLength()];
+        IntegerPointable.setInteger(limitBytes, 0, (int) limit);
+        LimitOperator limitOp = new LimitOperator(new ConstantExpression(new VXQueryConstantValue(
+                SequenceType.create(BuiltinTypeRegistry.XS_INT, Quantifier.QUANT_ONE), limitBytes)));
+        limitOp.getInputs().add(new MutableObject<ILogicalOperator>(order));
+        orderRef.setValue(limitOp);
+        context.computeAndSetTypeEnvironmentForOperator(limitOp);
+        return true;
+    }
+
+    /**
+     * Find the variable under the functions that check each item on their own.
+     */
+    private LogicalVariable findItemVariable(Mutable<ILogicalExpression> expressionRef) {
+        while (true) {
+            ILogicalExpression expression = expressionRef.getValue();
+            if (expression.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+                return ((VariableReferenceExpression) expression).getVariableReference();
+            }
+            if (!isFunction(expression, BuiltinOperators.TREAT.getFunctionIdentifier())
+                    && !isFunction(expression, BuiltinOperators.PROMOTE.getFunctionIdentifier())) {
+                return null;
+            }
+            SequenceType type = ExpressionToolbox.getTypeExpressionTypeArgument(expressionRef, dCtx);
+            if (type == null || type.getQuantifier() != Quantifier.QUANT_STAR) {
+                return null;
+            }
+            expressionRef = ((AbstractFunctionCallExpression) expression).getArguments().get(0);
+        }
+    }
+
+    /**
+     * Find the static quantifier of an expression, following assigned variables.
+     */
+    private Quantifier getQuantifier(Mutable<ILogicalOperator> opRef, Mutable<ILogicalExpression> expressionRef) {
+        ILogicalExpression expression = expressionRef.getValue();
+        if (expression.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+            LogicalVariable lv = ((VariableReferenceExpression) expression).getVariableReference();
+            Mutable<ILogicalOperator> producerRef = OperatorToolbox.findProducerOf(opRef, lv);
+            if (producerRef != null && producerRef.getValue().getOperatorTag() == LogicalOperatorTag.ASSIGN) {
+                AssignOperator assign = (AssignOperator) producerRef.getValue();
+                return getQuantifier(producerRef, assign.getExpressions().get(assign.getVariables().indexOf(lv)));
+            }
+        } else if (isFunction(expression, BuiltinOperators.TREAT.getFunctionIdentifier())) {
+            // Treat raises an error for other numbers of items.
+            SequenceType type = ExpressionToolbox.getTypeExpressionTypeArgument(expressionRef, dCtx);
+            return type == null ? null : type.getQuantifier();
+        } else if (isFunction(expression, BuiltinOperators.PROMOTE.getFunctionIdentifier())) {
+            return getQuantifier(opRef, ((AbstractFunctionCallExpression) expression).getArguments().get(0));
+        }
+        SequenceType type = ExpressionToolbox.getOutputSequenceType(opRef, expressionRef, dCtx);
+        return type == null ? null : type.getQuantifier();
+    }
+
+    /**
+     * Follow assigned variables and the functions on a constant to its number.
+     */
+    private Double getNumber(ILogicalExpression expression, Mutable<ILogicalOperator> opRef) {
+        while (true) {
+            if (expression.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+                LogicalVariable lv = ((VariableReferenceExpression) expression).getVariableReference();
+                Mutable<ILogicalOperator> producerRef = OperatorToolbox.findProducerOf(opRef, lv);
+                if (producerRef == null || producerRef.getValue().getOperatorTag() != LogicalOperatorTag.ASSIGN) {
+                    return null;
+                }
+                AssignOperator assign = (AssignOperator) producerRef.getValue();
+                expression = assign.getExpressions().get(assign.getVariables().indexOf(lv)).getValue();
+            } else if (isFunction(expression, BuiltinFunctions.FN_DATA_1.getFunctionIdentifier())
+                    || isFunction(expression, BuiltinOperators.PROMOTE.getFunctionIdentifier())
+                    || isFunction(expression, BuiltinOperators.TREAT.getFunctionIdentifier())) {
+                expression = ((AbstractFunctionCallExpression) expression).getArguments().get(0).getValue();
+            } else if (expression.getExpressionTag() == LogicalExpressionTag.CONSTANT
+                    && ((ConstantExpression) expression).getValue() instanceof VXQueryConstantValue) {
+                ExpressionToolbox.getConstantAsPointable((ConstantExpression) expression, tvp);
+                switch (tvp.getTag()) {
+                    case ValueTag.XS_INTEGER_TAG:
+                        tvp.getValue(longp);
+                        return (double) longp.getLong();
+                    case ValueTag.XS_DOUBLE_TAG:
+                        tvp.getValue(doublep);
+                        return doublep.getDouble();
+                    default:
+                        return null;
+                }
+            } else {
+                return null;
+            }
+        }
+    }
+
+    private boolean findOperator(AbstractLogicalOperator op, LogicalOperatorTag tag) {
+        if (op.getOperatorTag() == tag) {
+            return true;
+        }
+        for (Mutable<ILogicalOperator> inputRef : op.getInputs()) {
+            if (findOperator((AbstractLogicalOperator) inputRef.getValue(), tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isFunction(ILogicalExpression expression, FunctionIdentifier fid) {
+        return expression.getExpressionTag() == LogicalExpressionTag.FUNCTION_CALL
+                && ((AbstractFunctionCallExpression) expression).getFunctionIdentifier().equals(fid);
+    }
+}
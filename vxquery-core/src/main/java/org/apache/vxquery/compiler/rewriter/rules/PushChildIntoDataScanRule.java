@@ -119,6 +119,10 @@ public class PushChildIntoDataScanRule extends AbstractUsedVariablesProcessingRu
      * @param expression
      */
     private boolean updateDataSource(VXQueryCollectionDataSource ds, Mutable<ILogicalExpression> expression) {
+        if (!ds.getValuePredicates().isEmpty() || !ds.getProjections().isEmpty()) {
+            // Value predicates and projections are relative to the current child steps.
+            return false;
+        }
         boolean added = false;
         List<Mutable<ILogicalExpression>> finds = new ArrayList<Mutable<ILogicalExpression>>();
         ExpressionToolbox.findAllFunctionExpressions(expression, BuiltinOperators.CHILD.getFunctionIdentifier(), finds);
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.rewriter.rules;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalExpression;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalPlan;
+import org.apache.hyracks.algebricks.core.algebra.base.IOptimizationContext;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalExpressionTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalOperatorTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalVariable;
+import org.apache.hyracks.algebricks.core.algebra.expressions.AbstractFunctionCallExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.VariableReferenceExpression;
+import org.apache.hyracks.algebricks.core.algebra.functions.FunctionIdentifier;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractLogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractOperatorWithNestedPlans;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AssignOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.DataSourceScanOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.UnnestOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.visitors.VariableUtilities;
+import org.apache.vxquery.compiler.rewriter.VXQueryOptimizationContext;
+import org.apache.vxquery.compiler.rewriter.rules.util.ExpressionToolbox;
+import org.apache.vxquery.compiler.rewriter.rules.util.OperatorToolbox;
+import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.functions.BuiltinFunctions;
+import org.apache.vxquery.functions.BuiltinOperators;
+import org.apache.vxquery.functions.Function;
+import org.apache.vxquery.metadata.VXQueryCollectionDataSource;
+import org.apache.vxquery.metadata.VXQueryMetadataProvider;
+import org.apache.vxquery.types.ElementType;
+import org.apache.vxquery.types.SequenceType;
+
+/**
+ * The rule searches for a collection scan with child steps whose items are
+ * only used through the values of child paths.
+ *
+ * <pre>
+ * Before
+ *
+ *   plan__parent
+ *   SELECT( $v5 )
+ *   ASSIGN( $v5 : value-eq( data( $v4 ), "TMIN" ) )
+ *   ASSIGN( $v4 : child( $v3, dataType ) )
+ *   ASSIGN( $v3 : $v1 )
+ *   DATASCAN( $source : $v1 )
+ *   plan__child
+ *
+ *   Where $source has child steps and $v1 is only used in the path
+ *   expressions of the plan.
+ *
+ * After
+ *
+ *   The plan is not changed.
+ *
+ *   $source is encoded with the child path dataType. The scan only builds
+ *   the elements on the path; the element at the end of the path keeps
+ *   its whole subtree.
+ * </pre>
+ *
+ * A path is only used through atomization, comparisons, fn:string,
+ * fn:boolean, fn:exists, fn:empty, fn:count and the numeric aggregates.
+ * Any other use of the items, including returning them, keeps the
+ * whole element.
+ */
+public class PushChildProjectionIntoDataScanRule extends AbstractUsedVariablesProcessingRule {
+    private static final Function[] CONSUMERS = { BuiltinFunctions.FN_DATA_1, BuiltinFunctions.FN_STRING_1,
+            BuiltinFunctions.FN_NUMBER_1, BuiltinFunctions.FN_BOOLEAN_1, BuiltinFunctions.FN_EXISTS_1,
+            BuiltinFunctions.FN_EMPTY_1, BuiltinFunctions.FN_COUNT_1, BuiltinFunctions.FN_SUM_1,
+            BuiltinFunctions.FN_AVG_1, BuiltinFunctions.FN_MIN_1, BuiltinFunctions.FN_MAX_1, BuiltinOperators.VALUE_EQ,
+            BuiltinOperators.VALUE_NE, BuiltinOperators.VALUE_LT, BuiltinOperators.VALUE_LE,
+            BuiltinOperators.VALUE_GT, BuiltinOperators.VALUE_GE, BuiltinOperators.GENERAL_EQ,
+            BuiltinOperators.GENERAL_NE, BuiltinOperators.GENERAL_LT, BuiltinOperators.GENERAL_LE,
+            BuiltinOperators.GENERAL_GT, BuiltinOperators.GENERAL_GE };
+
+    StaticContext dCtx = null;
+
+    protected boolean processOperator(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        if (dCtx == null) {
+            VXQueryOptimizationContext vxqueryCtx = (VXQueryOptimizationContext) context;
+            dCtx = ((VXQueryMetadataProvider) vxqueryCtx.getMetadataProvider()).getStaticContext();
+        }
+        AbstractLogicalOperator op = (AbstractLogicalOperator) opRef.getValue();
+        if (op.getOperatorTag() != LogicalOperatorTag.DATASOURCESCAN) {
+            return false;
+        }
+        DataSourceScanOperator datascan = (DataSourceScanOperator) op;
+        if (!(datascan.getDataSource() instanceof VXQueryCollectionDataSource)
+                || datascan.getVariables().size() != 1) {
+            return false;
+        }
+        VXQueryCollectionDataSource ds = (VXQueryCollectionDataSource) datascan.getDataSource();
+        if (ds.getChildSeq().isEmpty() || !ds.getProjections().isEmpty()) {
+            return false;
+        }
+
+        List<Mutable<ILogicalOperator>> operators = new ArrayList<Mutable<ILogicalOperator>>();
+        collectOperators(firstOpRef, operators);
+        Map<LogicalVariable, List<Integer>> paths = new HashMap<LogicalVariable, List<Integer>>();
+        paths.put(datascan.getVariables().get(0), new ArrayList<Integer>());
+        findPathVariables(operators, paths);
+
+        List<List<Integer>> used = new ArrayList<List<Integer>>();
+        for (Mutable<ILogicalOperator> operatorRef : operators) {
+            if (!collectUsedPaths(operatorRef, paths, used)) {
+                return false;
+            }
+        }
+        if (used.isEmpty()) {
+            return false;
+        }
+        for (List<Integer> path : used) {
+            ds.addProjection(path);
+        }
+        return true;
+    }
+
+    private void collectOperators(Mutable<ILogicalOperator> opRef, List<Mutable<ILogicalOperator>> operators) {
+        AbstractLogicalOperator op = (AbstractLogicalOperator) opRef.getValue();
+        operators.add(opRef);
+        if (op.hasNestedPlans()) {
+            for (ILogicalPlan plan : ((AbstractOperatorWithNestedPlans) op).getNestedPlans()) {
+                for (Mutable<ILogicalOperator> rootRef : plan.getRoots()) {
+                    collectOperators(rootRef, operators);
+                }
+            }
+        }
+        for (Mutable<ILogicalOperator> inputOpRef : op.getInputs()) {
+            collectOperators(inputOpRef, operators);
+        }
+    }
+
+    /**
+     * Find the variables holding a child path of the scanned items.
+     */
+    private void findPathVariables(List<Mutable<ILogicalOperator>> operators,
+            Map<LogicalVariable, List<Integer>> paths) {
+        boolean changed;
+        do {
+            changed = false;
+            for (Mutable<ILogicalOperator> opRef : operators) {
+                AbstractLogicalOperator op = (AbstractLogicalOperator) opRef.getValue();
+                if (op.getOperatorTag() == LogicalOperatorTag.ASSIGN) {
+                    AssignOperator assign = (AssignOperator) op;
+                    for (int i = 0; i < assign.getVariables().size(); ++i) {
+                        LogicalVariable lv = assign.getVariables().get(i);
+                        List<Integer> path = getPath(assign.getExpressions().get(i).getValue(), paths);
+                        if (!paths.containsKey(lv) && path != null) {
+                            paths.put(lv, path);
+                            changed = true;
+                        }
+                    }
+                } else if (op.getOperatorTag() == LogicalOperatorTag.UNNEST) {
+                    UnnestOperator unnest = (UnnestOperator) op;
+                    ILogicalExpression expression = unnest.getExpressionRef().getValue();
+                    if (!paths.containsKey(unnest.getVariable())
+                            && isFunction(expression, BuiltinOperators.ITERATE.getFunctionIdentifier())) {
+                        List<Integer> path = getPath(
+                                ((AbstractFunctionCallExpression) expression).getArguments().get(0).getValue(), paths);
+                        if (path != null) {
+                            paths.put(unnest.getVariable(), path);
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        } while (changed);
+    }
+
+    /**
+     * @return the child path of the expression or null if it is not a path of the scanned items.
+     */
+    private List<Integer> getPath(ILogicalExpression expression, Map<LogicalVariable, List<Integer>> paths) {
+        while (true) {
+            if (expression.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+                return paths.get(((VariableReferenceExpression) expression).getVariableReference());
+            } else if (isFunction(expression, BuiltinOperators.TREAT.getFunctionIdentifier())
+                    || isFunction(expression, BuiltinOperators.SORT_DISTINCT_NODES_ASC.getFunctionIdentifier())
+                    || isFunction(expression,
+                            BuiltinOperators.SORT_DISTINCT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())) {
+                expression = ((AbstractFunctionCallExpression) expression).getArguments().get(0).getValue();
+            } else if (isFunction(expression, BuiltinOperators.CHILD.getFunctionIdentifier())) {
+                AbstractFunctionCallExpression child = (AbstractFunctionCallExpression) expression;
+                SequenceType type = ExpressionToolbox.getTypeExpressionTypeArgument(child, dCtx);
+                if (type == null || !(type.getItemType() instanceof ElementType)) {
+                    return null;
+                }
+                List<Integer> parentPath = getPath(child.getArguments().get(0).getValue(), paths);
+                if (parentPath == null) {
+                    return null;
+                }
+                List<Integer> path = new ArrayList<Integer>(parentPath);
+                path.add(ExpressionToolbox.getTypeExpressionTypeArgument(child));
+                return path;
+            } else {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Add the paths used by the operator.
+     *
+     * @return false if the operator uses the scanned items in another way
+     */
+    private boolean collectUsedPaths(Mutable<ILogicalOperator> opRef, Map<LogicalVariable, List<Integer>> paths,
+            List<List<Integer>> used) throws AlgebricksException {
+        AbstractLogicalOperator op = (AbstractLogicalOperator) opRef.getValue();
+        switch (op.getOperatorTag()) {
+            case ASSIGN:
+                AssignOperator assign = (AssignOperator) op;
+                for (int i = 0; i < assign.getVariables().size(); ++i) {
+                    if (!paths.containsKey(assign.getVariables().get(i))
+                            && !collectUsedPaths(assign.getExpressions().get(i).getValue(), false, paths, used)) {
+                        return false;
+                    }
+                }
+                return true;
+            case UNNEST:
+                UnnestOperator unnest = (UnnestOperator) op;
+                return paths.containsKey(unnest.getVariable())
+                        || collectUsedPaths(unnest.getExpressionRef().getValue(), false, paths, used);
+            case AGGREGATE:
+            case INNERJOIN:
+            case LEFTOUTERJOIN:
+            case RUNNINGAGGREGATE:
+            case SELECT:
+            case UNNEST_MAP:
+                for (Mutable<ILogicalExpression> expression : OperatorToolbox.getExpressions(opRef)) {
+                    if (!collectUsedPaths(expression.getValue(), false, paths, used)) {
+                        return false;
+                    }
+                }
+                return true;
+            case DATASOURCESCAN:
+            case PROJECT:
+            case SUBPLAN:
+                return true;
+            default:
+                List<LogicalVariable> usedVariables = new ArrayList<LogicalVariable>();
+                VariableUtilities.getUsedVariables(op, usedVariables);
+                for (LogicalVariable lv : usedVariables) {
+                    if (paths.containsKey(lv)) {
+                        return false;
+                    }
+                }
+                return true;
+        }
+    }
+
+    private boolean collectUsedPaths(ILogicalExpression expression, boolean consumed,
+            Map<LogicalVariable, List<Integer>> paths, List<List<Integer>> used) {
+        List<Integer> path = getPath(expression, paths);
+        if (path != null) {
+            if (!consumed || path.isEmpty()) {
+                return false;
+            }
+            if (!used.contains(path)) {
+                used.add(path);
+            }
+            return true;
+        }
+        if (expression.getExpressionTag() == LogicalExpressionTag.FUNCTION_CALL) {
+            AbstractFunctionCallExpression function = (AbstractFunctionCallExpression) expression;
+            boolean consumer = isConsumer(function.getFunctionIdentifier());
+            for (Mutable<ILogicalExpression> argument : function.getArguments()) {
+                if (!collectUsedPaths(argument.getValue(), consumer, paths, used)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isConsumer(FunctionIdentifier fid) {
+        for (Function function : CONSUMERS) {
+            if (fid.equals(function.getFunctionIdentifier())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isFunction(ILogicalExpression expression, FunctionIdentifier fid) {
+        return expression.getExpressionTag() == LogicalExpressionTag.FUNCTION_CALL
+                && ((AbstractFunctionCallExpression) expression).getFunctionIdentifier().equals(fid);
+    }
+}
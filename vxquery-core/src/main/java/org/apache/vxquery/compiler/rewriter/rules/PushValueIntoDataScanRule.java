@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.rewriter.rules;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.commons.lang3.mutable.MutableObject;
+import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalExpression;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.base.IOptimizationContext;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalExpressionTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalOperatorTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalVariable;
+import org.apache.hyracks.algebricks.core.algebra.expressions.AbstractFunctionCallExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.ConstantExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.VariableReferenceExpression;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractLogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AssignOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.DataSourceScanOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.UnnestOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.visitors.VariableUtilities;
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.vxquery.compiler.algebricks.VXQueryConstantValue;
+import org.apache.vxquery.compiler.rewriter.VXQueryOptimizationContext;
+import org.apache.vxquery.compiler.rewriter.rules.util.OperatorToolbox;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.functions.BuiltinOperators;
+import org.apache.vxquery.metadata.CollectionStatistics;
+import org.apache.vxquery.metadata.CollectionStatisticsCatalog;
+import org.apache.vxquery.metadata.VXQueryCollectionDataSource;
+import org.apache.vxquery.metadata.VXQueryMetadataProvider;
+
+/**
+ * The rule searches for an iterate over a chain of JSONiq value and
+ * keys-or-members functions on the items of a collection data scan.
+ *
+ * <pre>
+ * Before
+ *
+ *   plan__parent
+ *   UNNEST( $v4 : iterate( $v3 ) )
+ *   ASSIGN( $v3 : keys-or-members( value( $v2, $key ) ) )
+ *   ASSIGN( $key : "results" )
+ *   ASSIGN( $v2 : $v1 )
+ *   DATASCAN( $source : $v1 )
+ *   plan__child
+ *
+ *   Where $v1, $v2 and $v3 are not used in plan__parent.
+ *
+ * After
+ *
+ *   plan__parent
+ *   ASSIGN( $v4 : $v1 )
+ *   ASSIGN( $key : "results" )
+ *   ASSIGN( $v2 : $v1 )
+ *   DATASCAN( $source : $v1 )
+ *   plan__child
+ *
+ *   $source is encoded with the value steps ["results", null]. The scan
+ *   streams each file and only builds the selected items.
+ * </pre>
+ *
+ * The steps are only pushed into collections that are known to hold no XML
+ * documents. The value functions raise an error for XML documents, while the
+ * scan would return them unfiltered.
+ */
+public class PushValueIntoDataScanRule extends AbstractUsedVariablesProcessingRule {
+    final UTF8StringPointable stringp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+    final TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+
+    protected boolean processOperator(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        AbstractLogicalOperator op1 = (AbstractLogicalOperator) opRef.getValue();
+        if (op1.getOperatorTag() != LogicalOperatorTag.UNNEST) {
+            return false;
+        }
+        UnnestOperator unnest = (UnnestOperator) op1;
+        if (unnest.getPositionalVariable() != null) {
+            return false;
+        }
+        ILogicalExpression unnestExpression = unnest.getExpressionRef().getValue();
+        if (unnestExpression.getExpressionTag() != LogicalExpressionTag.FUNCTION_CALL) {
+            return false;
+        }
+        AbstractFunctionCallExpression iterate = (AbstractFunctionCallExpression) unnestExpression;
+        if (!iterate.getFunctionIdentifier().equals(BuiltinOperators.ITERATE.getFunctionIdentifier())) {
+            return false;
+        }
+
+        // Only assign operators may be found between the unnest and the data scan.
+        List<Mutable<ILogicalOperator>> assignRefs = new ArrayList<Mutable<ILogicalOperator>>();
+        Mutable<ILogicalOperator> opRef2 = unnest.getInputs().get(0);
+        while (opRef2.getValue().getOperatorTag() == LogicalOperatorTag.ASSIGN) {
+            assignRefs.add(opRef2);
+            opRef2 = opRef2.getValue().getInputs().get(0);
+        }
+        if (opRef2.getValue().getOperatorTag() != LogicalOperatorTag.DATASOURCESCAN) {
+            return false;
+        }
+        DataSourceScanOperator datascan = (DataSourceScanOperator) opRef2.getValue();
+        if (!(datascan.getDataSource() instanceof VXQueryCollectionDataSource)) {
+            return false;
+        }
+        VXQueryCollectionDataSource ds = (VXQueryCollectionDataSource) datascan.getDataSource();
+        if (!ds.getChildSeq().isEmpty() || !ds.getValueSeq().isEmpty() || datascan.getVariables().size() != 1) {
+            return false;
+        }
+        LogicalVariable scanVariable = datascan.getVariables().get(0);
+
+        // The iterated value is either the path itself or a variable assigned with the path.
+        ILogicalExpression path = iterate.getArguments().get(0).getValue();
+        Mutable<ILogicalOperator> pathAssignRef = null;
+        if (path.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+            LogicalVariable pathVariable = ((VariableReferenceExpression) path).getVariableReference();
+            pathAssignRef = findAssign(assignRefs, pathVariable);
+            if (pathAssignRef == null || usedVariables.contains(pathVariable)) {
+                return false;
+            }
+            path = ((AssignOperator) pathAssignRef.getValue()).getExpressions().get(0).getValue();
+        }
+
+        // Collect the value steps from the inner most function out.
+        List<String> steps = new ArrayList<String>();
+        List<LogicalVariable> itemVariables = new ArrayList<LogicalVariable>();
+        if (!collectSteps(path, assignRefs, opRef, scanVariable, steps, itemVariables) || steps.isEmpty()) {
+            return false;
+        }
+
+        // The items are replaced by the selected values, so no one else may use them.
+        List<LogicalVariable> assignUsedVariables = new ArrayList<LogicalVariable>();
+        for (Mutable<ILogicalOperator> assignRef : assignRefs) {
+            if (assignRef == pathAssignRef) {
+                continue;
+            }
+            AssignOperator assign = (AssignOperator) assignRef.getValue();
+            if (itemVariables.contains(assign.getVariables().get(0))) {
+                // An alias of the scanned item.
+                continue;
+            }
+            assignUsedVariables.clear();
+            VariableUtilities.getUsedVariables(assign, assignUsedVariables);
+            for (LogicalVariable lv : itemVariables) {
+                if (assignUsedVariables.contains(lv)) {
+                    return false;
+                }
+            }
+        }
+        for (LogicalVariable lv : itemVariables) {
+            if (usedVariables.contains(lv)) {
+                return false;
+            }
+        }
+
+        if (!isJsonCollection(ds, context)) {
+            return false;
+        }
+        for (String step : steps) {
+            ds.addValueSeq(step);
+        }
+
+        // Remove the path assign and replace the unnest with a noop assign. Keeps variable chain.
+        if (pathAssignRef != null) {
+            pathAssignRef.setValue(pathAssignRef.getValue().getInputs().get(0).getValue());
+        }
+        AssignOperator noOp = new AssignOperator(unnest.getVariable(),
+                new MutableObject<ILogicalExpression>(new VariableReferenceExpression(scanVariable)));
+        noOp.getInputs().addAll(unnest.getInputs());
+        opRef.setValue(noOp);
+        return true;
+    }
+
+    /**
+     * Walk the value and keys-or-members functions down to the scanned item. A
+     * key is added for each value function and null for each keys-or-members
+     * function.
+     */
+    private boolean collectSteps(ILogicalExpression expression, List<Mutable<ILogicalOperator>> assignRefs,
+            Mutable<ILogicalOperator> opRef, LogicalVariable scanVariable, List<String> steps,
+            List<LogicalVariable> itemVariables) {
+        if (expression.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+            LogicalVariable lv = ((VariableReferenceExpression) expression).getVariableReference();
+            itemVariables.add(lv);
+            if (lv == scanVariable) {
+                return true;
+            }
+            // Follow aliases of the scanned item.
+            Mutable<ILogicalOperator> aliasRef = findAssign(assignRefs, lv);
+            if (aliasRef == null) {
+                return false;
+            }
+            ILogicalExpression alias = ((AssignOperator) aliasRef.getValue()).getExpressions().get(0).getValue();
+            if (alias.getExpressionTag() != LogicalExpressionTag.VARIABLE) {
+                return false;
+            }
+            return collectSteps(alias, assignRefs, opRef, scanVariable, steps, itemVariables);
+        }
+        if (expression.getExpressionTag() != LogicalExpressionTag.FUNCTION_CALL) {
+            return false;
+        }
+        AbstractFunctionCallExpression function = (AbstractFunctionCallExpression) expression;
+        if (function.getFunctionIdentifier().equals(BuiltinOperators.VALUE.getFunctionIdentifier())) {
+            if (!collectSteps(function.getArguments().get(0).getValue(), assignRefs, opRef, scanVariable, steps,
+                    itemVariables)) {
+                return false;
+            }
+            String key = getStringArgument(function.getArguments().get(1).getValue(), opRef);
+            if (key == null) {
+                return false;
+            }
+            steps.add(key);
+            return true;
+        } else if (function.getFunctionIdentifier().equals(BuiltinOperators.KEYS_OR_MEMBERS.getFunctionIdentifier())) {
+            if (!collectSteps(function.getArguments().get(0).getValue(), assignRefs, opRef, scanVariable, steps,
+                    itemVariables)) {
+                return false;
+            }
+            steps.add(null);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isJsonCollection(VXQueryCollectionDataSource ds, IOptimizationContext context) {
+        CollectionStatisticsCatalog catalog = ((VXQueryOptimizationContext) context).getStatisticsCatalog();
+        String[] nodeList = ((VXQueryMetadataProvider) context.getMetadataProvider()).getNodeList();
+        CollectionStatistics statistics = catalog.getStatistics(ds.getPartitions(), nodeList);
+        return statistics != null && statistics.getXmlFileCount() == 0;
+    }
+
+    private Mutable<ILogicalOperator> findAssign(List<Mutable<ILogicalOperator>> assignRefs, LogicalVariable lv) {
+        for (Mutable<ILogicalOperator> assignRef : assignRefs) {
+            AssignOperator assign = (AssignOperator) assignRef.getValue();
+            if (assign.getVariables().size() == 1 && assign.getVariables().get(0) == lv) {
+                return assignRef;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the string of a constant argument or a variable assigned with a
+     * constant. Return null for any other argument.
+     */
+    private String getStringArgument(ILogicalExpression argument, Mutable<ILogicalOperator> opRef) {
+        if (argument.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+            LogicalVariable lv = ((VariableReferenceExpression) argument).getVariableReference();
+            Mutable<ILogicalOperator> producerRef = OperatorToolbox.findProducerOf(opRef, lv);
+            if (producerRef == null || producerRef.getValue().getOperatorTag() != LogicalOperatorTag.ASSIGN) {
+                return null;
+            }
+            AssignOperator assign = (AssignOperator) producerRef.getValue();
+            argument = assign.getExpressions().get(assign.getVariables().indexOf(lv)).getValue();
+        }
+        if (argument.getExpressionTag() != LogicalExpressionTag.CONSTANT) {
+            return null;
+        }
+        Object value = ((ConstantExpression) argument).getValue();
+        if (!(value instanceof VXQueryConstantValue)) {
+            return null;
+        }
+        VXQueryConstantValue constantValue = (VXQueryConstantValue) value;
+        tvp.set(constantValue.getValue(), 0, constantValue.getValue().length);
+        if (tvp.getTag() != ValueTag.XS_STRING_TAG) {
+            return null;
+        }
+        tvp.getValue(stringp);
+        return stringp.toString();
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.rewriter.rules;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalExpression;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.base.IOptimizationContext;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalExpressionTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalOperatorTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalVariable;
+import org.apache.hyracks.algebricks.core.algebra.expressions.AbstractFunctionCallExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.ConstantExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.VariableReferenceExpression;
+import org.apache.hyracks.algebricks.core.algebra.functions.FunctionIdentifier;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractLogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AssignOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.DataSourceScanOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.SelectOperator;
+import org.apache.hyracks.data.std.primitive.DoublePointable;
+import org.apache.hyracks.data.std.primitive.FloatPointable;
+import org.apache.hyracks.data.std.primitive.LongPointable;
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.vxquery.compiler.algebricks.VXQueryConstantValue;
+import org.apache.vxquery.compiler.rewriter.VXQueryOptimizationContext;
+import org.apache.vxquery.compiler.rewriter.rules.util.ExpressionToolbox;
+import org.apache.vxquery.compiler.rewriter.rules.util.OperatorToolbox;
+import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.atomic.XSDecimalPointable;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.functions.BuiltinFunctions;
+import org.apache.vxquery.functions.BuiltinOperators;
+import org.apache.vxquery.metadata.VXQueryCollectionDataSource;
+import org.apache.vxquery.metadata.VXQueryMetadataProvider;
+import org.apache.vxquery.types.BuiltinTypeRegistry;
+import org.apache.vxquery.types.ElementType;
+import org.apache.vxquery.types.ItemType;
+import org.apache.vxquery.types.SequenceType;
+import org.apache.vxquery.xmlparser.ValuePredicate;
+import org.apache.vxquery.xmlparser.ValuePredicate.Comparison;
+import org.apache.vxquery.xmlparser.ValuePredicate.Operand;
+
+/**
+ * The rule searches for a select comparing the value of a child path of a
+ * collection item with a constant.
+ *
+ * <pre>
+ * Before
+ *
+ *   plan__parent
+ *   SELECT( $v5 )
+ *   ASSIGN( $v5 : value-eq( data( $v4 ), "TMIN" ) )
+ *   ASSIGN( $v4 : child( $v3, dataType ) )
+ *   ASSIGN( $v3 : $v1 )
+ *   DATASCAN( $source : $v1 )
+ *   plan__child
+ *
+ *   Where $source has child steps.
+ *
+ * After
+ *
+ *   The plan is not changed.
+ *
+ *   $source is encoded with the predicate. The scan drops the elements
+ *   that can not satisfy it and the select checks the remaining ones.
+ * </pre>
+ *
+ * Supported are value and general comparisons of a constant with the string
+ * value of the child path, a decimal or double cast of it, or the year, month
+ * or day of a date or dateTime cast of it.
+ */
+public class PushValuePredicateIntoDataScanRule extends AbstractUsedVariablesProcessingRule {
+    StaticContext dCtx = null;
+    final TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    final UTF8StringPointable stringp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+    final LongPointable longp = (LongPointable) LongPointable.FACTORY.createPointable();
+    final DoublePointable doublep = (DoublePointable) DoublePointable.FACTORY.createPointable();
+    final FloatPointable floatp = (FloatPointable) FloatPointable.FACTORY.createPointable();
+    final XSDecimalPointable decp = (XSDecimalPointable) XSDecimalPointable.FACTORY.createPointable();
+
+    protected boolean processOperator(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        if (dCtx == null) {
+            VXQueryOptimizationContext vxqueryCtx = (VXQueryOptimizationContext) context;
+            dCtx = ((VXQueryMetadataProvider) vxqueryCtx.getMetadataProvider()).getStaticContext();
+        }
+        AbstractLogicalOperator op = (AbstractLogicalOperator) opRef.getValue();
+        if (op.getOperatorTag() != LogicalOperatorTag.SELECT) {
+            return false;
+        }
+        SelectOperator select = (SelectOperator) op;
+
+        List<ILogicalExpression> conjuncts = new ArrayList<ILogicalExpression>();
+        collectConjuncts(select.getCondition().getValue(), opRef, conjuncts);
+        boolean modified = false;
+        for (ILogicalExpression conjunct : conjuncts) {
+            if (pushPredicate(conjunct, opRef)) {
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    private void collectConjuncts(ILogicalExpression expression, Mutable<ILogicalOperator> opRef,
+            List<ILogicalExpression> conjuncts) {
+        expression = resolve(expression, opRef);
+        if (isFunction(expression, BuiltinOperators.AND.getFunctionIdentifier())) {
+            for (Mutable<ILogicalExpression> argument : ((AbstractFunctionCallExpression) expression).getArguments()) {
+                collectConjuncts(argument.getValue(), opRef, conjuncts);
+            }
+        } else {
+            conjuncts.add(expression);
+        }
+    }
+
+    private boolean pushPredicate(ILogicalExpression conjunct, Mutable<ILogicalOperator> opRef) {
+        if (conjunct.getExpressionTag() != LogicalExpressionTag.FUNCTION_CALL) {
+            return false;
+        }
+        AbstractFunctionCallExpression function = (AbstractFunctionCallExpression) conjunct;
+        FunctionIdentifier fid = function.getFunctionIdentifier();
+        Comparison comparison = getComparison(fid);
+        if (comparison == null || function.getArguments().size() != 2) {
+            return false;
+        }
+        boolean general = isGeneralComparison(fid);
+        ILogicalExpression left = resolve(function.getArguments().get(0).getValue(), opRef);
+        ILogicalExpression right = resolve(function.getArguments().get(1).getValue(), opRef);
+        if (left.getExpressionTag() == LogicalExpressionTag.CONSTANT) {
+            ILogicalExpression swap = left;
+            left = right;
+            right = swap;
+            comparison = comparison.swap();
+        }
+        if (right.getExpressionTag() != LogicalExpressionTag.CONSTANT) {
+            return false;
+        }
+
+        // Find out how the child path value is compared.
+        Operand operand = null;
+        if (left.getExpressionTag() == LogicalExpressionTag.FUNCTION_CALL) {
+            FunctionIdentifier leftFid = ((AbstractFunctionCallExpression) left).getFunctionIdentifier();
+            if (leftFid.equals(BuiltinFunctions.FN_YEAR_FROM_DATETIME_1.getFunctionIdentifier())
+                    || leftFid.equals(BuiltinFunctions.FN_YEAR_FROM_DATE_1.getFunctionIdentifier())) {
+                operand = Operand.YEAR;
+            } else if (leftFid.equals(BuiltinFunctions.FN_MONTH_FROM_DATETIME_1.getFunctionIdentifier())
+                    || leftFid.equals(BuiltinFunctions.FN_MONTH_FROM_DATE_1.getFunctionIdentifier())) {
+                operand = Operand.MONTH;
+            } else if (leftFid.equals(BuiltinFunctions.FN_DAY_FROM_DATETIME_1.getFunctionIdentifier())
+                    || leftFid.equals(BuiltinFunctions.FN_DAY_FROM_DATE_1.getFunctionIdentifier())) {
+                operand = Operand.DAY;
+            }
+            if (operand != null) {
+                left = resolve(((AbstractFunctionCallExpression) left).getArguments().get(0).getValue(), opRef);
+                ItemType castType = getCastType(left);
+                if (!BuiltinTypeRegistry.XS_DATETIME.equals(castType)
+                        && !BuiltinTypeRegistry.XS_DATE.equals(castType)) {
+                    return false;
+                }
+            } else {
+                ItemType castType = getCastType(left);
+                // Float casts are not pushed, since the scan does not compare with float precision.
+                if (BuiltinTypeRegistry.XS_DECIMAL.equals(castType)) {
+                    operand = Operand.DECIMAL;
+                } else if (BuiltinTypeRegistry.XS_DOUBLE.equals(castType)) {
+                    operand = Operand.NUMBER;
+                } else if (BuiltinTypeRegistry.XS_STRING.equals(castType)) {
+                    operand = Operand.STRING;
+                }
+            }
+            if (operand != null) {
+                left = resolve(((AbstractFunctionCallExpression) left).getArguments().get(0).getValue(), opRef);
+            }
+        }
+
+        // The child path must start at the item of a collection scan with child steps.
+        List<Integer> childSeq = new ArrayList<Integer>();
+        DataSourceScanOperator datascan = collectChildSteps(left, opRef, childSeq);
+        if (datascan == null || childSeq.isEmpty() || !(datascan.getDataSource() instanceof VXQueryCollectionDataSource)
+                || !isPipelinedAbove(opRef.getValue().getInputs().get(0), datascan)) {
+            return false;
+        }
+        VXQueryCollectionDataSource ds = (VXQueryCollectionDataSource) datascan.getDataSource();
+        if (ds.getChildSeq().isEmpty()) {
+            return false;
+        }
+
+        ValuePredicate predicate;
+        ConstantExpression constant = (ConstantExpression) right;
+        String stringValue = getString(constant);
+        Double numberValue = getNumber(constant);
+        if (operand == Operand.DECIMAL && numberValue != null && tvp.getTag() == ValueTag.XS_FLOAT_TAG) {
+            // The decimal is promoted to xs:float.
+            return false;
+        }
+        if (operand == null && stringValue == null && general && numberValue != null) {
+            // The untyped value is cast to xs:double.
+            operand = Operand.NUMBER;
+        }
+        if ((operand == null || operand == Operand.STRING) && stringValue != null) {
+            predicate = ValuePredicate.createString(childSeq, comparison, general, stringValue);
+        } else if (operand != null && operand != Operand.STRING && numberValue != null) {
+            predicate = ValuePredicate.createNumber(childSeq, comparison, general, operand, numberValue);
+        } else {
+            return false;
+        }
+        if (ds.getValuePredicates().contains(predicate)) {
+            return false;
+        }
+        ds.addValuePredicate(predicate);
+        return true;
+    }
+
+    /**
+     * Walk the child functions down to the variable of a data scan. The
+     * child steps are added in path order.
+     */
+    private DataSourceScanOperator collectChildSteps(ILogicalExpression expression, Mutable<ILogicalOperator> opRef,
+            List<Integer> childSeq) {
+        expression = resolve(expression, opRef);
+        if (expression.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+            LogicalVariable lv = ((VariableReferenceExpression) expression).getVariableReference();
+            Mutable<ILogicalOperator> producerRef = OperatorToolbox.findProducerOf(opRef, lv);
+            if (producerRef == null || producerRef.getValue().getOperatorTag() != LogicalOperatorTag.DATASOURCESCAN) {
+                return null;
+            }
+            DataSourceScanOperator datascan = (DataSourceScanOperator) producerRef.getValue();
+            if (datascan.getVariables().size() != 1 || datascan.getVariables().get(0) != lv) {
+                return null;
+            }
+            return datascan;
+        }
+        if (!isFunction(expression, BuiltinOperators.CHILD.getFunctionIdentifier())) {
+            return null;
+        }
+        AbstractFunctionCallExpression child = (AbstractFunctionCallExpression) expression;
+        SequenceType type = ExpressionToolbox.getTypeExpressionTypeArgument(child, dCtx);
+        if (type == null || !(type.getItemType() instanceof ElementType)) {
+            return null;
+        }
+        DataSourceScanOperator datascan = collectChildSteps(child.getArguments().get(0).getValue(), opRef, childSeq);
+        if (datascan != null) {
+            childSeq.add(ExpressionToolbox.getTypeExpressionTypeArgument(child));
+        }
+        return datascan;
+    }
+
+    /**
+     * Dropping scanned items early is only correct if every operator between
+     * the select and the scan works on one tuple at a time.
+     */
+    private boolean isPipelinedAbove(Mutable<ILogicalOperator> opRef, DataSourceScanOperator datascan) {
+        AbstractLogicalOperator op = (AbstractLogicalOperator) opRef.getValue();
+        while (op != datascan) {
+            switch (op.getOperatorTag()) {
+                case ASSIGN:
+                case DATASOURCESCAN:
+                case PROJECT:
+                case SELECT:
+                case SUBPLAN:
+                case UNNEST:
+                    if (op.getInputs().size() != 1) {
+                        return false;
+                    }
+                    op = (AbstractLogicalOperator) op.getInputs().get(0).getValue();
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Follow assigned variables and skip the functions that do not change
+     * the value for a comparison.
+     */
+    private ILogicalExpression resolve(ILogicalExpression expression, Mutable<ILogicalOperator> opRef) {
+        while (true) {
+            if (expression.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+                LogicalVariable lv = ((VariableReferenceExpression) expression).getVariableReference();
+                Mutable<ILogicalOperator> producerRef = OperatorToolbox.findProducerOf(opRef, lv);
+                if (producerRef == null || producerRef.getValue().getOperatorTag() != LogicalOperatorTag.ASSIGN) {
+                    return expression;
+                }
+                AssignOperator assign = (AssignOperator) producerRef.getValue();
+                expression = assign.getExpressions().get(assign.getVariables().indexOf(lv)).getValue();
+            } else if (isFunction(expression, BuiltinFunctions.FN_BOOLEAN_1.getFunctionIdentifier())
+                    || isFunction(expression, BuiltinFunctions.FN_DATA_1.getFunctionIdentifier())
+                    || isFunction(expression, BuiltinOperators.PROMOTE.getFunctionIdentifier())
+                    || isFunction(expression, BuiltinOperators.TREAT.getFunctionIdentifier())
+                    || isFunction(expression, BuiltinOperators.SORT_DISTINCT_NODES_ASC.getFunctionIdentifier())
+                    || isFunction(expression,
+                            BuiltinOperators.SORT_DISTINCT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())) {
+                expression = ((AbstractFunctionCallExpression) expression).getArguments().get(0).getValue();
+            } else {
+                return expression;
+            }
+        }
+    }
+
+    private ItemType getCastType(ILogicalExpression expression) {
+        if (!isFunction(expression, BuiltinOperators.CAST.getFunctionIdentifier())) {
+            return null;
+        }
+        AbstractFunctionCallExpression cast = (AbstractFunctionCallExpression) expression;
+        SequenceType type = ExpressionToolbox.getTypeExpressionTypeArgument(cast, dCtx);
+        return type == null ? null : type.getItemType();
+    }
+
+    private static boolean isFunction(ILogicalExpression expression, FunctionIdentifier fid) {
+        return expression.getExpressionTag() == LogicalExpressionTag.FUNCTION_CALL
+                && ((AbstractFunctionCallExpression) expression).getFunctionIdentifier().equals(fid);
+    }
+
+    private static Comparison getComparison(FunctionIdentifier fid) {
+        if (fid.equals(BuiltinOperators.VALUE_EQ.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_EQ.getFunctionIdentifier())) {
+            return Comparison.EQ;
+        } else if (fid.equals(BuiltinOperators.VALUE_NE.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_NE.getFunctionIdentifier())) {
+            return Comparison.NE;
+        } else if (fid.equals(BuiltinOperators.VALUE_LT.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_LT.getFunctionIdentifier())) {
+            return Comparison.LT;
+        } else if (fid.equals(BuiltinOperators.VALUE_LE.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_LE.getFunctionIdentifier())) {
+            return Comparison.LE;
+        } else if (fid.equals(BuiltinOperators.VALUE_GT.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_GT.getFunctionIdentifier())) {
+            return Comparison.GT;
+        } else if (fid.equals(BuiltinOperators.VALUE_GE.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_GE.getFunctionIdentifier())) {
+            return Comparison.GE;
+        }
+        return null;
+    }
+
+    private static boolean isGeneralComparison(FunctionIdentifier fid) {
+        return fid.equals(BuiltinOperators.GENERAL_EQ.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_NE.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_LT.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_LE.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_GT.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_GE.getFunctionIdentifier());
+    }
+
+    private boolean setConstant(ConstantExpression constant) {
+        if (!(constant.getValue() instanceof VXQueryConstantValue)) {
+            return false;
+        }
+        ExpressionToolbox.getConstantAsPointable(constant, tvp);
+        return true;
+    }
+
+    private String getString(ConstantExpression constant) {
+        if (!setConstant(constant) || tvp.getTag() != ValueTag.XS_STRING_TAG) {
+            return null;
+        }
+        tvp.getValue(stringp);
+        return stringp.toString();
+    }
+
+    private Double getNumber(ConstantExpression constant) {
+        if (!setConstant(constant)) {
+            return null;
+        }
+        switch (tvp.getTag()) {
+            case ValueTag.XS_INTEGER_TAG:
+                tvp.getValue(longp);
+                return (double) longp.getLong();
+            case ValueTag.XS_DECIMAL_TAG:
+                tvp.getValue(decp);
+                return BigDecimal.valueOf(decp.getDecimalValue(), decp.getDecimalPlace()).doubleValue();
+            case ValueTag.XS_DOUBLE_TAG:
+                tvp.getValue(doublep);
+                return doublep.getDouble();
+            case ValueTag.XS_FLOAT_TAG:
+                tvp.getValue(floatp);
+                return (double) floatp.getFloat();
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.rewriter.rules;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalExpression;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.base.IOptimizationContext;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalExpressionTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalOperatorTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalVariable;
+import org.apache.hyracks.algebricks.core.algebra.expressions.AbstractFunctionCallExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.BroadcastExpressionAnnotation;
+import org.apache.hyracks.algebricks.core.algebra.expressions.BroadcastExpressionAnnotation.BroadcastSide;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractBinaryJoinOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractLogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.DataSourceScanOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.visitors.VariableUtilities;
+import org.apache.hyracks.algebricks.core.rewriter.base.IAlgebraicRewriteRule;
+import org.apache.vxquery.compiler.rewriter.VXQueryOptimizationContext;
+import org.apache.vxquery.metadata.CollectionStatistics;
+import org.apache.vxquery.metadata.CollectionStatisticsCatalog;
+import org.apache.vxquery.metadata.VXQueryCollectionDataSource;
+import org.apache.vxquery.metadata.VXQueryMetadataProvider;
+
+/**
+ * The rule puts the smaller input of an inner join on the right, which is the build side of a hash join. The size of an
+ * input is the size of the collections it scans, as listed by the compiler; joins of collections the compiler can not
+ * read are left as they are. A right input that is not larger than the broadcast join size is sent to all partitions
+ * of the left input, so the larger input is not partitioned by the join keys.
+ *
+ * <pre>
+ * Before
+ *
+ *   JOIN( $v1 = $v2 )
+ *     plan__left  (scans 10 GB)
+ *     plan__right (scans 1 TB)
+ *
+ * After
+ *
+ *   JOIN( $v1 = $v2 )
+ *     plan__right (scans 1 TB)
+ *     plan__left  (scans 10 GB)
+ * </pre>
+ */
+public class SetJoinBuildSideRule implements IAlgebraicRewriteRule {
+    public static final String BROADCAST_JOIN_SIZE_PROPERTY = "vxquery.broadcast_join_size";
+    private static final long DEFAULT_BROADCAST_JOIN_SIZE = 16777216;
+
+    private final long broadcastJoinSize = Long.parseLong(
+            System.getProperty(BROADCAST_JOIN_SIZE_PROPERTY, Long.toString(DEFAULT_BROADCAST_JOIN_SIZE)));
+
+    @Override
+    public boolean rewritePre(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        return false;
+    }
+
+    @Override
+    public boolean rewritePost(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        AbstractLogicalOperator op = (AbstractLogicalOperator) opRef.getValue();
+        if (op.getOperatorTag() != LogicalOperatorTag.INNERJOIN) {
+            return false;
+        }
+        AbstractBinaryJoinOperator join = (AbstractBinaryJoinOperator) op;
+        CollectionStatisticsCatalog catalog = ((VXQueryOptimizationContext) context).getStatisticsCatalog();
+        String[] nodeList = ((VXQueryMetadataProvider) context.getMetadataProvider()).getNodeList();
+        Long leftSize = getScannedSize((AbstractLogicalOperator) join.getInputs().get(0).getValue(), catalog, nodeList);
+        Long rightSize = getScannedSize((AbstractLogicalOperator) join.getInputs().get(1).getValue(), catalog,
+                nodeList);
+        if (leftSize == null || rightSize == null) {
+            return false;
+        }
+        boolean modified = false;
+        if (leftSize < rightSize) {
+            ILogicalOperator left = join.getInputs().get(0).getValue();
+            join.getInputs().get(0).setValue(join.getInputs().get(1).getValue());
+            join.getInputs().get(1).setValue(left);
+            context.computeAndSetTypeEnvironmentForOperator(join);
+            if (join.getSchema() != null) {
+                join.recomputeSchema();
+            }
+            rightSize = leftSize;
+            modified = true;
+        }
+        if (rightSize <= broadcastJoinSize && setBroadcastRight(join)) {
+            modified = true;
+        }
+        return modified;
+    }
+
+    /**
+     * Marks the right input to be broadcast. The side of the annotation is the argument of the condition that only
+     * uses variables of the input.
+     *
+     * @return false if the condition can not be marked or is marked already.
+     */
+    private boolean setBroadcastRight(AbstractBinaryJoinOperator join) throws AlgebricksException {
+        ILogicalExpression condition = join.getCondition().getValue();
+        if (condition.getExpressionTag() != LogicalExpressionTag.FUNCTION_CALL) {
+            return false;
+        }
+        AbstractFunctionCallExpression function = (AbstractFunctionCallExpression) condition;
+        if (function.getArguments().size() != 2
+                || function.getAnnotations().containsKey(BroadcastExpressionAnnotation.BROADCAST_ANNOTATION_KEY)) {
+            return false;
+        }
+        List<LogicalVariable> rightVariables = new ArrayList<LogicalVariable>();
+        VariableUtilities.getLiveVariables(join.getInputs().get(1).getValue(), rightVariables);
+        BroadcastSide side = null;
+        for (int i = 0; i < 2 && side == null; ++i) {
+            List<LogicalVariable> usedVariables = new ArrayList<LogicalVariable>();
+            function.getArguments().get(i).getValue().getUsedVariables(usedVariables);
+            if (!usedVariables.isEmpty() && rightVariables.containsAll(usedVariables)) {
+                side = i == 0 ? BroadcastSide.LEFT : BroadcastSide.RIGHT;
+            }
+        }
+        if (side == null) {
+            return false;
+        }
+        BroadcastExpressionAnnotation annotation = new BroadcastExpressionAnnotation();
+        annotation.setObject(side);
+        function.getAnnotations().put(BroadcastExpressionAnnotation.BROADCAST_ANNOTATION_KEY, annotation);
+        return true;
+    }
+
+    /**
+     * @return the size of the collections scanned by the plan or null if the plan scans no collection or one
+     *         without statistics.
+     */
+    private Long getScannedSize(AbstractLogicalOperator op, CollectionStatisticsCatalog catalog, String[] nodeList) {
+        long size = 0;
+        boolean scans = false;
+        List<AbstractLogicalOperator> ops = new ArrayList<AbstractLogicalOperator>();
+        ops.add(op);
+        while (!ops.isEmpty()) {
+            AbstractLogicalOperator current = ops.remove(ops.size() - 1);
+            if (current.getOperatorTag() == LogicalOperatorTag.DATASOURCESCAN) {
+                Object dataSource = ((DataSourceScanOperator) current).getDataSource();
+                if (!(dataSource instanceof VXQueryCollectionDataSource)) {
+                    return null;
+                }
+                CollectionStatistics statistics = catalog
+                        .getStatistics(((VXQueryCollectionDataSource) dataSource).getPartitions(), nodeList);
+                if (statistics == null) {
+                    return null;
+                }
+                size += statistics.getByteSize();
+                scans = true;
+            }
+            for (Mutable<ILogicalOperator> inputRef : current.getInputs()) {
+                ops.add((AbstractLogicalOperator) inputRef.getValue());
+            }
+        }
+        return scans ? size : null;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.rewriter.rules;
+
+import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
+import org.apache.hyracks.algebricks.common.utils.Pair;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalExpression;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.base.IOptimizationContext;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalExpressionTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalOperatorTag;
+import org.apache.hyracks.algebricks.core.algebra.expressions.IVariableTypeEnvironment;
+import org.apache.hyracks.algebricks.core.algebra.expressions.VariableReferenceExpression;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.OrderOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.OrderOperator.IOrder;
+import org.apache.hyracks.algebricks.core.rewriter.base.IAlgebraicRewriteRule;
+import org.apache.vxquery.types.BuiltinTypeRegistry;
+import org.apache.vxquery.types.Quantifier;
+import org.apache.vxquery.types.SequenceType;
+
+/**
+ * The rule gives the sort keys of an order operator a type in the type environment of the operator. Algebricks only
+ * asks for a normalized key computer when the first sort key has a type, while the expression type computer leaves
+ * the types of computed values unknown. The rule runs after the types are inferred for the last time, so no other
+ * rewrite sees the types; the comparators and normalized keys dispatch on the value tags and ignore them.
+ *
+ * <pre>
+ * Before
+ *
+ *   ORDER( ASC $v1 )      $v1 : unknown
+ *
+ * After
+ *
+ *   ORDER( ASC $v1 )      $v1 : xs:anyAtomicType?
+ * </pre>
+ */
+public class SetSortKeyTypesRule implements IAlgebraicRewriteRule {
+    private static final SequenceType SORT_KEY_TYPE = SequenceType.create(BuiltinTypeRegistry.XS_ANY_ATOMIC,
+            Quantifier.QUANT_QUESTION);
+
+    @Override
+    public boolean rewritePre(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        ILogicalOperator op = opRef.getValue();
+        if (op.getOperatorTag() != LogicalOperatorTag.ORDER) {
+            return false;
+        }
+        IVariableTypeEnvironment env = context.getOutputTypeEnvironment(op);
+        if (env == null) {
+            return false;
+        }
+        boolean modified = false;
+        for (Pair<IOrder, Mutable<ILogicalExpression>> orderExpression : ((OrderOperator) op).getOrderExpressions()) {
+            ILogicalExpression expr = orderExpression.second.getValue();
+            if (expr.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+                VariableReferenceExpression varRef = (VariableReferenceExpression) expr;
+                if (env.getVarType(varRef.getVariableReference()) == null) {
+                    env.setVarType(varRef.getVariableReference(), SORT_KEY_TYPE);
+                    modified = true;
+                }
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public boolean rewritePost(Mutable<ILogicalOperator> opRef, IOptimizationContext context) {
+        return false;
+    }
+}
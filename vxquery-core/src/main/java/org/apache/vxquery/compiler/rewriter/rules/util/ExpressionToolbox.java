@@ -19,6 +19,7 @@ package org.apache.vxquery.compiler.rewriter.rules.util;
 import java.util.List;
 
 import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.commons.lang3.mutable.MutableObject;
 import org.apache.vxquery.compiler.algebricks.VXQueryConstantValue;
 import org.apache.vxquery.context.StaticContext;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
@@ -220,6 +221,15 @@ public class ExpressionToolbox {
         }
     }
 
+    public static int getTypeExpressionTypeArgument(AbstractFunctionCallExpression function) {
+        return getTypeExpressionTypeArgument(new MutableObject<ILogicalExpression>(function));
+    }
+
+    public static SequenceType getTypeExpressionTypeArgument(AbstractFunctionCallExpression function,
+            StaticContext dCtx) {
+        return getTypeExpressionTypeArgument(new MutableObject<ILogicalExpression>(function), dCtx);
+    }
+
     public static SequenceType getOutputSequenceType(Mutable<ILogicalOperator> opRef,
             Mutable<ILogicalExpression> argFirstM, StaticContext dCtx) {
         ILogicalExpression argFirstLe = argFirstM.getValue();
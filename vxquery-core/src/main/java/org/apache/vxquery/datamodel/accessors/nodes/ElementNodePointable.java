@@ -133,6 +133,14 @@ public class ElementNodePointable extends AbstractNodePointable {
                 + NS_ENTRY_SIZE * nsEntryIdx + 1);
     }
 
+    public void getNamespaceChunk(NodeTreePointable nodeTree, IPointable nsChunk) {
+        if (nsChunkExists()) {
+            nsChunk.set(bytes, getNamespaceChunkOffset(nodeTree), getNamespaceChunkSize(nodeTree));
+        } else {
+            nsChunk.set(null, -1, -1);
+        }
+    }
+
     public void getAttributeSequence(NodeTreePointable nodeTree, SequencePointable attributes) {
         if (attributesChunkExists()) {
             attributes.set(bytes, getAttributeChunkOffset(nodeTree), getAttributeChunkSize(nodeTree));
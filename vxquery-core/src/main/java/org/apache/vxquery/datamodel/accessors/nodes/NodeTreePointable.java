@@ -24,6 +24,7 @@ import org.apache.hyracks.data.std.api.IPointableFactory;
 import org.apache.hyracks.data.std.collections.api.IValueReferenceVector;
 import org.apache.hyracks.data.std.primitive.BytePointable;
 import org.apache.hyracks.data.std.primitive.IntegerPointable;
+import org.apache.hyracks.data.std.primitive.LongPointable;
 import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
 import org.apache.hyracks.data.std.primitive.VoidPointable;
 import org.apache.hyracks.util.string.UTF8StringUtil;
@@ -44,7 +45,7 @@ import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
  * }
  *
  * NodeId {
- *  int32 id;
+ *  int64 id;
  * }
  *
  * Dictionary {
@@ -61,7 +62,7 @@ public class NodeTreePointable extends AbstractPointable {
 
     private static final int HEADER_OFFSET = 0;
     private static final int HEADER_SIZE = 1;
-    private static final int NODE_ID_SIZE = 4;
+    private static final int NODE_ID_SIZE = 8;
 
     private static final int DICTIONARY_SIZE_SIZE = 4;
     private static final int DICTIONARY_NENTRIES_SIZE = 4;
@@ -99,7 +100,11 @@ public class NodeTreePointable extends AbstractPointable {
             int sortedPtrArrayStart = getDictionarySortedPointerArrayOffset();
             int sortedSlotValue = IntegerPointable.getInteger(bytes,
                     sortedPtrArrayStart + index * SORTED_PTR_SLOT_SIZE);
-            return dataAreaStart + sortedSlotValue;
+            // The sorted pointers hold string indexes, the strings start after the end of the previous string.
+            int idxSlotValue = sortedSlotValue == 0 ? 0
+                    : IntegerPointable.getInteger(bytes,
+                            getDictionaryIndexPointerArrayOffset() + (sortedSlotValue - 1) * IDX_PTR_SLOT_SIZE);
+            return dataAreaStart + idxSlotValue;
         }
 
         @Override
@@ -111,6 +116,21 @@ public class NodeTreePointable extends AbstractPointable {
 
     private final BinarySearchAlgorithm binSearch = new BinarySearchAlgorithm();
 
+    private int setCount;
+
+    @Override
+    public void set(byte[] bytes, int start, int length) {
+        super.set(bytes, start, length);
+        ++setCount;
+    }
+
+    /**
+     * @return a count that changes each time the pointable is set, so values derived from one tree can be cached.
+     */
+    public int getSetCount() {
+        return setCount;
+    }
+
     public boolean nodeIdExists() {
         return (getHeader() & HEADER_NODEID_EXISTS_MASK) != 0;
     }
@@ -123,8 +143,8 @@ public class NodeTreePointable extends AbstractPointable {
         return (getHeader() & HEADER_TYPE_EXISTS_MASK) != 0;
     }
 
-    public int getRootNodeId() {
-        return nodeIdExists() ? IntegerPointable.getInteger(bytes, getNodeIdOffset()) : -1;
+    public long getRootNodeId() {
+        return nodeIdExists() ? LongPointable.getLong(bytes, getNodeIdOffset()) : -1;
     }
 
     public int getDictionaryEntryCount() {
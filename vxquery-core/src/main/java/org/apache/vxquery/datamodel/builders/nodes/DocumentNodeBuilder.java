@@ -18,6 +18,7 @@ package org.apache.vxquery.datamodel.builders.nodes;
 
 import java.io.IOException;
 
+import org.apache.hyracks.data.std.api.IValueReference;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.util.GrowableIntArray;
@@ -61,6 +62,11 @@ public class DocumentNodeBuilder extends AbstractNodeBuilder {
         childrenSlots.append(childrenDataArea.getLength());
     }
 
+    public void addChild(IValueReference value) throws IOException {
+        childrenDataArea.getDataOutput().write(value.getByteArray(), value.getStartOffset(), value.getLength());
+        childrenSlots.append(childrenDataArea.getLength());
+    }
+
     public void endChildrenChunk() throws IOException {
         childrenCount = childrenSlots.getSize();
         if (childrenCount > 0) {
@@ -17,12 +17,60 @@
 package org.apache.vxquery.datamodel.builders.nodes;
 
 import java.io.IOException;
+import java.util.Arrays;
 
+import org.apache.hyracks.data.std.primitive.IntegerPointable;
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.hyracks.data.std.primitive.VoidPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.atomic.CodedQNamePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.AttributeNodePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.DocumentNodePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.ElementNodePointable;
 import org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable;
 import org.apache.vxquery.datamodel.values.ValueTag;
 
+/**
+ * Builds a node tree for a node of another tree. By default the whole dictionary of the other tree is copied. With
+ * the system property {@value #NODE_DICTIONARY_PROPERTY} set to {@value #PRUNE_DICTIONARY} the new tree only gets the
+ * strings its nodes use, which keeps the many small trees of a path step small.
+ */
 public class NodeSubTreeBuilder extends AbstractNodeBuilder {
+    public static final String NODE_DICTIONARY_PROPERTY = "vxquery.node_dictionary";
+    public static final String COPY_DICTIONARY = "copy";
+    public static final String PRUNE_DICTIONARY = "prune";
+
+    private static final int NS_COUNT_SIZE = 4;
+    private static final int CODE_SIZE = 4;
+    private static final int NS_ENTRY_SIZE = CODE_SIZE * 2;
+
+    private final boolean pruneDictionary;
+
+    private DictionaryBuilder db;
+    private ArrayBackedValueStorage dictionaryAbvs;
+    private ArrayBackedValueStorage nodeAbvs;
+    private int[] codeMap;
+    private final UTF8StringPointable utf8sp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+    private final SequencePointable seqp = (SequencePointable) SequencePointable.FACTORY.createPointable();
+    private final TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final CodedQNamePointable cqp = (CodedQNamePointable) CodedQNamePointable.FACTORY.createPointable();
+    private final VoidPointable vp = (VoidPointable) VoidPointable.FACTORY.createPointable();
+    private final DocumentNodePointable dnp = (DocumentNodePointable) DocumentNodePointable.FACTORY.createPointable();
+    private final ElementNodePointable enp = (ElementNodePointable) ElementNodePointable.FACTORY.createPointable();
+    private final AttributeNodePointable anp = (AttributeNodePointable) AttributeNodePointable.FACTORY
+            .createPointable();
+
+    public NodeSubTreeBuilder() {
+        pruneDictionary = PRUNE_DICTIONARY.equals(System.getProperty(NODE_DICTIONARY_PROPERTY, COPY_DICTIONARY));
+        if (pruneDictionary) {
+            db = new DictionaryBuilder();
+            dictionaryAbvs = new ArrayBackedValueStorage();
+            nodeAbvs = new ArrayBackedValueStorage();
+            codeMap = new int[0];
+        }
+    }
 
     @Override
     public int getValueTag() {
@@ -43,7 +91,11 @@ public class NodeSubTreeBuilder extends AbstractNodeBuilder {
         }
         out.write(header);
         if (hasNodeIds) {
-            out.writeInt(ntp.getRootNodeId());
+            out.writeLong(ntp.getRootNodeId());
+        }
+        if (hasDictionary && pruneDictionary) {
+            setPrunedChildNode(ntp, itemTvp);
+            return;
         }
         if (hasDictionary) {
             out.write(ntp.getByteArray(), ntp.getDictionaryOffset(), ntp.getDictionarySize());
@@ -51,6 +103,105 @@ public class NodeSubTreeBuilder extends AbstractNodeBuilder {
         out.write(itemTvp.getByteArray(), itemTvp.getStartOffset(), itemTvp.getLength());
     }
 
+    /**
+     * Copy the node, move the string codes of the copy to a new dictionary and write the dictionary and the node.
+     * The codes keep their size, so the node does not change its layout.
+     */
+    private void setPrunedChildNode(NodeTreePointable ntp, TaggedValuePointable itemTvp) throws IOException {
+        int entryCount = ntp.getDictionaryEntryCount();
+        if (codeMap.length < entryCount) {
+            codeMap = new int[entryCount];
+        }
+        Arrays.fill(codeMap, 0, entryCount, -1);
+        db.reset();
+        nodeAbvs.reset();
+        nodeAbvs.getDataOutput().write(itemTvp.getByteArray(), itemTvp.getStartOffset(), itemTvp.getLength());
+        remapNode(ntp, nodeAbvs.getStartOffset(), nodeAbvs.getLength());
+        dictionaryAbvs.reset();
+        db.write(dictionaryAbvs);
+        out.write(dictionaryAbvs.getByteArray(), dictionaryAbvs.getStartOffset(), dictionaryAbvs.getLength());
+        out.write(nodeAbvs.getByteArray(), nodeAbvs.getStartOffset(), nodeAbvs.getLength());
+    }
+
+    private void remapNode(NodeTreePointable ntp, int start, int length) {
+        byte[] bytes = nodeAbvs.getByteArray();
+        tvp.set(bytes, start, length);
+        switch (tvp.getTag()) {
+            case ValueTag.ATTRIBUTE_NODE_TAG:
+                tvp.getValue(anp);
+                anp.getName(cqp);
+                remapName(ntp, cqp.getStartOffset());
+                anp.getTypeName(ntp, cqp);
+                remapName(ntp, cqp.getStartOffset());
+                break;
+
+            case ValueTag.DOCUMENT_NODE_TAG:
+                tvp.getValue(dnp);
+                dnp.getContent(ntp, seqp);
+                remapSequence(ntp, seqp.getStartOffset(), seqp.getLength());
+                break;
+
+            case ValueTag.ELEMENT_NODE_TAG:
+                tvp.getValue(enp);
+                enp.getName(cqp);
+                remapName(ntp, cqp.getStartOffset());
+                enp.getTypeName(ntp, cqp);
+                remapName(ntp, cqp.getStartOffset());
+                enp.getNamespaceChunk(ntp, vp);
+                if (vp.getLength() > 0) {
+                    int nsCount = IntegerPointable.getInteger(bytes, vp.getStartOffset());
+                    for (int i = 0; i < nsCount; ++i) {
+                        int entryOffset = vp.getStartOffset() + NS_COUNT_SIZE + i * NS_ENTRY_SIZE;
+                        remapCode(ntp, entryOffset);
+                        remapCode(ntp, entryOffset + CODE_SIZE);
+                    }
+                }
+                // The pointables are reused by the nested nodes.
+                enp.getChildrenSequence(ntp, seqp);
+                int childrenStart = seqp.getStartOffset();
+                int childrenLength = seqp.getLength();
+                enp.getAttributeSequence(ntp, seqp);
+                remapSequence(ntp, seqp.getStartOffset(), seqp.getLength());
+                remapSequence(ntp, childrenStart, childrenLength);
+                break;
+        }
+    }
+
+    private void remapSequence(NodeTreePointable ntp, int start, int length) {
+        if (length <= 0) {
+            return;
+        }
+        seqp.set(nodeAbvs.getByteArray(), start, length);
+        int entryCount = seqp.getEntryCount();
+        for (int i = 0; i < entryCount; ++i) {
+            seqp.set(nodeAbvs.getByteArray(), start, length);
+            seqp.getEntry(i, tvp);
+            remapNode(ntp, tvp.getStartOffset(), tvp.getLength());
+        }
+    }
+
+    private void remapName(NodeTreePointable ntp, int offset) {
+        if (offset < 0) {
+            return;
+        }
+        for (int i = 0; i < CodedQNamePointable.SIZE; i += CODE_SIZE) {
+            remapCode(ntp, offset + i);
+        }
+    }
+
+    private void remapCode(NodeTreePointable ntp, int offset) {
+        byte[] bytes = nodeAbvs.getByteArray();
+        int code = IntegerPointable.getInteger(bytes, offset);
+        if (code < 0 || code >= ntp.getDictionaryEntryCount()) {
+            return;
+        }
+        if (codeMap[code] < 0) {
+            ntp.getString(code, utf8sp);
+            codeMap[code] = db.lookup(utf8sp);
+        }
+        IntegerPointable.setInteger(bytes, offset, codeMap[code]);
+    }
+
     private boolean hasDictionary(byte tag) {
         switch (tag) {
             case ValueTag.ATTRIBUTE_NODE_TAG:
@@ -60,6 +211,4 @@ public class NodeSubTreeBuilder extends AbstractNodeBuilder {
         }
         return false;
     }
-
-
 }
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.datamodel.util;
+
+import org.apache.hyracks.data.std.primitive.IntegerPointable;
+import org.apache.hyracks.util.string.UTF8StringUtil;
+import org.apache.vxquery.datamodel.values.ValueTag;
+
+/**
+ * MurmurHash3 of the typed value of a tagged value. Values that {@link TaggedValueOrder} compares as equal hash
+ * equally: numbers are hashed as their double value, strings, untyped atomic values and URIs as their characters,
+ * dates and times as their instant, durations as their months and milliseconds and QNames as their URI and local
+ * name. The same holds for {@link TaggedValueOrder#equal} unless an xs:float is involved; hashing numbers with float
+ * precision covers that case too.
+ */
+public final class TaggedValueHash {
+    private static final int C1 = 0xcc9e2d51;
+    private static final int C2 = 0x1b873593;
+
+    private TaggedValueHash() {
+    }
+
+    public static int hash(byte[] bytes, int start, int length, int seed) {
+        return hash(bytes, start, length, seed, false);
+    }
+
+    public static int hash(byte[] bytes, int start, int length, int seed, boolean floatPrecision) {
+        if (bytes[start] == ValueTag.SEQUENCE_TAG && IntegerPointable.getInteger(bytes, start + 1) == 1) {
+            // A single item sequence equals its item.
+            int itemStart = start + 1 + 4 + 4;
+            return hash(bytes, itemStart, IntegerPointable.getInteger(bytes, start + 1 + 4), seed, floatPrecision);
+        }
+        int orderClass = TaggedValueOrder.getOrderClass(bytes, start);
+        int h = mix(seed, orderClass);
+        int bytesLength;
+        switch (orderClass) {
+            case TaggedValueOrder.NUMERIC:
+                if (floatPrecision) {
+                    h = mix(h, Float.floatToIntBits(TaggedValueOrder.getFloat(bytes, start, length)));
+                    bytesLength = 4;
+                } else {
+                    h = mix(h, Double.doubleToLongBits(TaggedValueOrder.getDouble(bytes, start, length)));
+                    bytesLength = 8;
+                }
+                break;
+            case TaggedValueOrder.BOOLEAN:
+                h = mix(h, bytes[start + 1]);
+                bytesLength = 1;
+                break;
+            case TaggedValueOrder.STRING:
+                int utfLength = UTF8StringUtil.getUTFLength(bytes, start + 1);
+                int charStart = start + 1 + UTF8StringUtil.getNumBytesToStoreLength(utfLength);
+                h = mix(h, bytes, charStart, utfLength);
+                bytesLength = utfLength;
+                break;
+            case TaggedValueOrder.DATE:
+            case TaggedValueOrder.DATETIME:
+            case TaggedValueOrder.TIME:
+                h = mix(h, TaggedValueOrder.getInstant(bytes, start));
+                bytesLength = 8;
+                break;
+            case TaggedValueOrder.OTHER:
+                int tag = TaggedValueOrder.getOtherTag(bytes[start]);
+                if (tag == ValueTag.XS_DURATION_TAG) {
+                    h = mix(mix(h, TaggedValueOrder.getDurationMonths(bytes, start)),
+                            TaggedValueOrder.getDurationMillis(bytes, start));
+                    bytesLength = 12;
+                } else if (tag == ValueTag.XS_QNAME_TAG) {
+                    int uriLength = UTF8StringUtil.getUTFLength(bytes, start + 1);
+                    h = mix(h, bytes, start + 1 + UTF8StringUtil.getNumBytesToStoreLength(uriLength), uriLength);
+                    int localNameStart = TaggedValueOrder.getLocalNameStart(bytes, start);
+                    int localNameLength = UTF8StringUtil.getUTFLength(bytes, localNameStart);
+                    h = mix(h, bytes, localNameStart + UTF8StringUtil.getNumBytesToStoreLength(localNameLength),
+                            localNameLength);
+                    bytesLength = uriLength + localNameLength;
+                } else {
+                    h = mix(h, bytes, start, length);
+                    bytesLength = length;
+                }
+                break;
+            default:
+                bytesLength = 0;
+        }
+        return finish(h, bytesLength);
+    }
+
+    private static int mix(int h, long value) {
+        return mix(mix(h, (int) value), (int) (value >>> 32));
+    }
+
+    private static int mix(int h, byte[] bytes, int start, int length) {
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            h = mix(h, IntegerPointable.getInteger(bytes, start + i));
+        }
+        int tail = 0;
+        for (; i < length; ++i) {
+            tail = (tail << 8) | (bytes[start + i] & 0xff);
+        }
+        return mix(h, tail);
+    }
+
+    private static int mix(int h, int k) {
+        k *= C1;
+        k = Integer.rotateLeft(k, 15);
+        k *= C2;
+        h ^= k;
+        h = Integer.rotateLeft(h, 13);
+        return h * 5 + 0xe6546b64;
+    }
+
+    private static int finish(int h, int length) {
+        h ^= length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,521 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.datamodel.util;
+
+import java.math.BigDecimal;
+
+import org.apache.hyracks.data.std.primitive.BytePointable;
+import org.apache.hyracks.data.std.primitive.DoublePointable;
+import org.apache.hyracks.data.std.primitive.FloatPointable;
+import org.apache.hyracks.data.std.primitive.IntegerPointable;
+import org.apache.hyracks.data.std.primitive.LongPointable;
+import org.apache.hyracks.data.std.primitive.ShortPointable;
+import org.apache.hyracks.util.string.UTF8StringUtil;
+import org.apache.vxquery.datamodel.accessors.atomic.XSDatePointable;
+import org.apache.vxquery.datamodel.accessors.atomic.XSDateTimePointable;
+import org.apache.vxquery.datamodel.accessors.atomic.XSDecimalPointable;
+import org.apache.vxquery.datamodel.accessors.atomic.XSDurationPointable;
+import org.apache.vxquery.datamodel.accessors.atomic.XSQNamePointable;
+import org.apache.vxquery.datamodel.accessors.atomic.XSTimePointable;
+import org.apache.vxquery.datamodel.values.ValueTag;
+
+/**
+ * Total order of tagged values used to sort tuples (order by keys and sort based operators).
+ * Values are ordered by their class first: empty sequence, NaN, numeric, boolean, string, date, dateTime, time and
+ * all other values. Within a class the values are compared by value: numbers by their exact value, dates and times
+ * without a timezone as UTC, durations by months and milliseconds and QNames by URI and local name. Single item
+ * sequences are compared as their item.
+ * The order is total, so numbers of different types are not promoted as in a value comparison; {@link #equal} applies
+ * the promotion.
+ * The normalized key of a value is a 32 bit unsigned prefix of this order: the class followed by the most significant
+ * bits of the value.
+ */
+public final class TaggedValueOrder {
+    public static final int EMPTY = 0;
+    public static final int NAN = 1;
+    public static final int NUMERIC = 2;
+    public static final int BOOLEAN = 3;
+    public static final int STRING = 4;
+    public static final int DATE = 5;
+    public static final int DATETIME = 6;
+    public static final int TIME = 7;
+    public static final int OTHER = 8;
+
+    private static final int CLASS_BITS = 4;
+    private static final int VALUE_BITS = 32 - CLASS_BITS;
+    private static final long VALUE_MASK = (1L << VALUE_BITS) - 1;
+    // Milliseconds are reduced to steps of about 70 minutes, which keeps +/- 17000 years in the normalized key.
+    private static final int INSTANT_SHIFT = 22;
+    private static final int SEQUENCE_HEADER = 1 + 4;
+    // The powers of ten that are exact doubles.
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+            1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+    private static final long EXACT_DOUBLE_LIMIT = 1L << 53;
+
+    private TaggedValueOrder() {
+    }
+
+    /**
+     * @return negative, zero or positive if the first value orders before, with or after the second value.
+     */
+    public static int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        if (b1[s1] == ValueTag.SEQUENCE_TAG && getSequenceSize(b1, s1) == 1) {
+            int start = getItemStart(b1, s1);
+            return compare(b1, start, getItemLength(b1, s1), b2, s2, l2);
+        }
+        if (b2[s2] == ValueTag.SEQUENCE_TAG && getSequenceSize(b2, s2) == 1) {
+            int start = getItemStart(b2, s2);
+            return compare(b1, s1, l1, b2, start, getItemLength(b2, s2));
+        }
+        int c1 = getOrderClass(b1, s1);
+        int c2 = getOrderClass(b2, s2);
+        if (c1 != c2) {
+            return c1 < c2 ? -1 : 1;
+        }
+        switch (c1) {
+            case EMPTY:
+            case NAN:
+                return 0;
+            case NUMERIC:
+                return compareNumbers(b1, s1, l1, b2, s2, l2);
+            case BOOLEAN:
+                return b1[s1 + 1] - b2[s2 + 1];
+            case STRING:
+                return compareStrings(b1, s1 + 1, b2, s2 + 1);
+            case DATE:
+            case DATETIME:
+            case TIME:
+                return Long.compare(getInstant(b1, s1), getInstant(b2, s2));
+            default:
+                return compareOther(b1, s1, l1, b2, s2, l2);
+        }
+    }
+
+    /**
+     * Value equality of XQuery: a number is promoted to the type of the other number, so 0.1 equals xs:float(0.1) and
+     * xs:double(9007199254740993) equals 9007199254740992 while the two integers differ. NaN equals NaN as in
+     * fn:distinct-values. The promotion makes the equality intransitive, use {@link #compare} to sort.
+     */
+    public static boolean equal(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        if (b1[s1] == ValueTag.SEQUENCE_TAG && getSequenceSize(b1, s1) == 1) {
+            return equal(b1, getItemStart(b1, s1), getItemLength(b1, s1), b2, s2, l2);
+        }
+        if (b2[s2] == ValueTag.SEQUENCE_TAG && getSequenceSize(b2, s2) == 1) {
+            return equal(b1, s1, l1, b2, getItemStart(b2, s2), getItemLength(b2, s2));
+        }
+        int c1 = getOrderClass(b1, s1);
+        if (c1 != getOrderClass(b2, s2)) {
+            return false;
+        }
+        if (c1 == NUMERIC) {
+            if (b1[s1] == ValueTag.XS_DOUBLE_TAG || b2[s2] == ValueTag.XS_DOUBLE_TAG) {
+                return getDouble(b1, s1, l1) == getDouble(b2, s2, l2);
+            }
+            if (b1[s1] == ValueTag.XS_FLOAT_TAG || b2[s2] == ValueTag.XS_FLOAT_TAG) {
+                return getFloat(b1, s1, l1) == getFloat(b2, s2, l2);
+            }
+        }
+        return compare(b1, s1, l1, b2, s2, l2) == 0;
+    }
+
+    /**
+     * @return true if the value is an xs:float, which {@link #equal} compares with float precision.
+     */
+    public static boolean isFloat(byte[] bytes, int start) {
+        if (bytes[start] == ValueTag.SEQUENCE_TAG && getSequenceSize(bytes, start) == 1) {
+            return isFloat(bytes, getItemStart(bytes, start));
+        }
+        return bytes[start] == ValueTag.XS_FLOAT_TAG;
+    }
+
+    private static int compareNumbers(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        boolean binary1 = isBinary(b1[s1]);
+        boolean binary2 = isBinary(b2[s2]);
+        if (!binary1 && !binary2) {
+            return compareDecimals(getUnscaledValue(b1, s1, l1), getScale(b1, s1), getUnscaledValue(b2, s2, l2),
+                    getScale(b2, s2));
+        }
+        double d1 = getDouble(b1, s1, l1);
+        double d2 = getDouble(b2, s2, l2);
+        if (d1 != d2) {
+            return d1 < d2 ? -1 : 1;
+        }
+        if (binary1 && binary2) {
+            return 0;
+        }
+        // The decimal was rounded to the same double, only the exact values tell them apart.
+        return getBigDecimal(b1, s1, l1).compareTo(getBigDecimal(b2, s2, l2));
+    }
+
+    /**
+     * Compare value1 * 10^-place1 and value2 * 10^-place2 without rounding.
+     */
+    private static int compareDecimals(long value1, int place1, long value2, int place2) {
+        if (place1 > place2) {
+            return -compareDecimals(value2, place2, value1, place1);
+        }
+        for (int i = place1; i < place2; ++i) {
+            if (value1 > Long.MAX_VALUE / 10 || value1 < Long.MIN_VALUE / 10) {
+                // Scaled to the places of the second value the first value is beyond any long.
+                return value1 > 0 ? 1 : -1;
+            }
+            value1 *= 10;
+        }
+        return Long.compare(value1, value2);
+    }
+
+    private static int compareOther(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        int tag1 = getOtherTag(b1[s1]);
+        int tag2 = getOtherTag(b2[s2]);
+        if (tag1 != tag2) {
+            return tag1 - tag2;
+        }
+        switch (tag1) {
+            case ValueTag.XS_DURATION_TAG:
+                int c = Integer.compare(getDurationMonths(b1, s1), getDurationMonths(b2, s2));
+                return c != 0 ? c : Long.compare(getDurationMillis(b1, s1), getDurationMillis(b2, s2));
+            case ValueTag.XS_QNAME_TAG:
+                c = compareStrings(b1, s1 + 1, b2, s2 + 1);
+                return c != 0 ? c : compareStrings(b1, getLocalNameStart(b1, s1), b2, getLocalNameStart(b2, s2));
+            default:
+                for (int i = 1; i < l1 && i < l2; ++i) {
+                    if (b1[s1 + i] != b2[s2 + i]) {
+                        return (b1[s1 + i] & 0xff) - (b2[s2 + i] & 0xff);
+                    }
+                }
+                return l1 - l2;
+        }
+    }
+
+    /**
+     * @return a key whose unsigned order never contradicts {@link #compare}.
+     */
+    public static int normalize(byte[] bytes, int start, int length) {
+        if (bytes[start] == ValueTag.SEQUENCE_TAG && getSequenceSize(bytes, start) == 1) {
+            return normalize(bytes, getItemStart(bytes, start), getItemLength(bytes, start));
+        }
+        int orderClass = getOrderClass(bytes, start);
+        long value;
+        switch (orderClass) {
+            case NUMERIC:
+                long bits = Double.doubleToLongBits(getDouble(bytes, start, length));
+                value = (bits ^ ((bits >> 63) | Long.MIN_VALUE)) >>> (64 - VALUE_BITS);
+                break;
+            case BOOLEAN:
+                value = bytes[start + 1];
+                break;
+            case STRING:
+                value = normalizeString(bytes, start + 1);
+                break;
+            case DATE:
+            case DATETIME:
+            case TIME:
+                value = (getInstant(bytes, start) >> INSTANT_SHIFT) + (1L << (VALUE_BITS - 1));
+                value = Math.max(0, Math.min(VALUE_MASK, value));
+                break;
+            case OTHER:
+                value = (long) getOtherTag(bytes[start]) << (VALUE_BITS - 8);
+                break;
+            default:
+                value = 0;
+        }
+        return (orderClass << VALUE_BITS) | (int) value;
+    }
+
+    public static int getOrderClass(byte[] bytes, int start) {
+        int tag = bytes[start];
+        switch (tag) {
+            case ValueTag.SEQUENCE_TAG:
+                return getSequenceSize(bytes, start) == 0 ? EMPTY : OTHER;
+            case ValueTag.XS_DOUBLE_TAG:
+                return Double.isNaN(DoublePointable.getDouble(bytes, start + 1)) ? NAN : NUMERIC;
+            case ValueTag.XS_FLOAT_TAG:
+                return Float.isNaN(FloatPointable.getFloat(bytes, start + 1)) ? NAN : NUMERIC;
+            case ValueTag.XS_DECIMAL_TAG:
+                return NUMERIC;
+            case ValueTag.XS_BOOLEAN_TAG:
+                return BOOLEAN;
+            case ValueTag.XS_STRING_TAG:
+            case ValueTag.XS_UNTYPED_ATOMIC_TAG:
+            case ValueTag.XS_ANY_URI_TAG:
+                return STRING;
+            case ValueTag.XS_DATE_TAG:
+                return DATE;
+            case ValueTag.XS_DATETIME_TAG:
+                return DATETIME;
+            case ValueTag.XS_TIME_TAG:
+                return TIME;
+            default:
+                if (isInteger(tag)) {
+                    return NUMERIC;
+                }
+                // The types derived from xs:string.
+                if (tag >= ValueTag.XS_NORMALIZED_STRING_TAG && tag <= ValueTag.XS_ENTITY_TAG) {
+                    return STRING;
+                }
+                return OTHER;
+        }
+    }
+
+    public static boolean isInteger(int tag) {
+        switch (tag) {
+            case ValueTag.XS_INTEGER_TAG:
+            case ValueTag.XS_LONG_TAG:
+            case ValueTag.XS_NEGATIVE_INTEGER_TAG:
+            case ValueTag.XS_NON_POSITIVE_INTEGER_TAG:
+            case ValueTag.XS_NON_NEGATIVE_INTEGER_TAG:
+            case ValueTag.XS_POSITIVE_INTEGER_TAG:
+            case ValueTag.XS_UNSIGNED_INT_TAG:
+            case ValueTag.XS_UNSIGNED_LONG_TAG:
+            case ValueTag.XS_INT_TAG:
+            case ValueTag.XS_UNSIGNED_SHORT_TAG:
+            case ValueTag.XS_SHORT_TAG:
+            case ValueTag.XS_UNSIGNED_BYTE_TAG:
+            case ValueTag.XS_BYTE_TAG:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Read an integer value of any width following its tag.
+     */
+    public static long getLong(byte[] bytes, int start, int length) {
+        switch (length - 1) {
+            case 1:
+                return BytePointable.getByte(bytes, start + 1);
+            case 2:
+                return ShortPointable.getShort(bytes, start + 1);
+            case 4:
+                return IntegerPointable.getInteger(bytes, start + 1);
+            default:
+                return LongPointable.getLong(bytes, start + 1);
+        }
+    }
+
+    /**
+     * Read a numeric value as the nearest double. Negative zero is read as zero.
+     */
+    public static double getDouble(byte[] bytes, int start, int length) {
+        double d;
+        switch (bytes[start]) {
+            case ValueTag.XS_DOUBLE_TAG:
+                d = DoublePointable.getDouble(bytes, start + 1);
+                break;
+            case ValueTag.XS_FLOAT_TAG:
+                d = FloatPointable.getFloat(bytes, start + 1);
+                break;
+            case ValueTag.XS_DECIMAL_TAG:
+                d = getDouble(XSDecimalPointable.getDecimalValue(bytes, start + 1),
+                        XSDecimalPointable.getDecimalPlace(bytes, start + 1));
+                break;
+            default:
+                d = getLong(bytes, start, length);
+        }
+        return d == 0 ? 0 : d;
+    }
+
+    /**
+     * Read a numeric value as a float the way {@link #equal} promotes it.
+     */
+    public static float getFloat(byte[] bytes, int start, int length) {
+        return (float) getDouble(bytes, start, length);
+    }
+
+    /**
+     * @return the months of any duration.
+     */
+    public static int getDurationMonths(byte[] bytes, int start) {
+        switch (bytes[start]) {
+            case ValueTag.XS_DURATION_TAG:
+                return XSDurationPointable.getYearMonth(bytes, start + 1);
+            case ValueTag.XS_YEAR_MONTH_DURATION_TAG:
+                return IntegerPointable.getInteger(bytes, start + 1);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return the milliseconds of any duration.
+     */
+    public static long getDurationMillis(byte[] bytes, int start) {
+        switch (bytes[start]) {
+            case ValueTag.XS_DURATION_TAG:
+                return XSDurationPointable.getDayTime(bytes, start + 1);
+            case ValueTag.XS_DAY_TIME_DURATION_TAG:
+                return LongPointable.getLong(bytes, start + 1);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return the start of the local name of a QName following its tag.
+     */
+    public static int getLocalNameStart(byte[] bytes, int start) {
+        int s = start + 1;
+        return s + XSQNamePointable.getUriLength(bytes, s) + XSQNamePointable.getPrefixLength(bytes, s);
+    }
+
+    /**
+     * @return the tag that orders values of the other class; all durations share one tag.
+     */
+    public static int getOtherTag(int tag) {
+        switch (tag) {
+            case ValueTag.XS_YEAR_MONTH_DURATION_TAG:
+            case ValueTag.XS_DAY_TIME_DURATION_TAG:
+                return ValueTag.XS_DURATION_TAG;
+            default:
+                return tag & 0xff;
+        }
+    }
+
+    private static boolean isBinary(int tag) {
+        return tag == ValueTag.XS_DOUBLE_TAG || tag == ValueTag.XS_FLOAT_TAG;
+    }
+
+    private static long getUnscaledValue(byte[] bytes, int start, int length) {
+        if (bytes[start] == ValueTag.XS_DECIMAL_TAG) {
+            return XSDecimalPointable.getDecimalValue(bytes, start + 1);
+        }
+        return getLong(bytes, start, length);
+    }
+
+    private static int getScale(byte[] bytes, int start) {
+        return bytes[start] == ValueTag.XS_DECIMAL_TAG ? XSDecimalPointable.getDecimalPlace(bytes, start + 1) : 0;
+    }
+
+    private static BigDecimal getBigDecimal(byte[] bytes, int start, int length) {
+        if (isBinary(bytes[start])) {
+            return new BigDecimal(getDouble(bytes, start, length));
+        }
+        return BigDecimal.valueOf(getUnscaledValue(bytes, start, length), getScale(bytes, start));
+    }
+
+    /**
+     * @return the double nearest to value * 10^-place.
+     */
+    private static double getDouble(long value, int place) {
+        if (value > -EXACT_DOUBLE_LIMIT && value < EXACT_DOUBLE_LIMIT && place >= -22 && place <= 22) {
+            // Both operands are exact doubles, so the one operation rounds correctly.
+            return place >= 0 ? value / POWERS_OF_TEN[place] : value * POWERS_OF_TEN[-place];
+        }
+        return BigDecimal.valueOf(value, place).doubleValue();
+    }
+
+    /**
+     * @return the milliseconds since 1970-01-01T00:00:00Z of a date, dateTime or the time on that day.
+     */
+    public static long getInstant(byte[] bytes, int start) {
+        int s = start + 1;
+        long days = 0;
+        long millis;
+        long timezoneHour;
+        long timezoneMinute;
+        switch (bytes[start]) {
+            case ValueTag.XS_DATE_TAG:
+                days = getDays(XSDatePointable.getYear(bytes, s), XSDatePointable.getMonth(bytes, s),
+                        XSDatePointable.getDay(bytes, s));
+                millis = 0;
+                timezoneHour = XSDatePointable.getTimezoneHour(bytes, s);
+                timezoneMinute = XSDatePointable.getTimezoneMinute(bytes, s);
+                break;
+            case ValueTag.XS_DATETIME_TAG:
+                days = getDays(XSDateTimePointable.getYear(bytes, s), XSDateTimePointable.getMonth(bytes, s),
+                        XSDateTimePointable.getDay(bytes, s));
+                millis = XSDateTimePointable.getHour(bytes, s) * DateTime.CHRONON_OF_HOUR
+                        + XSDateTimePointable.getMinute(bytes, s) * DateTime.CHRONON_OF_MINUTE
+                        + XSDateTimePointable.getMilliSecond(bytes, s);
+                timezoneHour = XSDateTimePointable.getTimezoneHour(bytes, s);
+                timezoneMinute = XSDateTimePointable.getTimezoneMinute(bytes, s);
+                break;
+            default:
+                millis = XSTimePointable.getHour(bytes, s) * DateTime.CHRONON_OF_HOUR
+                        + XSTimePointable.getMinute(bytes, s) * DateTime.CHRONON_OF_MINUTE
+                        + XSTimePointable.getMilliSecond(bytes, s);
+                timezoneHour = XSTimePointable.getTimezoneHour(bytes, s);
+                timezoneMinute = XSTimePointable.getTimezoneMinute(bytes, s);
+        }
+        if (timezoneHour != DateTime.TIMEZONE_HOUR_NULL && timezoneMinute != DateTime.TIMEZONE_MINUTE_NULL) {
+            millis -= timezoneHour * DateTime.CHRONON_OF_HOUR + timezoneMinute * DateTime.CHRONON_OF_MINUTE;
+        }
+        return days * DateTime.CHRONON_OF_DAY + millis;
+    }
+
+    /**
+     * @return the days since 1970-01-01 of a date in the proleptic Gregorian calendar.
+     */
+    private static long getDays(long year, long month, long day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int compareStrings(byte[] b1, int s1, byte[] b2, int s2) {
+        int utfLength1 = UTF8StringUtil.getUTFLength(b1, s1);
+        int utfLength2 = UTF8StringUtil.getUTFLength(b2, s2);
+        int c1 = s1 + UTF8StringUtil.getNumBytesToStoreLength(utfLength1);
+        int c2 = s2 + UTF8StringUtil.getNumBytesToStoreLength(utfLength2);
+        int end1 = c1 + utfLength1;
+        int end2 = c2 + utfLength2;
+        while (c1 < end1 && c2 < end2) {
+            char ch1 = UTF8StringUtil.charAt(b1, c1);
+            char ch2 = UTF8StringUtil.charAt(b2, c2);
+            if (ch1 != ch2) {
+                return ch1 - ch2;
+            }
+            c1 += UTF8StringUtil.charSize(b1, c1);
+            c2 += UTF8StringUtil.charSize(b2, c2);
+        }
+        return (end1 - c1) - (end2 - c2);
+    }
+
+    /**
+     * @return the first character and the high bits of the second character of a string.
+     */
+    private static long normalizeString(byte[] bytes, int start) {
+        int utfLength = UTF8StringUtil.getUTFLength(bytes, start);
+        int c = start + UTF8StringUtil.getNumBytesToStoreLength(utfLength);
+        int end = c + utfLength;
+        long value = 0;
+        for (int i = 0; i < 2; ++i) {
+            value <<= 16;
+            if (c < end) {
+                value |= UTF8StringUtil.charAt(bytes, c);
+                c += UTF8StringUtil.charSize(bytes, c);
+            }
+        }
+        return value >>> (32 - VALUE_BITS);
+    }
+
+    private static int getSequenceSize(byte[] bytes, int start) {
+        return IntegerPointable.getInteger(bytes, start + 1);
+    }
+
+    private static int getItemStart(byte[] bytes, int start) {
+        return start + SEQUENCE_HEADER + 4;
+    }
+
+    private static int getItemLength(byte[] bytes, int start) {
+        return IntegerPointable.getInteger(bytes, start + SEQUENCE_HEADER);
+    }
+}
@@ -35,6 +35,7 @@ import org.apache.hyracks.data.std.primitive.VoidPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.vxquery.datamodel.accessors.PointablePool;
@@ -114,6 +115,8 @@ public class IndexDocumentBuilder extends XMLSerializer {
     public void printStart() throws IOException {
 
         doc.add(new StringField(Constants.FIELD_PATH, filePath, Field.Store.YES));
+        // The node tree is stored as well, so reading a hit does not need to rebuild it from the items.
+        doc.add(new StoredField(Constants.FIELD_TREE, bstart, sstart, lstart));
         print(bstart, sstart, lstart, "0", "");
         for (int i = 1; i < results.size() - 1; i++) {
             //TODO: Since each doc is a file,
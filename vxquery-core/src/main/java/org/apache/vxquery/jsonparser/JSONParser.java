@@ -16,18 +16,25 @@ package org.apache.vxquery.jsonparser;
 
 import java.io.DataOutput;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import org.apache.hyracks.api.comm.IFrameFieldAppender;
+import org.apache.hyracks.api.comm.IFrameWriter;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.hyracks.dataflow.common.comm.util.FrameUtils;
 import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
 import org.apache.vxquery.datamodel.builders.jsonitem.ArrayBuilder;
 import org.apache.vxquery.datamodel.builders.jsonitem.ObjectBuilder;
 import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
 import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.ErrorCode;
+import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.xmlparser.IParser;
 
 import com.fasterxml.jackson.core.JsonFactory;
@@ -49,6 +56,12 @@ public class JSONParser implements IParser {
     protected itemType checkItem;
     protected int levelArray, levelObject;
 
+    // Streaming scan variables
+    protected final IFrameFieldAppender appender;
+    protected final List<String> valueSeq;
+    protected final ArrayBackedValueStorage itemAbvs;
+    private IFrameWriter writer;
+
     enum itemType {
         ARRAY,
         OBJECT
@@ -57,6 +70,19 @@ public class JSONParser implements IParser {
     protected final List<itemType> itemStack;
 
     public JSONParser() {
+        this(null, Collections.<String> emptyList());
+    }
+
+    /**
+     * Creates a parser for the collection scan. Every item selected by the value steps is written to the frame as a
+     * separate tuple. A step is either an object key or null for the keys-or-members of an array or object.
+     *
+     * @param appender
+     *            Frame appender used to write the selected items
+     * @param valueSeq
+     *            Value steps pushed into the data scan
+     */
+    public JSONParser(IFrameFieldAppender appender, List<String> valueSeq) {
         factory = new JsonFactory();
         atomic = new ArrayBackedValueStorage();
         abStack = new ArrayList<ArrayBuilder>();
@@ -69,118 +95,277 @@ public class JSONParser implements IParser {
         sb = new SequenceBuilder();
         abvsStack.add(atomic);
         out = abvsStack.get(abvsStack.size() - 1).getDataOutput();
-
+        this.appender = appender;
+        this.valueSeq = valueSeq;
+        itemAbvs = new ArrayBackedValueStorage();
     }
 
     public int parse(Reader input, ArrayBackedValueStorage result) throws HyracksDataException {
+        try {
+            return parse(factory.createParser(input), result);
+        } catch (IOException e) {
+            throw new HyracksDataException(e.toString());
+        }
+    }
+
+    public int parse(InputStream input, ArrayBackedValueStorage result) throws HyracksDataException {
+        try {
+            return parse(factory.createParser(input), result);
+        } catch (IOException e) {
+            throw new HyracksDataException(e.toString());
+        }
+    }
+
+    private int parse(JsonParser parser, ArrayBackedValueStorage result) throws HyracksDataException {
         int items = 0;
         try {
-            DataOutput outResult = result.getDataOutput();
-            JsonParser parser = factory.createParser(input);
             JsonToken token = parser.nextToken();
             checkItem = null;
 
             levelArray = 0;
             levelObject = 0;
+            itemStack.clear();
             sb.reset(result);
             while (token != null) {
-                if (itemStack.size() > 1) {
-                    checkItem = itemStack.get(itemStack.size() - 2);
-                }
-                switch (token) {
-                    case START_ARRAY:
-                        levelArray++;
-                        if (levelArray > abStack.size()) {
-                            abStack.add(new ArrayBuilder());
-                        }
-                        if (levelArray + levelObject > abvsStack.size() - 1) {
-                            abvsStack.add(new ArrayBackedValueStorage());
-                        }
-                        itemStack.add(itemType.ARRAY);
-                        abvsStack.get(levelArray + levelObject).reset();
-                        abStack.get(levelArray - 1).reset(abvsStack.get(levelArray + levelObject));
-                        break;
-                    case START_OBJECT:
-                        levelObject++;
-                        if (levelObject > obStack.size()) {
-                            obStack.add(new ObjectBuilder());
-                        }
-                        if (levelArray + levelObject > abvsStack.size() - 1) {
-                            abvsStack.add(new ArrayBackedValueStorage());
-                        }
-                        itemStack.add(itemType.OBJECT);
-                        abvsStack.get(levelArray + levelObject).reset();
-                        obStack.get(levelObject - 1).reset(abvsStack.get(levelArray + levelObject));
-                        break;
-                    case FIELD_NAME:
-                        if (levelObject > spStack.size()) {
-                            keyStack.add(new ArrayBackedValueStorage());
-                            spStack.add(new UTF8StringPointable());
-                        }
-                        keyStack.get(levelObject - 1).reset();
-                        DataOutput outk = keyStack.get(levelObject - 1).getDataOutput();
-                        svb.write(parser.getText(), outk);
-                        spStack.get(levelObject - 1).set(keyStack.get(levelObject - 1));
-                        break;
-                    case VALUE_NUMBER_INT:
-                        atomicValues(ValueTag.XS_INTEGER_TAG, parser, out, svb, levelArray, levelObject);
-                        break;
-                    case VALUE_STRING:
-                        atomicValues(ValueTag.XS_STRING_TAG, parser, out, svb, levelArray, levelObject);
-                        break;
-                    case VALUE_NUMBER_FLOAT:
-                        atomicValues(ValueTag.XS_DOUBLE_TAG, parser, out, svb, levelArray, levelObject);
-                        break;
-                    case END_ARRAY:
-                        abStack.get(levelArray - 1).finish();
-                        if (itemStack.size() > 1) {
-                            if (checkItem == itemType.ARRAY) {
-                                abStack.get(levelArray - 2).addItem(abvsStack.get(levelArray + levelObject));
-                            } else if (checkItem == itemType.OBJECT) {
-                                obStack.get(levelObject - 1).addItem(spStack.get(levelObject - 1),
-                                        abvsStack.get(levelArray + levelObject));
-                            }
-                        }
-                        itemStack.remove(itemStack.size() - 1);
-                        levelArray--;
-                        if (levelArray + levelObject == 0) {
-                            sb.addItem(abvsStack.get(1));
-                            items++;
-                        }
-                        break;
-                    case END_OBJECT:
-                        obStack.get(levelObject - 1).finish();
-                        if (itemStack.size() > 1) {
-                            if (checkItem == itemType.OBJECT) {
-                                obStack.get(levelObject - 2).addItem(spStack.get(levelObject - 2),
-                                        abvsStack.get(levelArray + levelObject));
-                            } else if (checkItem == itemType.ARRAY) {
-                                abStack.get(levelArray - 1).addItem(abvsStack.get(levelArray + levelObject));
-                            }
-                        }
-                        itemStack.remove(itemStack.size() - 1);
-                        levelObject--;
-                        if (levelObject + levelArray == 0) {
-                            sb.addItem(abvsStack.get(1));
-                            items++;
-                        }
-                        break;
-                    default:
-                        break;
+                if (parseToken(token, parser)) {
+                    sb.addItem(abvsStack.get(1));
+                    items++;
                 }
                 token = parser.nextToken();
             }
             sb.finish();
-            outResult.write(result.getByteArray());
         } catch (Exception e) {
             throw new HyracksDataException(e.toString());
         }
         return items;
     }
 
+    /**
+     * @return true if the scan pushes value steps into the parser.
+     */
+    public boolean hasValueSteps() {
+        return valueSeq != null && !valueSeq.isEmpty();
+    }
+
+    /**
+     * Streams the input and writes each item selected by the value steps as its own tuple. Only the selected items
+     * are built in memory; everything else is skipped by the tokenizer.
+     */
+    public int parseElements(Reader input, IFrameWriter writer, int tupleIndex) throws HyracksDataException {
+        this.writer = writer;
+        int items = 0;
+        try {
+            JsonParser parser = factory.createParser(input);
+            JsonToken token = parser.nextToken();
+            while (token != null) {
+                items += matchValueStep(parser, 0);
+                token = parser.nextToken();
+            }
+            parser.close();
+            input.close();
+        } catch (HyracksDataException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new HyracksDataException(e.toString());
+        }
+        return items;
+    }
+
+    /**
+     * Applies the value step to the value starting at the current token. On return the parser is positioned on the
+     * last token of that value.
+     */
+    private int matchValueStep(JsonParser parser, int step) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (step == valueSeq.size()) {
+            itemAbvs.reset();
+            if (!parseValue(parser, itemAbvs)) {
+                return 0;
+            }
+            writeItem(itemAbvs);
+            return 1;
+        }
+        int items = 0;
+        String key = valueSeq.get(step);
+        if (key != null) {
+            // jdm:value on an object.
+            if (token != JsonToken.START_OBJECT) {
+                throw new SystemException(ErrorCode.FORG0006);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                boolean match = key.equals(parser.getCurrentName());
+                parser.nextToken();
+                if (match) {
+                    items += matchValueStep(parser, step + 1);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } else if (token == JsonToken.START_ARRAY) {
+            // opext:keys-or-members on an array.
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                items += matchValueStep(parser, step + 1);
+            }
+        } else if (token == JsonToken.START_OBJECT) {
+            // opext:keys-or-members on an object.
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                if (step + 1 == valueSeq.size()) {
+                    itemAbvs.reset();
+                    svb.write(parser.getCurrentName(), itemAbvs.getDataOutput());
+                    writeItem(itemAbvs);
+                    items++;
+                } else {
+                    // A key is an atomic value and has no values or members of its own.
+                    throw new SystemException(ErrorCode.FORG0006);
+                }
+                parser.nextToken();
+                parser.skipChildren();
+            }
+        } else {
+            throw new SystemException(ErrorCode.FORG0006);
+        }
+        return items;
+    }
+
+    private void writeItem(ArrayBackedValueStorage abvs) throws HyracksDataException {
+        FrameUtils.appendFieldToWriter(writer, appender, abvs.getByteArray(), abvs.getStartOffset(),
+                abvs.getLength());
+    }
+
+    /**
+     * Builds the single value starting at the current token into the result.
+     *
+     * @return false if the token starts a value that is not supported by the parser (e.g. null or boolean).
+     */
+    private boolean parseValue(JsonParser parser, ArrayBackedValueStorage result) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        switch (token) {
+            case VALUE_NUMBER_INT:
+                writeAtomicValue(ValueTag.XS_INTEGER_TAG, parser, result.getDataOutput(), svb);
+                return true;
+            case VALUE_STRING:
+                writeAtomicValue(ValueTag.XS_STRING_TAG, parser, result.getDataOutput(), svb);
+                return true;
+            case VALUE_NUMBER_FLOAT:
+                writeAtomicValue(ValueTag.XS_DOUBLE_TAG, parser, result.getDataOutput(), svb);
+                return true;
+            case START_ARRAY:
+            case START_OBJECT:
+                break;
+            default:
+                return false;
+        }
+        checkItem = null;
+        levelArray = 0;
+        levelObject = 0;
+        itemStack.clear();
+        while (!parseToken(token, parser)) {
+            token = parser.nextToken();
+        }
+        result.append(abvsStack.get(1));
+        return true;
+    }
+
+    /**
+     * Adds the token to the items under construction.
+     *
+     * @return true when the token completes a top level array or object. The item is then found in abvsStack[1].
+     */
+    private boolean parseToken(JsonToken token, JsonParser parser) throws IOException {
+        if (itemStack.size() > 1) {
+            checkItem = itemStack.get(itemStack.size() - 2);
+        }
+        switch (token) {
+            case START_ARRAY:
+                levelArray++;
+                if (levelArray > abStack.size()) {
+                    abStack.add(new ArrayBuilder());
+                }
+                if (levelArray + levelObject > abvsStack.size() - 1) {
+                    abvsStack.add(new ArrayBackedValueStorage());
+                }
+                itemStack.add(itemType.ARRAY);
+                abvsStack.get(levelArray + levelObject).reset();
+                abStack.get(levelArray - 1).reset(abvsStack.get(levelArray + levelObject));
+                break;
+            case START_OBJECT:
+                levelObject++;
+                if (levelObject > obStack.size()) {
+                    obStack.add(new ObjectBuilder());
+                }
+                if (levelArray + levelObject > abvsStack.size() - 1) {
+                    abvsStack.add(new ArrayBackedValueStorage());
+                }
+                itemStack.add(itemType.OBJECT);
+                abvsStack.get(levelArray + levelObject).reset();
+                obStack.get(levelObject - 1).reset(abvsStack.get(levelArray + levelObject));
+                break;
+            case FIELD_NAME:
+                if (levelObject > spStack.size()) {
+                    keyStack.add(new ArrayBackedValueStorage());
+                    spStack.add(new UTF8StringPointable());
+                }
+                keyStack.get(levelObject - 1).reset();
+                DataOutput outk = keyStack.get(levelObject - 1).getDataOutput();
+                svb.write(parser.getText(), outk);
+                spStack.get(levelObject - 1).set(keyStack.get(levelObject - 1));
+                break;
+            case VALUE_NUMBER_INT:
+                atomicValues(ValueTag.XS_INTEGER_TAG, parser, out, svb, levelArray, levelObject);
+                break;
+            case VALUE_STRING:
+                atomicValues(ValueTag.XS_STRING_TAG, parser, out, svb, levelArray, levelObject);
+                break;
+            case VALUE_NUMBER_FLOAT:
+                atomicValues(ValueTag.XS_DOUBLE_TAG, parser, out, svb, levelArray, levelObject);
+                break;
+            case END_ARRAY:
+                abStack.get(levelArray - 1).finish();
+                if (itemStack.size() > 1) {
+                    if (checkItem == itemType.ARRAY) {
+                        abStack.get(levelArray - 2).addItem(abvsStack.get(levelArray + levelObject));
+                    } else if (checkItem == itemType.OBJECT) {
+                        obStack.get(levelObject - 1).addItem(spStack.get(levelObject - 1),
+                                abvsStack.get(levelArray + levelObject));
+                    }
+                }
+                itemStack.remove(itemStack.size() - 1);
+                levelArray--;
+                return levelArray + levelObject == 0;
+            case END_OBJECT:
+                obStack.get(levelObject - 1).finish();
+                if (itemStack.size() > 1) {
+                    if (checkItem == itemType.OBJECT) {
+                        obStack.get(levelObject - 2).addItem(spStack.get(levelObject - 2),
+                                abvsStack.get(levelArray + levelObject));
+                    } else if (checkItem == itemType.ARRAY) {
+                        abStack.get(levelArray - 1).addItem(abvsStack.get(levelArray + levelObject));
+                    }
+                }
+                itemStack.remove(itemStack.size() - 1);
+                levelObject--;
+                return levelObject + levelArray == 0;
+            default:
+                break;
+        }
+        return false;
+    }
+
     public void atomicValues(int tag, JsonParser parser, DataOutput out, StringValueBuilder svb, int levelArray,
             int levelObject) throws IOException {
         abvsStack.get(0).reset();
+        writeAtomicValue(tag, parser, out, svb);
+        if (itemStack.size() != 0) {
+            if (itemStack.get(itemStack.size() - 1) == itemType.ARRAY) {
+                abStack.get(levelArray - 1).addItem(abvsStack.get(0));
+            } else if (itemStack.get(itemStack.size() - 1) == itemType.OBJECT) {
+                obStack.get(levelObject - 1).addItem(spStack.get(levelObject - 1), abvsStack.get(0));
+            }
+        }
+    }
+
+    private void writeAtomicValue(int tag, JsonParser parser, DataOutput out, StringValueBuilder svb)
+            throws IOException {
         out.write(tag);
         if (tag == ValueTag.XS_DOUBLE_TAG) {
             out.writeDouble(parser.getDoubleValue());
@@ -189,12 +374,5 @@ public class JSONParser implements IParser {
         } else if (tag == ValueTag.XS_INTEGER_TAG) {
             out.writeLong(parser.getLongValue());
         }
-        if (itemStack.size() != 0) {
-            if (itemStack.get(itemStack.size() - 1) == itemType.ARRAY) {
-                abStack.get(levelArray - 1).addItem(abvsStack.get(0));
-            } else if (itemStack.get(itemStack.size() - 1) == itemType.OBJECT) {
-                obStack.get(levelObject - 1).addItem(spStack.get(levelObject - 1), abvsStack.get(0));
-            }
-        }
     }
 }
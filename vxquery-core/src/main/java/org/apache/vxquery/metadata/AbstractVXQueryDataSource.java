@@ -21,6 +21,7 @@ import java.util.List;
 import org.apache.hyracks.algebricks.core.algebra.metadata.IDataSource;
 import org.apache.hyracks.algebricks.core.algebra.metadata.IDataSourcePropertiesProvider;
 import org.apache.hyracks.algebricks.core.algebra.properties.INodeDomain;
+import org.apache.vxquery.xmlparser.ValuePredicate;
 
 public abstract class AbstractVXQueryDataSource implements IDataSource<String> {
     protected static final String DELIMITER = "\\|";
@@ -29,6 +30,9 @@ public abstract class AbstractVXQueryDataSource implements IDataSource<String> {
     protected String[] collectionPartitions;
     protected String elementPath;
     protected List<Integer> childSeq;
+    protected List<String> valueSeq;
+    protected List<ValuePredicate> valuePredicates;
+    protected List<List<Integer>> projections;
     protected int totalDataSources;
     protected String tag;
     protected String function;
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.metadata;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+
+/**
+ * Hands out the files of a collection to the threads that parse them. With static file splits each partition has a
+ * queue for the files of its own directory. With dynamic file splits the partitions of a node share one queue for
+ * the files of all collection directories on the node, so a partition that finishes a small directory continues
+ * with the files of a large one.
+ */
+public class CollectionFileQueue {
+    public static final String FILE_SPLITS_PROPERTY = "vxquery.file_splits";
+    public static final String STATIC_SPLITS = "static";
+    public static final String DYNAMIC_SPLITS = "dynamic";
+
+    private static final Map<String, SharedQueues> SHARED_QUEUES = new HashMap<>();
+
+    private final List<File> files;
+    private final AtomicInteger nextFile = new AtomicInteger();
+    private int pendingUsers;
+
+    public CollectionFileQueue(List<File> files) {
+        this.files = files;
+    }
+
+    /**
+     * @return true if the vxquery.file_splits system property asks for dynamic file splits.
+     */
+    public static boolean useDynamicSplits() {
+        return DYNAMIC_SPLITS.equals(System.getProperty(FILE_SPLITS_PROPERTY, STATIC_SPLITS));
+    }
+
+    /**
+     * Get the queue shared by the partitions of a node. The first partition lists the files, the queue is forgotten
+     * once all partitions got it.
+     *
+     * @param jobKey
+     *            the same key for all partitions of one scan operator of a job on one node
+     * @param scan
+     *            the number of the scan in the partition, one for each input tuple
+     * @param users
+     *            the number of partitions that share the queue
+     * @param directories
+     *            the collection directories on the node
+     * @return the shared queue
+     */
+    public static CollectionFileQueue getSharedQueue(String jobKey, int scan, int users, List<File> directories) {
+        synchronized (SHARED_QUEUES) {
+            SharedQueues jobQueues = SHARED_QUEUES.get(jobKey);
+            if (jobQueues == null) {
+                jobQueues = new SharedQueues();
+                SHARED_QUEUES.put(jobKey, jobQueues);
+            }
+            CollectionFileQueue queue = jobQueues.queues.get(scan);
+            if (queue == null) {
+                queue = new CollectionFileQueue(listFilesBySize(directories));
+                queue.pendingUsers = users;
+                jobQueues.queues.put(scan, queue);
+            }
+            if (--queue.pendingUsers <= 0) {
+                jobQueues.queues.remove(scan);
+            }
+            return queue;
+        }
+    }
+
+    /**
+     * Called by each partition when it closes. The queues of the job are forgotten once all partitions closed, even
+     * if some of them never asked for a queue.
+     *
+     * @param jobKey
+     *            the key passed to {@link #getSharedQueue}
+     * @param users
+     *            the number of partitions that share the queues
+     */
+    public static void closeSharedQueues(String jobKey, int users) {
+        synchronized (SHARED_QUEUES) {
+            SharedQueues jobQueues = SHARED_QUEUES.get(jobKey);
+            if (jobQueues == null) {
+                jobQueues = new SharedQueues();
+                SHARED_QUEUES.put(jobKey, jobQueues);
+            }
+            if (++jobQueues.closedUsers >= users) {
+                SHARED_QUEUES.remove(jobKey);
+            }
+        }
+    }
+
+    /**
+     * Called by a partition when the job fails. The queues of the job are forgotten right away.
+     *
+     * @param jobKey
+     *            the key passed to {@link #getSharedQueue}
+     */
+    public static void failSharedQueues(String jobKey) {
+        synchronized (SHARED_QUEUES) {
+            SHARED_QUEUES.remove(jobKey);
+        }
+    }
+
+    /**
+     * @return the number of jobs that have shared queues on this node
+     */
+    static int getSharedJobCount() {
+        synchronized (SHARED_QUEUES) {
+            return SHARED_QUEUES.size();
+        }
+    }
+
+    /**
+     * List the files of the directories with the largest files first, so the files handed out last are small and
+     * the partitions finish at about the same time.
+     */
+    private static List<File> listFilesBySize(List<File> directories) {
+        List<File> files = new ArrayList<>();
+        for (File directory : directories) {
+            files.addAll(FileUtils.listFiles(directory, new VXQueryIOFileFilter(), TrueFileFilter.INSTANCE));
+        }
+        final Map<File, Long> lengths = new HashMap<>();
+        for (File file : files) {
+            lengths.put(file, file.length());
+        }
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Long.compare(lengths.get(f2), lengths.get(f1));
+            }
+        });
+        return files;
+    }
+
+    /**
+     * @return the next file or null if all files have been handed out.
+     */
+    public File next() {
+        int index = nextFile.getAndIncrement();
+        return index < files.size() ? files.get(index) : null;
+    }
+
+    private static class SharedQueues {
+        private final Map<Integer, CollectionFileQueue> queues = new HashMap<>();
+        private int closedUsers;
+    }
+}
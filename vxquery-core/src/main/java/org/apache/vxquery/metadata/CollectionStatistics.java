@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.metadata;
+
+/**
+ * Number of files and bytes of the documents of a collection, and how many of the files are XML documents.
+ */
+public class CollectionStatistics {
+    private final long fileCount;
+    private final long byteSize;
+    private final long xmlFileCount;
+
+    public CollectionStatistics(long fileCount, long byteSize, long xmlFileCount) {
+        this.fileCount = fileCount;
+        this.byteSize = byteSize;
+        this.xmlFileCount = xmlFileCount;
+    }
+
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    public long getXmlFileCount() {
+        return xmlFileCount;
+    }
+
+    public CollectionStatistics add(CollectionStatistics statistics) {
+        return new CollectionStatistics(fileCount + statistics.fileCount, byteSize + statistics.byteSize,
+                xmlFileCount + statistics.xmlFileCount);
+    }
+
+    @Override
+    public String toString() {
+        return "CollectionStatistics [fileCount=" + fileCount + ", byteSize=" + byteSize + ", xmlFileCount="
+                + xmlFileCount + "]";
+    }
+}
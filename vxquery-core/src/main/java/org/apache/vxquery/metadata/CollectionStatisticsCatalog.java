@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.metadata;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.apache.vxquery.util.CompressionUtil;
+
+/**
+ * Statistics of collection directories for the compiler. A collection partition is listed on the machine that
+ * compiles the query, once for each node controller when its path contains ${nodeId}, and the statistics are kept
+ * under the partition string of the query until one of its directories is modified. Documents that are rewritten in
+ * place keep their old size. Partitions in HDFS or with a directory the compiler can not read have no statistics.
+ */
+public class CollectionStatisticsCatalog {
+    private static final CollectionStatisticsCatalog INSTANCE = new CollectionStatisticsCatalog();
+
+    private static final String NODE_ID = "${nodeId}";
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong version = new AtomicLong();
+
+    public static CollectionStatisticsCatalog getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the statistics of all partitions of a collection or null if a partition has no statistics.
+     */
+    public CollectionStatistics getStatistics(String[] partitions, String[] nodeIds) {
+        CollectionStatistics statistics = new CollectionStatistics(0, 0, 0);
+        for (String partition : partitions) {
+            CollectionStatistics partitionStatistics = getStatistics(partition, nodeIds);
+            if (partitionStatistics == null) {
+                return null;
+            }
+            statistics = statistics.add(partitionStatistics);
+        }
+        return statistics;
+    }
+
+    /**
+     * @return the statistics of the directories of a collection partition on the given nodes or null if one of them
+     *         is not a readable directory.
+     */
+    public CollectionStatistics getStatistics(String partition, String[] nodeIds) {
+        if (partition.contains("hdfs:/")) {
+            return null;
+        }
+        Set<File> roots = getDirectories(partition, nodeIds);
+        Entry entry = entries.get(partition);
+        if (entry == null || !entry.roots.equals(roots) || !isCurrent(partition, entry)) {
+            entry = list(roots);
+            entries.put(partition, entry);
+        }
+        return entry.statistics;
+    }
+
+    /**
+     * The version changes whenever statistics that were handed out before are no longer current, so a plan that was
+     * compiled with the statistics of one version can be reused while the version stays the same.
+     */
+    public long getVersion() {
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            isCurrent(entry.getKey(), entry.getValue());
+        }
+        return version.get();
+    }
+
+    private boolean isCurrent(String partition, Entry entry) {
+        for (int i = 0; i < entry.directories.length; ++i) {
+            if (entry.directories[i].lastModified() != entry.lastModified[i]) {
+                if (entries.remove(partition, entry)) {
+                    version.incrementAndGet();
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<File> getDirectories(String partition, String[] nodeIds) {
+        Set<File> directories = new LinkedHashSet<>();
+        if (partition.contains(NODE_ID)) {
+            for (String nodeId : nodeIds) {
+                directories.add(new File(partition.replace(NODE_ID, nodeId)));
+            }
+        } else {
+            directories.add(new File(partition));
+        }
+        return directories;
+    }
+
+    /**
+     * Lists the documents with the same file filter as the collection scan. The entry of a missing directory has no
+     * statistics and stays current until the directory is created.
+     */
+    private static Entry list(Set<File> roots) {
+        List<File> directories = new ArrayList<>();
+        long fileCount = 0;
+        long byteSize = 0;
+        long xmlFileCount = 0;
+        boolean readable = true;
+        for (File root : roots) {
+            if (!root.isDirectory()) {
+                directories.add(root);
+                readable = false;
+                continue;
+            }
+            for (File file : FileUtils.listFilesAndDirs(root, new VXQueryIOFileFilter(), TrueFileFilter.INSTANCE)) {
+                if (file.isDirectory()) {
+                    directories.add(file);
+                } else {
+                    ++fileCount;
+                    byteSize += file.length();
+                    if (CompressionUtil.isXmlFile(file.getName())) {
+                        ++xmlFileCount;
+                    }
+                }
+            }
+        }
+        CollectionStatistics statistics = readable ? new CollectionStatistics(fileCount, byteSize, xmlFileCount) : null;
+        return new Entry(statistics, roots, directories);
+    }
+
+    private static class Entry {
+        private final CollectionStatistics statistics;
+        private final Set<File> roots;
+        private final File[] directories;
+        private final long[] lastModified;
+
+        private Entry(CollectionStatistics statistics, Set<File> roots, List<File> directories) {
+            this.statistics = statistics;
+            this.roots = roots;
+            this.directories = directories.toArray(new File[directories.size()]);
+            this.lastModified = new long[this.directories.length];
+            for (int i = 0; i < this.directories.length; ++i) {
+                lastModified[i] = this.directories[i].lastModified();
+            }
+        }
+    }
+}
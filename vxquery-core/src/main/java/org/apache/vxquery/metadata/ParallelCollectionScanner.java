@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hyracks.api.comm.IFrame;
+import org.apache.hyracks.api.comm.IFrameFieldAppender;
+import org.apache.hyracks.api.comm.IFrameWriter;
+import org.apache.hyracks.api.comm.VSizeFrame;
+import org.apache.hyracks.api.context.IHyracksFrameMgrContext;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.hyracks.dataflow.common.comm.io.FrameFixedFieldTupleAppender;
+import org.apache.hyracks.dataflow.common.comm.util.FrameUtils;
+import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.jsonparser.JSONParser;
+import org.apache.vxquery.util.CompressionUtil;
+import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
+import org.apache.vxquery.xmlparser.ValuePredicate;
+import org.apache.vxquery.xmlparser.XMLParser;
+
+/**
+ * Parses the files of a collection partition with a pool of parser workers. Each worker owns its own parsers and
+ * frame appender and hands full frames to the operator thread through a bounded queue. Only the operator thread
+ * calls the downstream writer. Workers count themselves out when they finish, so the operator thread never waits for
+ * a worker that was interrupted or failed.
+ */
+public class ParallelCollectionScanner {
+    protected static final Logger LOGGER = Logger.getLogger(ParallelCollectionScanner.class.getName());
+    public static final String SCAN_THREADS_PROPERTY = "vxquery.scan_threads";
+    private static final int FRAMES_PER_WORKER = 2;
+    private static final long POLL_INTERVAL_MS = 10;
+
+    private final Worker[] workers;
+    private final BlockingQueue<ByteBuffer> fullFrames;
+    private final BlockingQueue<ByteBuffer> freeFrames;
+    private final AtomicReference<Throwable> failure;
+    private final AtomicInteger runningWorkers = new AtomicInteger();
+    private final AtomicLong bytesScanned = new AtomicLong();
+    private ExecutorService executor;
+    private volatile boolean cancelled;
+
+    public ParallelCollectionScanner(IHyracksFrameMgrContext ctx, int workerCount, int fieldOutputCount,
+            ITreeNodeIdProvider nodeIdProvider, String nodeId, List<Integer> childSeq, List<String> valueSeq,
+            List<ValuePredicate> valuePredicates, List<List<Integer>> projections, StaticContext staticContext)
+            throws HyracksDataException {
+        workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; ++i) {
+            workers[i] = new Worker(ctx, fieldOutputCount, nodeIdProvider, nodeId, childSeq, valueSeq,
+                    valuePredicates, projections, staticContext);
+        }
+        fullFrames = new ArrayBlockingQueue<>(workerCount * FRAMES_PER_WORKER);
+        freeFrames = new ArrayBlockingQueue<>(workerCount * FRAMES_PER_WORKER);
+        failure = new AtomicReference<>();
+    }
+
+    /**
+     * @return the number of scan threads requested through the vxquery.scan_threads system property.
+     */
+    public static int getScanThreads() {
+        return Integer.parseInt(System.getProperty(SCAN_THREADS_PROPERTY, "1"));
+    }
+
+    public void open() {
+        cancelled = false;
+        failure.set(null);
+        bytesScanned.set(0);
+        fullFrames.clear();
+        executor = Executors.newFixedThreadPool(workers.length, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "vxquery-scan-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Parse all files and push the resulting frames to the writer. Returns once every file has been parsed and every
+     * frame has been passed on.
+     */
+    public void scan(final CollectionFileQueue files, IFrameWriter writer, final int tupleIndex)
+            throws HyracksDataException {
+        runningWorkers.set(workers.length);
+        for (final Worker worker : workers) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        worker.run(files, tupleIndex);
+                    } finally {
+                        runningWorkers.decrementAndGet();
+                    }
+                }
+            });
+        }
+        HyracksDataException writerException = null;
+        try {
+            while (true) {
+                ByteBuffer buffer = fullFrames.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (buffer == null) {
+                    // Workers put their last frame before they count themselves out.
+                    if (runningWorkers.get() == 0 && fullFrames.isEmpty()) {
+                        break;
+                    }
+                } else if (writerException == null) {
+                    try {
+                        writer.nextFrame(buffer);
+                    } catch (HyracksDataException e) {
+                        // Stop the workers and keep draining until all of them have finished.
+                        writerException = e;
+                        cancelled = true;
+                    }
+                    recycle(buffer);
+                } else {
+                    recycle(buffer);
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelled = true;
+            Thread.currentThread().interrupt();
+            throw new HyracksDataException(e);
+        }
+        if (writerException != null) {
+            throw writerException;
+        }
+        Throwable t = failure.get();
+        if (t != null) {
+            if (t instanceof HyracksDataException) {
+                throw (HyracksDataException) t;
+            }
+            throw new HyracksDataException(t);
+        }
+        if (cancelled) {
+            throw new HyracksDataException("Collection scan cancelled.");
+        }
+    }
+
+    /**
+     * @return the size of the files parsed since the scanner was opened.
+     */
+    public long getBytesScanned() {
+        return bytesScanned.get();
+    }
+
+    public void close() {
+        cancelled = true;
+        if (executor != null) {
+            // Workers that never started do not count themselves out.
+            runningWorkers.addAndGet(-executor.shutdownNow().size());
+            executor = null;
+        }
+        fullFrames.clear();
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        buffer.clear();
+        freeFrames.offer(buffer);
+    }
+
+    private ByteBuffer copyFrame(ByteBuffer buffer) {
+        ByteBuffer copy = freeFrames.poll();
+        if (copy == null || copy.capacity() != buffer.capacity()) {
+            copy = ByteBuffer.allocate(buffer.capacity());
+        }
+        copy.put(buffer.array(), 0, buffer.capacity());
+        copy.flip();
+        return copy;
+    }
+
+    private class Worker {
+        private final IFrame frame;
+        private final IFrameFieldAppender appender;
+        private final XMLParser parser;
+        private final JSONParser jparser;
+        private final ArrayBackedValueStorage jsonAbvs;
+        private final IFrameWriter queueWriter;
+
+        Worker(IHyracksFrameMgrContext ctx, int fieldOutputCount, ITreeNodeIdProvider nodeIdProvider, String nodeId,
+                List<Integer> childSeq, List<String> valueSeq, List<ValuePredicate> valuePredicates,
+                List<List<Integer>> projections, StaticContext staticContext) throws HyracksDataException {
+            frame = new VSizeFrame(ctx);
+            appender = new FrameFixedFieldTupleAppender(fieldOutputCount);
+            parser = new XMLParser(false, nodeIdProvider, nodeId, appender, childSeq, valuePredicates, projections,
+                    staticContext);
+            jparser = new JSONParser(appender, valueSeq);
+            jsonAbvs = new ArrayBackedValueStorage();
+            queueWriter = new IFrameWriter() {
+                @Override
+                public void open() throws HyracksDataException {
+                }
+
+                @Override
+                public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+                    try {
+                        ByteBuffer copy = copyFrame(buffer);
+                        do {
+                            if (cancelled) {
+                                throw new HyracksDataException("Collection scan cancelled.");
+                            }
+                        } while (!fullFrames.offer(copy, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new HyracksDataException(e);
+                    }
+                }
+
+                public void flush() throws HyracksDataException {
+                }
+
+                @Override
+                public void fail() throws HyracksDataException {
+                }
+
+                @Override
+                public void close() throws HyracksDataException {
+                }
+            };
+        }
+
+        void run(CollectionFileQueue files, int tupleIndex) {
+            try {
+                appender.reset(frame, true);
+                File file;
+                while (!cancelled && (file = files.next()) != null) {
+                    parseFile(file, tupleIndex);
+                }
+                if (!cancelled && appender.getTupleCount() > 0) {
+                    appender.write(queueWriter, true);
+                }
+            } catch (Throwable t) {
+                if (!cancelled && failure.compareAndSet(null, t)) {
+                    cancelled = true;
+                }
+            }
+        }
+
+        private void parseFile(File file, int tupleIndex) throws HyracksDataException {
+            String fileName = file.getName();
+            if (CompressionUtil.isXmlFile(fileName)) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Starting to read XML document: " + file.getAbsolutePath());
+                }
+                bytesScanned.addAndGet(file.length());
+                parser.parseElements(file, queueWriter, tupleIndex);
+            } else if (CompressionUtil.isJsonFile(fileName)) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Starting to read JSON document: " + file.getAbsolutePath());
+                }
+                bytesScanned.addAndGet(file.length());
+                try {
+                    Reader input = new InputStreamReader(CompressionUtil.openInputStream(file));
+                    if (jparser.hasValueSteps()) {
+                        jparser.parseElements(input, queueWriter, tupleIndex);
+                    } else {
+                        jsonAbvs.reset();
+                        jparser.parse(input, jsonAbvs);
+                        FrameUtils.appendFieldToWriter(queueWriter, appender, jsonAbvs.getByteArray(),
+                                jsonAbvs.getStartOffset(), jsonAbvs.getLength());
+                    }
+                } catch (IOException e) {
+                    throw new HyracksDataException(e.toString());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.metadata;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+
+import org.apache.hyracks.algebricks.data.IPrinter;
+import org.apache.hyracks.algebricks.data.IPrinterFactory;
+import org.apache.hyracks.algebricks.runtime.base.IPushRuntime;
+import org.apache.hyracks.algebricks.runtime.base.IPushRuntimeFactory;
+import org.apache.hyracks.algebricks.runtime.operators.base.AbstractOneInputSinkPushRuntime;
+import org.apache.hyracks.api.context.IHyracksTaskContext;
+import org.apache.hyracks.api.dataflow.value.RecordDescriptor;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+
+/**
+ * Writes the result tuples of each partition to the file part-N in the result directory of the node that runs the
+ * partition. Each item is printed on its own line, so JSON results are written as JSON Lines.
+ */
+public class QueryResultFileWriterRuntimeFactory implements IPushRuntimeFactory {
+    private static final long serialVersionUID = 1L;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String directory;
+    private final int[] printColumns;
+    private final IPrinterFactory[] printerFactories;
+    private final RecordDescriptor inputDesc;
+
+    public QueryResultFileWriterRuntimeFactory(String directory, int[] printColumns,
+            IPrinterFactory[] printerFactories, RecordDescriptor inputDesc) {
+        this.directory = directory;
+        this.printColumns = printColumns;
+        this.printerFactories = printerFactories;
+        this.inputDesc = inputDesc;
+    }
+
+    @Override
+    public IPushRuntime createPushRuntime(IHyracksTaskContext ctx) throws HyracksDataException {
+        return createPushRuntime(ctx.getTaskAttemptId().getTaskId().getPartition());
+    }
+
+    /**
+     * Creates the writer of the result file of a partition.
+     */
+    IPushRuntime createPushRuntime(int partition) {
+        final IPrinter[] printers = new IPrinter[printerFactories.length];
+        for (int i = 0; i < printers.length; ++i) {
+            printers[i] = printerFactories[i].createPrinter();
+        }
+        final FrameTupleAccessor fta = new FrameTupleAccessor(inputDesc);
+        final File file = new File(directory, String.format("part-%05d", partition));
+
+        return new AbstractOneInputSinkPushRuntime() {
+            private PrintStream ps;
+            private boolean failed;
+
+            @Override
+            public void open() throws HyracksDataException {
+                File parent = file.getParentFile();
+                if (parent != null && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                    throw new HyracksDataException("Could not create the result directory " + parent + ".");
+                }
+                failed = false;
+                try {
+                    ps = new PrintStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE), false,
+                            "UTF-8");
+                } catch (IOException e) {
+                    throw new HyracksDataException(e);
+                }
+            }
+
+            @Override
+            public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+                fta.reset(buffer);
+                for (int tIndex = 0; tIndex < fta.getTupleCount(); ++tIndex) {
+                    int tupleStart = fta.getTupleStartOffset(tIndex) + fta.getFieldSlotsLength();
+                    for (int i = 0; i < printColumns.length; ++i) {
+                        int fieldStart = tupleStart + fta.getFieldStartOffset(tIndex, printColumns[i]);
+                        int fieldLength = fta.getFieldLength(tIndex, printColumns[i]);
+                        printers[i].print(buffer.array(), fieldStart, fieldLength, ps);
+                    }
+                    ps.println();
+                }
+                if (ps.checkError()) {
+                    throw new HyracksDataException("Could not write the result file " + file + ".");
+                }
+            }
+
+            public void flush() throws HyracksDataException {
+                ps.flush();
+            }
+
+            @Override
+            public void fail() throws HyracksDataException {
+                failed = true;
+            }
+
+            @Override
+            public void close() throws HyracksDataException {
+                if (ps != null) {
+                    ps.close();
+                    if (!failed && ps.checkError()) {
+                        throw new HyracksDataException("Could not write the result file " + file + ".");
+                    }
+                }
+            }
+        };
+    }
+}
@@ -27,6 +27,7 @@ import org.apache.hyracks.algebricks.core.algebra.properties.IPhysicalProperties
 import org.apache.hyracks.algebricks.core.algebra.properties.RandomPartitioningProperty;
 import org.apache.hyracks.algebricks.core.algebra.properties.StructuralPropertiesVector;
 import org.apache.vxquery.compiler.rewriter.rules.CollectionFileDomain;
+import org.apache.vxquery.xmlparser.ValuePredicate;
 
 public class VXQueryCollectionDataSource extends AbstractVXQueryDataSource {
 
@@ -45,6 +46,9 @@ public class VXQueryCollectionDataSource extends AbstractVXQueryDataSource {
             }
         };
         this.childSeq = new ArrayList<>();
+        this.valueSeq = new ArrayList<>();
+        this.valuePredicates = new ArrayList<>();
+        this.projections = new ArrayList<>();
         this.tag = null;
     }
 
@@ -111,9 +115,45 @@ public class VXQueryCollectionDataSource extends AbstractVXQueryDataSource {
         return childSeq;
     }
 
+    /**
+     * Adds a JSON value step to the scan. A key selects the value of an object, null selects the keys-or-members.
+     */
+    public void addValueSeq(String key) {
+        valueSeq.add(key);
+    }
+
+    public List<String> getValueSeq() {
+        return valueSeq;
+    }
+
+    /**
+     * Adds a predicate on the children of the elements selected by the child steps.
+     */
+    public void addValuePredicate(ValuePredicate predicate) {
+        valuePredicates.add(predicate);
+    }
+
+    public List<ValuePredicate> getValuePredicates() {
+        return valuePredicates;
+    }
+
+    /**
+     * Adds a child path below the elements selected by the child steps that is used by the query. Once a path is
+     * added, only the elements on the paths are built.
+     */
+    public void addProjection(List<Integer> path) {
+        projections.add(path);
+    }
+
+    public List<List<Integer>> getProjections() {
+        return projections;
+    }
+
     @Override
     public String toString() {
-        return "VXQueryCollectionDataSource [collectionName=" + collectionName + ", childSeq=" + childSeq + "]";
+        return "VXQueryCollectionDataSource [collectionName=" + collectionName + ", childSeq=" + childSeq
+                + ", valueSeq=" + valueSeq + ", valuePredicates=" + valuePredicates + ", projections=" + projections
+                + "]";
     }
 
     @Override
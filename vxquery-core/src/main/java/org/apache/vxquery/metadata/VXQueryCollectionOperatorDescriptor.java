@@ -18,8 +18,7 @@ package org.apache.vxquery.metadata;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
@@ -27,7 +26,6 @@ import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -67,19 +65,24 @@ import org.apache.hyracks.hdfs2.dataflow.FileSplitsFactory;
 import org.apache.vxquery.context.DynamicContext;
 import org.apache.vxquery.hdfs2.HDFSFunctions;
 import org.apache.vxquery.jsonparser.JSONParser;
+import org.apache.vxquery.util.CompressionUtil;
 import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
 import org.apache.vxquery.xmlparser.TreeNodeIdProvider;
+import org.apache.vxquery.xmlparser.ValuePredicate;
 import org.apache.vxquery.xmlparser.XMLParser;
 
 public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityOperatorDescriptor {
     private static final long serialVersionUID = 1L;
     private short dataSourceId;
-    private short totalDataSources;
     private String[] collectionPartitions;
     private List<Integer> childSeq;
+    private List<String> valueSeq;
+    private List<ValuePredicate> valuePredicates;
+    private List<List<Integer>> projections;
     protected static final Logger LOGGER = Logger.getLogger(VXQueryCollectionOperatorDescriptor.class.getName());
     private HDFSFunctions hdfs;
     private String tag;
+    private static final String BYTES_SCANNED_COUNTER = "vxquery.collection.bytes-scanned";
     private static final String START_TAG = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
     private final String hdfsConf;
     private final Map<String, NodeControllerInfo> nodeControllerInfos;
@@ -89,8 +92,10 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
         super(spec, 1, 1);
         collectionPartitions = ds.getPartitions();
         dataSourceId = (short) ds.getDataSourceId();
-        totalDataSources = (short) ds.getTotalDataSources();
         childSeq = ds.getChildSeq();
+        valueSeq = ds.getValueSeq();
+        valuePredicates = ds.getValuePredicates();
+        projections = ds.getProjections();
         recordDescriptors[0] = rDesc;
         this.tag = ds.getTag();
         this.hdfsConf = hdfsConf;
@@ -100,26 +105,47 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
     @Override
     public IOperatorNodePushable createPushRuntime(IHyracksTaskContext ctx,
             IRecordDescriptorProvider recordDescProvider, int partition, int nPartitions) throws HyracksDataException {
-        final FrameTupleAccessor fta = new FrameTupleAccessor(
-                recordDescProvider.getInputRecordDescriptor(getActivityId(), 0));
+        RecordDescriptor inputDesc = recordDescProvider.getInputRecordDescriptor(getActivityId(), 0);
+        final FrameTupleAccessor fta = new FrameTupleAccessor(inputDesc);
+        final int inputFieldCount = inputDesc.getFieldCount();
         final int fieldOutputCount = recordDescProvider.getOutputRecordDescriptor(getActivityId(), 0).getFieldCount();
         final IFrame frame = new VSizeFrame(ctx);
         final IFrameFieldAppender appender = new FrameFixedFieldTupleAppender(fieldOutputCount);
         final short partitionId = (short) ctx.getTaskAttemptId().getTaskId().getPartition();
-        final ITreeNodeIdProvider nodeIdProvider = new TreeNodeIdProvider(partitionId, dataSourceId, totalDataSources);
+        final ITreeNodeIdProvider nodeIdProvider = new TreeNodeIdProvider(partitionId, dataSourceId);
         final String nodeId = ctx.getJobletContext().getApplicationContext().getNodeId();
         final DynamicContext dCtx = (DynamicContext) ctx.getJobletContext().getGlobalJobData();
         final ArrayBackedValueStorage jsonAbvs = new ArrayBackedValueStorage();
         final String collectionName = collectionPartitions[partition % collectionPartitions.length];
-        final XMLParser parser = new XMLParser(false, nodeIdProvider, nodeId, appender, childSeq,
-                dCtx.getStaticContext());
-        final JSONParser jparser = new JSONParser();
+        final XMLParser parser = new XMLParser(false, nodeIdProvider, nodeId, appender, childSeq, valuePredicates,
+                projections, dCtx.getStaticContext());
+        final JSONParser jparser = new JSONParser(appender, valueSeq);
+        final int scanThreads = ParallelCollectionScanner.getScanThreads();
+        final ParallelCollectionScanner scanner = scanThreads > 1
+                ? new ParallelCollectionScanner(ctx, scanThreads, fieldOutputCount, nodeIdProvider, nodeId, childSeq,
+                        valueSeq, valuePredicates, projections, dCtx.getStaticContext())
+                : null;
+
+        // Files can only move between partitions when the input tuples have no fields to attach to the results.
+        final boolean dynamicSplits = CollectionFileQueue.useDynamicSplits() && inputFieldCount == 0
+                && !hasHdfsPartitions();
+        final String sharedQueueKey = ctx.getJobletContext().getJobId() + ":" + getActivityId() + ":" + nodeId;
 
         return new AbstractUnaryInputUnaryOutputOperatorNodePushable() {
+            private long bytesScanned;
+            private int scanCount;
+            private boolean failed;
+
             @Override
             public void open() throws HyracksDataException {
+                bytesScanned = 0;
+                scanCount = 0;
+                failed = false;
                 appender.reset(frame, true);
                 writer.open();
+                if (scanner != null) {
+                    scanner.open();
+                }
                 hdfs = new HDFSFunctions(nodeControllerInfos, hdfsConf);
             }
 
@@ -127,39 +153,23 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
             public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
                 fta.reset(buffer);
                 String collectionModifiedName = collectionName.replace("${nodeId}", nodeId);
-                Reader input;
                 if (!collectionModifiedName.contains("hdfs:/")) {
                     File collectionDirectory = new File(collectionModifiedName);
                     //check if directory is in the local file system
-                    if (collectionDirectory.exists()) {
+                    if (dynamicSplits) {
+                        for (int tupleIndex = 0; tupleIndex < fta.getTupleCount(); ++tupleIndex) {
+                            // The partitions of the node take the files of all directories from one queue.
+                            CollectionFileQueue files = CollectionFileQueue.getSharedQueue(sharedQueueKey,
+                                    scanCount++, collectionPartitions.length, getNodeDirectories());
+                            scanFiles(files, tupleIndex);
+                        }
+                    } else if (collectionDirectory.exists()) {
                         // Go through each tuple.
                         if (collectionDirectory.isDirectory()) {
                             for (int tupleIndex = 0; tupleIndex < fta.getTupleCount(); ++tupleIndex) {
-                                Iterator<File> it = FileUtils.iterateFiles(collectionDirectory,
-                                        new VXQueryIOFileFilter(), TrueFileFilter.INSTANCE);
-                                while (it.hasNext()) {
-                                    File file = it.next();
-                                    String fileName = file.getName().toLowerCase();
-                                    if (fileName.endsWith(".xml")) {
-                                        if (LOGGER.isLoggable(Level.FINE)) {
-                                            LOGGER.fine("Starting to read XML document: " + file.getAbsolutePath());
-                                        }
-                                        parser.parseElements(file, writer, tupleIndex);
-                                    } else if (fileName.endsWith(".json")) {
-                                        if (LOGGER.isLoggable(Level.FINE)) {
-                                            LOGGER.fine("Starting to read JSON document: " + file.getAbsolutePath());
-                                        }
-                                        try {
-                                            jsonAbvs.reset();
-                                            input = new InputStreamReader(new FileInputStream(file));
-                                            jparser.parse(input, jsonAbvs);
-                                            FrameUtils.appendFieldToWriter(writer, appender, jsonAbvs.getByteArray(),
-                                                    jsonAbvs.getStartOffset(), jsonAbvs.getLength());
-                                        } catch (FileNotFoundException e) {
-                                            throw new HyracksDataException(e.toString());
-                                        }
-                                    }
-                                }
+                                List<File> files = new ArrayList<>(FileUtils.listFiles(collectionDirectory,
+                                        new VXQueryIOFileFilter(), TrueFileFilter.INSTANCE));
+                                scanFiles(new CollectionFileQueue(files), tupleIndex);
                             }
                         } else {
                             throw new HyracksDataException("Invalid directory parameter (" + nodeId + ":"
@@ -245,7 +255,9 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
                                                             "Starting to read XML document: " + xmlDocument.getName());
                                                 }
                                                 //create an input stream to the file currently reading and send it to parser
-                                                InputStream in = fs.open(xmlDocument).getWrappedStream();
+                                                InputStream in = CompressionUtil.decompress(
+                                                        fs.open(xmlDocument).getWrappedStream(),
+                                                        xmlDocument.getName());
                                                 parser.parseHDFSElements(in, writer, fta, tupleIndex);
                                                 in.close();
                                             }
@@ -268,13 +280,88 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
                 }
             }
 
+            private void scanFiles(CollectionFileQueue files, int tupleIndex) throws HyracksDataException {
+                if (scanner != null) {
+                    scanner.scan(files, writer, tupleIndex);
+                    return;
+                }
+                File file;
+                while ((file = files.next()) != null) {
+                    String fileName = file.getName();
+                    if (CompressionUtil.isXmlFile(fileName)) {
+                        if (LOGGER.isLoggable(Level.FINE)) {
+                            LOGGER.fine("Starting to read XML document: " + file.getAbsolutePath());
+                        }
+                        bytesScanned += file.length();
+                        parser.parseElements(file, writer, tupleIndex);
+                    } else if (CompressionUtil.isJsonFile(fileName)) {
+                        if (LOGGER.isLoggable(Level.FINE)) {
+                            LOGGER.fine("Starting to read JSON document: " + file.getAbsolutePath());
+                        }
+                        bytesScanned += file.length();
+                        try {
+                            Reader input = new InputStreamReader(CompressionUtil.openInputStream(file));
+                            if (jparser.hasValueSteps()) {
+                                jparser.parseElements(input, writer, tupleIndex);
+                            } else {
+                                jsonAbvs.reset();
+                                jparser.parse(input, jsonAbvs);
+                                FrameUtils.appendFieldToWriter(writer, appender, jsonAbvs.getByteArray(),
+                                        jsonAbvs.getStartOffset(), jsonAbvs.getLength());
+                            }
+                        } catch (IOException e) {
+                            throw new HyracksDataException(e.toString());
+                        }
+                    }
+                }
+            }
+
+            /**
+             * @return the existing local directories of all collection partitions on this node.
+             */
+            private List<File> getNodeDirectories() {
+                List<File> directories = new ArrayList<>();
+                for (String partitionName : collectionPartitions) {
+                    File directory = new File(partitionName.replace("${nodeId}", nodeId));
+                    if (directory.isDirectory()) {
+                        directories.add(directory);
+                    }
+                }
+                return directories;
+            }
+
+            /**
+             * Count the size of the parsed files in the task profile.
+             */
+            private void updateBytesScanned() {
+                long bytes = bytesScanned + (scanner != null ? scanner.getBytesScanned() : 0);
+                ctx.getCounterContext().getCounter(BYTES_SCANNED_COUNTER, true).update(bytes);
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Partition " + partition + " on " + nodeId + " scanned " + bytes + " bytes.");
+                }
+            }
+
             @Override
             public void fail() throws HyracksDataException {
+                failed = true;
+                if (dynamicSplits) {
+                    CollectionFileQueue.failSharedQueues(sharedQueueKey);
+                }
+                if (scanner != null) {
+                    scanner.close();
+                }
                 writer.fail();
             }
 
             @Override
             public void close() throws HyracksDataException {
+                if (dynamicSplits && !failed) {
+                    CollectionFileQueue.closeSharedQueues(sharedQueueKey, collectionPartitions.length);
+                }
+                updateBytesScanned();
+                if (scanner != null) {
+                    scanner.close();
+                }
                 // Check if needed?
                 if (appender.getTupleCount() > 0) {
                     appender.flush(writer);
@@ -283,4 +370,13 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
             }
         };
     }
+
+    private boolean hasHdfsPartitions() {
+        for (String partitionName : collectionPartitions) {
+            if (partitionName.contains("hdfs:/")) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
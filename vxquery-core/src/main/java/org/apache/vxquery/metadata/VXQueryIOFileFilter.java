@@ -19,6 +19,7 @@ package org.apache.vxquery.metadata;
 import java.io.File;
 
 import org.apache.commons.io.filefilter.IOFileFilter;
+import org.apache.vxquery.util.CompressionUtil;
 
 public class VXQueryIOFileFilter implements IOFileFilter {
 
@@ -29,10 +30,6 @@ public class VXQueryIOFileFilter implements IOFileFilter {
 
     @Override
     public boolean accept(final File file, final String name) {
-        String fileName = name.toLowerCase();
-        if (fileName.endsWith(".xml") || fileName.endsWith(".json")) {
-            return true;
-        }
-        return false;
+        return CompressionUtil.isXmlFile(name) || CompressionUtil.isJsonFile(name);
     }
 }
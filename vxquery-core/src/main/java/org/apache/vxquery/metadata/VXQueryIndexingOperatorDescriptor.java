@@ -59,7 +59,6 @@ public class VXQueryIndexingOperatorDescriptor extends AbstractSingleActivityOpe
     protected static final Logger LOGGER = Logger.getLogger(VXQueryCollectionOperatorDescriptor.class.getName());
     private static final long serialVersionUID = 1L;
     private short dataSourceId;
-    private short totalDataSources;
     private String[] collectionPartitions;
     private String elementPath;
     private final String functionCall;
@@ -70,7 +69,6 @@ public class VXQueryIndexingOperatorDescriptor extends AbstractSingleActivityOpe
         this.functionCall = ds.getFunctionCall();
         collectionPartitions = ds.getCollectionPartitions();
         dataSourceId = (short) ds.getDataSourceId();
-        totalDataSources = (short) ds.getTotalDataSources();
         recordDescriptors[0] = rDesc;
         this.elementPath = ds.getElementPath();
     }
@@ -84,7 +82,7 @@ public class VXQueryIndexingOperatorDescriptor extends AbstractSingleActivityOpe
         final IFrame frame = new VSizeFrame(ctx);
         final IFrameFieldAppender appender = new FrameFixedFieldTupleAppender(fieldOutputCount);
         final short partitionId = (short) ctx.getTaskAttemptId().getTaskId().getPartition();
-        final ITreeNodeIdProvider nodeIdProvider = new TreeNodeIdProvider(partitionId, dataSourceId, totalDataSources);
+        final ITreeNodeIdProvider nodeIdProvider = new TreeNodeIdProvider(partitionId, dataSourceId);
         final String nodeId = ctx.getJobletContext().getApplicationContext().getNodeId();
         final String collectionName = collectionPartitions[partition % collectionPartitions.length];
         String collectionModifiedName = collectionName.replace("${nodeId}", nodeId);
@@ -75,6 +75,10 @@ public class VXQueryMetadataProvider implements IMetadataProvider<String, String
         return null;
     }
 
+    public String[] getNodeList() {
+        return nodeList;
+    }
+
     public Map<String, File> getSourceFileMap() {
         return sourceFileMap;
     }
@@ -154,7 +158,10 @@ public class VXQueryMetadataProvider implements IMetadataProvider<String, String
     public Pair<IPushRuntimeFactory, AlgebricksPartitionConstraint> getWriteFileRuntime(IDataSink sink,
             int[] printColumns, IPrinterFactory[] printerFactories, RecordDescriptor inputDesc)
             throws AlgebricksException {
-        throw new UnsupportedOperationException();
+        QueryResultFileDataSink rfds = (QueryResultFileDataSink) sink;
+        IPushRuntimeFactory writer = new QueryResultFileWriterRuntimeFactory(rfds.getDirectory(), printColumns,
+                printerFactories, inputDesc);
+        return new Pair<>(writer, null);
     }
 
     @Override
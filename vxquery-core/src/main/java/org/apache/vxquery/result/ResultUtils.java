@@ -14,34 +14,36 @@
  */
 package org.apache.vxquery.result;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.hyracks.api.comm.IFrameTupleAccessor;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
-import org.apache.hyracks.dataflow.common.comm.util.ByteBufferInputStream;
 
 public class ResultUtils {
     public static String getStringFromBuffer(ByteBuffer buffer, IFrameTupleAccessor fta) throws HyracksDataException {
-        String resultRecords = "";
-        ByteBufferInputStream bbis = new ByteBufferInputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(buffer.capacity());
+        writeBuffer(buffer, fta, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write the bytes of the result records in the frame to the stream.
+     */
+    public static void writeBuffer(ByteBuffer buffer, IFrameTupleAccessor fta, OutputStream out)
+            throws HyracksDataException {
         try {
             fta.reset(buffer);
             for (int tIndex = 0; tIndex < fta.getTupleCount(); tIndex++) {
                 int start = fta.getTupleStartOffset(tIndex);
                 int length = fta.getTupleEndOffset(tIndex) - start;
-                bbis.setByteBuffer(buffer, start);
-                byte[] recordBytes = new byte[length];
-                bbis.read(recordBytes, 0, length);
-                resultRecords += new String(recordBytes, 0, length);
-            }
-        } finally {
-            try {
-                bbis.close();
-            } catch (IOException e) {
-                throw new HyracksDataException(e);
+                out.write(buffer.array(), buffer.arrayOffset() + start, length);
             }
+        } catch (IOException e) {
+            throw new HyracksDataException(e);
         }
-        return resultRecords;
     }
 }
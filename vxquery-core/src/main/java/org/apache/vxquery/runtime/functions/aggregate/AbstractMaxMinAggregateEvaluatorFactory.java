@@ -24,6 +24,7 @@ import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.hyracks.data.std.primitive.LongPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.vxquery.datamodel.accessors.SequencePointable;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
@@ -52,6 +53,11 @@ public abstract class AbstractMaxMinAggregateEvaluatorFactory extends
         final SequencePointable seqp = (SequencePointable) SequencePointable.FACTORY.createPointable();
         final TypedPointables tp1 = new TypedPointables();
         final TypedPointables tp2 = new TypedPointables();
+        final byte[] longBytes = new byte[2 * LongPointable.TYPE_TRAITS.getFixedLength()];
+        final LongPointable longp1 = (LongPointable) LongPointable.FACTORY.createPointable();
+        final LongPointable longp2 = (LongPointable) LongPointable.FACTORY.createPointable();
+        longp1.set(longBytes, 0, LongPointable.TYPE_TRAITS.getFixedLength());
+        longp2.set(longBytes, LongPointable.TYPE_TRAITS.getFixedLength(), LongPointable.TYPE_TRAITS.getFixedLength());
 
         final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
         final DataOutput dOut = abvs.getDataOutput();
@@ -89,12 +95,7 @@ public abstract class AbstractMaxMinAggregateEvaluatorFactory extends
                         throw new SystemException(ErrorCode.FORG0006);
                     }
                 } else {
-                    if (count != 0) {
-                        tvp2.set(abvs.getByteArray(), abvs.getStartOffset(), abvs.getLength());
-                    }
-                    if (count == 0
-                            || FunctionHelper.transformThenCompareMinMaxTaggedValues(aOpComparison, tvp1, tvp2, dCtx,
-                                    tp1, tp2)) {
+                    if (count == 0 || replacesValue(tvp1)) {
                         try {
                             abvs.reset();
                             dOut.write(tvp1.getByteArray(), tvp1.getStartOffset(), tvp1.getLength());
@@ -106,6 +107,30 @@ public abstract class AbstractMaxMinAggregateEvaluatorFactory extends
                 }
             }
 
+            /**
+             * Integers and doubles, usually all values of an aggregate, are compared without converting them first.
+             */
+            private boolean replacesValue(TaggedValuePointable tvp1) throws HyracksDataException {
+                tvp2.set(abvs.getByteArray(), abvs.getStartOffset(), abvs.getLength());
+                try {
+                    if (tvp1.getTag() == ValueTag.XS_DOUBLE_TAG && tvp2.getTag() == ValueTag.XS_DOUBLE_TAG) {
+                        tvp1.getValue(tp1.doublep);
+                        tvp2.getValue(tp2.doublep);
+                        return aOpComparison.operateDoubleDouble(tp1.doublep, tp2.doublep);
+                    }
+                    if (FunctionHelper.isDerivedFromInteger(tvp1.getTag())
+                            && FunctionHelper.isDerivedFromInteger(tvp2.getTag())) {
+                        longp1.setLong(FunctionHelper.getIntegerValue(tvp1, tp1));
+                        longp2.setLong(FunctionHelper.getIntegerValue(tvp2, tp2));
+                        return aOpComparison.operateIntegerInteger(longp1, longp2);
+                    }
+                } catch (IOException e) {
+                    throw new SystemException(ErrorCode.SYSE0001, e);
+                }
+                return FunctionHelper.transformThenCompareMinMaxTaggedValues(aOpComparison, tvp1, tvp2, dCtx, tp1,
+                        tp2);
+            }
+
         };
     }
 
@@ -28,10 +28,9 @@ import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
 import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
 import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.datamodel.values.XDMConstants;
-import org.apache.vxquery.runtime.functions.arithmetic.AddOperation;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentAggregateEvaluator;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentAggregateEvaluatorFactory;
-import org.apache.vxquery.runtime.functions.util.ArithmeticHelper;
+import org.apache.vxquery.runtime.functions.util.SumHelper;
 
 public class AvgLocalAggregateEvaluatorFactory extends AbstractTaggedValueArgumentAggregateEvaluatorFactory {
     private static final long serialVersionUID = 1L;
@@ -45,12 +44,9 @@ public class AvgLocalAggregateEvaluatorFactory extends AbstractTaggedValueArgume
         final TaggedValuePointable tvpCount = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
         final ArrayBackedValueStorage abvsCount = new ArrayBackedValueStorage();
         final DataOutput dOutCount = abvsCount.getDataOutput();
-        final ArrayBackedValueStorage abvsSum = new ArrayBackedValueStorage();
-        final DataOutput dOutSum = abvsSum.getDataOutput();
         final ArrayBackedValueStorage abvsSeq = new ArrayBackedValueStorage();
         final SequenceBuilder sb = new SequenceBuilder();
-        final AddOperation aOpAdd = new AddOperation();
-        final ArithmeticHelper add = new ArithmeticHelper(aOpAdd, dCtx);
+        final SumHelper sum = new SumHelper(dCtx);
 
         return new AbstractTaggedValueArgumentAggregateEvaluator(args) {
             long count;
@@ -59,14 +55,7 @@ public class AvgLocalAggregateEvaluatorFactory extends AbstractTaggedValueArgume
             @Override
             public void init() throws HyracksDataException {
                 count = 0;
-                try {
-                    abvsSum.reset();
-                    dOutSum.write(ValueTag.XS_INTEGER_TAG);
-                    dOutSum.writeLong(0);
-                    tvpSum.set(abvsSum);
-                } catch (Exception e) {
-                    throw new HyracksDataException(e);
-                }
+                sum.reset();
             }
 
             @Override
@@ -85,6 +74,7 @@ public class AvgLocalAggregateEvaluatorFactory extends AbstractTaggedValueArgume
                         dOutCount.write(ValueTag.XS_INTEGER_TAG);
                         dOutCount.writeLong(count);
                         tvpCount.set(abvsCount);
+                        sum.get(tvpSum);
 
                         // Save intermediate result.
                         abvsSeq.reset();
@@ -101,8 +91,7 @@ public class AvgLocalAggregateEvaluatorFactory extends AbstractTaggedValueArgume
 
             @Override
             protected void step(TaggedValuePointable[] args) throws HyracksDataException {
-                TaggedValuePointable tvp = args[0];
-                add.compute(tvp, tvpSum, tvpSum);
+                sum.add(args[0]);
                 count++;
             }
         };
@@ -39,6 +39,11 @@ public abstract class AbstractArithmeticScalarEvaluatorFactory extends
         super(args);
     }
 
+    @Override
+    protected boolean isDeterministic() {
+        return true;
+    }
+
     @Override
     protected IScalarEvaluator createEvaluator(IHyracksTaskContext ctx, IScalarEvaluator[] args)
             throws HyracksDataException {
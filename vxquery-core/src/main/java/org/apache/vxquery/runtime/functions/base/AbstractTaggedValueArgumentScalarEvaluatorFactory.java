@@ -18,8 +18,13 @@ package org.apache.vxquery.runtime.functions.base;
 
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
+import org.apache.hyracks.algebricks.runtime.evaluators.ConstantEvalFactory;
 import org.apache.hyracks.api.context.IHyracksTaskContext;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.hyracks.data.std.primitive.VoidPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.hyracks.dataflow.common.data.accessors.IFrameTupleReference;
 
 public abstract class AbstractTaggedValueArgumentScalarEvaluatorFactory implements IScalarEvaluatorFactory {
     private static final long serialVersionUID = 1L;
@@ -36,7 +41,53 @@ public abstract class AbstractTaggedValueArgumentScalarEvaluatorFactory implemen
         for (int i = 0; i < es.length; ++i) {
             es[i] = args[i].createScalarEvaluator(ctx);
         }
-        return createEvaluator(ctx, es);
+        IScalarEvaluator evaluator = createEvaluator(ctx, es);
+        return hasConstantResult() ? createConstantResultEvaluator(evaluator) : evaluator;
+    }
+
+    /**
+     * Functions that give the same result for the same arguments and do not construct nodes can evaluate constant
+     * arguments once, for example the casts of xs:date("2001-01-01").
+     */
+    protected boolean isDeterministic() {
+        return false;
+    }
+
+    public boolean hasConstantResult() {
+        if (!isDeterministic()) {
+            return false;
+        }
+        for (IScalarEvaluatorFactory arg : args) {
+            if (arg instanceof ConstantEvalFactory) {
+                continue;
+            }
+            if (!(arg instanceof AbstractTaggedValueArgumentScalarEvaluatorFactory)
+                    || !((AbstractTaggedValueArgumentScalarEvaluatorFactory) arg).hasConstantResult()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static IScalarEvaluator createConstantResultEvaluator(final IScalarEvaluator evaluator) {
+        final VoidPointable vp = (VoidPointable) VoidPointable.FACTORY.createPointable();
+        final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+
+        return new IScalarEvaluator() {
+            private boolean evaluated = false;
+
+            @Override
+            public void evaluate(IFrameTupleReference tuple, IPointable result) throws HyracksDataException {
+                if (!evaluated) {
+                    // Errors are raised again for each tuple, since only a result is kept.
+                    evaluator.evaluate(tuple, vp);
+                    abvs.reset();
+                    abvs.append(vp);
+                    evaluated = true;
+                }
+                result.set(abvs);
+            }
+        };
     }
 
     protected abstract IScalarEvaluator createEvaluator(IHyracksTaskContext ctx, IScalarEvaluator[] args)
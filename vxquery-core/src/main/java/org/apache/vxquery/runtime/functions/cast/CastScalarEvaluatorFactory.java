@@ -24,6 +24,7 @@ import org.apache.hyracks.api.context.IHyracksTaskContext;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.data.std.api.IPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.context.DynamicContext;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
 import org.apache.vxquery.datamodel.accessors.TypedPointables;
 import org.apache.vxquery.datamodel.values.ValueTag;
@@ -43,7 +44,14 @@ public class CastScalarEvaluatorFactory extends AbstractTypeScalarEvaluatorFacto
     @Override
     protected IScalarEvaluator createEvaluator(IHyracksTaskContext ctx, IScalarEvaluator[] args)
             throws HyracksDataException {
-        return new AbstractTypeScalarEvaluator(args, ctx) {
+        return createCastEvaluator(args, (DynamicContext) ctx.getJobletContext().getGlobalJobData());
+    }
+
+    /**
+     * Creates a cast evaluator outside of a task, e.g. to cast constants while the query is compiled.
+     */
+    public static IScalarEvaluator createCastEvaluator(IScalarEvaluator[] args, DynamicContext dCtx) {
+        return new AbstractTypeScalarEvaluator(args, dCtx) {
             final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
             final DataOutput dOut = abvs.getDataOutput();
             final TypedPointables tp = new TypedPointables();
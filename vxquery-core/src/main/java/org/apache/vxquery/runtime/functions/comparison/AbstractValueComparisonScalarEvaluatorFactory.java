@@ -45,6 +45,11 @@ public abstract class AbstractValueComparisonScalarEvaluatorFactory extends
         super(args);
     }
 
+    @Override
+    protected boolean isDeterministic() {
+        return true;
+    }
+
     @Override
     protected IScalarEvaluator createEvaluator(IHyracksTaskContext ctx, IScalarEvaluator[] args)
             throws HyracksDataException {
@@ -17,6 +17,7 @@
 package org.apache.vxquery.runtime.functions.comparison.general;
 
 import java.io.DataOutput;
+import java.io.IOException;
 
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
@@ -30,7 +31,9 @@ import org.apache.vxquery.context.DynamicContext;
 import org.apache.vxquery.datamodel.accessors.SequencePointable;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
 import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.util.TaggedValueOrder;
 import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.datamodel.values.XDMConstants;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
@@ -73,19 +76,29 @@ import org.apache.vxquery.runtime.functions.cast.CastToYMDurationOperation;
 import org.apache.vxquery.runtime.functions.comparison.AbstractValueComparisonOperation;
 import org.apache.vxquery.runtime.functions.util.AtomizeHelper;
 import org.apache.vxquery.runtime.functions.util.FunctionHelper;
+import org.apache.vxquery.runtime.functions.util.TaggedValueHashSet;
 
 public abstract class AbstractGeneralComparisonScalarEvaluatorFactory extends
         AbstractTaggedValueArgumentScalarEvaluatorFactory {
     private static final long serialVersionUID = 1L;
+    // Compare sequences with more item pairs than this by hashing the items of the shorter sequence.
+    private static final int HASH_COMPARISON_PAIRS = 64;
 
     public AbstractGeneralComparisonScalarEvaluatorFactory(IScalarEvaluatorFactory[] args) {
         super(args);
     }
 
+    @Override
+    protected boolean isDeterministic() {
+        return true;
+    }
+
     @Override
     protected IScalarEvaluator createEvaluator(IHyracksTaskContext ctx, IScalarEvaluator[] args)
             throws HyracksDataException {
         final AbstractValueComparisonOperation aOp = createValueComparisonOperation();
+        final boolean hashEquality = isEqualityComparison();
+        final TaggedValueHashSet hashSet = new TaggedValueHashSet();
         final ArrayBackedValueStorage abvsInner1 = new ArrayBackedValueStorage();
         final DataOutput dOutInner1 = abvsInner1.getDataOutput();
         final ArrayBackedValueStorage abvsInner2 = new ArrayBackedValueStorage();
@@ -117,7 +130,21 @@ public abstract class AbstractGeneralComparisonScalarEvaluatorFactory extends
                 TaggedValuePointable tvpArg1 = args[0];
                 TaggedValuePointable tvpArg2 = args[1];
                 try {
-                    if (tvpArg1.getTag() == ValueTag.SEQUENCE_TAG) {
+                    int hashResult = -1;
+                    if (hashEquality && tvpArg1.getTag() == ValueTag.SEQUENCE_TAG
+                            && tvpArg2.getTag() == ValueTag.SEQUENCE_TAG) {
+                        tvpArg1.getValue(seqp1);
+                        tvpArg2.getValue(seqp2);
+                        int seqLen1 = seqp1.getEntryCount();
+                        int seqLen2 = seqp2.getEntryCount();
+                        if ((long) seqLen1 * seqLen2 > HASH_COMPARISON_PAIRS) {
+                            hashResult = seqLen1 <= seqLen2 ? compareByHash(seqp1, seqp2)
+                                    : compareByHash(seqp2, seqp1);
+                        }
+                    }
+                    if (hashResult >= 0) {
+                        booleanResult = hashResult == 1;
+                    } else if (tvpArg1.getTag() == ValueTag.SEQUENCE_TAG) {
                         tvpArg1.getValue(seqp1);
                         int seqLen = seqp1.getEntryCount();
                         for (int j = 0; j < seqLen; ++j) {
@@ -132,10 +159,11 @@ public abstract class AbstractGeneralComparisonScalarEvaluatorFactory extends
                         booleanResult = evaluateTaggedValueArgument2(aOp, tvpArg1, tvpArg2, dCtx);
                     }
 
-                    byte[] byteResult = new byte[2];
-                    byteResult[0] = ValueTag.XS_BOOLEAN_TAG;
-                    byteResult[1] = (byte) (booleanResult ? 1 : 0);
-                    result.set(byteResult, 0, 2);
+                    if (booleanResult) {
+                        XDMConstants.setTrue(result);
+                    } else {
+                        XDMConstants.setFalse(result);
+                    }
                 } catch (SystemException se) {
                     throw se;
                 } catch (Exception e) {
@@ -143,6 +171,60 @@ public abstract class AbstractGeneralComparisonScalarEvaluatorFactory extends
                 }
             }
 
+            /**
+             * Look up the atomized items of the probe sequence in a hash set of the items of the build sequence.
+             * Only string-like items or only numeric items are hashed, since all other values need the casts and
+             * type errors of the item by item comparison.
+             *
+             * @param build
+             * @param probe
+             * @return 1 if an item pair is equal, 0 if none is and -1 if the items have to be compared one by one.
+             * @throws SystemException
+             * @throws IOException
+             */
+            private int compareByHash(SequencePointable build, SequencePointable probe)
+                    throws SystemException, IOException {
+                hashSet.reset();
+                int category = -1;
+                int buildLen = build.getEntryCount();
+                for (int j = 0; j < buildLen; ++j) {
+                    int itemCategory = getHashCategory(build, j);
+                    if (itemCategory < 0 || (category >= 0 && itemCategory != category)) {
+                        return -1;
+                    }
+                    category = itemCategory;
+                    if (getOrderClass(tvpTransform1) != TaggedValueOrder.NAN) {
+                        hashSet.add(tvpTransform1);
+                    }
+                }
+                int probeLen = probe.getEntryCount();
+                for (int j = 0; j < probeLen; ++j) {
+                    if (getHashCategory(probe, j) != category) {
+                        return -1;
+                    }
+                    if (hashSet.contains(tvpTransform1)) {
+                        return 1;
+                    }
+                }
+                return 0;
+            }
+
+            private int getHashCategory(SequencePointable seqp, int index) throws SystemException, IOException {
+                seqp.getEntry(index, tvpSeq1);
+                tvpTransform1.set(tvpSeq1);
+                ah.atomize(tvpSeq1, ppool, tvpTransform1);
+                int orderClass = getOrderClass(tvpTransform1);
+                if (orderClass == TaggedValueOrder.NAN) {
+                    return TaggedValueOrder.NUMERIC;
+                }
+                return orderClass == TaggedValueOrder.NUMERIC || orderClass == TaggedValueOrder.STRING ? orderClass
+                        : -1;
+            }
+
+            private int getOrderClass(TaggedValuePointable tvp) {
+                return TaggedValueOrder.getOrderClass(tvp.getByteArray(), tvp.getStartOffset());
+            }
+
             /**
              * Check the second argument for a sequence and loop if required.
              *
@@ -383,4 +465,11 @@ public abstract class AbstractGeneralComparisonScalarEvaluatorFactory extends
     }
 
     protected abstract AbstractValueComparisonOperation createValueComparisonOperation();
+
+    /**
+     * @return true if the comparison only holds for equal values.
+     */
+    protected boolean isEqualityComparison() {
+        return false;
+    }
 }
@@ -34,6 +34,7 @@ import org.apache.vxquery.index.IndexDocumentBuilder;
 import org.apache.vxquery.runtime.functions.index.updateIndex.MetaFileUtil;
 import org.apache.vxquery.runtime.functions.index.updateIndex.XmlMetadata;
 import org.apache.vxquery.runtime.functions.util.FunctionHelper;
+import org.apache.vxquery.util.CompressionUtil;
 import org.apache.vxquery.xmlparser.IParser;
 import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
 import org.apache.vxquery.xmlparser.XMLParser;
@@ -71,17 +72,20 @@ public class IndexConstructorUtil {
 
             Directory dir = FSDirectory.open(Paths.get(indexFolder));
             Analyzer analyzer = new CaseSensitiveAnalyzer();
-            IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
 
             // Create will overwrite the index everytime
-            iwc.setOpenMode(OpenMode.CREATE);
+            IndexWriterConfig iwc = ParallelIndexBuilder.createIndexWriterConfig(analyzer, OpenMode.CREATE);
 
             //Create an index writer
             IndexWriter writer = new IndexWriter(dir, iwc);
 
             //Add files to index
-            indexXmlFiles(collectionDirectory, writer, isElementPath, nodep, abvsFileNode, nodeIdProvider, sb, bbis, di,
-                    nodeId);
+            ParallelIndexBuilder builder = new ParallelIndexBuilder(writer, nodeIdProvider, nodeId);
+            try {
+                indexXmlFiles(collectionDirectory, builder);
+            } finally {
+                builder.finish();
+            }
 
             if (!isMetaFilePresent) {
                 // Write metadata map to a file.
@@ -101,43 +105,42 @@ public class IndexConstructorUtil {
         }
     }
 
-    /*This function goes recursively one file at a time. First it turns the file into an ABVS document node, then
-     * it indexes that document node.
+    /*This function walks the collection recursively. Each file is handed to the builder, which turns it into an ABVS
+     * document node and indexes that document node on one of its threads.
      */
-    public void indexXmlFiles(File collectionDirectory, IndexWriter writer, boolean isElementPath,
-            TaggedValuePointable nodep, ArrayBackedValueStorage abvsFileNode, ITreeNodeIdProvider nodeIdProvider,
-            SequenceBuilder sb, ByteBufferInputStream bbis, DataInputStream di, String nodeId)
-            throws SystemException, IOException {
+    public void indexXmlFiles(File collectionDirectory, ParallelIndexBuilder builder) throws IOException {
 
         SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy, HH:mm:ss");
 
         for (File file : collectionDirectory.listFiles()) {
 
             if (readableXmlFile(file.getPath())) {
-                abvsFileNode.reset();
-
-                IndexDocumentBuilder ibuilder = getIndexBuilder(file, writer, nodep, abvsFileNode, nodeIdProvider, bbis,
-                        di, nodeId);
-
-                ibuilder.printStart();
+                ParallelIndexBuilder.IIndexedFileListener listener = null;
                 if (!isMetaFilePresent) {
-                    XmlMetadata xmlMetadata = new XmlMetadata();
-                    xmlMetadata.setPath(file.getCanonicalPath());
-                    xmlMetadata.setFileName(file.getName());
-                    xmlMetadata.setLastModified(sdf.format(file.lastModified()));
-                    xmlMetadata.setMd5(metaFileUtil.generateMD5(file));
-                    metadataMap.put(file.getCanonicalPath(), xmlMetadata);
+                    final String lastModified = sdf.format(file.lastModified());
+                    listener = new ParallelIndexBuilder.IIndexedFileListener() {
+                        @Override
+                        public void indexed(File file) throws IOException {
+                            XmlMetadata xmlMetadata = new XmlMetadata();
+                            xmlMetadata.setPath(file.getCanonicalPath());
+                            xmlMetadata.setFileName(file.getName());
+                            xmlMetadata.setLastModified(lastModified);
+                            xmlMetadata.setMd5(metaFileUtil.generateMD5(file));
+                            metadataMap.put(file.getCanonicalPath(), xmlMetadata);
+                        }
+                    };
                 }
+                builder.addFile(file, null, listener);
 
             } else if (file.isDirectory()) {
                 // Consider all XML file in sub directories.
-                indexXmlFiles(file, writer, isElementPath, nodep, abvsFileNode, nodeIdProvider, sb, bbis, di, nodeId);
+                indexXmlFiles(file, builder);
             }
         }
     }
 
     public boolean readableXmlFile(String path) {
-        return (path.toLowerCase().endsWith(".xml") || path.toLowerCase().endsWith(".xml.gz"));
+        return CompressionUtil.isXmlFile(path);
     }
 
     public IndexDocumentBuilder getIndexBuilder(File file, IndexWriter writer, TaggedValuePointable nodep,
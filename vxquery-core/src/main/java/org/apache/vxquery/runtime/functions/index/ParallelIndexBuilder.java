@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.index;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.hyracks.dataflow.common.comm.util.ByteBufferInputStream;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
+
+/**
+ * Parses collection files and builds their index documents on a pool of threads. All threads add their documents to
+ * one shared {@link IndexWriter}.
+ */
+public class ParallelIndexBuilder {
+    public static final String INDEX_THREADS_PROPERTY = "vxquery.index_threads";
+    public static final String INDEX_RAM_BUFFER_PROPERTY = "vxquery.index_ram_buffer";
+    private static final int TASKS_PER_THREAD = 4;
+    private static final double DEFAULT_RAM_BUFFER_MB = 256;
+    private static final double SEGMENTS_PER_TIER = 20;
+
+    /**
+     * Called on the indexing thread once the document of a file has been added.
+     */
+    public interface IIndexedFileListener {
+        void indexed(File file) throws IOException;
+    }
+
+    /**
+     * Called on the indexing thread before a file is parsed. A file that is not accepted is not indexed.
+     */
+    public interface IIndexedFileFilter {
+        boolean accept(File file) throws IOException;
+    }
+
+    private final IndexWriter writer;
+    private final ITreeNodeIdProvider nodeIdProvider;
+    private final String nodeId;
+    private final IndexConstructorUtil indexConstructorUtil;
+    private final ExecutorService executor;
+    private final Semaphore pending;
+    private final AtomicReference<Throwable> failure;
+    private final ThreadLocal<Worker> workers;
+
+    public ParallelIndexBuilder(IndexWriter writer, ITreeNodeIdProvider nodeIdProvider, String nodeId) {
+        this.writer = writer;
+        this.nodeIdProvider = nodeIdProvider;
+        this.nodeId = nodeId;
+        indexConstructorUtil = new IndexConstructorUtil();
+        int threads = getIndexThreads();
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "vxquery-index-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        // Bound the queued files so the directory walk does not run far ahead of the indexing threads.
+        pending = new Semaphore(threads * TASKS_PER_THREAD);
+        failure = new AtomicReference<>();
+        workers = new ThreadLocal<Worker>() {
+            @Override
+            protected Worker initialValue() {
+                return new Worker();
+            }
+        };
+    }
+
+    /**
+     * @return the number of threads used to index the files of a collection.
+     */
+    public static int getIndexThreads() {
+        int threads = Integer.parseInt(System.getProperty(INDEX_THREADS_PROPERTY, "-1"));
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Create a writer configuration for bulk loads: a large RAM buffer keeps the number of flushed segments low and
+     * more segments are merged at once.
+     */
+    public static IndexWriterConfig createIndexWriterConfig(Analyzer analyzer, OpenMode openMode) {
+        IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
+        iwc.setOpenMode(openMode);
+        double ramBuffer = Double.parseDouble(
+                System.getProperty(INDEX_RAM_BUFFER_PROPERTY, Double.toString(DEFAULT_RAM_BUFFER_MB)));
+        iwc.setRAMBufferSizeMB(ramBuffer);
+        TieredMergePolicy mergePolicy = new TieredMergePolicy();
+        mergePolicy.setSegmentsPerTier(SEGMENTS_PER_TIER);
+        iwc.setMergePolicy(mergePolicy);
+        return iwc;
+    }
+
+    /**
+     * Queue a file to be indexed.
+     *
+     * @param file
+     *            : XML file
+     * @param replaced
+     *            : Term of the documents replaced by the new document, or null
+     * @param listener
+     *            : Called after the document was added, or null
+     * @throws IOException
+     *             : If indexing a previous file failed
+     */
+    public void addFile(File file, Term replaced, IIndexedFileListener listener) throws IOException {
+        addFile(file, null, replaced, listener);
+    }
+
+    /**
+     * Queue a file to be indexed if the filter accepts it. The filter runs on the indexing thread, so checks that
+     * read the file do not hold up the directory walk.
+     *
+     * @param file
+     *            : XML file
+     * @param filter
+     *            : Decides whether the file is indexed, or null to index it
+     * @param replaced
+     *            : Term of the documents replaced by the new document, or null
+     * @param listener
+     *            : Called after the document was added, or null
+     * @throws IOException
+     *             : If indexing a previous file failed
+     */
+    public void addFile(final File file, final IIndexedFileFilter filter, final Term replaced,
+            final IIndexedFileListener listener) throws IOException {
+        checkFailure();
+        try {
+            pending.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (failure.get() == null && (filter == null || filter.accept(file))) {
+                        workers.get().index(file, replaced);
+                        if (listener != null) {
+                            listener.indexed(file);
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    pending.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait for all queued files and stop the indexing threads.
+     *
+     * @throws IOException
+     *             : If indexing a file failed
+     */
+    public void finish() throws IOException {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Keep waiting for large files.
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure.get();
+        if (t != null) {
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            throw new IOException(t);
+        }
+    }
+
+    /**
+     * Parsing state of one indexing thread.
+     */
+    private class Worker {
+        private final ByteBufferInputStream bbis = new ByteBufferInputStream();
+        private final DataInputStream di = new DataInputStream(bbis);
+        private final ArrayBackedValueStorage abvsFileNode = new ArrayBackedValueStorage();
+        private final TaggedValuePointable nodep = (TaggedValuePointable) TaggedValuePointable.FACTORY
+                .createPointable();
+
+        void index(File file, Term replaced) throws IOException {
+            if (replaced != null) {
+                writer.deleteDocuments(replaced);
+            }
+            abvsFileNode.reset();
+            indexConstructorUtil
+                    .getIndexBuilder(file, writer, nodep, abvsFileNode, nodeIdProvider, bbis, di, nodeId)
+                    .printStart();
+        }
+    }
+}
@@ -19,7 +19,10 @@ package org.apache.vxquery.runtime.functions.index;
 import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
 import org.apache.hyracks.api.context.IHyracksTaskContext;
 import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.hyracks.data.std.util.GrowableArray;
+import org.apache.hyracks.data.std.util.UTF8StringBuilder;
 import org.apache.hyracks.dataflow.common.comm.util.ByteBufferInputStream;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
@@ -32,9 +35,20 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.atomic.CodedQNamePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.DocumentNodePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.ElementNodePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable;
+import org.apache.vxquery.datamodel.builders.nodes.DocumentNodeBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.index.IndexAttributes;
+import org.apache.vxquery.runtime.functions.index.updateIndex.Constants;
+import org.apache.vxquery.runtime.functions.util.FunctionHelper;
 import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
 import org.apache.vxquery.xmlparser.SAXContentHandler;
 import org.apache.vxquery.xmlparser.TreeNodeIdProvider;
@@ -42,12 +56,18 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
 import java.io.DataInputStream;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 public class VXQueryIndexReader {
+    private static final int PAGE_SIZE = 10000;
+    private static final Set<String> TREE_FIELDS = Collections.singleton(Constants.FIELD_TREE);
 
     private ArrayBackedValueStorage nodeAbvs = new ArrayBackedValueStorage();
 
@@ -63,11 +83,28 @@ public class VXQueryIndexReader {
     private IndexSearcher searcher;
     private QueryParser parser;
     private ScoreDoc[] hits;
+    private ScoreDoc lastHit;
+    private boolean lastPage;
     private SAXContentHandler handler;
     private Query query;
     private Document doc;
     private List<IndexableField> fields;
     private IHyracksTaskContext ctx;
+    private ITreeNodeIdProvider nodeIdProvider;
+
+    // Reading the stored node trees
+    private byte[][] pathSteps;
+    private int[] pathCodes;
+    private final UTF8StringPointable stepp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+    private final TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final NodeTreePointable ntp = (NodeTreePointable) NodeTreePointable.FACTORY.createPointable();
+    private final DocumentNodePointable dnp = (DocumentNodePointable) DocumentNodePointable.FACTORY
+            .createPointable();
+    private final ElementNodePointable enp = (ElementNodePointable) ElementNodePointable.FACTORY.createPointable();
+    private final CodedQNamePointable cqp = (CodedQNamePointable) CodedQNamePointable.FACTORY.createPointable();
+    private SequencePointable[] childrenSeqs;
+    private TaggedValuePointable[] childTvps;
+    private final DocumentNodeBuilder docb = new DocumentNodeBuilder();
 
     public VXQueryIndexReader(IHyracksTaskContext context, String indexPath, String elementPath) {
         this.ctx = context;
@@ -78,17 +115,29 @@ public class VXQueryIndexReader {
     public boolean step(IPointable result) throws AlgebricksException {
         /*each step will create a tuple for a single xml file
         * This is done using the parse function
-        * checkoverflow is used throughout. This is because memory might not be
-        * able to hold all of the results at once, so we return 1 million at
-        * a time and check when we need to get more
+        * The hits are read one page at a time, so memory only holds
+        * a single page no matter how many documents match
         */
+        try {
+            if (indexPlace >= indexLength && !nextPage()) {
+                return false;
+            }
+        } catch (IOException e) {
+            throw new AlgebricksException(e);
+        }
         if (indexPlace < indexLength) {
             nodeAbvs.reset();
             try {
-                //TODO: now we get back the entire document
-                doc = searcher.doc(hits[indexPlace].doc);
-                fields = doc.getFields();
-                parse(nodeAbvs);
+                doc = searcher.doc(hits[indexPlace].doc, TREE_FIELDS);
+                BytesRef tree = doc.getBinaryValue(Constants.FIELD_TREE);
+                if (tree != null) {
+                    copyElements(tree, nodeAbvs);
+                } else {
+                    // Indexes without stored node trees are rebuilt from the items.
+                    doc = searcher.doc(hits[indexPlace].doc);
+                    fields = doc.getFields();
+                    parse(nodeAbvs);
+                }
             } catch (IOException e) {
                 throw new AlgebricksException(e);
             }
@@ -102,7 +151,7 @@ public class VXQueryIndexReader {
     public void init() throws SystemException {
 
         int partition = ctx.getTaskAttemptId().getTaskId().getPartition();
-        ITreeNodeIdProvider nodeIdProvider = new TreeNodeIdProvider((short) partition);
+        nodeIdProvider = new TreeNodeIdProvider((short) partition);
         handler = new SAXContentHandler(false, nodeIdProvider, true);
 
         nodeAbvs.reset();
@@ -125,26 +174,144 @@ public class VXQueryIndexReader {
         String queryString = elementPath.replaceAll("/", ".");
         queryString = "item:" + queryString + "*";
 
+        setPathSteps();
+
         int lastslash = elementPath.lastIndexOf("/");
         elementPath = elementPath.substring(0, lastslash) + ":" + elementPath.substring(lastslash + 1);
         elementPath = elementPath.replaceAll("/", ".") + ".element";
 
-        TopDocs results = null;
         try {
             query = parser.parse(queryString);
-
-            //TODO: Right now it only returns 1000000 results
-            results = searcher.search(query, 1000000);
-
         } catch (Exception e) {
             throw new SystemException(null);
         }
 
+        lastHit = null;
+        lastPage = false;
+        indexPlace = 0;
+        indexLength = 0;
+    }
+
+    /**
+     * Read the next page of hits after the last hit returned.
+     *
+     * @return false if there are no more hits
+     */
+    private boolean nextPage() throws IOException {
+        if (lastPage) {
+            return false;
+        }
+        TopDocs results = searcher.searchAfter(lastHit, query, PAGE_SIZE);
         hits = results.scoreDocs;
-        System.out.println("found: " + results.totalHits);
         indexPlace = 0;
         indexLength = hits.length;
+        lastPage = hits.length < PAGE_SIZE;
+        if (indexLength == 0) {
+            return false;
+        }
+        lastHit = hits[indexLength - 1];
+        return true;
+    }
 
+    private void setPathSteps() throws SystemException {
+        List<String> steps = new ArrayList<String>();
+        for (String step : elementPath.split("/")) {
+            if (!step.isEmpty()) {
+                steps.add(step);
+            }
+        }
+        pathSteps = new byte[steps.size()][];
+        pathCodes = new int[steps.size()];
+        childrenSeqs = new SequencePointable[steps.size()];
+        childTvps = new TaggedValuePointable[steps.size()];
+        GrowableArray ga = new GrowableArray();
+        UTF8StringBuilder sb = new UTF8StringBuilder();
+        try {
+            for (int i = 0; i < steps.size(); ++i) {
+                FunctionHelper.stringToGrowableArray(steps.get(i), ga, sb, steps.get(i).length());
+                pathSteps[i] = Arrays.copyOf(ga.getByteArray(), ga.getLength());
+                childrenSeqs[i] = (SequencePointable) SequencePointable.FACTORY.createPointable();
+                childTvps[i] = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+            }
+        } catch (IOException e) {
+            throw new SystemException(ErrorCode.SYSE0001, e);
+        }
+    }
+
+    /**
+     * Copy the elements on the element path of a stored node tree into a new document. The dictionary of the stored
+     * tree is reused, so the element nodes are copied without decoding them.
+     */
+    private void copyElements(BytesRef tree, ArrayBackedValueStorage abvs) throws IOException {
+        tvp.set(tree.bytes, tree.offset, tree.length);
+        tvp.getValue(ntp);
+        if (pathSteps.length == 0) {
+            abvs.getDataOutput().write(tree.bytes, tree.offset, tree.length);
+            return;
+        }
+        boolean found = true;
+        for (int i = 0; i < pathSteps.length; ++i) {
+            stepp.set(pathSteps[i], 0, pathSteps[i].length);
+            pathCodes[i] = ntp.lookupString(stepp);
+            found &= pathCodes[i] >= 0;
+        }
+
+        DataOutput out = abvs.getDataOutput();
+        out.write(ValueTag.NODE_TREE_TAG);
+        byte header = 0;
+        if (ntp.dictionaryExists()) {
+            header |= NodeTreePointable.HEADER_DICTIONARY_EXISTS_MASK;
+        }
+        if (ntp.typeExists()) {
+            header |= NodeTreePointable.HEADER_TYPE_EXISTS_MASK;
+        }
+        if (ntp.nodeIdExists()) {
+            header |= NodeTreePointable.HEADER_NODEID_EXISTS_MASK;
+        }
+        out.write(header);
+        if (ntp.nodeIdExists()) {
+            out.writeLong(nodeIdProvider.getId());
+        }
+        out.write(ntp.getByteArray(), ntp.getDictionaryOffset(), ntp.getDictionarySize());
+        ntp.getRootNode(tvp);
+        if (tvp.getTag() != ValueTag.DOCUMENT_NODE_TAG) {
+            throw new IOException("Stored node tree is not a document.");
+        }
+        tvp.getValue(dnp);
+        docb.reset(abvs);
+        if (ntp.nodeIdExists()) {
+            docb.setLocalNodeId(dnp.getLocalNodeId(ntp));
+        }
+        docb.startChildrenChunk();
+        if (found) {
+            dnp.getContent(ntp, childrenSeqs[0]);
+            addMatchingChildren(0);
+        }
+        docb.endChildrenChunk();
+        docb.finish();
+    }
+
+    private void addMatchingChildren(int step) throws IOException {
+        SequencePointable children = childrenSeqs[step];
+        TaggedValuePointable child = childTvps[step];
+        int count = children.getByteArray() == null || children.getLength() <= 0 ? 0 : children.getEntryCount();
+        for (int i = 0; i < count; ++i) {
+            children.getEntry(i, child);
+            if (child.getTag() != ValueTag.ELEMENT_NODE_TAG) {
+                continue;
+            }
+            child.getValue(enp);
+            enp.getName(cqp);
+            if (cqp.getLocalCode() != pathCodes[step]) {
+                continue;
+            }
+            if (step == pathCodes.length - 1) {
+                docb.addChild(child);
+            } else {
+                enp.getChildrenSequence(ntp, childrenSeqs[step + 1]);
+                addMatchingChildren(step + 1);
+            }
+        }
     }
 
     public void parse(ArrayBackedValueStorage abvsFileNode) throws IOException {
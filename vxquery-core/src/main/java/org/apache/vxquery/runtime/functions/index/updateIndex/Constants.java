@@ -21,5 +21,6 @@ package org.apache.vxquery.runtime.functions.index.updateIndex;
  */
 public class Constants {
     public static String FIELD_PATH = "path";
+    public static String FIELD_TREE = "tree";
     public static String META_FILE_NAME = "vxquery_index.xml";
 }
@@ -31,9 +31,9 @@ import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
 import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
-import org.apache.vxquery.index.IndexDocumentBuilder;
 import org.apache.vxquery.runtime.functions.index.CaseSensitiveAnalyzer;
 import org.apache.vxquery.runtime.functions.index.IndexConstructorUtil;
+import org.apache.vxquery.runtime.functions.index.ParallelIndexBuilder;
 import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
 
 import java.io.DataInputStream;
@@ -108,8 +108,8 @@ public class IndexUpdater {
         sb.reset(abvs);
 
         Directory fsdir = FSDirectory.open(Paths.get(indexFolder));
-        indexWriter = new IndexWriter(fsdir, new IndexWriterConfig(new CaseSensitiveAnalyzer())
-                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        indexWriter = new IndexWriter(fsdir, ParallelIndexBuilder.createIndexWriterConfig(new CaseSensitiveAnalyzer(),
+                IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
     }
 
     /**
@@ -125,7 +125,12 @@ public class IndexUpdater {
         }
 
         //Execute update index process
-        updateIndex(collectionDirectory);
+        ParallelIndexBuilder builder = new ParallelIndexBuilder(indexWriter, nodeIdProvider, nodeId);
+        try {
+            updateIndex(collectionDirectory, builder);
+        } finally {
+            builder.finish();
+        }
 
         //Detect deleted files and execute the delete index process.
         deleteIndexOfDeletedFiles(metadataMap.keySet(), pathsFromFileList);
@@ -165,8 +170,10 @@ public class IndexUpdater {
      *
      * @param collection
      *            : Collection folder path
+     * @param builder
+     *            : Builder indexing the changed files
      */
-    private void updateIndex(File collection) throws IOException {
+    private void updateIndex(File collection, ParallelIndexBuilder builder) throws IOException {
 
         File[] list = collection.listFiles();
 
@@ -174,52 +181,50 @@ public class IndexUpdater {
         for (File file : list) {
             pathsFromFileList.add(file.getCanonicalPath());
             if (indexConstructorUtil.readableXmlFile(file.getCanonicalPath())) {
-                XmlMetadata data = metadataMap.get(file.getCanonicalPath());
-                String md5 = metaFileUtil.generateMD5(file);
-
-                abvsFileNode.reset();
-
-                IndexDocumentBuilder indexDocumentBuilder;
-                if (data != null) {
-
-                    // This case checks whether the file has been changed.
-                    // If the file has changed, delete the existing document, create a new index document and add it
-                    // to the current index.
-                    // At the same time, update the metadata for the file.
-                    if (!md5.equals(data.getMd5())) {
-
-                        //Update index corresponding to the xml file.
-                        indexWriter.deleteDocuments(new Term(Constants.FIELD_PATH, file.getCanonicalPath()));
-                        indexDocumentBuilder = indexConstructorUtil.getIndexBuilder(file, indexWriter, nodep,
-                                abvsFileNode, nodeIdProvider, bbis, di, nodeId);
-                        indexDocumentBuilder.printStart();
-
-                        if (LOGGER.isDebugEnabled()) {
-                            LOGGER.log(Level.DEBUG, "New Index is created for updated file " + file.getCanonicalPath());
-                        }
-
-                        //Update the metadata map.
-                        XmlMetadata metadata = updateEntry(file, data);
-                        metadataMap.replace(file.getCanonicalPath(), metadata);
+                // The content of the file is hashed on the indexing thread.
+                ChangedFile changedFile = new ChangedFile(metadataMap.get(file.getCanonicalPath()));
+                Term replaced = changedFile.data == null ? null
+                        : new Term(Constants.FIELD_PATH, file.getCanonicalPath());
+                builder.addFile(file, changedFile, replaced, changedFile);
+            } else if (file.isDirectory()) {
+                updateIndex(file, builder);
+            }
+        }
+    }
 
-                    }
-                } else {
+    /**
+     * Checks on the indexing thread whether a file is new or has changed since it was indexed, and updates the
+     * metadata map once its new document was added.
+     */
+    private class ChangedFile implements ParallelIndexBuilder.IIndexedFileFilter,
+            ParallelIndexBuilder.IIndexedFileListener {
+        private final XmlMetadata data;
+        private String md5;
 
-                    // In this case, the xml file has not added to the index. (It is a newly added file)
-                    // Therefore generate a new index for this file and add it to the existing index.
-                    indexDocumentBuilder = indexConstructorUtil.getIndexBuilder(file, indexWriter, nodep, abvsFileNode,
-                            nodeIdProvider, bbis, di, nodeId);
-                    indexDocumentBuilder.printStart();
+        ChangedFile(XmlMetadata data) {
+            this.data = data;
+        }
 
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.log(Level.DEBUG, "New Index is created for newly added file " + file.getCanonicalPath());
-                    }
+        @Override
+        public boolean accept(File file) throws IOException {
+            md5 = metaFileUtil.generateMD5(file);
+            // A file that is in the index and has not changed is skipped.
+            return data == null || !md5.equals(data.getMd5());
+        }
 
-                    XmlMetadata metadata = updateEntry(file, null);
-                    metadataMap.put(file.getCanonicalPath(), metadata);
+        @Override
+        public void indexed(File file) throws IOException {
+            XmlMetadata metadata = updateEntry(file, data, md5);
+            if (data != null) {
+                metadataMap.replace(file.getCanonicalPath(), metadata);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.log(Level.DEBUG, "New Index is created for updated file " + file.getCanonicalPath());
+                }
+            } else {
+                metadataMap.put(file.getCanonicalPath(), metadata);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.log(Level.DEBUG, "New Index is created for newly added file " + file.getCanonicalPath());
                 }
-            } else if (file.isDirectory()) {
-                updateIndex(file);
             }
         }
     }
@@ -231,19 +236,24 @@ public class IndexUpdater {
      *            : XML file
      * @param metadata
      *            : Existing metadata object
+     * @param md5
+     *            : MD5 hash of the file content
      * @return : XML metadata object with updated fields.
      * @throws IOException
      *             : If getting the file info generates {@link IOException}
      */
-    private XmlMetadata updateEntry(File file, XmlMetadata metadata) throws IOException {
+    private XmlMetadata updateEntry(File file, XmlMetadata metadata, String md5) throws IOException {
 
         if (metadata == null) {
             metadata = new XmlMetadata();
         }
         metadata.setFileName(file.getName());
         metadata.setPath(file.getCanonicalPath());
-        metadata.setMd5(metaFileUtil.generateMD5(file));
-        metadata.setLastModified(sdf.format(file.lastModified()));
+        metadata.setMd5(md5);
+        // The indexing threads share the date format.
+        synchronized (sdf) {
+            metadata.setLastModified(sdf.format(file.lastModified()));
+        }
         return metadata;
     }
 
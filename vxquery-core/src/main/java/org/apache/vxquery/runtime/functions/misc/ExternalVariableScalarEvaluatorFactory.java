@@ -14,65 +14,63 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package org.apache.vxquery.runtime.functions.node;
+package org.apache.vxquery.runtime.functions.misc;
 
-import java.io.DataOutput;
+import javax.xml.namespace.QName;
 
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
 import org.apache.hyracks.api.context.IHyracksTaskContext;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.data.std.api.IPointable;
-import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.hyracks.data.std.primitive.VoidPointable;
+import org.apache.vxquery.context.DynamicContext;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
-import org.apache.vxquery.datamodel.accessors.TypedPointables;
-import org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable;
 import org.apache.vxquery.datamodel.values.ValueTag;
-import org.apache.vxquery.datamodel.values.XDMConstants;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluatorFactory;
-import org.apache.vxquery.runtime.functions.util.FunctionHelper;
 
-public class IdFromNodeScalarEvaluatorFactory extends AbstractTaggedValueArgumentScalarEvaluatorFactory {
+/**
+ * Returns the value bound to an external variable in the dynamic context of the job. The argument is the name of the
+ * variable as {uri}local, so a compiled query can run again with other values.
+ */
+public class ExternalVariableScalarEvaluatorFactory extends AbstractTaggedValueArgumentScalarEvaluatorFactory {
     private static final long serialVersionUID = 1L;
 
-    public IdFromNodeScalarEvaluatorFactory(IScalarEvaluatorFactory[] args) {
+    public ExternalVariableScalarEvaluatorFactory(IScalarEvaluatorFactory[] args) {
         super(args);
     }
 
     @Override
     protected IScalarEvaluator createEvaluator(IHyracksTaskContext ctx, IScalarEvaluator[] args)
             throws HyracksDataException {
-        final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
-        final DataOutput dOut = abvs.getDataOutput();
-        final NodeTreePointable ntp = (NodeTreePointable) NodeTreePointable.FACTORY.createPointable();
-        final TypedPointables tp = new TypedPointables();
+        final DynamicContext dCtx = (DynamicContext) ctx.getJobletContext().getGlobalJobData();
+        final UTF8StringPointable stringp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+        final VoidPointable vp = (VoidPointable) VoidPointable.FACTORY.createPointable();
 
         return new AbstractTaggedValueArgumentScalarEvaluator(args) {
+            // The name is a constant, so it is only decoded for the first tuple.
+            private QName name;
+
             @Override
             protected void evaluate(TaggedValuePointable[] args, IPointable result) throws SystemException {
-                TaggedValuePointable tvp1 = args[0];
-                // Only accept node trees as input.
-                try {
-                    int localNodeId = FunctionHelper.getLocalNodeId(tvp1, tp);
-                    if (localNodeId == -1) {
-                        XDMConstants.setEmptySequence(result);
-                    } else {
-                        tvp1.getValue(ntp);
-
-                        abvs.reset();
-                        dOut.write(ValueTag.XS_LONG_TAG);
-                        dOut.writeInt(ntp.getRootNodeId());
-                        dOut.writeInt(localNodeId);
-                        result.set(abvs);
+                if (name == null) {
+                    TaggedValuePointable tvp = args[0];
+                    if (tvp.getTag() != ValueTag.XS_STRING_TAG) {
+                        throw new SystemException(ErrorCode.FORG0006);
                     }
-                } catch (Exception e) {
-                    throw new SystemException(ErrorCode.SYSE0001, e);
+                    tvp.getValue(stringp);
+                    name = QName.valueOf(stringp.toString());
                 }
+                dCtx.lookupVariable(name, vp);
+                if (vp.getByteArray() == null) {
+                    throw new SystemException(ErrorCode.XPDY0002);
+                }
+                result.set(vp);
             }
-
         };
     }
 }
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.nodeid;
+
+import java.io.IOException;
+
+import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
+import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
+import org.apache.hyracks.api.context.IHyracksTaskContext;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.ErrorCode;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
+import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluatorFactory;
+
+/**
+ * Puts a sequence of nodes in document order or removes its duplicate nodes, using the tree and local node ids of
+ * the nodes. Sequences with atomic values or nodes without ids are returned as they are.
+ */
+public abstract class AbstractNodeIdOrderScalarEvaluatorFactory extends
+        AbstractTaggedValueArgumentScalarEvaluatorFactory {
+    private static final long serialVersionUID = 1L;
+
+    public AbstractNodeIdOrderScalarEvaluatorFactory(IScalarEvaluatorFactory[] args) {
+        super(args);
+    }
+
+    protected abstract boolean sortNodes();
+
+    protected abstract boolean removeDuplicates();
+
+    @Override
+    protected IScalarEvaluator createEvaluator(IHyracksTaskContext ctx, IScalarEvaluator[] args)
+            throws HyracksDataException {
+        final boolean sort = sortNodes();
+        final boolean distinct = removeDuplicates();
+        final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        final SequenceBuilder sb = new SequenceBuilder();
+        final SequencePointable seqp = (SequencePointable) SequencePointable.FACTORY.createPointable();
+        final TaggedValuePointable itemp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        final NodeIdKey nodeKey = new NodeIdKey();
+        final NodeIdSorter sorter = new NodeIdSorter();
+
+        return new AbstractTaggedValueArgumentScalarEvaluator(args) {
+            private boolean[] first = new boolean[0];
+
+            @Override
+            protected void evaluate(TaggedValuePointable[] args, IPointable result) throws SystemException {
+                TaggedValuePointable tvp = args[0];
+                if (tvp.getTag() != ValueTag.SEQUENCE_TAG) {
+                    result.set(tvp);
+                    return;
+                }
+                tvp.getValue(seqp);
+                int seqLen = seqp.getEntryCount();
+                sorter.reset(seqLen);
+                boolean inOrder = true;
+                for (int i = 0; i < seqLen; ++i) {
+                    seqp.getEntry(i, itemp);
+                    if (!nodeKey.set(itemp)) {
+                        result.set(tvp);
+                        return;
+                    }
+                    // Nodes that are already in document order are common, for example from a path step.
+                    if (i > 0 && inOrder) {
+                        int c = sorter.compare(i - 1, nodeKey.getTreeId(), nodeKey.getLocalId());
+                        inOrder = c < 0 || (c == 0 && !distinct);
+                    }
+                    sorter.add(nodeKey.getTreeId(), nodeKey.getLocalId(), i);
+                }
+                if (inOrder) {
+                    result.set(tvp);
+                    return;
+                }
+                sorter.sort();
+                try {
+                    abvs.reset();
+                    sb.reset(abvs);
+                    if (sort) {
+                        for (int i = 0; i < seqLen; ++i) {
+                            if (!distinct || i == 0 || !sorter.isSameNode(i, i - 1)) {
+                                seqp.getEntry(sorter.getPosition(i), itemp);
+                                sb.addItem(itemp);
+                            }
+                        }
+                    } else {
+                        // Keep the first of the equal nodes in the input order. The sort is stable.
+                        if (first.length < seqLen) {
+                            first = new boolean[seqLen];
+                        }
+                        for (int i = 0; i < seqLen; ++i) {
+                            first[sorter.getPosition(i)] = i == 0 || !sorter.isSameNode(i, i - 1);
+                        }
+                        for (int i = 0; i < seqLen; ++i) {
+                            if (first[i]) {
+                                seqp.getEntry(i, itemp);
+                                sb.addItem(itemp);
+                            }
+                        }
+                    }
+                    sb.finish();
+                    result.set(abvs);
+                } catch (IOException e) {
+                    throw new SystemException(ErrorCode.SYSE0001, e);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.nodeid;
+
+import java.io.IOException;
+
+import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
+import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
+import org.apache.hyracks.api.context.IHyracksTaskContext;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.ErrorCode;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
+import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluatorFactory;
+
+/**
+ * Keeps the nodes of the first argument that are, or are not, in the second argument. Nodes are identified by their
+ * node ids. The order of the first argument is kept.
+ */
+public abstract class AbstractNodeSetScalarEvaluatorFactory extends AbstractTaggedValueArgumentScalarEvaluatorFactory {
+    private static final long serialVersionUID = 1L;
+
+    public AbstractNodeSetScalarEvaluatorFactory(IScalarEvaluatorFactory[] args) {
+        super(args);
+    }
+
+    protected abstract boolean keepCommonNodes();
+
+    @Override
+    protected IScalarEvaluator createEvaluator(IHyracksTaskContext ctx, IScalarEvaluator[] args)
+            throws HyracksDataException {
+        final boolean keepCommon = keepCommonNodes();
+        final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        final SequenceBuilder sb = new SequenceBuilder();
+        final SequencePointable seqp = (SequencePointable) SequencePointable.FACTORY.createPointable();
+        final TaggedValuePointable itemp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        final NodeIdKey nodeKey = new NodeIdKey();
+        final NodeIdSorter keys = new NodeIdSorter();
+
+        return new AbstractTaggedValueArgumentScalarEvaluator(args) {
+            @Override
+            protected void evaluate(TaggedValuePointable[] args, IPointable result) throws SystemException {
+                if (args[1].getTag() == ValueTag.SEQUENCE_TAG) {
+                    args[1].getValue(seqp);
+                    int seqLen = seqp.getEntryCount();
+                    keys.reset(seqLen);
+                    for (int i = 0; i < seqLen; ++i) {
+                        seqp.getEntry(i, itemp);
+                        setKey(itemp);
+                        keys.add(nodeKey.getTreeId(), nodeKey.getLocalId(), i);
+                    }
+                } else {
+                    keys.reset(1);
+                    setKey(args[1]);
+                    keys.add(nodeKey.getTreeId(), nodeKey.getLocalId(), 0);
+                }
+                keys.sort();
+                try {
+                    abvs.reset();
+                    sb.reset(abvs);
+                    if (args[0].getTag() == ValueTag.SEQUENCE_TAG) {
+                        args[0].getValue(seqp);
+                        int seqLen = seqp.getEntryCount();
+                        for (int i = 0; i < seqLen; ++i) {
+                            seqp.getEntry(i, itemp);
+                            addIfKept(itemp);
+                        }
+                    } else {
+                        addIfKept(args[0]);
+                    }
+                    sb.finish();
+                    result.set(abvs);
+                } catch (IOException e) {
+                    throw new SystemException(ErrorCode.SYSE0001, e);
+                }
+            }
+
+            private void addIfKept(TaggedValuePointable tvp) throws SystemException, IOException {
+                setKey(tvp);
+                if (keys.contains(nodeKey.getTreeId(), nodeKey.getLocalId()) == keepCommon) {
+                    sb.addItem(tvp);
+                }
+            }
+
+            private void setKey(TaggedValuePointable tvp) throws SystemException {
+                if (tvp.getTag() != ValueTag.NODE_TREE_TAG) {
+                    throw new SystemException(ErrorCode.XPTY0004);
+                }
+                if (!nodeKey.set(tvp)) {
+                    // Nodes without ids have no identity to compare.
+                    throw new SystemException(ErrorCode.SYSE0001);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.nodeid;
+
+import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
+
+/**
+ * Removes duplicate nodes and keeps the first of the equal nodes in place.
+ */
+public class DistinctNodesOrAtomicsScalarEvaluatorFactory extends AbstractNodeIdOrderScalarEvaluatorFactory {
+    private static final long serialVersionUID = 1L;
+
+    public DistinctNodesOrAtomicsScalarEvaluatorFactory(IScalarEvaluatorFactory[] args) {
+        super(args);
+    }
+
+    @Override
+    protected boolean sortNodes() {
+        return false;
+    }
+
+    @Override
+    protected boolean removeDuplicates() {
+        return true;
+    }
+}
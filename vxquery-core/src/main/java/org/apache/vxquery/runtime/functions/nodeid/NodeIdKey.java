@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.nodeid;
+
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.values.ValueTag;
+
+/**
+ * The key of a node made of its tree id and its local node id. Keys compare in document order and are equal for the
+ * same node.
+ */
+public class NodeIdKey {
+    private final TaggedValuePointable nodep = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final TypedPointables tp = new TypedPointables();
+    private long treeId;
+    private int localId;
+
+    /**
+     * @return false if the item is not a node with an id.
+     */
+    public boolean set(TaggedValuePointable tvp) {
+        if (tvp.getTag() != ValueTag.NODE_TREE_TAG) {
+            return false;
+        }
+        tvp.getValue(tp.ntp);
+        if (!tp.ntp.nodeIdExists()) {
+            return false;
+        }
+        tp.ntp.getRootNode(nodep);
+        int localNodeId;
+        switch (nodep.getTag()) {
+            case ValueTag.ATTRIBUTE_NODE_TAG:
+                nodep.getValue(tp.anp);
+                localNodeId = tp.anp.getLocalNodeId(tp.ntp);
+                break;
+            case ValueTag.COMMENT_NODE_TAG:
+            case ValueTag.TEXT_NODE_TAG:
+                nodep.getValue(tp.tocnp);
+                localNodeId = tp.tocnp.getLocalNodeId(tp.ntp);
+                break;
+            case ValueTag.DOCUMENT_NODE_TAG:
+                nodep.getValue(tp.dnp);
+                localNodeId = tp.dnp.getLocalNodeId(tp.ntp);
+                break;
+            case ValueTag.ELEMENT_NODE_TAG:
+                nodep.getValue(tp.enp);
+                localNodeId = tp.enp.getLocalNodeId(tp.ntp);
+                break;
+            case ValueTag.PI_NODE_TAG:
+                nodep.getValue(tp.pinp);
+                localNodeId = tp.pinp.getLocalNodeId(tp.ntp);
+                break;
+            default:
+                return false;
+        }
+        if (localNodeId < 0) {
+            return false;
+        }
+        treeId = tp.ntp.getRootNodeId();
+        localId = localNodeId;
+        return true;
+    }
+
+    public long getTreeId() {
+        return treeId;
+    }
+
+    public int getLocalId() {
+        return localId;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.nodeid;
+
+/**
+ * Stable LSD radix sort of node keys and the positions of their items. A key is a tree id and a local node id.
+ * Keys are sorted by the unsigned tree id and then the local node id, which puts them in document order. Byte
+ * positions that are the same for all keys, such as the tree id of nodes from one document, are skipped.
+ */
+public class NodeIdSorter {
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int[] counts = new int[RADIX];
+    private long[] treeIds = new long[INITIAL_CAPACITY];
+    private int[] localIds = new int[INITIAL_CAPACITY];
+    private int[] positions = new int[INITIAL_CAPACITY];
+    private long[] tempTreeIds = new long[INITIAL_CAPACITY];
+    private int[] tempLocalIds = new int[INITIAL_CAPACITY];
+    private int[] tempPositions = new int[INITIAL_CAPACITY];
+    private int size;
+
+    public void reset(int capacity) {
+        if (treeIds.length < capacity) {
+            treeIds = new long[capacity];
+            localIds = new int[capacity];
+            positions = new int[capacity];
+            tempTreeIds = new long[capacity];
+            tempLocalIds = new int[capacity];
+            tempPositions = new int[capacity];
+        }
+        size = 0;
+    }
+
+    public void add(long treeId, int localId, int position) {
+        treeIds[size] = treeId;
+        localIds[size] = localId;
+        positions[size] = position;
+        ++size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTreeId(int index) {
+        return treeIds[index];
+    }
+
+    public int getLocalId(int index) {
+        return localIds[index];
+    }
+
+    public int getPosition(int index) {
+        return positions[index];
+    }
+
+    /**
+     * @return the order of the key at index relative to the given key.
+     */
+    public int compare(int index, long treeId, int localId) {
+        int c = Long.compareUnsigned(treeIds[index], treeId);
+        return c != 0 ? c : Integer.compareUnsigned(localIds[index], localId);
+    }
+
+    public boolean isSameNode(int index1, int index2) {
+        return treeIds[index1] == treeIds[index2] && localIds[index1] == localIds[index2];
+    }
+
+    /**
+     * Binary search over the sorted keys.
+     */
+    public boolean contains(long treeId, int localId) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compare(mid, treeId, localId);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void sort() {
+        if (size == 0) {
+            return;
+        }
+        for (int shift = 0; shift < Integer.SIZE; shift += RADIX_BITS) {
+            sortByte(false, shift);
+        }
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            sortByte(true, shift);
+        }
+    }
+
+    private int getByte(boolean tree, int index, int shift) {
+        return (tree ? (int) (treeIds[index] >>> shift) : localIds[index] >>> shift) & (RADIX - 1);
+    }
+
+    private void sortByte(boolean tree, int shift) {
+        for (int i = 0; i < RADIX; ++i) {
+            counts[i] = 0;
+        }
+        for (int i = 0; i < size; ++i) {
+            ++counts[getByte(tree, i, shift)];
+        }
+        if (counts[getByte(tree, 0, shift)] == size) {
+            return;
+        }
+        int offset = 0;
+        for (int i = 0; i < RADIX; ++i) {
+            int count = counts[i];
+            counts[i] = offset;
+            offset += count;
+        }
+        for (int i = 0; i < size; ++i) {
+            int index = counts[getByte(tree, i, shift)]++;
+            tempTreeIds[index] = treeIds[i];
+            tempLocalIds[index] = localIds[i];
+            tempPositions[index] = positions[i];
+        }
+        long[] swapTreeIds = treeIds;
+        treeIds = tempTreeIds;
+        tempTreeIds = swapTreeIds;
+        int[] swapLocalIds = localIds;
+        localIds = tempLocalIds;
+        tempLocalIds = swapLocalIds;
+        int[] swapPositions = positions;
+        positions = tempPositions;
+        tempPositions = swapPositions;
+    }
+}
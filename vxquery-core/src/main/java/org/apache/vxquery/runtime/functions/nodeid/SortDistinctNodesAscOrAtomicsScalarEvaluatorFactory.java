@@ -16,18 +16,12 @@
  */
 package org.apache.vxquery.runtime.functions.nodeid;
 
-import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
-import org.apache.hyracks.api.context.IHyracksTaskContext;
-import org.apache.hyracks.api.exceptions.HyracksDataException;
-import org.apache.hyracks.data.std.api.IPointable;
-import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
-import org.apache.vxquery.exceptions.SystemException;
-import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
-import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluatorFactory;
 
-public class SortDistinctNodesAscOrAtomicsScalarEvaluatorFactory extends
-        AbstractTaggedValueArgumentScalarEvaluatorFactory {
+/**
+ * Puts nodes in document order and removes duplicate nodes.
+ */
+public class SortDistinctNodesAscOrAtomicsScalarEvaluatorFactory extends AbstractNodeIdOrderScalarEvaluatorFactory {
     private static final long serialVersionUID = 1L;
 
     public SortDistinctNodesAscOrAtomicsScalarEvaluatorFactory(IScalarEvaluatorFactory[] args) {
@@ -35,13 +29,12 @@ public class SortDistinctNodesAscOrAtomicsScalarEvaluatorFactory extends
     }
 
     @Override
-    protected IScalarEvaluator createEvaluator(IHyracksTaskContext ctx, IScalarEvaluator[] args)
-            throws HyracksDataException {
-        return new AbstractTaggedValueArgumentScalarEvaluator(args) {
-            @Override
-            protected void evaluate(TaggedValuePointable[] args, IPointable result) throws SystemException {
-                result.set(args[0]);
-            }
-        };
+    protected boolean sortNodes() {
+        return true;
+    }
+
+    @Override
+    protected boolean removeDuplicates() {
+        return true;
     }
 }
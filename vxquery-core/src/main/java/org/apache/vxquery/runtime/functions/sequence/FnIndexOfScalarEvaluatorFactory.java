@@ -26,19 +26,15 @@ import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.data.std.api.IPointable;
 import org.apache.hyracks.data.std.primitive.VoidPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
-import org.apache.vxquery.context.DynamicContext;
 import org.apache.vxquery.datamodel.accessors.SequencePointable;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
-import org.apache.vxquery.datamodel.accessors.TypedPointables;
 import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
+import org.apache.vxquery.datamodel.util.TaggedValueOrder;
 import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluatorFactory;
-import org.apache.vxquery.runtime.functions.comparison.AbstractValueComparisonOperation;
-import org.apache.vxquery.runtime.functions.comparison.ValueEqComparisonOperation;
-import org.apache.vxquery.runtime.functions.util.FunctionHelper;
 
 public class FnIndexOfScalarEvaluatorFactory extends AbstractTaggedValueArgumentScalarEvaluatorFactory {
     private static final long serialVersionUID = 1L;
@@ -55,12 +51,7 @@ public class FnIndexOfScalarEvaluatorFactory extends AbstractTaggedValueArgument
         final DataOutput dOutInner = abvsInner.getDataOutput();
         final SequenceBuilder sb = new SequenceBuilder();
         final SequencePointable seq = (SequencePointable) SequencePointable.FACTORY.createPointable();
-        final DynamicContext dCtx = (DynamicContext) ctx.getJobletContext().getGlobalJobData();
-        final AbstractValueComparisonOperation aOp = new ValueEqComparisonOperation();
-        final TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
         final VoidPointable p = (VoidPointable) VoidPointable.FACTORY.createPointable();
-        final TypedPointables tp1 = new TypedPointables();
-        final TypedPointables tp2 = new TypedPointables();
 
         return new AbstractTaggedValueArgumentScalarEvaluator(args) {
             @Override
@@ -71,13 +62,16 @@ public class FnIndexOfScalarEvaluatorFactory extends AbstractTaggedValueArgument
                     TaggedValuePointable tvp1 = args[0];
                     TaggedValuePointable tvp2 = args[1];
 
-                    if (tvp1.getTag() == ValueTag.SEQUENCE_TAG) {
+                    // NaN is not equal to itself. Values of other types never equal the search value.
+                    if (TaggedValueOrder.getOrderClass(tvp2.getByteArray(), tvp2.getStartOffset())
+                            == TaggedValueOrder.NAN) {
+                        // No matches.
+                    } else if (tvp1.getTag() == ValueTag.SEQUENCE_TAG) {
                         tvp1.getValue(seq);
                         int seqLen = seq.getEntryCount();
                         for (int j = 0; j < seqLen; ++j) {
                             seq.getEntry(j, p);
-                            tvp.set(p.getByteArray(), p.getStartOffset(), p.getLength());
-                            if (FunctionHelper.compareTaggedValues(aOp, tvp, tvp2, dCtx, tp1, tp2)) {
+                            if (isEqual(p, tvp2)) {
                                 abvsInner.reset();
                                 dOutInner.write(ValueTag.XS_INTEGER_TAG);
                                 dOutInner.writeLong(j + 1);
@@ -85,7 +79,7 @@ public class FnIndexOfScalarEvaluatorFactory extends AbstractTaggedValueArgument
                             }
                         }
                     } else {
-                        if (FunctionHelper.compareTaggedValues(aOp, tvp1, tvp2, dCtx, tp1, tp2)) {
+                        if (isEqual(tvp1, tvp2)) {
                             abvsInner.reset();
                             dOutInner.write(ValueTag.XS_INTEGER_TAG);
                             dOutInner.writeLong(1);
@@ -98,6 +92,11 @@ public class FnIndexOfScalarEvaluatorFactory extends AbstractTaggedValueArgument
                     throw new SystemException(ErrorCode.SYSE0001);
                 }
             }
+
+            private boolean isEqual(IPointable item, IPointable search) {
+                return TaggedValueOrder.equal(item.getByteArray(), item.getStartOffset(), item.getLength(),
+                        search.getByteArray(), search.getStartOffset(), search.getLength());
+            }
         };
     }
 }
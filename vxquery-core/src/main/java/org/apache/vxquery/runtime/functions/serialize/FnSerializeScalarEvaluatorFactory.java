@@ -16,7 +16,6 @@ package org.apache.vxquery.runtime.functions.serialize;
 
 import java.io.DataOutput;
 import java.io.IOException;
-import java.io.PrintStream;
 
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
@@ -48,7 +47,6 @@ public class FnSerializeScalarEvaluatorFactory extends AbstractTaggedValueArgume
             throws HyracksDataException {
         final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
         final ByteArrayAccessibleOutputStream baaos = new ByteArrayAccessibleOutputStream();
-        final PrintStream ps = new PrintStream(baaos);
         final XMLSerializer printer = new XMLSerializer();
         final GrowableArray ga = new GrowableArray();
         final DataOutput out = abvs.getDataOutput();
@@ -65,7 +63,7 @@ public class FnSerializeScalarEvaluatorFactory extends AbstractTaggedValueArgume
                     out.write(ValueTag.XS_STRING_TAG);
                     ga.reset();
                     sb.reset(ga, STRING_EXPECTED_LENGTH);
-                    printer.printTaggedValuePointable(ps, tvp);
+                    printer.printTaggedValuePointable(baaos, tvp);
                     sb.appendUtf8Bytes(baaos.getByteArray(), 0, baaos.size());
                     sb.finish();
                     out.write(ga.getByteArray(), 0, ga.getLength());
@@ -17,10 +17,7 @@
 package org.apache.vxquery.runtime.functions.step;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
-import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
 import org.apache.hyracks.api.context.IHyracksTaskContext;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.data.std.api.IPointable;
@@ -33,17 +30,22 @@ import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.runtime.functions.step.NodeTestFilter.INodeFilter;
 import org.apache.vxquery.types.SequenceType;
+import org.apache.vxquery.util.GrowableIntArray;
 
 public class DescendantOrSelfPathStepUnnesting extends AbstractForwardAxisPathStep {
     private boolean testSelf;
     private boolean returnSelf;
+    private boolean treeStarted;
     private int indexSeqArgs;
     private int seqArgsLength;
-    private List<Integer> indexSequence = new ArrayList<Integer>();
-    private List<Integer> returnSequence = new ArrayList<Integer>();
+    // One entry for each open children sequence from the root down to the current node.
+    private final GrowableIntArray seqStartStack = new GrowableIntArray();
+    private final GrowableIntArray seqLengthStack = new GrowableIntArray();
+    private final GrowableIntArray seqIndexStack = new GrowableIntArray();
 
     private final IntegerPointable ip = (IntegerPointable) IntegerPointable.FACTORY.createPointable();
     private final SequencePointable seqNtp = (SequencePointable) SequencePointable.FACTORY.createPointable();
+    private final SequencePointable seqItem = (SequencePointable) SequencePointable.FACTORY.createPointable();
     private final TaggedValuePointable tvpItem = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
     private final TaggedValuePointable tvpNtp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
     private final TaggedValuePointable tvpStep = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
@@ -57,10 +59,8 @@ public class DescendantOrSelfPathStepUnnesting extends AbstractForwardAxisPathSt
     }
 
     protected void init(TaggedValuePointable[] args) throws SystemException {
-        returnSelf = true;
         indexSeqArgs = 0;
-        indexSequence.add(0);
-        returnSequence.add(0);
+        treeStarted = false;
 
         if (args.length > 1) {
             isfilter = true;
@@ -87,108 +87,98 @@ public class DescendantOrSelfPathStepUnnesting extends AbstractForwardAxisPathSt
     }
 
     public boolean step(IPointable result) throws HyracksDataException {
-        if (seqArgsLength > 0) {
+        if (seqArgsLength >= 0) {
             while (indexSeqArgs < seqArgsLength) {
-                seqNtp.getEntry(indexSeqArgs, tvpNtp);
-                if (tvpNtp.getTag() != ValueTag.NODE_TREE_TAG) {
-                    String description = ErrorCode.SYSE0001 + ": " + ErrorCode.SYSE0001.getDescription();
-                    throw new HyracksDataException(description);
+                if (!treeStarted) {
+                    seqNtp.getEntry(indexSeqArgs, tvpNtp);
+                    if (tvpNtp.getTag() != ValueTag.NODE_TREE_TAG) {
+                        String description = ErrorCode.SYSE0001 + ": " + ErrorCode.SYSE0001.getDescription();
+                        throw new HyracksDataException(description);
+                    }
+                    tvpNtp.getValue(ntp);
+                    startNodeTree();
                 }
-                tvpNtp.getValue(ntp);
-                ntp.getRootNode(tvpStep);
-                if (processNodeTree(tvpStep, result)) {
+                if (stepNodeTree(result)) {
                     return true;
                 }
                 // Next node tree in sequence.
                 indexSeqArgs++;
-                returnSelf = true;
+                treeStarted = false;
             }
         } else {
             // Single node tree input.
-            ntp.getRootNode(tvpStep);
-            if (processNodeTree(tvpStep, result)) {
+            if (!treeStarted) {
+                startNodeTree();
+            }
+            if (stepNodeTree(result)) {
                 return true;
             }
         }
         return false;
     }
 
-    private boolean processNodeTree(TaggedValuePointable rootTVP, IPointable result) throws HyracksDataException {
-        if (testSelf && returnSelf) {
-            returnSelf = false;
-            tvpItem.set(rootTVP);
-            try {
-                if (!isfilter || (isfilter && filter.accept(ntp, tvpItem))) {
-                    setNodeToResult(tvpItem, result);
-                    return true;
-                }
-            } catch (IOException e) {
-                String description = ErrorCode.SYSE0001 + ": " + ErrorCode.SYSE0001.getDescription();
-                throw new HyracksDataException(description);
-            }
-        }
-        // Solve for descendants.
-        return stepNodeTree(rootTVP, 0, result);
+    private void startNodeTree() {
+        ntp.getRootNode(tvpStep);
+        returnSelf = true;
+        seqStartStack.clear();
+        seqLengthStack.clear();
+        seqIndexStack.clear();
+        pushChildren(tvpStep);
+        treeStarted = true;
     }
 
     /**
-     * Search through all tree children and children's children.
+     * Search through all tree children and children's children in document order. The stacks keep the position of
+     * the search between calls, so each call continues after the last result.
      *
-     * @param tvpInput
-     *            pointable
-     * @param level
-     *            level
      * @param result
      *            result
      * @return found result
-     * @throws AlgebricksException
+     * @throws HyracksDataException
      *             Could not save result.
      */
-    protected boolean stepNodeTree(TaggedValuePointable tvpInput, int level, IPointable result)
-            throws HyracksDataException {
-        // Set up next level tracking.
-        if (level + 1 > indexSequence.size()) {
-            indexSequence.add(0);
-            returnSequence.add(0);
-        }
-
-        SequencePointable seqItem = pp.takeOne(SequencePointable.class);
+    private boolean stepNodeTree(IPointable result) throws HyracksDataException {
         try {
-            getSequence(tvpInput, seqItem);
-            int seqLength = seqItem.getEntryCount();
-            while (indexSequence.get(level) < seqLength) {
-                // Get the next item
-                seqItem.getEntry(indexSequence.get(level), tvpItem);
-                // Check current node
-                if (indexSequence.get(level) == returnSequence.get(level)) {
-                    returnSequence.set(level, returnSequence.get(level) + 1);
-                    if (!isfilter || (isfilter && filter.accept(ntp, tvpItem))) {
-                        setNodeToResult(tvpItem, result);
-                        return true;
-                    }
-                }
-                // Check children nodes
-                if (level + 1 <= indexSequence.size()) {
-                    if (stepNodeTree(tvpItem, level + 1, result)) {
-                        return true;
-                    }
+            if (testSelf && returnSelf) {
+                returnSelf = false;
+                tvpItem.set(tvpStep);
+                if (!isfilter || filter.accept(ntp, tvpItem)) {
+                    setNodeToResult(tvpItem, result);
+                    return true;
                 }
-                indexSequence.set(level, indexSequence.get(level) + 1);
             }
-            // Reset for next node tree.
-            if (level == 0) {
-                indexSequence.set(level, 0);
-                returnSequence.set(level, 0);
-            } else {
-                indexSequence.remove(level);
-                returnSequence.remove(level);
+            while (seqIndexStack.getSize() > 0) {
+                int level = seqIndexStack.getSize() - 1;
+                int index = seqIndexStack.getArray()[level];
+                seqItem.set(ntp.getByteArray(), seqStartStack.getArray()[level], seqLengthStack.getArray()[level]);
+                if (index >= seqItem.getEntryCount()) {
+                    seqStartStack.removeLast();
+                    seqLengthStack.removeLast();
+                    seqIndexStack.removeLast();
+                    continue;
+                }
+                seqItem.getEntry(index, tvpItem);
+                seqIndexStack.getArray()[level] = index + 1;
+                // The children follow the node in document order.
+                pushChildren(tvpItem);
+                if (!isfilter || filter.accept(ntp, tvpItem)) {
+                    setNodeToResult(tvpItem, result);
+                    return true;
+                }
             }
             return false;
         } catch (IOException e) {
             String description = ErrorCode.SYSE0001 + ": " + ErrorCode.SYSE0001.getDescription();
             throw new HyracksDataException(description);
-        } finally {
-            pp.giveBack(seqItem);
+        }
+    }
+
+    private void pushChildren(TaggedValuePointable tvp) {
+        getSequence(tvp, seqItem);
+        if (seqItem.getEntryCount() > 0) {
+            seqStartStack.append(seqItem.getStartOffset());
+            seqLengthStack.append(seqItem.getLength());
+            seqIndexStack.append(0);
         }
     }
 }
@@ -37,44 +37,19 @@ public class NodeTestFilter {
         switch (nodeType.getNodeKind()) {
             case ATTRIBUTE: {
                 AttributeType aType = (AttributeType) nodeType;
-                NameTest nameTest = aType.getNameTest();
-                byte[] uri = nameTest.getUri();
-                byte[] localName = nameTest.getLocalName();
-                final UTF8StringPointable urip = (UTF8StringPointable) (uri == null ? null
-                        : UTF8StringPointable.FACTORY.createPointable());
-                final UTF8StringPointable localp = (UTF8StringPointable) (localName == null ? null
-                        : UTF8StringPointable.FACTORY.createPointable());
-                if (uri != null) {
-                    urip.set(uri, 0, uri.length);
-                }
-                if (localName != null) {
-                    localp.set(localName, 0, localName.length);
-                }
-                final UTF8StringPointable temp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+                final NameTestCodes nameTestCodes = new NameTestCodes(aType.getNameTest());
                 final AttributeNodePointable anp = (AttributeNodePointable) AttributeNodePointable.FACTORY
                         .createPointable();
                 final CodedQNamePointable cqp = (CodedQNamePointable) CodedQNamePointable.FACTORY.createPointable();
                 filter = new INodeFilter() {
                     @Override
                     public boolean accept(NodeTreePointable ntp, TaggedValuePointable tvp) {
-                        if (tvp.getTag() != ValueTag.ATTRIBUTE_NODE_TAG) {
+                        if (tvp.getTag() != ValueTag.ATTRIBUTE_NODE_TAG || !nameTestCodes.inTree(ntp)) {
                             return false;
                         }
                         tvp.getValue(anp);
                         anp.getName(cqp);
-                        if (urip != null) {
-                            ntp.getString(cqp.getNamespaceCode(), temp);
-                            if (urip.compareTo(temp) != 0) {
-                                return false;
-                            }
-                        }
-                        if (localp != null) {
-                            ntp.getString(cqp.getLocalCode(), temp);
-                            if (localp.compareTo(temp) != 0) {
-                                return false;
-                            }
-                        }
-                        return true;
+                        return nameTestCodes.matches(cqp);
                     }
                 };
                 break;
@@ -100,43 +75,18 @@ public class NodeTestFilter {
 
             case ELEMENT: {
                 ElementType eType = (ElementType) nodeType;
-                NameTest nameTest = eType.getNameTest();
-                byte[] uri = nameTest.getUri();
-                byte[] localName = nameTest.getLocalName();
-                final UTF8StringPointable urip = (UTF8StringPointable) (uri == null ? null
-                        : UTF8StringPointable.FACTORY.createPointable());
-                final UTF8StringPointable localp = (UTF8StringPointable) (localName == null ? null
-                        : UTF8StringPointable.FACTORY.createPointable());
-                if (uri != null) {
-                    urip.set(uri, 0, uri.length);
-                }
-                if (localName != null) {
-                    localp.set(localName, 0, localName.length);
-                }
-                final UTF8StringPointable temp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+                final NameTestCodes nameTestCodes = new NameTestCodes(eType.getNameTest());
                 final ElementNodePointable enp = (ElementNodePointable) ElementNodePointable.FACTORY.createPointable();
                 final CodedQNamePointable cqp = (CodedQNamePointable) CodedQNamePointable.FACTORY.createPointable();
                 filter = new INodeFilter() {
                     @Override
                     public boolean accept(NodeTreePointable ntp, TaggedValuePointable tvp) {
-                        if (tvp.getTag() != ValueTag.ELEMENT_NODE_TAG) {
+                        if (tvp.getTag() != ValueTag.ELEMENT_NODE_TAG || !nameTestCodes.inTree(ntp)) {
                             return false;
                         }
                         tvp.getValue(enp);
                         enp.getName(cqp);
-                        if (urip != null) {
-                            ntp.getString(cqp.getNamespaceCode(), temp);
-                            if (urip.compareTo(temp) != 0) {
-                                return false;
-                            }
-                        }
-                        if (localp != null) {
-                            ntp.getString(cqp.getLocalCode(), temp);
-                            if (localp.compareTo(temp) != 0) {
-                                return false;
-                            }
-                        }
-                        return true;
+                        return nameTestCodes.matches(cqp);
                     }
                 };
                 break;
@@ -173,6 +123,54 @@ public class NodeTestFilter {
         return filter;
     }
 
+    /**
+     * The dictionary codes of a name test in the current node tree. The codes are looked up once per tree, after
+     * that a name matches when its codes are the same. A tree without the names has no matching nodes.
+     */
+    private static class NameTestCodes {
+        private final UTF8StringPointable urip;
+        private final UTF8StringPointable localp;
+        private NodeTreePointable tree;
+        private int treeSetCount;
+        private boolean namesExist;
+        private int uriCode;
+        private int localCode;
+
+        NameTestCodes(NameTest nameTest) {
+            urip = toPointable(nameTest.getUri());
+            localp = toPointable(nameTest.getLocalName());
+        }
+
+        private static UTF8StringPointable toPointable(byte[] name) {
+            if (name == null) {
+                return null;
+            }
+            UTF8StringPointable utf8sp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+            utf8sp.set(name, 0, name.length);
+            return utf8sp;
+        }
+
+        boolean inTree(NodeTreePointable ntp) {
+            if (ntp != tree || ntp.getSetCount() != treeSetCount) {
+                tree = ntp;
+                treeSetCount = ntp.getSetCount();
+                uriCode = urip == null ? -1 : lookup(ntp, urip);
+                localCode = localp == null ? -1 : lookup(ntp, localp);
+                namesExist = (urip == null || uriCode >= 0) && (localp == null || localCode >= 0);
+            }
+            return namesExist;
+        }
+
+        private static int lookup(NodeTreePointable ntp, UTF8StringPointable name) {
+            return ntp.dictionaryExists() ? ntp.lookupString(name) : -1;
+        }
+
+        boolean matches(CodedQNamePointable cqp) {
+            return (urip == null || cqp.getNamespaceCode() == uriCode)
+                    && (localp == null || cqp.getLocalCode() == localCode);
+        }
+    }
+
     public interface INodeFilter {
         public boolean accept(NodeTreePointable ntp, TaggedValuePointable tvp);
     }
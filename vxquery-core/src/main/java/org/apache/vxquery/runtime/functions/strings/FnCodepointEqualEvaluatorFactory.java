@@ -45,12 +45,12 @@ public class FnCodepointEqualEvaluatorFactory extends AbstractTaggedValueArgumen
         final UTF8StringPointable stringp1 = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
         final UTF8StringPointable stringp2 = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
         final SequencePointable seqp = (SequencePointable) SequencePointable.FACTORY.createPointable();
+        final byte[] booleanResult = new byte[2];
 
         return new AbstractTaggedValueArgumentScalarEvaluator(args) {
             @Override
             protected void evaluate(TaggedValuePointable[] args, IPointable result) throws SystemException {
                 // Default result is false.
-                byte[] booleanResult = new byte[2];
                 booleanResult[0] = ValueTag.XS_BOOLEAN_TAG;
                 booleanResult[1] = 0;
 
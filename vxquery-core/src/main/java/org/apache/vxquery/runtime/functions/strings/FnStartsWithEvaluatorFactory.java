@@ -49,12 +49,12 @@ public class FnStartsWithEvaluatorFactory extends AbstractTaggedValueArgumentSca
         final ICharacterIterator charIterator2 = new UTF8StringCharacterIterator(stringp2);
         final SequencePointable seqp = (SequencePointable) SequencePointable.FACTORY.createPointable();
         final TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        final byte[] booleanResult = new byte[2];
 
         return new AbstractTaggedValueArgumentScalarEvaluator(args) {
             @Override
             protected void evaluate(TaggedValuePointable[] args, IPointable result) throws SystemException {
                 // Default result is false.
-                byte[] booleanResult = new byte[2];
                 booleanResult[0] = ValueTag.XS_BOOLEAN_TAG;
                 booleanResult[1] = 0;
 
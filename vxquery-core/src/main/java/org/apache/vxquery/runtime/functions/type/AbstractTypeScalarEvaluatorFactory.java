@@ -37,6 +37,11 @@ public abstract class AbstractTypeScalarEvaluatorFactory extends AbstractTaggedV
         super(args);
     }
 
+    @Override
+    protected boolean isDeterministic() {
+        return true;
+    }
+
     protected static abstract class AbstractTypeScalarEvaluator extends AbstractTaggedValueArgumentScalarEvaluator {
         protected final DynamicContext dCtx;
 
@@ -45,8 +50,12 @@ public abstract class AbstractTypeScalarEvaluatorFactory extends AbstractTaggedV
         private boolean first;
 
         protected AbstractTypeScalarEvaluator(IScalarEvaluator[] args, IHyracksTaskContext ctx) {
+            this(args, (DynamicContext) ctx.getJobletContext().getGlobalJobData());
+        }
+
+        protected AbstractTypeScalarEvaluator(IScalarEvaluator[] args, DynamicContext dCtx) {
             super(args);
-            dCtx = (DynamicContext) ctx.getJobletContext().getGlobalJobData();
+            this.dCtx = dCtx;
             ip = (IntegerPointable) IntegerPointable.FACTORY.createPointable();
             first = true;
         }
@@ -19,12 +19,9 @@ package org.apache.vxquery.runtime.functions.util;
 import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.util.List;
 
 import org.apache.hadoop.fs.FileSystem;
@@ -56,6 +53,7 @@ import org.apache.vxquery.runtime.functions.strings.ICharacterIterator;
 import org.apache.vxquery.runtime.functions.strings.UTF8StringCharacterIterator;
 import org.apache.vxquery.types.BuiltinTypeConstants;
 import org.apache.vxquery.types.BuiltinTypeRegistry;
+import org.apache.vxquery.util.CompressionUtil;
 import org.apache.vxquery.xmlparser.IParser;
 
 public class FunctionHelper {
@@ -1024,7 +1022,16 @@ public class FunctionHelper {
 
     public static void getIntegerPointable(TaggedValuePointable tvp, DataOutput dOut, TypedPointables tp)
             throws SystemException, IOException {
-        long value;
+        dOut.write(ValueTag.XS_INTEGER_TAG);
+        dOut.writeLong(getIntegerValue(tvp, tp));
+    }
+
+    /**
+     * Get the value of a type derived from xs:integer as a long.
+     *
+     * @return the value or 0 for other types.
+     */
+    public static long getIntegerValue(TaggedValuePointable tvp, TypedPointables tp) {
         switch (tvp.getTag()) {
             case ValueTag.XS_INTEGER_TAG:
             case ValueTag.XS_LONG_TAG:
@@ -1035,31 +1042,25 @@ public class FunctionHelper {
             case ValueTag.XS_UNSIGNED_INT_TAG:
             case ValueTag.XS_UNSIGNED_LONG_TAG:
                 tvp.getValue(tp.longp);
-                value = tp.longp.longValue();
-                break;
+                return tp.longp.longValue();
 
             case ValueTag.XS_INT_TAG:
             case ValueTag.XS_UNSIGNED_SHORT_TAG:
                 tvp.getValue(tp.intp);
-                value = tp.intp.longValue();
-                break;
+                return tp.intp.longValue();
 
             case ValueTag.XS_SHORT_TAG:
             case ValueTag.XS_UNSIGNED_BYTE_TAG:
                 tvp.getValue(tp.shortp);
-                value = tp.shortp.longValue();
-                break;
+                return tp.shortp.longValue();
 
             case ValueTag.XS_BYTE_TAG:
                 tvp.getValue(tp.bytep);
-                value = tp.bytep.longValue();
-                break;
+                return tp.bytep.longValue();
 
             default:
-                value = 0;
+                return 0;
         }
-        dOut.write(ValueTag.XS_INTEGER_TAG);
-        dOut.writeLong(value);
     }
 
     /**
@@ -1222,12 +1223,11 @@ public class FunctionHelper {
 
     public static void readInDocFromString(String fName, ByteBufferInputStream bbis, DataInputStream di,
             ArrayBackedValueStorage abvs, IParser parser) throws IOException {
-        Reader input;
         if (!fName.contains("hdfs:/")) {
             File file = new File(fName);
             if (file.exists()) {
-                input = new InputStreamReader(new FileInputStream(file));
-                parser.parse(input, abvs);
+                // The parser decodes the bytes of the document itself.
+                parser.parse(CompressionUtil.openInputStream(file), abvs);
             } else {
                 throw new FileNotFoundException(file.getAbsolutePath());
             }
@@ -1239,9 +1239,9 @@ public class FunctionHelper {
                 String fHdfsName = fName.replaceAll("hdfs:/", "");
                 Path xmlDocument = new Path(fHdfsName);
                 if (fs.exists(xmlDocument)) {
-                    InputStream in = fs.open(xmlDocument).getWrappedStream();
-                    input = new InputStreamReader(in);
-                    parser.parse(input, abvs);
+                    InputStream in = CompressionUtil.decompress(fs.open(xmlDocument).getWrappedStream(),
+                            xmlDocument.getName());
+                    parser.parse(in, abvs);
                     in.close();
                 } else {
                     throw new FileNotFoundException(xmlDocument.getName());
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.hyracks.data.std.primitive.DoublePointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.context.DynamicContext;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.ErrorCode;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.runtime.functions.arithmetic.AddOperation;
+import org.apache.vxquery.runtime.functions.cast.CastToDoubleOperation;
+
+/**
+ * Running sum of the sum and average aggregates. While all values are integers, doubles or untyped atomic values,
+ * the sum is kept in a long or a double and only written as a tagged value when it is read. Any other value, such as
+ * a decimal, a float or a duration, continues the sum as a tagged value with the add operation.
+ */
+public class SumHelper {
+    private static final int INTEGER_SUM = 0;
+    private static final int DOUBLE_SUM = 1;
+    private static final int TAGGED_SUM = 2;
+
+    private final ArithmeticHelper add;
+    private final TypedPointables tp = new TypedPointables();
+    private final CastToDoubleOperation castToDouble = new CastToDoubleOperation();
+    private final ArrayBackedValueStorage abvsDouble = new ArrayBackedValueStorage();
+    private final DataOutput dOutDouble = abvsDouble.getDataOutput();
+    private final DoublePointable doublep = (DoublePointable) DoublePointable.FACTORY.createPointable();
+    private final ArrayBackedValueStorage abvsSum = new ArrayBackedValueStorage();
+    private final DataOutput dOutSum = abvsSum.getDataOutput();
+    private final TaggedValuePointable tvpSum = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+
+    private int state;
+    private long longSum;
+    private double doubleSum;
+
+    public SumHelper(DynamicContext dCtx) {
+        add = new ArithmeticHelper(new AddOperation(), dCtx);
+    }
+
+    /**
+     * Start with the integer zero.
+     */
+    public void reset() {
+        state = INTEGER_SUM;
+        longSum = 0;
+    }
+
+    /**
+     * Start with the value itself.
+     */
+    public void set(TaggedValuePointable tvp) throws SystemException {
+        if (FunctionHelper.isDerivedFromInteger(tvp.getTag())) {
+            state = INTEGER_SUM;
+            longSum = FunctionHelper.getIntegerValue(tvp, tp);
+        } else if (tvp.getTag() == ValueTag.XS_DOUBLE_TAG) {
+            state = DOUBLE_SUM;
+            tvp.getValue(doublep);
+            doubleSum = doublep.getDouble();
+        } else {
+            state = TAGGED_SUM;
+            try {
+                abvsSum.reset();
+                dOutSum.write(tvp.getByteArray(), tvp.getStartOffset(), tvp.getLength());
+                tvpSum.set(abvsSum);
+            } catch (IOException e) {
+                throw new SystemException(ErrorCode.SYSE0001, e);
+            }
+        }
+    }
+
+    public void add(TaggedValuePointable tvp) throws SystemException {
+        int tag = tvp.getTag();
+        switch (state) {
+            case INTEGER_SUM:
+                if (FunctionHelper.isDerivedFromInteger(tag)) {
+                    longSum += FunctionHelper.getIntegerValue(tvp, tp);
+                    return;
+                }
+                if (getDouble(tvp)) {
+                    doubleSum = doublep.getDouble() + longSum;
+                    state = DOUBLE_SUM;
+                    return;
+                }
+                break;
+
+            case DOUBLE_SUM:
+                if (FunctionHelper.isDerivedFromInteger(tag)) {
+                    doubleSum += FunctionHelper.getIntegerValue(tvp, tp);
+                    return;
+                }
+                if (getDouble(tvp)) {
+                    doubleSum += doublep.getDouble();
+                    return;
+                }
+                break;
+        }
+        if (state != TAGGED_SUM) {
+            get(tvpSum);
+            state = TAGGED_SUM;
+        }
+        add.compute(tvp, tvpSum, tvpSum);
+    }
+
+    /**
+     * Set the result to the sum. The result is valid until the next change of the sum.
+     */
+    public void get(IPointable result) throws SystemException {
+        try {
+            switch (state) {
+                case INTEGER_SUM:
+                    abvsSum.reset();
+                    dOutSum.write(ValueTag.XS_INTEGER_TAG);
+                    dOutSum.writeLong(longSum);
+                    result.set(abvsSum);
+                    break;
+
+                case DOUBLE_SUM:
+                    abvsSum.reset();
+                    dOutSum.write(ValueTag.XS_DOUBLE_TAG);
+                    dOutSum.writeDouble(doubleSum);
+                    result.set(abvsSum);
+                    break;
+
+                default:
+                    result.set(tvpSum);
+            }
+        } catch (IOException e) {
+            throw new SystemException(ErrorCode.SYSE0001, e);
+        }
+    }
+
+    /**
+     * Set the double pointable to a double value or an untyped atomic value cast to a double.
+     *
+     * @return false for other types.
+     */
+    private boolean getDouble(TaggedValuePointable tvp) throws SystemException {
+        switch (tvp.getTag()) {
+            case ValueTag.XS_DOUBLE_TAG:
+                tvp.getValue(doublep);
+                return true;
+
+            case ValueTag.XS_UNTYPED_ATOMIC_TAG:
+                tvp.getValue(tp.utf8sp);
+                abvsDouble.reset();
+                try {
+                    castToDouble.convertUntypedAtomic(tp.utf8sp, dOutDouble);
+                } catch (IOException e) {
+                    throw new SystemException(ErrorCode.SYSE0001, e);
+                }
+                doublep.set(abvsDouble.getByteArray(), abvsDouble.getStartOffset() + 1,
+                        DoublePointable.TYPE_TRAITS.getFixedLength());
+                return true;
+
+            default:
+                return false;
+        }
+    }
+}
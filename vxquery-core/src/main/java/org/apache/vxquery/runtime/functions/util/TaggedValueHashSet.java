@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.util.TaggedValueHash;
+import org.apache.vxquery.datamodel.util.TaggedValueOrder;
+
+/**
+ * Open addressing hash set of tagged values. Values are equal when {@link TaggedValueOrder#equal} says so: 1 and 1.0
+ * are the same entry and so are an xs:string and an xs:untypedAtomic with the same characters. Numbers are hashed
+ * with double precision until the first xs:float arrives, then the entries are hashed again with float precision.
+ * The added values are copied into one storage that is reused after {@link #reset()}.
+ */
+public class TaggedValueHashSet {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final ArrayBackedValueStorage storage = new ArrayBackedValueStorage();
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    // Entry index plus one, zero marks a free slot.
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+    private int size;
+    private boolean floatPrecision;
+
+    public void reset() {
+        if (size > 0) {
+            Arrays.fill(table, 0);
+            size = 0;
+        }
+        floatPrecision = false;
+        storage.reset();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(IPointable value) {
+        checkPrecision(value);
+        return find(value, hash(value)) >= 0;
+    }
+
+    /**
+     * @return true if the value was not in the set yet.
+     */
+    public boolean add(IPointable value) throws IOException {
+        checkPrecision(value);
+        int hash = hash(value);
+        int slot = find(value, hash);
+        if (slot >= 0) {
+            return false;
+        }
+        if (size == starts.length) {
+            grow();
+            slot = find(value, hash);
+        }
+        starts[size] = storage.getLength();
+        lengths[size] = value.getLength();
+        hashes[size] = hash;
+        storage.getDataOutput().write(value.getByteArray(), value.getStartOffset(), value.getLength());
+        table[-slot - 1] = ++size;
+        return true;
+    }
+
+    /**
+     * @return the slot of the value, or -(free slot + 1) if the value is not in the set.
+     */
+    private int find(IPointable value, int hash) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        byte[] bytes = storage.getByteArray();
+        while (table[slot] != 0) {
+            int entry = table[slot] - 1;
+            if (hashes[entry] == hash
+                    && TaggedValueOrder.equal(bytes, starts[entry], lengths[entry], value.getByteArray(),
+                            value.getStartOffset(), value.getLength())) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    private void checkPrecision(IPointable value) {
+        if (!floatPrecision && TaggedValueOrder.isFloat(value.getByteArray(), value.getStartOffset())) {
+            floatPrecision = true;
+            byte[] bytes = storage.getByteArray();
+            for (int i = 0; i < size; ++i) {
+                hashes[i] = TaggedValueHash.hash(bytes, starts[i], lengths[i], 0, true);
+            }
+            rehash();
+        }
+    }
+
+    private void grow() {
+        int capacity = starts.length * 2;
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+        table = new int[capacity * 2];
+        rehash();
+    }
+
+    private void rehash() {
+        Arrays.fill(table, 0);
+        int mask = table.length - 1;
+        for (int i = 0; i < size; ++i) {
+            int slot = hashes[i] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+    }
+
+    private int hash(IPointable value) {
+        return TaggedValueHash.hash(value.getByteArray(), value.getStartOffset(), value.getLength(), 0, floatPrecision);
+    }
+}
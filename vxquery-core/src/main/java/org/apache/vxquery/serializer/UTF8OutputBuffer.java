@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.serializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable buffer of the UTF-8 bytes of serialized items. Strings are copied from their stored bytes in runs. Only
+ * the characters that are escaped in XML, the two byte encoding of the zero character and surrogate pairs are
+ * handled one at a time.
+ */
+class UTF8OutputBuffer {
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private static final byte[][] ESCAPES = new byte[256][];
+
+    private static final boolean[] SPECIAL = new boolean[256];
+
+    static {
+        ESCAPES['<'] = toBytes("&lt;");
+        ESCAPES['>'] = toBytes("&gt;");
+        ESCAPES['&'] = toBytes("&amp;");
+        ESCAPES['"'] = toBytes("&quot;");
+        ESCAPES['\''] = toBytes("&apos;");
+        for (int i = 0; i < ESCAPES.length; ++i) {
+            SPECIAL[i] = ESCAPES[i] != null;
+        }
+        SPECIAL[0xC0] = true;
+        SPECIAL[0xED] = true;
+    }
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+
+    private int length;
+
+    public void reset() {
+        length = 0;
+    }
+
+    public void writeTo(OutputStream os) throws IOException {
+        os.write(bytes, 0, length);
+    }
+
+    public byte[] getByteArray() {
+        return bytes;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Append an ASCII character.
+     */
+    public void append(char c) {
+        ensureCapacity(1);
+        bytes[length++] = (byte) c;
+    }
+
+    /**
+     * Append a string of ASCII characters.
+     */
+    public void append(String s) {
+        int len = s.length();
+        ensureCapacity(len);
+        for (int i = 0; i < len; ++i) {
+            bytes[length++] = (byte) s.charAt(i);
+        }
+    }
+
+    public void append(byte[] b, int start, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, start, bytes, length, len);
+        length += len;
+    }
+
+    public void appendLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            append(Long.toString(value));
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            bytes[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            ++digits;
+        }
+        for (int i = length + digits - 1; i >= length; --i) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    /**
+     * Append the modified UTF-8 bytes of a string as UTF-8 with the XML special characters escaped.
+     */
+    public void appendEscaped(byte[] b, int start, int len) {
+        ensureCapacity(len);
+        int end = start + len;
+        int run = start;
+        for (int i = start; i < end; ++i) {
+            int c = b[i] & 0xFF;
+            if (!SPECIAL[c]) {
+                continue;
+            }
+            append(b, run, i - run);
+            run = i;
+            if (ESCAPES[c] != null) {
+                append(ESCAPES[c], 0, ESCAPES[c].length);
+                run = i + 1;
+            } else if (c == 0xC0 && i + 1 < end && (b[i + 1] & 0xFF) == 0x80) {
+                append((char) 0);
+                run = ++i + 1;
+            } else if (c == 0xED && i + 5 < end && (b[i + 1] & 0xF0) == 0xA0 && (b[i + 3] & 0xFF) == 0xED
+                    && (b[i + 4] & 0xF0) == 0xB0) {
+                char high = (char) (0xD000 | ((b[i + 1] & 0x3F) << 6) | (b[i + 2] & 0x3F));
+                char low = (char) (0xD000 | ((b[i + 4] & 0x3F) << 6) | (b[i + 5] & 0x3F));
+                appendCodePoint(Character.toCodePoint(high, low));
+                i += 5;
+                run = i + 1;
+            }
+        }
+        append(b, run, end - run);
+    }
+
+    private void appendCodePoint(int codePoint) {
+        ensureCapacity(4);
+        bytes[length++] = (byte) (0xF0 | (codePoint >> 18));
+        bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+    }
+
+    private void ensureCapacity(int len) {
+        if (length + len > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + len));
+        }
+    }
+
+    private static byte[] toBytes(String s) {
+        byte[] b = new byte[s.length()];
+        for (int i = 0; i < b.length; ++i) {
+            b[i] = (byte) s.charAt(i);
+        }
+        return b;
+    }
+}
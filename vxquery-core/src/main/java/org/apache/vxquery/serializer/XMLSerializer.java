@@ -18,6 +18,7 @@ package org.apache.vxquery.serializer;
 
 import java.io.DataOutput;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 
 import org.apache.hyracks.algebricks.data.IPrinter;
@@ -30,7 +31,6 @@ import org.apache.hyracks.data.std.primitive.IntegerPointable;
 import org.apache.hyracks.data.std.primitive.LongPointable;
 import org.apache.hyracks.data.std.primitive.ShortPointable;
 import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
-import org.apache.hyracks.data.std.primitive.VoidPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.vxquery.datamodel.accessors.PointablePool;
 import org.apache.vxquery.datamodel.accessors.PointablePoolFactory;
@@ -61,6 +61,8 @@ public class XMLSerializer implements IPrinter {
 
     private NodeTreePointable ntp;
 
+    private final UTF8OutputBuffer out = new UTF8OutputBuffer();
+
     private ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
     private DataOutput dOut = abvs.getDataOutput();
     private CastToStringOperation castToString = new CastToStringOperation();
@@ -80,80 +82,95 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
+    /**
+     * Print the item with one write of its UTF-8 bytes.
+     */
     public void printTaggedValuePointable(PrintStream ps, TaggedValuePointable tvp) {
+        out.reset();
+        printValue(tvp);
+        ps.write(out.getByteArray(), 0, out.getLength());
+    }
+
+    public void printTaggedValuePointable(OutputStream os, TaggedValuePointable tvp) throws IOException {
+        out.reset();
+        printValue(tvp);
+        out.writeTo(os);
+    }
+
+    private void printValue(TaggedValuePointable tvp) {
         byte tag = tvp.getTag();
         switch ((int) tag) {
             case ValueTag.XS_ANY_URI_TAG:
-                printString(ps, tvp);
+                printString(tvp);
                 break;
 
             case ValueTag.XS_BASE64_BINARY_TAG:
-                printBase64Binary(ps, tvp);
+                printBase64Binary(tvp);
                 break;
 
             case ValueTag.XS_BOOLEAN_TAG:
-                printBoolean(ps, tvp);
+                printBoolean(tvp);
                 break;
 
             case ValueTag.XS_DATE_TAG:
-                printDate(ps, tvp);
+                printDate(tvp);
                 break;
 
             case ValueTag.XS_DATETIME_TAG:
-                printDateTime(ps, tvp);
+                printDateTime(tvp);
                 break;
 
             case ValueTag.XS_DAY_TIME_DURATION_TAG:
-                printDTDuration(ps, tvp);
+                printDTDuration(tvp);
                 break;
 
             case ValueTag.XS_BYTE_TAG:
-                printByte(ps, tvp);
+                printByte(tvp);
                 break;
 
             case ValueTag.XS_DECIMAL_TAG:
-                printDecimal(ps, tvp);
+                printDecimal(tvp);
                 break;
 
             case ValueTag.XS_DOUBLE_TAG:
-                printDouble(ps, tvp);
+                printDouble(tvp);
                 break;
 
             case ValueTag.XS_DURATION_TAG:
-                printDuration(ps, tvp);
+                printDuration(tvp);
                 break;
 
             case ValueTag.XS_FLOAT_TAG:
-                printFloat(ps, tvp);
+                printFloat(tvp);
                 break;
 
             case ValueTag.XS_G_DAY_TAG:
-                printGDay(ps, tvp);
+                printGDay(tvp);
                 break;
 
             case ValueTag.XS_G_MONTH_TAG:
-                printGMonth(ps, tvp);
+                printGMonth(tvp);
                 break;
 
             case ValueTag.XS_G_MONTH_DAY_TAG:
-                printGMonthDay(ps, tvp);
+                printGMonthDay(tvp);
                 break;
 
             case ValueTag.XS_G_YEAR_TAG:
-                printGYear(ps, tvp);
+                printGYear(tvp);
                 break;
 
             case ValueTag.XS_G_YEAR_MONTH_TAG:
-                printGYearMonth(ps, tvp);
+                printGYearMonth(tvp);
                 break;
 
             case ValueTag.XS_HEX_BINARY_TAG:
-                printHexBinary(ps, tvp);
+                printHexBinary(tvp);
                 break;
 
             case ValueTag.XS_INT_TAG:
             case ValueTag.XS_UNSIGNED_SHORT_TAG:
-                printInt(ps, tvp);
+                printInt(tvp);
                 break;
 
             case ValueTag.XS_INTEGER_TAG:
@@ -164,20 +181,20 @@ public class XMLSerializer implements IPrinter {
             case ValueTag.XS_POSITIVE_INTEGER_TAG:
             case ValueTag.XS_UNSIGNED_INT_TAG:
             case ValueTag.XS_UNSIGNED_LONG_TAG:
-                printInteger(ps, tvp);
+                printInteger(tvp);
                 break;
 
             case ValueTag.XS_NOTATION_TAG:
-                printString(ps, tvp);
+                printString(tvp);
                 break;
 
             case ValueTag.XS_QNAME_TAG:
-                printQName(ps, tvp);
+                printQName(tvp);
                 break;
 
             case ValueTag.XS_SHORT_TAG:
             case ValueTag.XS_UNSIGNED_BYTE_TAG:
-                printShort(ps, tvp);
+                printShort(tvp);
                 break;
 
             case ValueTag.XS_STRING_TAG:
@@ -190,80 +207,80 @@ public class XMLSerializer implements IPrinter {
             case ValueTag.XS_ID_TAG:
             case ValueTag.XS_IDREF_TAG:
             case ValueTag.XS_ENTITY_TAG:
-                printString(ps, tvp);
+                printString(tvp);
                 break;
 
             case ValueTag.XS_TIME_TAG:
-                printTime(ps, tvp);
+                printTime(tvp);
                 break;
 
             case ValueTag.XS_UNTYPED_ATOMIC_TAG:
-                printString(ps, tvp);
+                printString(tvp);
                 break;
 
             case ValueTag.XS_YEAR_MONTH_DURATION_TAG:
-                printYMDuration(ps, tvp);
+                printYMDuration(tvp);
                 break;
 
             case ValueTag.SEQUENCE_TAG:
-                printSequence(ps, tvp);
+                printSequence(tvp);
                 break;
 
             case ValueTag.NODE_TREE_TAG:
-                printNodeTree(ps, tvp);
+                printNodeTree(tvp);
                 break;
 
             case ValueTag.DOCUMENT_NODE_TAG:
-                printDocumentNode(ps, tvp);
+                printDocumentNode(tvp);
                 break;
 
             case ValueTag.ELEMENT_NODE_TAG:
-                printElementNode(ps, tvp);
+                printElementNode(tvp);
                 break;
 
             case ValueTag.ARRAY_TAG:
-                printArray(ps, tvp);
+                printArray(tvp);
                 break;
 
             case ValueTag.ATTRIBUTE_NODE_TAG:
-                printAttributeNode(ps, tvp);
+                printAttributeNode(tvp);
                 break;
 
             case ValueTag.TEXT_NODE_TAG:
-                printTextNode(ps, tvp);
+                printTextNode(tvp);
                 break;
 
             case ValueTag.COMMENT_NODE_TAG:
-                printCommentNode(ps, tvp);
+                printCommentNode(tvp);
                 break;
 
             case ValueTag.PI_NODE_TAG:
-                printPINode(ps, tvp);
+                printPINode(tvp);
                 break;
 
             case ValueTag.OBJECT_TAG:
-                printObject(ps, tvp);
+                printObject(tvp);
                 break;
 
             case ValueTag.JS_NULL_TAG:
-                printNull(ps, tvp);
+                printNull(tvp);
                 break;
             default:
                 throw new UnsupportedOperationException("Encountered tag: " + tvp.getTag());
         }
     }
 
-    private void printNull(PrintStream ps, TaggedValuePointable tvp) {
-        ps.append("null");
+    private void printNull(TaggedValuePointable tvp) {
+        out.append("null");
     }
 
-    private void printDecimal(PrintStream ps, TaggedValuePointable tvp) {
+    private void printDecimal(TaggedValuePointable tvp) {
         XSDecimalPointable dp = pp.takeOne(XSDecimalPointable.class);
         try {
             tvp.getValue(dp);
             abvs.reset();
             castToString.convertDecimal(dp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -273,7 +290,7 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printNodeTree(PrintStream ps, TaggedValuePointable tvp) {
+    private void printNodeTree(TaggedValuePointable tvp) {
         if (ntp != null) {
             throw new IllegalStateException("Nested NodeTreePointable found");
         }
@@ -282,7 +299,7 @@ public class XMLSerializer implements IPrinter {
         try {
             tvp.getValue(ntp);
             ntp.getRootNode(rootTVP);
-            printTaggedValuePointable(ps, rootTVP);
+            printValue(rootTVP);
         } finally {
             pp.giveBack(rootTVP);
             pp.giveBack(ntp);
@@ -290,53 +307,53 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printPINode(PrintStream ps, TaggedValuePointable tvp) {
+    private void printPINode(TaggedValuePointable tvp) {
         PINodePointable pnp = pp.takeOne(PINodePointable.class);
         UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
         try {
             tvp.getValue(pnp);
-            ps.append("<?");
+            out.append("<?");
             pnp.getTarget(ntp, utf8sp);
-            printString(ps, utf8sp);
-            ps.append(' ');
+            printString(utf8sp);
+            out.append(' ');
             pnp.getContent(ntp, utf8sp);
-            printString(ps, utf8sp);
-            ps.append("?>");
+            printString(utf8sp);
+            out.append("?>");
         } finally {
             pp.giveBack(pnp);
             pp.giveBack(utf8sp);
         }
     }
 
-    private void printCommentNode(PrintStream ps, TaggedValuePointable tvp) {
+    private void printCommentNode(TaggedValuePointable tvp) {
         TextOrCommentNodePointable tcnp = pp.takeOne(TextOrCommentNodePointable.class);
         UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
         try {
             tvp.getValue(tcnp);
             tcnp.getValue(ntp, utf8sp);
-            ps.append("<!--");
-            printString(ps, utf8sp);
-            ps.append("-->");
+            out.append("<!--");
+            printString(utf8sp);
+            out.append("-->");
         } finally {
             pp.giveBack(tcnp);
             pp.giveBack(utf8sp);
         }
     }
 
-    private void printTextNode(PrintStream ps, TaggedValuePointable tvp) {
+    private void printTextNode(TaggedValuePointable tvp) {
         TextOrCommentNodePointable tcnp = pp.takeOne(TextOrCommentNodePointable.class);
         UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
         try {
             tvp.getValue(tcnp);
             tcnp.getValue(ntp, utf8sp);
-            printString(ps, utf8sp);
+            printString(utf8sp);
         } finally {
             pp.giveBack(tcnp);
             pp.giveBack(utf8sp);
         }
     }
 
-    private void printAttributeNode(PrintStream ps, TaggedValuePointable tvp) {
+    private void printAttributeNode(TaggedValuePointable tvp) {
         AttributeNodePointable anp = pp.takeOne(AttributeNodePointable.class);
         CodedQNamePointable cqp = pp.takeOne(CodedQNamePointable.class);
         UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
@@ -344,11 +361,11 @@ public class XMLSerializer implements IPrinter {
         try {
             tvp.getValue(anp);
             anp.getName(cqp);
-            printPrefixedQName(ps, cqp, utf8sp);
-            ps.append("=\"");
+            printPrefixedQName(cqp, utf8sp);
+            out.append("=\"");
             anp.getValue(ntp, valueTVP);
-            printTaggedValuePointable(ps, valueTVP);
-            ps.append('"');
+            printValue(valueTVP);
+            out.append('"');
         } finally {
             pp.giveBack(valueTVP);
             pp.giveBack(utf8sp);
@@ -357,7 +374,7 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printObject(PrintStream ps, TaggedValuePointable tvp) {
+    private void printObject(TaggedValuePointable tvp) {
         ObjectPointable op = pp.takeOne(ObjectPointable.class);
         TaggedValuePointable keys = pp.takeOne(TaggedValuePointable.class);
         ArrayBackedValueStorage mvs = new ArrayBackedValueStorage();
@@ -366,13 +383,13 @@ public class XMLSerializer implements IPrinter {
         try {
             op.getKeys(mvs);
             keys.set(mvs);
-            ps.append('{');
+            out.append('{');
             if (keys.getTag() == ValueTag.SEQUENCE_TAG) {
-                printObjectPairs(ps, keys, op);
+                printObjectPairs(keys, op);
             } else {
-                printObjectPair(ps, keys, op);
+                printObjectPair(keys, op);
             }
-            ps.append('}');
+            out.append('}');
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
@@ -381,7 +398,7 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printObjectPairs(PrintStream ps, TaggedValuePointable keys, ObjectPointable op) {
+    private void printObjectPairs(TaggedValuePointable keys, ObjectPointable op) {
         SequencePointable seqp = pp.takeOne(SequencePointable.class);
         TaggedValuePointable tvp = pp.takeOne(TaggedValuePointable.class);
         try {
@@ -389,9 +406,9 @@ public class XMLSerializer implements IPrinter {
             int len = seqp.getEntryCount();
             for (int i = 0; i < len; i++) {
                 seqp.getEntry(i, tvp);
-                printObjectPair(ps, tvp, op);
+                printObjectPair(tvp, op);
                 if (i != len - 1) {
-                    ps.append(',');
+                    out.append(',');
                 }
             }
         } finally {
@@ -400,41 +417,41 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printObjectPair(PrintStream ps, TaggedValuePointable key, ObjectPointable op) {
+    private void printObjectPair(TaggedValuePointable key, ObjectPointable op) {
         UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
         TaggedValuePointable tvp = pp.takeOne(TaggedValuePointable.class);
         try {
-            printQuotedTaggedValuePointable(ps, key);
+            printQuotedTaggedValuePointable(key);
             key.getValue(utf8sp);
-            ps.append(":");
+            out.append(":");
             op.getValue(utf8sp, tvp);
-            printJsonValue(ps, tvp);
+            printJsonValue(tvp);
         } finally {
             pp.giveBack(tvp);
             pp.giveBack(utf8sp);
         }
     }
 
-    private void printArray(PrintStream ps, TaggedValuePointable tvp) {
+    private void printArray(TaggedValuePointable tvp) {
         ArrayPointable ap = pp.takeOne(ArrayPointable.class);
         try {
             tvp.getValue(ap);
             int len = ap.getEntryCount();
-            ps.append('[');
+            out.append('[');
             for (int i = 0; i < len; i++) {
                 ap.getEntry(i, tvp);
-                printJsonValue(ps, tvp);
+                printJsonValue(tvp);
                 if (i != len - 1) {
-                    ps.append(',');
+                    out.append(',');
                 }
             }
-            ps.append(']');
+            out.append(']');
         } finally {
             pp.giveBack(ap);
         }
     }
 
-    private void printJsonValue(PrintStream ps, TaggedValuePointable tvp) {
+    private void printJsonValue(TaggedValuePointable tvp) {
         int tag = tvp.getTag();
         switch (tag) {
             case ValueTag.ARRAY_TAG:
@@ -464,20 +481,20 @@ public class XMLSerializer implements IPrinter {
             case ValueTag.XS_UNSIGNED_INT_TAG:
             case ValueTag.XS_UNSIGNED_LONG_TAG:
             case ValueTag.XS_UNSIGNED_SHORT_TAG:
-                printTaggedValuePointable(ps, tvp);
+                printValue(tvp);
                 break;
             default:
-                printQuotedTaggedValuePointable(ps, tvp);
+                printQuotedTaggedValuePointable(tvp);
         }
     }
 
-    private void printQuotedTaggedValuePointable(PrintStream ps, TaggedValuePointable tvp) {
-        ps.append('\"');
-        printTaggedValuePointable(ps, tvp);
-        ps.append('\"');
+    private void printQuotedTaggedValuePointable(TaggedValuePointable tvp) {
+        out.append('\"');
+        printValue(tvp);
+        out.append('\"');
     }
 
-    private void printElementNode(PrintStream ps, TaggedValuePointable tvp) {
+    private void printElementNode(TaggedValuePointable tvp) {
         ElementNodePointable enp = pp.takeOne(ElementNodePointable.class);
         CodedQNamePointable cqp = pp.takeOne(CodedQNamePointable.class);
         UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
@@ -485,35 +502,35 @@ public class XMLSerializer implements IPrinter {
         try {
             tvp.getValue(enp);
             enp.getName(cqp);
-            ps.append('<');
-            printPrefixedQName(ps, cqp, utf8sp);
+            out.append('<');
+            printPrefixedQName(cqp, utf8sp);
 
             int nsCount = enp.getNamespaceEntryCount(ntp);
             for (int i = 0; i < nsCount; ++i) {
-                ps.append(" xmlns:");
+                out.append(" xmlns:");
                 ntp.getString(enp.getNamespacePrefixCode(ntp, i), utf8sp);
-                printString(ps, utf8sp);
-                ps.append("=\"");
+                printString(utf8sp);
+                out.append("=\"");
                 ntp.getString(enp.getNamespaceURICode(ntp, i), utf8sp);
-                printString(ps, utf8sp);
-                ps.append("\"");
+                printString(utf8sp);
+                out.append("\"");
             }
 
             enp.getAttributeSequence(ntp, seqp);
             if (seqp.getByteArray() != null && seqp.getEntryCount() > 0) {
-                ps.append(' ');
-                printSequence(ps, seqp, " ");
+                out.append(' ');
+                printSequence(seqp, " ");
             }
 
             enp.getChildrenSequence(ntp, seqp);
             if (seqp.getByteArray() != null) {
-                ps.append('>');
-                printSequence(ps, seqp);
-                ps.append("</");
-                printPrefixedQName(ps, cqp, utf8sp);
-                ps.append('>');
+                out.append('>');
+                printSequence(seqp);
+                out.append("</");
+                printPrefixedQName(cqp, utf8sp);
+                out.append('>');
             } else {
-                ps.append("/>");
+                out.append("/>");
             }
         } finally {
             pp.giveBack(seqp);
@@ -523,67 +540,67 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printPrefixedQName(PrintStream ps, CodedQNamePointable cqp, UTF8StringPointable utf8sp) {
+    private void printPrefixedQName(CodedQNamePointable cqp, UTF8StringPointable utf8sp) {
         ntp.getString(cqp.getPrefixCode(), utf8sp);
         if (utf8sp.getStringLength() > 0) {
-            printString(ps, utf8sp);
-            ps.append(':');
+            printString(utf8sp);
+            out.append(':');
         }
         ntp.getString(cqp.getLocalCode(), utf8sp);
-        printString(ps, utf8sp);
+        printString(utf8sp);
     }
 
-    private void printDocumentNode(PrintStream ps, TaggedValuePointable tvp) {
+    private void printDocumentNode(TaggedValuePointable tvp) {
         DocumentNodePointable dnp = pp.takeOne(DocumentNodePointable.class);
         SequencePointable seqp = pp.takeOne(SequencePointable.class);
         try {
-            ps.append("<?xml version=\"1.0\"?>\n");
+            out.append("<?xml version=\"1.0\"?>\n");
             tvp.getValue(dnp);
             dnp.getContent(ntp, seqp);
-            printSequence(ps, seqp);
+            printSequence(seqp);
         } finally {
             pp.giveBack(seqp);
             pp.giveBack(dnp);
         }
     }
 
-    private void printSequence(PrintStream ps, TaggedValuePointable tvp) {
+    private void printSequence(TaggedValuePointable tvp) {
         SequencePointable seqp = pp.takeOne(SequencePointable.class);
         try {
             tvp.getValue(seqp);
-            printSequence(ps, seqp);
+            printSequence(seqp);
         } finally {
             pp.giveBack(seqp);
         }
     }
 
-    private void printSequence(PrintStream ps, SequencePointable seqp) {
-        printSequence(ps, seqp, null);
+    private void printSequence(SequencePointable seqp) {
+        printSequence(seqp, null);
     }
 
-    private void printSequence(PrintStream ps, SequencePointable seqp, String between) {
-        VoidPointable vp = pp.takeOne(VoidPointable.class);
+    private void printSequence(SequencePointable seqp, String between) {
+        TaggedValuePointable tvp = pp.takeOne(TaggedValuePointable.class);
         try {
             int len = seqp.getEntryCount();
             for (int i = 0; i < len; ++i) {
-                seqp.getEntry(i, vp);
-                print(vp.getByteArray(), vp.getStartOffset(), vp.getLength(), ps);
+                seqp.getEntry(i, tvp);
+                printValue(tvp);
                 if (i < len - 1 && between != null) {
-                    ps.append(between);
+                    out.append(between);
                 }
             }
         } finally {
-            pp.giveBack(vp);
+            pp.giveBack(tvp);
         }
     }
 
-    private void printBase64Binary(PrintStream ps, TaggedValuePointable tvp) {
+    private void printBase64Binary(TaggedValuePointable tvp) {
         XSBinaryPointable bp = pp.takeOne(XSBinaryPointable.class);
         try {
             tvp.getValue(bp);
             abvs.reset();
             castToString.convertBase64Binary(bp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -593,33 +610,38 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printBoolean(PrintStream ps, TaggedValuePointable tvp) {
+    private void printBoolean(TaggedValuePointable tvp) {
         BooleanPointable bp = pp.takeOne(BooleanPointable.class);
         try {
             tvp.getValue(bp);
-            ps.print(bp.getBoolean());
+            out.append(bp.getBoolean() ? "true" : "false");
         } finally {
             pp.giveBack(bp);
         }
     }
 
-    private void printByte(PrintStream ps, TaggedValuePointable tvp) {
+    private void printByte(TaggedValuePointable tvp) {
         BytePointable bp = pp.takeOne(BytePointable.class);
         try {
             tvp.getValue(bp);
-            ps.print(bp.byteValue());
+            out.appendLong(bp.byteValue());
         } finally {
             pp.giveBack(bp);
         }
     }
 
-    private void printDouble(PrintStream ps, TaggedValuePointable tvp) {
+    private void printDouble(TaggedValuePointable tvp) {
         DoublePointable dp = pp.takeOne(DoublePointable.class);
         try {
             tvp.getValue(dp);
+            double value = dp.getDouble();
+            if (isSmallWholeNumber(value)) {
+                out.appendLong((long) value);
+                return;
+            }
             abvs.reset();
             castToString.convertDouble(dp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -629,13 +651,13 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printDate(PrintStream ps, TaggedValuePointable tvp) {
+    private void printDate(TaggedValuePointable tvp) {
         XSDatePointable dp = pp.takeOne(XSDatePointable.class);
         try {
             tvp.getValue(dp);
             abvs.reset();
             castToString.convertDate(dp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -645,13 +667,13 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printDateTime(PrintStream ps, TaggedValuePointable tvp) {
+    private void printDateTime(TaggedValuePointable tvp) {
         XSDateTimePointable dtp = pp.takeOne(XSDateTimePointable.class);
         try {
             tvp.getValue(dtp);
             abvs.reset();
             castToString.convertDatetime(dtp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -661,13 +683,13 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printDTDuration(PrintStream ps, TaggedValuePointable tvp) {
+    private void printDTDuration(TaggedValuePointable tvp) {
         LongPointable lp = pp.takeOne(LongPointable.class);
         try {
             tvp.getValue(lp);
             abvs.reset();
             castToString.convertDTDuration(lp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -677,13 +699,13 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printDuration(PrintStream ps, TaggedValuePointable tvp) {
+    private void printDuration(TaggedValuePointable tvp) {
         XSDurationPointable dp = pp.takeOne(XSDurationPointable.class);
         try {
             tvp.getValue(dp);
             abvs.reset();
             castToString.convertDuration(dp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -693,13 +715,18 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printFloat(PrintStream ps, TaggedValuePointable tvp) {
+    private void printFloat(TaggedValuePointable tvp) {
         FloatPointable fp = pp.takeOne(FloatPointable.class);
         try {
             tvp.getValue(fp);
+            float value = fp.getFloat();
+            if (isSmallWholeNumber(value)) {
+                out.appendLong((long) value);
+                return;
+            }
             abvs.reset();
             castToString.convertFloat(fp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -709,13 +736,13 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printGDay(PrintStream ps, TaggedValuePointable tvp) {
+    private void printGDay(TaggedValuePointable tvp) {
         XSDatePointable dp = pp.takeOne(XSDatePointable.class);
         try {
             tvp.getValue(dp);
             abvs.reset();
             castToString.convertGDay(dp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -725,13 +752,13 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printGMonth(PrintStream ps, TaggedValuePointable tvp) {
+    private void printGMonth(TaggedValuePointable tvp) {
         XSDatePointable dp = pp.takeOne(XSDatePointable.class);
         try {
             tvp.getValue(dp);
             abvs.reset();
             castToString.convertGMonth(dp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -741,13 +768,13 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printGMonthDay(PrintStream ps, TaggedValuePointable tvp) {
+    private void printGMonthDay(TaggedValuePointable tvp) {
         XSDatePointable dp = pp.takeOne(XSDatePointable.class);
         try {
             tvp.getValue(dp);
             abvs.reset();
             castToString.convertGMonthDay(dp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -757,13 +784,13 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printGYear(PrintStream ps, TaggedValuePointable tvp) {
+    private void printGYear(TaggedValuePointable tvp) {
         XSDatePointable dp = pp.takeOne(XSDatePointable.class);
         try {
             tvp.getValue(dp);
             abvs.reset();
             castToString.convertGYear(dp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -773,13 +800,13 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printGYearMonth(PrintStream ps, TaggedValuePointable tvp) {
+    private void printGYearMonth(TaggedValuePointable tvp) {
         XSDatePointable dp = pp.takeOne(XSDatePointable.class);
         try {
             tvp.getValue(dp);
             abvs.reset();
             castToString.convertGYearMonth(dp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -789,13 +816,13 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printHexBinary(PrintStream ps, TaggedValuePointable tvp) {
+    private void printHexBinary(TaggedValuePointable tvp) {
         XSBinaryPointable bp = pp.takeOne(XSBinaryPointable.class);
         try {
             tvp.getValue(bp);
             abvs.reset();
             castToString.convertHexBinary(bp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -805,43 +832,43 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printInt(PrintStream ps, TaggedValuePointable tvp) {
+    private void printInt(TaggedValuePointable tvp) {
         IntegerPointable ip = pp.takeOne(IntegerPointable.class);
         try {
             tvp.getValue(ip);
-            ps.print(ip.intValue());
+            out.appendLong(ip.intValue());
         } finally {
             pp.giveBack(ip);
         }
     }
 
-    private void printInteger(PrintStream ps, TaggedValuePointable tvp) {
+    private void printInteger(TaggedValuePointable tvp) {
         LongPointable lp = pp.takeOne(LongPointable.class);
         try {
             tvp.getValue(lp);
-            ps.print(lp.longValue());
+            out.appendLong(lp.longValue());
         } finally {
             pp.giveBack(lp);
         }
     }
 
-    private void printShort(PrintStream ps, TaggedValuePointable tvp) {
+    private void printShort(TaggedValuePointable tvp) {
         ShortPointable sp = pp.takeOne(ShortPointable.class);
         try {
             tvp.getValue(sp);
-            ps.print(sp.shortValue());
+            out.appendLong(sp.shortValue());
         } finally {
             pp.giveBack(sp);
         }
     }
 
-    private void printQName(PrintStream ps, TaggedValuePointable tvp) {
+    private void printQName(TaggedValuePointable tvp) {
         XSQNamePointable dp = pp.takeOne(XSQNamePointable.class);
         try {
             tvp.getValue(dp);
             abvs.reset();
             castToString.convertQName(dp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -851,69 +878,46 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printStringAbvs(PrintStream ps) {
+    private void printStringAbvs() {
         UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
         try {
             utf8sp.set(abvs.getByteArray(), abvs.getStartOffset() + 1, abvs.getLength() - 1);
-            printString(ps, utf8sp);
+            printString(utf8sp);
         } finally {
             pp.giveBack(utf8sp);
         }
     }
 
-    private void printString(PrintStream ps, TaggedValuePointable tvp) {
+    private void printString(TaggedValuePointable tvp) {
         UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
         try {
             tvp.getValue(utf8sp);
-            printString(ps, utf8sp);
+            printString(utf8sp);
         } finally {
             pp.giveBack(utf8sp);
         }
     }
 
-    private void printString(PrintStream ps, UTF8StringPointable utf8sp) {
-        int utfLen = utf8sp.getUTF8Length();
-        int offset = utf8sp.getMetaDataLength();
-        while (utfLen > 0) {
-            char c = utf8sp.charAt(offset);
-            switch (c) {
-                case '<':
-                    ps.append("&lt;");
-                    break;
-
-                case '>':
-                    ps.append("&gt;");
-                    break;
-
-                case '&':
-                    ps.append("&amp;");
-                    break;
-
-                case '"':
-                    ps.append("&quot;");
-                    break;
-
-                case '\'':
-                    ps.append("&apos;");
-                    break;
+    private void printString(UTF8StringPointable utf8sp) {
+        out.appendEscaped(utf8sp.getByteArray(), utf8sp.getStartOffset() + utf8sp.getMetaDataLength(),
+                utf8sp.getUTF8Length());
+    }
 
-                default:
-                    ps.append(c);
-                    break;
-            }
-            int cLen = utf8sp.charSize(offset);
-            offset += cLen;
-            utfLen -= cLen;
-        }
+    /**
+     * Whole numbers from one to a million are printed as digits by the cast to xs:string, without an exponent.
+     */
+    private static boolean isSmallWholeNumber(double value) {
+        double abs = Math.abs(value);
+        return abs >= 1 && abs <= 1000000 && value == Math.rint(value);
     }
 
-    private void printTime(PrintStream ps, TaggedValuePointable tvp) {
+    private void printTime(TaggedValuePointable tvp) {
         XSTimePointable tp = pp.takeOne(XSTimePointable.class);
         try {
             tvp.getValue(tp);
             abvs.reset();
             castToString.convertTime(tp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -923,13 +927,13 @@ public class XMLSerializer implements IPrinter {
         }
     }
 
-    private void printYMDuration(PrintStream ps, TaggedValuePointable tvp) {
+    private void printYMDuration(TaggedValuePointable tvp) {
         IntegerPointable ip = pp.takeOne(IntegerPointable.class);
         try {
             tvp.getValue(ip);
             abvs.reset();
             castToString.convertYMDuration(ip, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
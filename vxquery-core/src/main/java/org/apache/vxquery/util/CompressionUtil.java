@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+/**
+ * Recognizes collection documents by file name and opens them, decompressing gzip, bzip2 and zstd files on the fly.
+ * A document is an XML or JSON file optionally followed by one of the supported compression suffixes, for example
+ * "sensors.xml.gz" or "stations.json.zst".
+ */
+public class CompressionUtil {
+    public static final String XML_SUFFIX = ".xml";
+    public static final String JSON_SUFFIX = ".json";
+    public static final String GZIP_SUFFIX = ".gz";
+    public static final String BZIP2_SUFFIX = ".bz2";
+    public static final String ZSTD_SUFFIX = ".zst";
+
+    private static final int DECOMPRESS_BUFFER_SIZE = 64 * 1024;
+
+    private CompressionUtil() {
+    }
+
+    /**
+     * @return the file name without a supported compression suffix.
+     */
+    public static String stripCompressionSuffix(String fileName) {
+        String lowerName = fileName.toLowerCase();
+        if (lowerName.endsWith(GZIP_SUFFIX)) {
+            return fileName.substring(0, fileName.length() - GZIP_SUFFIX.length());
+        } else if (lowerName.endsWith(BZIP2_SUFFIX)) {
+            return fileName.substring(0, fileName.length() - BZIP2_SUFFIX.length());
+        } else if (lowerName.endsWith(ZSTD_SUFFIX)) {
+            return fileName.substring(0, fileName.length() - ZSTD_SUFFIX.length());
+        }
+        return fileName;
+    }
+
+    public static boolean isCompressed(String fileName) {
+        return stripCompressionSuffix(fileName).length() != fileName.length();
+    }
+
+    public static boolean isXmlFile(String fileName) {
+        return stripCompressionSuffix(fileName).toLowerCase().endsWith(XML_SUFFIX);
+    }
+
+    public static boolean isJsonFile(String fileName) {
+        return stripCompressionSuffix(fileName).toLowerCase().endsWith(JSON_SUFFIX);
+    }
+
+    public static InputStream openInputStream(File file) throws IOException {
+        return decompress(new FileInputStream(file), file.getName());
+    }
+
+    /**
+     * Wraps the stream with the decompressor matching the file name. Streams of uncompressed files are returned
+     * unchanged.
+     */
+    public static InputStream decompress(InputStream in, String fileName) throws IOException {
+        String lowerName = fileName.toLowerCase();
+        try {
+            if (lowerName.endsWith(GZIP_SUFFIX)) {
+                return new GZIPInputStream(in, DECOMPRESS_BUFFER_SIZE);
+            } else if (lowerName.endsWith(BZIP2_SUFFIX)) {
+                return new BZip2CompressorInputStream(new BufferedInputStream(in, DECOMPRESS_BUFFER_SIZE), true);
+            } else if (lowerName.endsWith(ZSTD_SUFFIX)) {
+                return new ZstdCompressorInputStream(new BufferedInputStream(in, DECOMPRESS_BUFFER_SIZE));
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+}
@@ -64,6 +64,13 @@ public class GrowableIntArray {
         size += length;
     }
 
+    public int removeLast() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("empty array");
+        }
+        return array[--size];
+    }
+
     public void insert(int index, int value) {
         if (index >= size) {
             if (index >= array.length) {
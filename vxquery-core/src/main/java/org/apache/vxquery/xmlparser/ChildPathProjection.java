@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hyracks.util.string.UTF8StringUtil;
+import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.types.ElementType;
+import org.apache.vxquery.types.NameTest;
+
+/**
+ * Decides which nodes below an element selected by the child path steps of a collection scan are built. Only the
+ * elements on one of the projected child paths are kept. The element at the end of a path is kept with its whole
+ * subtree; the elements leading to it are kept without attributes, text, comments and processing instructions.
+ * The parser reports the elements with their depth relative to the selected element.
+ */
+public class ChildPathProjection {
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private final String[][] uris;
+    private final String[][] localNames;
+    private final byte[][][] uriBytes;
+    private final byte[][][] localNameBytes;
+
+    // State of the current element.
+    private final int[] matchedDepth;
+    private boolean[] kept;
+    private int fullDepth;
+
+    public ChildPathProjection(List<List<Integer>> paths, StaticContext staticContext) {
+        int n = paths.size();
+        uris = new String[n][];
+        localNames = new String[n][];
+        uriBytes = new byte[n][][];
+        localNameBytes = new byte[n][][];
+        for (int p = 0; p < n; ++p) {
+            List<Integer> path = paths.get(p);
+            uris[p] = new String[path.size()];
+            localNames[p] = new String[path.size()];
+            uriBytes[p] = new byte[path.size()][];
+            localNameBytes[p] = new byte[path.size()][];
+            for (int s = 0; s < path.size(); ++s) {
+                ElementType eType = (ElementType) staticContext.lookupSequenceType(path.get(s)).getItemType();
+                NameTest nameTest = eType.getNameTest();
+                uris[p][s] = getStringFromBytes(nameTest.getUri());
+                localNames[p][s] = getStringFromBytes(nameTest.getLocalName());
+                uriBytes[p][s] = uris[p][s] == null ? null : uris[p][s].getBytes(StandardCharsets.UTF_8);
+                localNameBytes[p][s] = localNames[p][s] == null ? null
+                        : localNames[p][s].getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        matchedDepth = new int[n];
+        kept = new boolean[8];
+        fullDepth = NONE;
+    }
+
+    /**
+     * Reset the state for a newly selected element.
+     */
+    public void startMatch() {
+        Arrays.fill(matchedDepth, 0);
+        fullDepth = NONE;
+    }
+
+    /**
+     * @return true if the element is built.
+     */
+    public boolean startElement(int depth, String uri, String localName) {
+        boolean keep = fullDepth < depth;
+        if (!keep) {
+            for (int p = 0; p < localNames.length; ++p) {
+                if (matchedDepth[p] == depth - 1 && depth <= localNames[p].length) {
+                    String stepUri = uris[p][depth - 1];
+                    String stepLocalName = localNames[p][depth - 1];
+                    if ((stepUri == null || stepUri.equals(uri))
+                            && (stepLocalName == null || stepLocalName.equals(localName))) {
+                        keep = matchStep(p, depth);
+                    }
+                }
+            }
+        }
+        return setKept(depth, keep);
+    }
+
+    /**
+     * @return true if the element is built.
+     */
+    public boolean startElement(int depth, byte[] uri, byte[] bytes, int localStart, int localLength) {
+        boolean keep = fullDepth < depth;
+        if (!keep) {
+            for (int p = 0; p < localNameBytes.length; ++p) {
+                if (matchedDepth[p] == depth - 1 && depth <= localNameBytes[p].length) {
+                    byte[] stepUri = uriBytes[p][depth - 1];
+                    byte[] stepLocalName = localNameBytes[p][depth - 1];
+                    if ((stepUri == null || Arrays.equals(stepUri, uri)) && (stepLocalName == null
+                            || (stepLocalName.length == localLength && equalBytes(stepLocalName, bytes, localStart)))) {
+                        keep = matchStep(p, depth);
+                    }
+                }
+            }
+        }
+        return setKept(depth, keep);
+    }
+
+    private boolean matchStep(int p, int depth) {
+        matchedDepth[p] = depth;
+        if (depth == localNames[p].length && fullDepth == NONE) {
+            fullDepth = depth;
+        }
+        return true;
+    }
+
+    private boolean setKept(int depth, boolean keep) {
+        if (depth >= kept.length) {
+            kept = Arrays.copyOf(kept, Math.max(kept.length * 2, depth + 1));
+        }
+        kept[depth] = keep;
+        return keep;
+    }
+
+    /**
+     * @return true if the open element at the depth is built.
+     */
+    public boolean isKept(int depth) {
+        return kept[depth];
+    }
+
+    /**
+     * @return true if the element was built.
+     */
+    public boolean endElement(int depth) {
+        for (int p = 0; p < matchedDepth.length; ++p) {
+            if (matchedDepth[p] == depth) {
+                matchedDepth[p] = depth - 1;
+            }
+        }
+        if (fullDepth == depth) {
+            fullDepth = NONE;
+        }
+        return kept[depth];
+    }
+
+    /**
+     * @return true if text, comments and processing instructions of the innermost open element are built.
+     */
+    public boolean isContentKept() {
+        return fullDepth != NONE;
+    }
+
+    /**
+     * @return true if the attributes of the element just started are built.
+     */
+    public boolean isAttributeKept(int depth) {
+        return fullDepth <= depth;
+    }
+
+    private static boolean equalBytes(byte[] expected, byte[] bytes, int start) {
+        for (int i = 0; i < expected.length; ++i) {
+            if (expected[i] != bytes[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getStringFromBytes(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        UTF8StringUtil.toString(sb, bytes, 0);
+        return sb.toString();
+    }
+}
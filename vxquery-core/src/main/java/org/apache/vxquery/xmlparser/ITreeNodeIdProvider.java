@@ -16,6 +16,8 @@
  */
 package org.apache.vxquery.xmlparser;
 
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
 public interface ITreeNodeIdProvider {
-    public int getId();
+    public long getId() throws HyracksDataException;
 }
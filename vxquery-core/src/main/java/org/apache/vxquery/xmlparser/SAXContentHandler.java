@@ -22,6 +22,7 @@ import java.util.List;
 import org.apache.hyracks.api.comm.IFrameFieldAppender;
 import org.apache.hyracks.api.comm.IFrameWriter;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.hyracks.data.std.util.GrowableArray;
 import org.apache.hyracks.data.std.util.UTF8StringBuilder;
@@ -78,6 +79,9 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
     private String[] childUri = null;
     private boolean[] subElement = null;
     private final TaggedValuePointable tvp;
+    private ValuePredicateFilter valueFilter = null;
+    private ChildPathProjection projection = null;
+    private final UTF8StringPointable textp;
 
     // Basic tracking and setting variables
     protected final boolean attachTypes;
@@ -107,6 +111,7 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         // Element writing and path step variables
         skipping = true;
         tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        textp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
 
         // Basic tracking and setting variables
         this.attachTypes = attachTypes;
@@ -135,6 +140,22 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         setChildPathSteps(childSequenceTypes);
     }
 
+    public SAXContentHandler(boolean attachTypes, ITreeNodeIdProvider nodeIdProvider, IFrameFieldAppender appender,
+            List<SequenceType> childSequenceTypes, ValuePredicateFilter valueFilter) {
+        this(attachTypes, nodeIdProvider, appender, childSequenceTypes);
+        if (subElement != null) {
+            this.valueFilter = valueFilter;
+        }
+    }
+
+    public SAXContentHandler(boolean attachTypes, ITreeNodeIdProvider nodeIdProvider, IFrameFieldAppender appender,
+            List<SequenceType> childSequenceTypes, ValuePredicateFilter valueFilter, ChildPathProjection projection) {
+        this(attachTypes, nodeIdProvider, appender, childSequenceTypes, valueFilter);
+        if (subElement != null) {
+            this.projection = projection;
+        }
+    }
+
     private void setChildPathSteps(List<SequenceType> childSeq) {
         if (!childSeq.isEmpty()) {
             subElement = new boolean[childSeq.size()];
@@ -208,6 +229,15 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
                 nonSkipped = foundFirstNonSkippedElement();
             }
             flushText();
+            if (valueFilter != null && depth > subElement.length) {
+                valueFilter.endElement(depth - subElement.length);
+            }
+            if (projection != null && depth > subElement.length
+                    && !projection.endElement(depth - subElement.length)) {
+                // The element was not built.
+                --depth;
+                return;
+            }
             ElementNodeBuilder enb = enbStack.remove(enbStack.size() - 1);
             enb.endChildrenChunk();
             endChildInParent(enb, nonSkipped);
@@ -235,7 +265,7 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
 
     @Override
     public void processingInstruction(String target, String data) throws SAXException {
-        if (skipping) {
+        if (skipping || (projection != null && !projection.isContentKept())) {
             return;
         }
         try {
@@ -335,6 +365,21 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         }
         try {
             flushText();
+            if (valueFilter != null) {
+                if (start) {
+                    valueFilter.startMatch();
+                } else {
+                    valueFilter.startElement(depth - subElement.length, uri, localName);
+                }
+            }
+            if (projection != null) {
+                if (start) {
+                    projection.startMatch();
+                } else if (!projection.startElement(depth - subElement.length, uri, localName)) {
+                    // The element is not on a projected path.
+                    return;
+                }
+            }
             int idx = name.indexOf(':');
             String prefix = idx < 0 ? "" : name.substring(0, idx);
             ElementNodeBuilder enb = createENB();
@@ -353,7 +398,8 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
                 enb.setLocalNodeId(nodeIdCounter++);
             }
             enb.startAttributeChunk();
-            final int nAttrs = atts.getLength();
+            final int nAttrs = projection == null || projection.isAttributeKept(depth - subElement.length)
+                    ? atts.getLength() : 0;
             for (int i = 0; i < nAttrs; ++i) {
                 String aName = atts.getQName(i);
                 int aIdx = aName.indexOf(':');
@@ -395,7 +441,7 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
 
     @Override
     public void comment(char[] ch, int start, int length) throws SAXException {
-        if (skipping) {
+        if (skipping || (projection != null && !projection.isContentKept())) {
             return;
         }
         try {
@@ -424,13 +470,19 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
 
     protected void flushText() throws IOException {
         if (pendingText) {
-            peekENBStackTop().startChild(tnb);
-            if (createNodeIds) {
-                tnb.setLocalNodeId(nodeIdCounter++);
-            }
             utf8b.finish();
-            tnb.setValue(textGA);
-            peekENBStackTop().endChild(tnb);
+            if (valueFilter != null && valueFilter.isCollecting()) {
+                textp.set(textGA.getByteArray(), 0, textGA.getLength());
+                valueFilter.text(textp.getByteArray(), textp.getCharStartOffset(), textp.getUTF8Length());
+            }
+            if (projection == null || projection.isContentKept()) {
+                peekENBStackTop().startChild(tnb);
+                if (createNodeIds) {
+                    tnb.setLocalNodeId(nodeIdCounter++);
+                }
+                tnb.setValue(textGA);
+                peekENBStackTop().endChild(tnb);
+            }
             textGA.reset();
             utf8b.reset(textGA, STRING_EXPECTED_LENGTH);
             pendingText = false;
@@ -462,6 +514,11 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
     }
 
     public void writeElement() throws IOException {
+        if (valueFilter != null && !valueFilter.accept()) {
+            // The element does not satisfy the pushed down predicates.
+            skipping = true;
+            return;
+        }
         tempABVS.reset();
         DataOutput out = tempABVS.getDataOutput();
         out.write(ValueTag.NODE_TREE_TAG);
@@ -474,7 +531,7 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         }
         out.write(header);
         if (createNodeIds) {
-            out.writeInt(nodeIdProvider.getId());
+            out.writeLong(nodeIdProvider.getId());
         }
         db.writeFromCache(tempABVS);
         out.write(resultABVS.getByteArray(), resultABVS.getStartOffset(), resultABVS.getLength());
@@ -495,7 +552,7 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         }
         out.write(header);
         if (createNodeIds) {
-            out.writeInt(nodeIdProvider.getId());
+            out.writeLong(nodeIdProvider.getId());
         }
         db.writeFromCache(abvs);
         out.write(resultABVS.getByteArray(), resultABVS.getStartOffset(), resultABVS.getLength());
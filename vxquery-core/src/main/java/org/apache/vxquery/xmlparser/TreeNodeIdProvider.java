@@ -16,39 +16,48 @@
  */
 package org.apache.vxquery.xmlparser;
 
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+
+/**
+ * Hands out the root node ids of the trees one partition builds for one data source. All providers use the same
+ * layout, so ids from different partitions and data sources never collide. Partition and data source ids are
+ * non-negative shorts and always fit. The sign bit stays clear because the plan orders nodes by their tree ids as
+ * signed longs.
+ */
 public class TreeNodeIdProvider implements ITreeNodeIdProvider {
+    public static final int PARTITION_BITS = Short.SIZE - 1;
+    public static final int DATA_SOURCE_BITS = Short.SIZE - 1;
+    public static final int TREE_BITS = Long.SIZE - 1 - PARTITION_BITS - DATA_SOURCE_BITS;
 
-    private final short partitionDataSource;
-    private final short dataSouceScanId;
-    private final byte dataSourceBits;
-    private short currentId;
+    private final short partition;
+    private final short dataSourceScanId;
+    private final long prefix;
+    private long currentId;
 
-    public TreeNodeIdProvider(short partitionDataSource, short dataSouceScanId, short totalDataSources) {
-        this.partitionDataSource = partitionDataSource;
-        this.dataSouceScanId = dataSouceScanId;
-        this.dataSourceBits = getBitsNeeded(totalDataSources);
+    public TreeNodeIdProvider(short partition, short dataSourceScanId) {
+        this.partition = partition;
+        this.dataSourceScanId = dataSourceScanId;
+        prefix = ((long) partition << (DATA_SOURCE_BITS + TREE_BITS)) | ((long) dataSourceScanId << TREE_BITS);
         currentId = 0;
     }
 
+    /**
+     * Documents opened by fn:doc and the index reader use data source 0.
+     */
     public TreeNodeIdProvider(short partition) {
-        this.partitionDataSource = partition;
-        dataSouceScanId = 0;
-        dataSourceBits = 0;
-        currentId = 0;
+        this(partition, (short) 0);
     }
 
-    public int getId() {
-        int p = partitionDataSource;
-        int dssi = dataSouceScanId;
-        return (p << 16) | (dssi << (16 - dataSourceBits)) | currentId++;
-    }
-
-    private byte getBitsNeeded(int number) {
-        byte count = 0;
-        while (number > 0) {
-            count++;
-            number = number >> 1;
+    @Override
+    public synchronized long getId() throws HyracksDataException {
+        if (partition < 0 || dataSourceScanId < 0) {
+            throw new HyracksDataException(
+                    "Invalid partition " + partition + " or data source " + dataSourceScanId + " for node ids.");
+        }
+        if (currentId >= 1L << TREE_BITS) {
+            throw new HyracksDataException("Partition " + partition + " ran out of node ids after " + currentId
+                    + " trees of data source " + dataSourceScanId + ".");
         }
-        return count;
+        return prefix | currentId++;
     }
 }
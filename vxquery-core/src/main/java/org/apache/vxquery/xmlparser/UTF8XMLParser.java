@@ -0,0 +1,1351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hyracks.api.comm.IFrameFieldAppender;
+import org.apache.hyracks.api.comm.IFrameWriter;
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.hyracks.data.std.util.GrowableArray;
+import org.apache.hyracks.dataflow.common.comm.util.FrameUtils;
+import org.apache.hyracks.util.string.UTF8StringUtil;
+import org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable;
+import org.apache.vxquery.datamodel.builders.atomic.VXQueryUTF8StringBuilder;
+import org.apache.vxquery.datamodel.builders.nodes.AbstractNodeBuilder;
+import org.apache.vxquery.datamodel.builders.nodes.AttributeNodeBuilder;
+import org.apache.vxquery.datamodel.builders.nodes.CommentNodeBuilder;
+import org.apache.vxquery.datamodel.builders.nodes.DictionaryBuilder;
+import org.apache.vxquery.datamodel.builders.nodes.DocumentNodeBuilder;
+import org.apache.vxquery.datamodel.builders.nodes.ElementNodeBuilder;
+import org.apache.vxquery.datamodel.builders.nodes.PINodeBuilder;
+import org.apache.vxquery.datamodel.builders.nodes.TextNodeBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.types.BuiltinTypeQNames;
+import org.apache.vxquery.types.ElementType;
+import org.apache.vxquery.types.NameTest;
+import org.apache.vxquery.types.NodeType;
+import org.apache.vxquery.types.SequenceType;
+import org.apache.vxquery.xmlquery.query.XQueryConstants;
+import org.xml.sax.SAXException;
+
+/**
+ * Parses UTF-8 encoded XML directly from bytes into the VXQuery node tree. Names and text are copied from the input
+ * buffer into the node builders and the dictionary without being decoded into Strings. The resulting tree and the
+ * child path step handling are the same as the SAX based {@link SAXContentHandler}.
+ * Elements that can not lie on the child path are skipped by scanning for tag boundaries only.
+ * The parser checks well-formedness of the tags but does not process DTDs. Only the predefined entities and
+ * character references are expanded.
+ */
+public class UTF8XMLParser {
+    private static final int STRING_EXPECTED_LENGTH = 300;
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int MINIMUM_BUFFER_SIZE = 16;
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[] XML = toBytes("xml");
+    private static final byte[] XMLNS = toBytes("xmlns");
+    private static final byte[] XML_NS_URI = toBytes("http://www.w3.org/XML/1998/namespace");
+    private static final byte[] CDATA_START = toBytes("CDATA[");
+    private static final byte[] CDATA_END = toBytes("]]>");
+    private static final byte[] COMMENT_END = toBytes("-->");
+    private static final byte[] DOCTYPE_START = toBytes("OCTYPE");
+    private static final byte[] PI_END = toBytes("?>");
+    private static final byte[] XS_NSURI = toBytes(XQueryConstants.XS_NSURI);
+    private static final byte[] XS_PREFIX = toBytes(XQueryConstants.XS_PREFIX);
+    private static final byte[] UNTYPED = toBytes(BuiltinTypeQNames.UNTYPED_STR);
+    private static final byte[] UNTYPED_ATOMIC = toBytes(BuiltinTypeQNames.UNTYPED_ATOMIC_STR);
+
+    // XML node builders
+    protected final AttributeNodeBuilder anb;
+    protected final CommentNodeBuilder cnb;
+    protected final DictionaryBuilder db;
+    protected final DocumentNodeBuilder docb;
+    protected final PINodeBuilder pinb;
+    protected final TextNodeBuilder tnb;
+    protected final List<ElementNodeBuilder> enbStack;
+    protected final List<ElementNodeBuilder> freeENBList;
+
+    // Frame writing variables
+    protected final IFrameFieldAppender appender;
+    private IFrameWriter writer;
+
+    // Element writing and path step variables
+    protected boolean skipping;
+    private byte[][] childLocalName = null;
+    private byte[][] childUri = null;
+    private boolean[] subElement = null;
+    private ValuePredicateFilter valueFilter = null;
+    private ChildPathProjection projection = null;
+
+    // Basic tracking and setting variables
+    protected final boolean attachTypes;
+    protected final boolean createNodeIds;
+    private int depth;
+    protected final ArrayBackedValueStorage resultABVS;
+    protected boolean pendingText;
+    protected int nodeIdCounter;
+    protected final ITreeNodeIdProvider nodeIdProvider;
+    protected final ArrayBackedValueStorage tempABVS;
+
+    // UTF-8 string building variables
+    private final GrowableArray textGA;
+    private final VXQueryUTF8StringBuilder textSB;
+    private final GrowableArray stringGA;
+    private final VXQueryUTF8StringBuilder stringSB;
+    private final UTF8StringPointable stringp;
+
+    // Input buffer
+    private final byte[] buffer;
+    private InputStream input;
+    private int pos;
+    private int limit;
+    private long bufferOffset;
+    private boolean eof;
+
+    // Name of the last scanned tag, attribute or target
+    private byte[] name;
+    private int nameLength;
+    private int nameColon;
+
+    // Names of the open elements and their first namespace declaration
+    private byte[] elementNames;
+    private int[] elementNameStart;
+    private int[] elementNameLength;
+    private int[] elementNameColon;
+    private int[] elementNamespaceStart;
+
+    // In scope namespace declarations
+    private byte[][] namespacePrefixes;
+    private byte[][] namespaceUris;
+    private int namespaceCount;
+
+    // Attributes of the current start tag. Names and values are stored in the scratch buffer.
+    private int attributeCount;
+    private int[] attributeNameStart;
+    private int[] attributeNameLength;
+    private int[] attributeNameColon;
+    private int[] attributeValueStart;
+    private int[] attributeValueLength;
+
+    // Scratch buffer for attributes, comments, CDATA sections and processing instructions
+    private byte[] scratch;
+    private int scratchLength;
+
+    private final byte[] reference;
+
+    public UTF8XMLParser(boolean attachTypes, ITreeNodeIdProvider nodeIdProvider, IFrameFieldAppender appender,
+            List<SequenceType> childSequenceTypes, int bufferSize) {
+        this(attachTypes, nodeIdProvider, appender, childSequenceTypes, null, bufferSize);
+    }
+
+    public UTF8XMLParser(boolean attachTypes, ITreeNodeIdProvider nodeIdProvider, IFrameFieldAppender appender,
+            List<SequenceType> childSequenceTypes, ValuePredicateFilter valueFilter, int bufferSize) {
+        this(attachTypes, nodeIdProvider, appender, childSequenceTypes, valueFilter, null, bufferSize);
+    }
+
+    public UTF8XMLParser(boolean attachTypes, ITreeNodeIdProvider nodeIdProvider, IFrameFieldAppender appender,
+            List<SequenceType> childSequenceTypes, ValuePredicateFilter valueFilter, ChildPathProjection projection,
+            int bufferSize) {
+        // XML node builders
+        anb = new AttributeNodeBuilder();
+        cnb = new CommentNodeBuilder();
+        db = new DictionaryBuilder();
+        docb = new DocumentNodeBuilder();
+        pinb = new PINodeBuilder();
+        tnb = new TextNodeBuilder();
+        enbStack = new ArrayList<>();
+        freeENBList = new ArrayList<>();
+
+        // Frame writing and path step variables
+        this.appender = appender;
+        skipping = true;
+        setChildPathSteps(childSequenceTypes);
+        if (subElement != null) {
+            this.valueFilter = valueFilter;
+            this.projection = projection;
+        }
+
+        // Basic tracking and setting variables
+        this.attachTypes = attachTypes;
+        createNodeIds = nodeIdProvider != null;
+        this.nodeIdProvider = nodeIdProvider;
+        resultABVS = new ArrayBackedValueStorage();
+        tempABVS = new ArrayBackedValueStorage();
+        nodeIdCounter = 0;
+
+        // UTF-8 string building variables
+        textGA = new GrowableArray();
+        textSB = new VXQueryUTF8StringBuilder();
+        stringGA = new GrowableArray();
+        stringSB = new VXQueryUTF8StringBuilder();
+        stringp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+
+        // Scanning variables
+        buffer = new byte[bufferSize > 0 ? Math.max(bufferSize, MINIMUM_BUFFER_SIZE) : DEFAULT_BUFFER_SIZE];
+        name = new byte[64];
+        elementNames = new byte[1024];
+        elementNameStart = new int[32];
+        elementNameLength = new int[32];
+        elementNameColon = new int[32];
+        elementNamespaceStart = new int[32];
+        namespacePrefixes = new byte[8][];
+        namespaceUris = new byte[8][];
+        attributeNameStart = new int[8];
+        attributeNameLength = new int[8];
+        attributeNameColon = new int[8];
+        attributeValueStart = new int[8];
+        attributeValueLength = new int[8];
+        scratch = new byte[1024];
+        reference = new byte[8];
+    }
+
+    private void setChildPathSteps(List<SequenceType> childSeq) {
+        if (childSeq == null || childSeq.isEmpty()) {
+            return;
+        }
+        subElement = new boolean[childSeq.size()];
+        childUri = new byte[childSeq.size()][];
+        childLocalName = new byte[childSeq.size()][];
+        int index = 0;
+        for (SequenceType sType : childSeq) {
+            NodeType nodeType = (NodeType) sType.getItemType();
+            ElementType eType = (ElementType) nodeType;
+            NameTest nameTest = eType.getNameTest();
+            childUri[index] = getUTF8FromBytes(nameTest.getUri());
+            childLocalName[index] = getUTF8FromBytes(nameTest.getLocalName());
+            ++index;
+        }
+    }
+
+    /**
+     * Parse the input and write the document to the value storage.
+     */
+    public void parseDocument(InputStream in, ArrayBackedValueStorage abvs) throws IOException, SAXException {
+        parse(in);
+        writeDocument(abvs);
+    }
+
+    /**
+     * Parse the input and write each node selected by the child path steps (or the document when no steps are set)
+     * as a tuple.
+     */
+    public void parseElements(InputStream in, IFrameWriter writer, int tupleIndex) throws IOException, SAXException {
+        this.writer = writer;
+        parse(in);
+    }
+
+    private void parse(InputStream in) throws IOException, SAXException {
+        input = in;
+        pos = 0;
+        limit = 0;
+        bufferOffset = 0;
+        eof = false;
+        depth = 0;
+        namespaceCount = 0;
+        pendingText = false;
+        while (!enbStack.isEmpty()) {
+            freeENB(enbStack.remove(enbStack.size() - 1));
+        }
+
+        startDocument();
+        skipByteOrderMark();
+        boolean foundRoot = false;
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == '<') {
+                c = read();
+                if (c == '/') {
+                    parseEndTag();
+                } else if (c == '?') {
+                    parseProcessingInstruction();
+                } else if (c == '!') {
+                    parseMarkupDeclaration();
+                } else if (c >= 0) {
+                    unread();
+                    if (depth == 0 && foundRoot) {
+                        throw error("Content is not allowed after the root element");
+                    }
+                    foundRoot = true;
+                    parseStartTag();
+                } else {
+                    throw error("Unexpected end of document");
+                }
+            } else {
+                unread();
+                parseText();
+            }
+        }
+        if (!foundRoot || depth != 0) {
+            throw error("Unexpected end of document");
+        }
+        endDocument();
+        input = null;
+    }
+
+    // ------------------------------------------------------------------
+    // Tree building
+    // ------------------------------------------------------------------
+
+    private void startDocument() throws IOException {
+        if (subElement == null) {
+            skipping = false;
+        }
+        db.reset();
+        textGA.reset();
+        textSB.reset(textGA, STRING_EXPECTED_LENGTH);
+        if (skipping) {
+            return;
+        }
+        resultABVS.reset();
+        docb.reset(resultABVS);
+        if (createNodeIds) {
+            docb.setLocalNodeId(nodeIdCounter++);
+        }
+        docb.startChildrenChunk();
+        flushText();
+    }
+
+    private void endDocument() throws IOException {
+        if (skipping) {
+            return;
+        }
+        flushText();
+        docb.endChildrenChunk();
+        docb.finish();
+        if (appender != null) {
+            writeElement();
+        }
+    }
+
+    private void startElement() throws IOException, SAXException {
+        // Namespace declarations are in scope for the element and its attributes.
+        elementNamespaceStart[depth] = namespaceCount;
+        for (int i = 0; i < attributeCount; ++i) {
+            if (isNamespaceDeclaration(i)) {
+                int nameStart = attributeNameStart[i];
+                byte[] prefix = attributeNameColon[i] < 0 ? EMPTY
+                        : Arrays.copyOfRange(scratch, nameStart + attributeNameColon[i] + 1,
+                                nameStart + attributeNameLength[i]);
+                byte[] uri = Arrays.copyOfRange(scratch, attributeValueStart[i],
+                        attributeValueStart[i] + attributeValueLength[i]);
+                addNamespace(prefix, uri);
+            }
+        }
+
+        int nameStart = elementNameStart[depth];
+        int colon = elementNameColon[depth];
+        int localStart = nameStart + colon + 1;
+        int localLength = elementNameLength[depth] - colon - 1;
+        byte[] uri = null;
+        boolean start = false;
+        if (subElement != null && depth <= subElement.length) {
+            uri = resolveNamespace(elementNames, nameStart, colon < 0 ? 0 : colon, true);
+            start = startElementChildPathStep(uri, localStart, localLength);
+        }
+        if (skipping) {
+            return;
+        }
+        if (uri == null) {
+            uri = resolveNamespace(elementNames, nameStart, colon < 0 ? 0 : colon, true);
+        }
+
+        flushText();
+        if (valueFilter != null) {
+            if (start) {
+                valueFilter.startMatch();
+            } else {
+                valueFilter.startElement(depth - subElement.length, uri, elementNames, localStart, localLength);
+            }
+        }
+        if (projection != null) {
+            if (start) {
+                projection.startMatch();
+            } else if (!projection.startElement(depth - subElement.length, uri, elementNames, localStart,
+                    localLength)) {
+                // The element is not on a projected path.
+                return;
+            }
+        }
+        ElementNodeBuilder enb = createENB();
+        startChildInParent(enb, start);
+        int uriCode = lookup(uri, 0, uri.length);
+        int localNameCode = lookup(elementNames, localStart, localLength);
+        int prefixCode = lookup(elementNames, nameStart, colon < 0 ? 0 : colon);
+        enb.setName(uriCode, localNameCode, prefixCode);
+        if (attachTypes) {
+            int typeUriCode = lookup(XS_NSURI, 0, XS_NSURI.length);
+            int typeLocalNameCode = lookup(UNTYPED, 0, UNTYPED.length);
+            int typePrefixCode = lookup(XS_PREFIX, 0, XS_PREFIX.length);
+            enb.setType(typeUriCode, typeLocalNameCode, typePrefixCode);
+        }
+        if (createNodeIds) {
+            enb.setLocalNodeId(nodeIdCounter++);
+        }
+        enb.startAttributeChunk();
+        int nAttrs = projection == null || projection.isAttributeKept(depth - subElement.length) ? attributeCount
+                : 0;
+        for (int i = 0; i < nAttrs; ++i) {
+            if (isNamespaceDeclaration(i)) {
+                continue;
+            }
+            int aNameStart = attributeNameStart[i];
+            int aColon = attributeNameColon[i];
+            int aPrefixCode = lookup(scratch, aNameStart, aColon < 0 ? 0 : aColon);
+            int aLocalNameCode = lookup(scratch, aNameStart + aColon + 1, attributeNameLength[i] - aColon - 1);
+            byte[] aUri = aColon < 0 ? EMPTY : resolveNamespace(scratch, aNameStart, aColon, false);
+            int aUriCode = lookup(aUri, 0, aUri.length);
+            tempABVS.reset();
+            DataOutput tempOut = tempABVS.getDataOutput();
+            tempOut.write(ValueTag.XS_UNTYPED_ATOMIC_TAG);
+            toGrowableArray(scratch, attributeValueStart[i], attributeValueLength[i]);
+            tempOut.write(stringGA.getByteArray(), 0, stringGA.getLength());
+            enb.startAttribute(anb);
+            anb.setName(aUriCode, aLocalNameCode, aPrefixCode);
+            if (attachTypes) {
+                int typeUriCode = lookup(XS_NSURI, 0, XS_NSURI.length);
+                int typeLocalNameCode = lookup(UNTYPED_ATOMIC, 0, UNTYPED_ATOMIC.length);
+                int typePrefixCode = lookup(XS_PREFIX, 0, XS_PREFIX.length);
+                anb.setType(typeUriCode, typeLocalNameCode, typePrefixCode);
+            }
+            if (createNodeIds) {
+                anb.setLocalNodeId(nodeIdCounter++);
+            }
+            anb.setValue(tempABVS);
+            enb.endAttribute(anb);
+        }
+        enb.endAttributeChunk();
+        enb.startChildrenChunk();
+        enbStack.add(enb);
+    }
+
+    private void endElement() throws IOException {
+        if (!skipping) {
+            boolean nonSkipped = foundFirstNonSkippedElement();
+            flushText();
+            if (valueFilter != null && depth > subElement.length) {
+                valueFilter.endElement(depth - subElement.length);
+            }
+            if (projection == null || depth <= subElement.length
+                    || projection.endElement(depth - subElement.length)) {
+                ElementNodeBuilder enb = enbStack.remove(enbStack.size() - 1);
+                enb.endChildrenChunk();
+                endChildInParent(enb, nonSkipped);
+                freeENB(enb);
+                if (nonSkipped) {
+                    writeElement();
+                }
+            }
+            if (subElement != null && depth <= subElement.length) {
+                subElement[depth - 1] = false;
+            }
+        }
+        namespaceCount = elementNamespaceStart[depth];
+        --depth;
+    }
+
+    private void comment() throws IOException {
+        if (skipping || (projection != null && !projection.isContentKept())) {
+            return;
+        }
+        flushText();
+        startChildInParent(cnb);
+        if (createNodeIds) {
+            cnb.setLocalNodeId(nodeIdCounter++);
+        }
+        appendUTF8(textSB, scratch, 0, scratchLength);
+        textSB.finish();
+        cnb.setValue(textGA);
+        endChildInParent(cnb);
+        textGA.reset();
+        textSB.reset(textGA, STRING_EXPECTED_LENGTH);
+    }
+
+    private void processingInstruction(int targetLength, int dataStart) throws IOException {
+        if (skipping || (projection != null && !projection.isContentKept())) {
+            return;
+        }
+        flushText();
+        startChildInParent(pinb);
+        if (createNodeIds) {
+            pinb.setLocalNodeId(nodeIdCounter++);
+        }
+        pinb.setTarget(toGrowableArray(scratch, 0, targetLength));
+        pinb.setContent(toGrowableArray(scratch, dataStart, scratchLength - dataStart));
+        endChildInParent(pinb);
+    }
+
+    protected void flushText() throws IOException {
+        if (pendingText) {
+            textSB.finish();
+            if (valueFilter != null && valueFilter.isCollecting()) {
+                stringp.set(textGA.getByteArray(), 0, textGA.getLength());
+                valueFilter.text(stringp.getByteArray(), stringp.getCharStartOffset(), stringp.getUTF8Length());
+            }
+            if (projection == null || projection.isContentKept()) {
+                peekENBStackTop().startChild(tnb);
+                if (createNodeIds) {
+                    tnb.setLocalNodeId(nodeIdCounter++);
+                }
+                tnb.setValue(textGA);
+                peekENBStackTop().endChild(tnb);
+            }
+            textGA.reset();
+            textSB.reset(textGA, STRING_EXPECTED_LENGTH);
+            pendingText = false;
+        }
+    }
+
+    /**
+     * The filter settings here are similar to one in the class linked below.
+     *
+     * @see org.apache.vxquery.runtime.functions.step.NodeTestFilter.java
+     */
+    private boolean startElementChildPathStep(byte[] uri, int localStart, int localLength) {
+        subElement[depth - 1] = (childUri[depth - 1] == null || Arrays.equals(childUri[depth - 1], uri))
+                && (childLocalName[depth - 1] == null
+                        || equalBytes(childLocalName[depth - 1], elementNames, localStart, localLength));
+        boolean start = foundFirstNonSkippedElement();
+        if (start) {
+            skipping = false;
+        }
+        return start;
+    }
+
+    /**
+     * Determines if the correct path step is active.
+     */
+    private boolean foundFirstNonSkippedElement() {
+        if (subElement == null || subElement.length != depth) {
+            // Not the correct depth.
+            return false;
+        }
+        for (boolean b : subElement) {
+            if (!b) {
+                // Found a path step that did not match.
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void writeElement() throws IOException {
+        if (valueFilter != null && !valueFilter.accept()) {
+            // The element does not satisfy the pushed down predicates.
+            skipping = true;
+            return;
+        }
+        tempABVS.reset();
+        writeNodeTree(tempABVS);
+        FrameUtils.appendFieldToWriter(writer, appender, tempABVS.getByteArray(), tempABVS.getStartOffset(),
+                tempABVS.getLength());
+        skipping = true;
+    }
+
+    public void writeDocument(ArrayBackedValueStorage abvs) throws IOException {
+        writeNodeTree(abvs);
+    }
+
+    private void writeNodeTree(ArrayBackedValueStorage abvs) throws IOException {
+        DataOutput out = abvs.getDataOutput();
+        out.write(ValueTag.NODE_TREE_TAG);
+        byte header = NodeTreePointable.HEADER_DICTIONARY_EXISTS_MASK;
+        if (attachTypes) {
+            header |= NodeTreePointable.HEADER_TYPE_EXISTS_MASK;
+        }
+        if (createNodeIds) {
+            header |= NodeTreePointable.HEADER_NODEID_EXISTS_MASK;
+        }
+        out.write(header);
+        if (createNodeIds) {
+            out.writeLong(nodeIdProvider.getId());
+        }
+        db.writeFromCache(abvs);
+        out.write(resultABVS.getByteArray(), resultABVS.getStartOffset(), resultABVS.getLength());
+    }
+
+    protected ElementNodeBuilder createENB() {
+        if (freeENBList.isEmpty()) {
+            return new ElementNodeBuilder();
+        }
+        return freeENBList.remove(freeENBList.size() - 1);
+    }
+
+    private void freeENB(ElementNodeBuilder enb) {
+        freeENBList.add(enb);
+    }
+
+    protected ElementNodeBuilder peekENBStackTop() {
+        return enbStack.get(enbStack.size() - 1);
+    }
+
+    private void startChildInParent(AbstractNodeBuilder anb) throws IOException {
+        startChildInParent(anb, false);
+    }
+
+    private void startChildInParent(AbstractNodeBuilder anb, boolean startNewElement) throws IOException {
+        if (startNewElement) {
+            resultABVS.reset();
+            anb.reset(resultABVS);
+        } else if (enbStack.isEmpty()) {
+            docb.startChild(anb);
+        } else {
+            peekENBStackTop().startChild(anb);
+        }
+    }
+
+    private void endChildInParent(AbstractNodeBuilder anb) throws IOException {
+        endChildInParent(anb, false);
+    }
+
+    private void endChildInParent(AbstractNodeBuilder anb, boolean endNewElement) throws IOException {
+        if (endNewElement) {
+            anb.finish();
+        } else if (enbStack.isEmpty()) {
+            docb.endChild(anb);
+        } else {
+            peekENBStackTop().endChild(anb);
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Dictionary and string helpers
+    // ------------------------------------------------------------------
+
+    private int lookup(byte[] bytes, int start, int length) throws IOException {
+        toGrowableArray(bytes, start, length);
+        stringp.set(stringGA.getByteArray(), 0, stringGA.getLength());
+        return db.lookup(stringp);
+    }
+
+    private GrowableArray toGrowableArray(byte[] bytes, int start, int length) throws IOException {
+        stringGA.reset();
+        stringSB.reset(stringGA, length);
+        appendUTF8(stringSB, bytes, start, length);
+        stringSB.finish();
+        return stringGA;
+    }
+
+    /**
+     * Append UTF-8 bytes to the string builder. Characters outside the basic multilingual plane are written as a
+     * surrogate pair to match the modified UTF-8 used by the string builders.
+     */
+    private void appendUTF8(VXQueryUTF8StringBuilder sb, byte[] bytes, int start, int length) throws IOException {
+        int end = start + length;
+        int runStart = start;
+        for (int i = start; i < end;) {
+            int b = bytes[i] & 0xff;
+            if (b < 0xf0) {
+                ++i;
+                continue;
+            }
+            if (i + 3 >= end) {
+                throw new IOException("Invalid UTF-8 sequence");
+            }
+            sb.appendUtf8Bytes(bytes, runStart, i - runStart);
+            int cp = ((b & 0x07) << 18) | ((bytes[i + 1] & 0x3f) << 12) | ((bytes[i + 2] & 0x3f) << 6)
+                    | (bytes[i + 3] & 0x3f);
+            appendCodePoint(sb, cp);
+            i += 4;
+            runStart = i;
+        }
+        sb.appendUtf8Bytes(bytes, runStart, end - runStart);
+    }
+
+    private static void appendCodePoint(VXQueryUTF8StringBuilder sb, int cp) throws IOException {
+        if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            sb.appendChar(Character.highSurrogate(cp));
+            sb.appendChar(Character.lowSurrogate(cp));
+        } else {
+            sb.appendChar((char) cp);
+        }
+    }
+
+    private void addScratch(int b) {
+        if (scratchLength == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        }
+        scratch[scratchLength++] = (byte) b;
+    }
+
+    private void addScratchCodePoint(int cp) {
+        if (cp < 0x80) {
+            addScratch(cp);
+        } else if (cp < 0x800) {
+            addScratch(0xc0 | (cp >> 6));
+            addScratch(0x80 | (cp & 0x3f));
+        } else if (cp < 0x10000) {
+            addScratch(0xe0 | (cp >> 12));
+            addScratch(0x80 | ((cp >> 6) & 0x3f));
+            addScratch(0x80 | (cp & 0x3f));
+        } else {
+            addScratch(0xf0 | (cp >> 18));
+            addScratch(0x80 | ((cp >> 12) & 0x3f));
+            addScratch(0x80 | ((cp >> 6) & 0x3f));
+            addScratch(0x80 | (cp & 0x3f));
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Namespaces
+    // ------------------------------------------------------------------
+
+    private boolean isNamespaceDeclaration(int attribute) {
+        int start = attributeNameStart[attribute];
+        int colon = attributeNameColon[attribute];
+        if (colon < 0) {
+            return equalBytes(XMLNS, scratch, start, attributeNameLength[attribute]);
+        }
+        return equalBytes(XMLNS, scratch, start, colon);
+    }
+
+    private void addNamespace(byte[] prefix, byte[] uri) {
+        if (namespaceCount == namespacePrefixes.length) {
+            namespacePrefixes = Arrays.copyOf(namespacePrefixes, namespaceCount * 2);
+            namespaceUris = Arrays.copyOf(namespaceUris, namespaceCount * 2);
+        }
+        namespacePrefixes[namespaceCount] = prefix;
+        namespaceUris[namespaceCount] = uri;
+        ++namespaceCount;
+    }
+
+    /**
+     * Find the URI bound to the prefix. An empty element prefix resolves to the default namespace, an empty
+     * attribute prefix to no namespace.
+     */
+    private byte[] resolveNamespace(byte[] bytes, int start, int length, boolean useDefault) throws SAXException {
+        if (length == 0 && !useDefault) {
+            return EMPTY;
+        }
+        for (int i = namespaceCount - 1; i >= 0; --i) {
+            if (equalBytes(namespacePrefixes[i], bytes, start, length)) {
+                return namespaceUris[i];
+            }
+        }
+        if (length == 0) {
+            return EMPTY;
+        }
+        if (equalBytes(XML, bytes, start, length)) {
+            return XML_NS_URI;
+        }
+        throw error("The prefix \"" + new String(bytes, start, length, StandardCharsets.UTF_8) + "\" is not bound");
+    }
+
+    private static boolean equalBytes(byte[] expected, byte[] bytes, int start, int length) {
+        return expected.length == length && equalBytes(expected, 0, bytes, start, length);
+    }
+
+    private static boolean equalBytes(byte[] bytes1, int start1, byte[] bytes2, int start2, int length) {
+        for (int i = 0; i < length; ++i) {
+            if (bytes1[start1 + i] != bytes2[start2 + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ------------------------------------------------------------------
+    // Tokenizer
+    // ------------------------------------------------------------------
+
+    private boolean fill(int keepFrom) throws IOException {
+        int keep = limit - keepFrom;
+        if (keep > 0) {
+            System.arraycopy(buffer, keepFrom, buffer, 0, keep);
+        }
+        bufferOffset += keepFrom;
+        pos -= keepFrom;
+        limit = keep;
+        int n;
+        do {
+            n = input.read(buffer, limit, buffer.length - limit);
+        } while (n == 0);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && (eof || !fill(pos))) {
+            return -1;
+        }
+        return buffer[pos++] & 0xff;
+    }
+
+    private void unread() {
+        --pos;
+    }
+
+    private void expect(int expected) throws IOException, SAXException {
+        if (read() != expected) {
+            throw error("Expected '" + (char) expected + "'");
+        }
+    }
+
+    private void expect(byte[] expected) throws IOException, SAXException {
+        for (byte b : expected) {
+            expect(b);
+        }
+    }
+
+    private boolean skipWhitespace() throws IOException {
+        boolean skipped = false;
+        while (true) {
+            int c = read();
+            if (c == ' ' || c == '\n' || c == '\t' || c == '\r') {
+                skipped = true;
+            } else {
+                if (c >= 0) {
+                    unread();
+                }
+                return skipped;
+            }
+        }
+    }
+
+    private void skipByteOrderMark() throws IOException, SAXException {
+        int c = read();
+        if (c == 0xef) {
+            expect(0xbb);
+            expect(0xbf);
+        } else if (c >= 0) {
+            unread();
+        }
+    }
+
+    private static boolean isNameEnd(int c) {
+        switch (c) {
+            case ' ':
+            case '\n':
+            case '\t':
+            case '\r':
+            case '/':
+            case '>':
+            case '=':
+            case '?':
+            case '<':
+            case '"':
+            case '\'':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void readName() throws IOException, SAXException {
+        nameLength = 0;
+        nameColon = -1;
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                throw error("Unexpected end of document");
+            }
+            if (isNameEnd(c)) {
+                unread();
+                break;
+            }
+            if (c == ':' && nameColon < 0) {
+                nameColon = nameLength;
+            }
+            if (nameLength == name.length) {
+                name = Arrays.copyOf(name, nameLength * 2);
+            }
+            name[nameLength++] = (byte) c;
+        }
+        if (nameLength == 0) {
+            throw error("Expected a name");
+        }
+    }
+
+    private void parseStartTag() throws IOException, SAXException {
+        readName();
+        int next = depth + 1;
+        if (next + 1 >= elementNameStart.length) {
+            int size = elementNameStart.length * 2;
+            elementNameStart = Arrays.copyOf(elementNameStart, size);
+            elementNameLength = Arrays.copyOf(elementNameLength, size);
+            elementNameColon = Arrays.copyOf(elementNameColon, size);
+            elementNamespaceStart = Arrays.copyOf(elementNamespaceStart, size);
+        }
+        int nameStart = depth == 0 ? 0 : elementNameStart[depth] + elementNameLength[depth];
+        if (nameStart + nameLength > elementNames.length) {
+            elementNames = Arrays.copyOf(elementNames, Math.max(elementNames.length * 2, nameStart + nameLength));
+        }
+        System.arraycopy(name, 0, elementNames, nameStart, nameLength);
+        elementNameStart[next] = nameStart;
+        elementNameLength[next] = nameLength;
+        elementNameColon[next] = nameColon;
+
+        if (subElement != null && next <= subElement.length && childLocalName[next - 1] != null
+                && !equalBytes(childLocalName[next - 1], name, nameColon + 1, nameLength - nameColon - 1)) {
+            // The element is not on the child path, so nothing inside of it is needed.
+            skipElement(true);
+            return;
+        }
+
+        attributeCount = 0;
+        scratchLength = 0;
+        boolean empty;
+        while (true) {
+            skipWhitespace();
+            int c = read();
+            if (c == '>') {
+                empty = false;
+                break;
+            } else if (c == '/') {
+                expect('>');
+                empty = true;
+                break;
+            } else if (c < 0) {
+                throw error("Unexpected end of document");
+            }
+            unread();
+            parseAttribute();
+        }
+        ++depth;
+        startElement();
+        if (empty) {
+            endElement();
+        } else if (subElement != null && depth <= subElement.length && !subElement[depth - 1]) {
+            // The namespace of the element is not on the child path.
+            skipElement(false);
+            endElement();
+        } else if (projection != null && valueFilter == null && !skipping && depth > subElement.length
+                && !projection.isKept(depth - subElement.length)) {
+            // Nothing inside of an element that is not on a projected path is built.
+            skipElement(false);
+            endElement();
+        }
+    }
+
+    /**
+     * Fast forward over the rest of the current element. Only the tag nesting is tracked; the content is neither
+     * built nor checked for well-formedness.
+     *
+     * @param inStartTag
+     *            true if the start tag of the element has not been read completely
+     */
+    private void skipElement(boolean inStartTag) throws IOException, SAXException {
+        if (inStartTag && skipTag()) {
+            // An empty element.
+            return;
+        }
+        int level = 1;
+        while (true) {
+            skipPast('<');
+            int c = read();
+            if (c == '/') {
+                skipTag();
+                if (--level == 0) {
+                    return;
+                }
+            } else if (c == '!') {
+                c = read();
+                if (c == '-') {
+                    expect('-');
+                    readUntil(COMMENT_END, false);
+                } else if (c == '[') {
+                    readUntil(CDATA_END, false);
+                } else {
+                    skipTag();
+                }
+            } else if (c == '?') {
+                readUntil(PI_END, false);
+            } else if (c < 0) {
+                throw error("Unexpected end of document");
+            } else if (!skipTag()) {
+                ++level;
+            }
+        }
+    }
+
+    /**
+     * Skip to the end of a tag, ignoring '>' in quoted attribute values.
+     *
+     * @return true if the tag closes an empty element
+     */
+    private boolean skipTag() throws IOException, SAXException {
+        int last = 0;
+        while (true) {
+            int c = read();
+            if (c == '>') {
+                return last == '/';
+            } else if (c < 0) {
+                throw error("Unexpected end of document");
+            } else if (c == '"' || c == '\'') {
+                skipPast(c);
+            }
+            last = c;
+        }
+    }
+
+    /**
+     * Move the position after the next occurrence of the byte.
+     */
+    private void skipPast(int b) throws IOException, SAXException {
+        while (true) {
+            for (int i = pos; i < limit; ++i) {
+                if (buffer[i] == b) {
+                    pos = i + 1;
+                    return;
+                }
+            }
+            pos = limit;
+            if (eof || !fill(pos)) {
+                throw error("Unexpected end of document");
+            }
+        }
+    }
+
+    private void parseAttribute() throws IOException, SAXException {
+        readName();
+        if (attributeCount == attributeNameStart.length) {
+            int size = attributeCount * 2;
+            attributeNameStart = Arrays.copyOf(attributeNameStart, size);
+            attributeNameLength = Arrays.copyOf(attributeNameLength, size);
+            attributeNameColon = Arrays.copyOf(attributeNameColon, size);
+            attributeValueStart = Arrays.copyOf(attributeValueStart, size);
+            attributeValueLength = Arrays.copyOf(attributeValueLength, size);
+        }
+        attributeNameStart[attributeCount] = scratchLength;
+        attributeNameLength[attributeCount] = nameLength;
+        attributeNameColon[attributeCount] = nameColon;
+        for (int i = 0; i < nameLength; ++i) {
+            addScratch(name[i]);
+        }
+        skipWhitespace();
+        expect('=');
+        skipWhitespace();
+        int quote = read();
+        if (quote != '"' && quote != '\'') {
+            throw error("Expected a quoted attribute value");
+        }
+
+        // Attribute value normalization replaces each white space character with a space.
+        int valueStart = scratchLength;
+        boolean lastCR = false;
+        while (true) {
+            int c = read();
+            if (c == quote) {
+                break;
+            } else if (c < 0) {
+                throw error("Unexpected end of document");
+            } else if (c == '<') {
+                throw error("The value of an attribute must not contain '<'");
+            } else if (c == '&') {
+                addScratchCodePoint(parseReference());
+                lastCR = false;
+            } else if (c == '\r') {
+                addScratch(' ');
+                lastCR = true;
+            } else if (c == '\n') {
+                if (!lastCR) {
+                    addScratch(' ');
+                }
+                lastCR = false;
+            } else {
+                addScratch(c == '\t' ? ' ' : c);
+                lastCR = false;
+            }
+        }
+        attributeValueStart[attributeCount] = valueStart;
+        attributeValueLength[attributeCount] = scratchLength - valueStart;
+        ++attributeCount;
+    }
+
+    private void parseEndTag() throws IOException, SAXException {
+        readName();
+        if (depth == 0 || nameLength != elementNameLength[depth]
+                || !equalBytes(name, 0, elementNames, elementNameStart[depth], nameLength)) {
+            throw error("The end tag does not match the start tag");
+        }
+        skipWhitespace();
+        expect('>');
+        endElement();
+    }
+
+    private void parseText() throws IOException, SAXException {
+        boolean keep = depth > 0 && !skipping;
+        int start = pos;
+        while (true) {
+            if (pos == limit) {
+                int end = eof ? limit : safeEnd(start);
+                if (keep) {
+                    appendText(start, end);
+                }
+                pos = end;
+                if (eof || (!fill(end) && pos == limit)) {
+                    return;
+                }
+                start = pos;
+                continue;
+            }
+            int b = buffer[pos];
+            if (b == '<') {
+                if (keep) {
+                    appendText(start, pos);
+                }
+                return;
+            } else if (b == '&') {
+                if (keep) {
+                    appendText(start, pos);
+                }
+                ++pos;
+                int cp = parseReference();
+                if (keep) {
+                    appendCodePoint(textSB, cp);
+                    pendingText = true;
+                }
+                start = pos;
+            } else if (b == '\r') {
+                // Line ends are normalized to a single line feed.
+                if (keep) {
+                    appendText(start, pos);
+                    textSB.appendChar('\n');
+                    pendingText = true;
+                }
+                if (pos + 1 == limit && !eof) {
+                    // Keep the carriage return and read ahead to find a following line feed.
+                    fill(pos);
+                }
+                ++pos;
+                if (pos < limit && buffer[pos] == '\n') {
+                    ++pos;
+                }
+                start = pos;
+            } else {
+                ++pos;
+            }
+        }
+    }
+
+    /**
+     * Find the end of the text that can be appended before refilling the buffer. An incomplete UTF-8 sequence at the
+     * end of the buffer is kept for the next fill.
+     */
+    private int safeEnd(int start) {
+        int end = limit;
+        for (int i = end - 1; i >= start && i >= end - 3; --i) {
+            int b = buffer[i] & 0xff;
+            if (b < 0x80) {
+                break;
+            } else if (b >= 0xc0) {
+                int sequenceLength = b >= 0xf0 ? 4 : (b >= 0xe0 ? 3 : 2);
+                if (end - i < sequenceLength) {
+                    return i;
+                }
+                break;
+            }
+        }
+        return end;
+    }
+
+    private void appendText(int start, int end) throws IOException {
+        if (end > start) {
+            appendUTF8(textSB, buffer, start, end - start);
+            pendingText = true;
+        }
+    }
+
+    /**
+     * Parse a character or predefined entity reference. The '&' has already been read.
+     *
+     * @return the referenced code point
+     */
+    private int parseReference() throws IOException, SAXException {
+        int c = read();
+        if (c == '#') {
+            int radix = 10;
+            c = read();
+            if (c == 'x') {
+                radix = 16;
+                c = read();
+            }
+            int cp = 0;
+            boolean digits = false;
+            while (c != ';') {
+                int digit = Character.digit(c, radix);
+                if (c < 0 || digit < 0 || cp > Character.MAX_CODE_POINT) {
+                    throw error("Invalid character reference");
+                }
+                cp = cp * radix + digit;
+                digits = true;
+                c = read();
+            }
+            if (!digits || cp == 0 || cp > Character.MAX_CODE_POINT) {
+                throw error("Invalid character reference");
+            }
+            return cp;
+        }
+        int length = 0;
+        while (c != ';') {
+            if (c < 0 || length == reference.length) {
+                throw error("Invalid entity reference");
+            }
+            reference[length++] = (byte) c;
+            c = read();
+        }
+        if (length == 2 && reference[1] == 't') {
+            if (reference[0] == 'l') {
+                return '<';
+            } else if (reference[0] == 'g') {
+                return '>';
+            }
+        } else if (length == 3 && reference[0] == 'a' && reference[1] == 'm' && reference[2] == 'p') {
+            return '&';
+        } else if (length == 4 && reference[0] == 'q' && reference[1] == 'u' && reference[2] == 'o'
+                && reference[3] == 't') {
+            return '"';
+        } else if (length == 4 && reference[0] == 'a' && reference[1] == 'p' && reference[2] == 'o'
+                && reference[3] == 's') {
+            return '\'';
+        }
+        throw error("The entity \"" + new String(reference, 0, length, StandardCharsets.UTF_8)
+                + "\" was referenced, but not declared");
+    }
+
+    /**
+     * Read the input up to the terminator, keeping the content in the scratch buffer if requested. Line ends are
+     * normalized to a line feed. The terminators used ("]]>", "-->" and "?>") only repeat their first byte, so a
+     * failed partial match can be undone one byte at a time.
+     */
+    private void readUntil(byte[] end, boolean keep) throws IOException, SAXException {
+        int matched = 0;
+        boolean lastCR = false;
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                throw error("Unexpected end of document");
+            }
+            while (matched > 0 && c != end[matched]) {
+                if (keep) {
+                    addScratch(end[0]);
+                }
+                --matched;
+            }
+            if (c == end[matched]) {
+                if (++matched == end.length) {
+                    return;
+                }
+            } else if (!keep) {
+                continue;
+            } else if (c == '\r') {
+                addScratch('\n');
+                lastCR = true;
+                continue;
+            } else if (c != '\n' || !lastCR) {
+                addScratch(c);
+            }
+            lastCR = false;
+        }
+    }
+
+    private void parseMarkupDeclaration() throws IOException, SAXException {
+        int c = read();
+        if (c == '-') {
+            expect('-');
+            scratchLength = 0;
+            readUntil(COMMENT_END, true);
+            comment();
+        } else if (c == '[') {
+            expect(CDATA_START);
+            scratchLength = 0;
+            readUntil(CDATA_END, true);
+            if (depth == 0) {
+                throw error("CDATA sections are only allowed in element content");
+            }
+            if (!skipping && scratchLength > 0) {
+                appendUTF8(textSB, scratch, 0, scratchLength);
+                pendingText = true;
+            }
+        } else if (c == 'D') {
+            expect(DOCTYPE_START);
+            skipDocumentTypeDeclaration();
+        } else {
+            throw error("Invalid markup declaration");
+        }
+    }
+
+    private void skipDocumentTypeDeclaration() throws IOException, SAXException {
+        int brackets = 0;
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                throw error("Unexpected end of document");
+            } else if (c == '"' || c == '\'') {
+                int quote = c;
+                do {
+                    c = read();
+                    if (c < 0) {
+                        throw error("Unexpected end of document");
+                    }
+                } while (c != quote);
+            } else if (c == '[') {
+                ++brackets;
+            } else if (c == ']') {
+                --brackets;
+            } else if (c == '>' && brackets == 0) {
+                return;
+            }
+        }
+    }
+
+    private void parseProcessingInstruction() throws IOException, SAXException {
+        readName();
+        scratchLength = 0;
+        for (int i = 0; i < nameLength; ++i) {
+            addScratch(name[i]);
+        }
+        int targetLength = nameLength;
+        skipWhitespace();
+        int dataStart = scratchLength;
+        readUntil(PI_END, true);
+        if (targetLength == XML.length && (scratch[0] | 0x20) == 'x' && (scratch[1] | 0x20) == 'm'
+                && (scratch[2] | 0x20) == 'l') {
+            // The XML declaration. The input is always read as UTF-8.
+            return;
+        }
+        processingInstruction(targetLength, dataStart);
+    }
+
+    private SAXException error(String message) {
+        return new SAXException(message + " (byte offset " + (bufferOffset + pos) + ")");
+    }
+
+    private static byte[] toBytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] getUTF8FromBytes(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        UTF8StringUtil.toString(sb, bytes, 0);
+        return toBytes(sb.toString());
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A comparison between the string value of child elements and a constant. The child path is relative to the element
+ * selected by the child path steps of a collection scan and is encoded with sequence type codes.
+ * The test is conservative: it only fails when the query predicate is known to be false, so the query keeps its
+ * own select to check the elements that pass.
+ */
+public class ValuePredicate implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Comparison {
+        EQ,
+        NE,
+        LT,
+        LE,
+        GT,
+        GE;
+
+        boolean holds(int cmp) {
+            switch (this) {
+                case EQ:
+                    return cmp == 0;
+                case NE:
+                    return cmp != 0;
+                case LT:
+                    return cmp < 0;
+                case LE:
+                    return cmp <= 0;
+                case GT:
+                    return cmp > 0;
+                default:
+                    return cmp >= 0;
+            }
+        }
+
+        /**
+         * @return the comparison to use when the operands are swapped.
+         */
+        public Comparison swap() {
+            switch (this) {
+                case LT:
+                    return GT;
+                case LE:
+                    return GE;
+                case GT:
+                    return LT;
+                case GE:
+                    return LE;
+                default:
+                    return this;
+            }
+        }
+    }
+
+    /**
+     * How the string value of the child element is compared. NUMBER compares it as an xs:double and DECIMAL as an
+     * xs:decimal, which has no exponent form.
+     */
+    public enum Operand {
+        STRING,
+        NUMBER,
+        DECIMAL,
+        YEAR,
+        MONTH,
+        DAY
+    }
+
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    private final List<Integer> childSeq;
+    private final Comparison comparison;
+    private final boolean general;
+    private final Operand operand;
+    private final byte[] stringValue;
+    private final double numberValue;
+
+    private ValuePredicate(List<Integer> childSeq, Comparison comparison, boolean general, Operand operand,
+            byte[] stringValue, double numberValue) {
+        this.childSeq = new ArrayList<>(childSeq);
+        this.comparison = comparison;
+        this.general = general;
+        this.operand = operand;
+        this.stringValue = stringValue;
+        this.numberValue = numberValue;
+    }
+
+    public static ValuePredicate createString(List<Integer> childSeq, Comparison comparison, boolean general,
+            String value) {
+        return new ValuePredicate(childSeq, comparison, general, Operand.STRING,
+                value.getBytes(StandardCharsets.UTF_8), 0);
+    }
+
+    public static ValuePredicate createNumber(List<Integer> childSeq, Comparison comparison, boolean general,
+            Operand operand, double value) {
+        return new ValuePredicate(childSeq, comparison, general, operand, null, value);
+    }
+
+    public List<Integer> getChildSeq() {
+        return childSeq;
+    }
+
+    /**
+     * @return true for a general comparison, which holds if any of the child elements matches.
+     */
+    public boolean isGeneral() {
+        return general;
+    }
+
+    /**
+     * Test the UTF-8 encoded string value of one child element.
+     *
+     * @return false only if the comparison is known to be false for the value
+     */
+    public boolean test(byte[] bytes, int start, int length) {
+        switch (operand) {
+            case STRING:
+                return comparison.holds(compare(bytes, start, length, stringValue));
+            case NUMBER:
+            case DECIMAL:
+                return testNumber(bytes, start, length);
+            default:
+                long component = getDateComponent(bytes, start, length);
+                if (component == UNKNOWN) {
+                    return true;
+                }
+                return comparison.holds(component < numberValue ? -1 : (component > numberValue ? 1 : 0));
+        }
+    }
+
+    private boolean testNumber(byte[] bytes, int start, int length) {
+        int end = start + length;
+        while (start < end && isWhitespace(bytes[start])) {
+            ++start;
+        }
+        while (end > start && isWhitespace(bytes[end - 1])) {
+            --end;
+        }
+        if (start == end) {
+            return true;
+        }
+        for (int i = start; i < end; ++i) {
+            byte b = bytes[i];
+            if ((b < '0' || b > '9') && b != '.' && b != '-' && b != '+' && b != 'e' && b != 'E') {
+                // Special values and invalid numbers are left to the query.
+                return true;
+            }
+            if ((b == 'e' || b == 'E') && operand == Operand.DECIMAL) {
+                // The cast of the query raises the error for an exponent.
+                return true;
+            }
+        }
+        double value;
+        try {
+            value = Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return true;
+        }
+        if (value == numberValue) {
+            // The exact decimal values might still differ.
+            return true;
+        }
+        return comparison.holds(value < numberValue ? -1 : 1);
+    }
+
+    /**
+     * Read the year, month or day of an xs:date or xs:dateTime lexical value.
+     *
+     * @return the component or UNKNOWN if the value can not be read
+     */
+    private long getDateComponent(byte[] bytes, int start, int length) {
+        int end = start + length;
+        int i = start;
+        while (i < end && isWhitespace(bytes[i])) {
+            ++i;
+        }
+        boolean negative = i < end && bytes[i] == '-';
+        if (negative) {
+            ++i;
+        }
+        long year = 0;
+        int digits = 0;
+        while (i < end && bytes[i] >= '0' && bytes[i] <= '9' && digits < 18) {
+            year = year * 10 + bytes[i++] - '0';
+            ++digits;
+        }
+        if (digits < 4 || i + 6 > end || bytes[i] != '-' || bytes[i + 3] != '-') {
+            return UNKNOWN;
+        }
+        int month = getTwoDigits(bytes, i + 1);
+        int day = getTwoDigits(bytes, i + 4);
+        if (month < 0 || day < 0) {
+            return UNKNOWN;
+        }
+        i += 6;
+        if (i + 2 < end && bytes[i] == 'T' && bytes[i + 1] == '2' && bytes[i + 2] == '4') {
+            // 24:00:00 is the first instant of the next day.
+            return UNKNOWN;
+        }
+        switch (operand) {
+            case YEAR:
+                return negative ? -year : year;
+            case MONTH:
+                return month;
+            default:
+                return day;
+        }
+    }
+
+    private static int getTwoDigits(byte[] bytes, int start) {
+        byte b1 = bytes[start];
+        byte b2 = bytes[start + 1];
+        if (b1 < '0' || b1 > '9' || b2 < '0' || b2 > '9') {
+            return -1;
+        }
+        return (b1 - '0') * 10 + b2 - '0';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    /**
+     * Unsigned byte order of UTF-8 is the code point order.
+     */
+    private static int compare(byte[] bytes, int start, int length, byte[] value) {
+        int n = Math.min(length, value.length);
+        for (int i = 0; i < n; ++i) {
+            int cmp = (bytes[start + i] & 0xff) - (value[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - value.length;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ValuePredicate)) {
+            return false;
+        }
+        ValuePredicate other = (ValuePredicate) obj;
+        return childSeq.equals(other.childSeq) && comparison == other.comparison && general == other.general
+                && operand == other.operand && Arrays.equals(stringValue, other.stringValue)
+                && Double.compare(numberValue, other.numberValue) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return (childSeq.hashCode() * 31 + comparison.hashCode()) * 31 + operand.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        String value = operand == Operand.STRING ? "\"" + new String(stringValue, StandardCharsets.UTF_8) + "\""
+                : Double.toString(numberValue);
+        return (general ? "general-" : "value-") + comparison.name().toLowerCase() + "(" + operand.name().toLowerCase()
+                + childSeq + ", " + value + ")";
+    }
+}
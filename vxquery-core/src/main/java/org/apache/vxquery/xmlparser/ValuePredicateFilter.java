@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hyracks.util.string.UTF8StringUtil;
+import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.types.ElementType;
+import org.apache.vxquery.types.NameTest;
+
+/**
+ * Evaluates the value predicates of a collection scan while an element selected by the child path steps is parsed.
+ * The parser reports the elements and text below the selected element with their depth relative to it.
+ */
+public class ValuePredicateFilter {
+    private final ValuePredicate[] predicates;
+    private final String[][] uris;
+    private final String[][] localNames;
+    private final byte[][][] uriBytes;
+    private final byte[][][] localNameBytes;
+
+    // Evaluation state of the current element.
+    private final int[] matchedDepth;
+    private final int[] candidates;
+    private final boolean[] satisfied;
+    private final byte[][] text;
+    private final int[] textLength;
+    private int collecting;
+
+    public ValuePredicateFilter(List<ValuePredicate> predicates, StaticContext staticContext) {
+        int n = predicates.size();
+        this.predicates = predicates.toArray(new ValuePredicate[n]);
+        uris = new String[n][];
+        localNames = new String[n][];
+        uriBytes = new byte[n][][];
+        localNameBytes = new byte[n][][];
+        for (int p = 0; p < n; ++p) {
+            List<Integer> childSeq = this.predicates[p].getChildSeq();
+            uris[p] = new String[childSeq.size()];
+            localNames[p] = new String[childSeq.size()];
+            uriBytes[p] = new byte[childSeq.size()][];
+            localNameBytes[p] = new byte[childSeq.size()][];
+            for (int s = 0; s < childSeq.size(); ++s) {
+                ElementType eType = (ElementType) staticContext.lookupSequenceType(childSeq.get(s)).getItemType();
+                NameTest nameTest = eType.getNameTest();
+                uris[p][s] = getStringFromBytes(nameTest.getUri());
+                localNames[p][s] = getStringFromBytes(nameTest.getLocalName());
+                uriBytes[p][s] = uris[p][s] == null ? null : uris[p][s].getBytes(StandardCharsets.UTF_8);
+                localNameBytes[p][s] = localNames[p][s] == null ? null
+                        : localNames[p][s].getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        matchedDepth = new int[n];
+        candidates = new int[n];
+        satisfied = new boolean[n];
+        text = new byte[n][64];
+        textLength = new int[n];
+    }
+
+    /**
+     * Reset the state for a newly selected element.
+     */
+    public void startMatch() {
+        Arrays.fill(matchedDepth, 0);
+        Arrays.fill(candidates, 0);
+        Arrays.fill(satisfied, false);
+        collecting = 0;
+    }
+
+    public void startElement(int depth, String uri, String localName) {
+        for (int p = 0; p < predicates.length; ++p) {
+            if (matchedDepth[p] == depth - 1 && depth <= localNames[p].length) {
+                String stepUri = uris[p][depth - 1];
+                String stepLocalName = localNames[p][depth - 1];
+                if ((stepUri == null || stepUri.equals(uri))
+                        && (stepLocalName == null || stepLocalName.equals(localName))) {
+                    matchStep(p, depth);
+                }
+            }
+        }
+    }
+
+    public void startElement(int depth, byte[] uri, byte[] bytes, int localStart, int localLength) {
+        for (int p = 0; p < predicates.length; ++p) {
+            if (matchedDepth[p] == depth - 1 && depth <= localNameBytes[p].length) {
+                byte[] stepUri = uriBytes[p][depth - 1];
+                byte[] stepLocalName = localNameBytes[p][depth - 1];
+                if ((stepUri == null || Arrays.equals(stepUri, uri)) && (stepLocalName == null
+                        || (stepLocalName.length == localLength && equalBytes(stepLocalName, bytes, localStart)))) {
+                    matchStep(p, depth);
+                }
+            }
+        }
+    }
+
+    private void matchStep(int p, int depth) {
+        matchedDepth[p] = depth;
+        if (depth == localNames[p].length) {
+            textLength[p] = 0;
+            ++collecting;
+        }
+    }
+
+    /**
+     * @return true if text is needed for a predicate.
+     */
+    public boolean isCollecting() {
+        return collecting > 0;
+    }
+
+    /**
+     * Add UTF-8 encoded text to the string value of the child elements being read.
+     */
+    public void text(byte[] bytes, int start, int length) {
+        for (int p = 0; p < predicates.length; ++p) {
+            if (matchedDepth[p] == localNames[p].length) {
+                if (textLength[p] + length > text[p].length) {
+                    text[p] = Arrays.copyOf(text[p], Math.max(text[p].length * 2, textLength[p] + length));
+                }
+                System.arraycopy(bytes, start, text[p], textLength[p], length);
+                textLength[p] += length;
+            }
+        }
+    }
+
+    public void endElement(int depth) {
+        for (int p = 0; p < predicates.length; ++p) {
+            if (matchedDepth[p] == depth) {
+                if (depth == localNames[p].length) {
+                    ++candidates[p];
+                    if (!satisfied[p] && predicates[p].test(text[p], 0, textLength[p])) {
+                        satisfied[p] = true;
+                    }
+                    --collecting;
+                }
+                matchedDepth[p] = depth - 1;
+            }
+        }
+    }
+
+    /**
+     * @return false if the selected element can not satisfy all predicates.
+     */
+    public boolean accept() {
+        for (int p = 0; p < predicates.length; ++p) {
+            // A value comparison over several children raises an error in the query, so keep the element.
+            if (!satisfied[p] && (predicates[p].isGeneral() || candidates[p] < 2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalBytes(byte[] expected, byte[] bytes, int start) {
+        for (int i = 0; i < expected.length; ++i) {
+            if (expected[i] != bytes[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getStringFromBytes(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        UTF8StringUtil.toString(sb, bytes, 0);
+        return sb.toString();
+    }
+}
@@ -16,15 +16,16 @@ package org.apache.vxquery.xmlparser;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.io.input.ReaderInputStream;
 import org.apache.hyracks.api.comm.IFrameFieldAppender;
 import org.apache.hyracks.api.comm.IFrameWriter;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
@@ -34,14 +35,20 @@ import org.apache.vxquery.context.StaticContext;
 import org.apache.vxquery.exceptions.VXQueryFileNotFoundException;
 import org.apache.vxquery.exceptions.VXQueryParseException;
 import org.apache.vxquery.types.SequenceType;
+import org.apache.vxquery.util.CompressionUtil;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
 public class XMLParser implements IParser {
+    public static final String XML_PARSER_PROPERTY = "vxquery.xml_parser";
+    public static final String SAX_PARSER = "sax";
+    public static final String UTF8_PARSER = "utf8";
+
     final XMLReader parser;
     final SAXContentHandler handler;
+    final UTF8XMLParser utf8Parser;
     final InputSource in;
     final String nodeId;
     final int bufferSize;
@@ -52,18 +59,51 @@ public class XMLParser implements IParser {
 
     public XMLParser(boolean attachTypes, ITreeNodeIdProvider idProvider, String nodeId, IFrameFieldAppender appender,
             List<Integer> childSeq, StaticContext staticContext) throws HyracksDataException {
+        this(attachTypes, idProvider, nodeId, appender, childSeq, new ArrayList<ValuePredicate>(), staticContext);
+    }
+
+    public XMLParser(boolean attachTypes, ITreeNodeIdProvider idProvider, String nodeId, IFrameFieldAppender appender,
+            List<Integer> childSeq, List<ValuePredicate> valuePredicates, StaticContext staticContext)
+            throws HyracksDataException {
+        this(attachTypes, idProvider, nodeId, appender, childSeq, valuePredicates, new ArrayList<List<Integer>>(),
+                staticContext);
+    }
+
+    public XMLParser(boolean attachTypes, ITreeNodeIdProvider idProvider, String nodeId, IFrameFieldAppender appender,
+            List<Integer> childSeq, List<ValuePredicate> valuePredicates, List<List<Integer>> projections,
+            StaticContext staticContext) throws HyracksDataException {
         bufferSize = Integer.parseInt(System.getProperty("vxquery.buffer_size", "-1"));
         this.nodeId = nodeId;
+        List<SequenceType> childSequenceTypes = new ArrayList<SequenceType>();
+        if (appender != null) {
+            for (int typeCode : childSeq) {
+                childSequenceTypes.add(staticContext.lookupSequenceType(typeCode));
+            }
+        }
+        ValuePredicateFilter valueFilter = null;
+        if (appender != null && !childSeq.isEmpty() && !valuePredicates.isEmpty()) {
+            valueFilter = new ValuePredicateFilter(valuePredicates, staticContext);
+        }
+        ChildPathProjection projection = null;
+        if (appender != null && !childSeq.isEmpty() && !projections.isEmpty()) {
+            projection = new ChildPathProjection(projections, staticContext);
+        }
+        if (UTF8_PARSER.equals(System.getProperty(XML_PARSER_PROPERTY, SAX_PARSER))) {
+            utf8Parser = new UTF8XMLParser(attachTypes, idProvider, appender, childSequenceTypes, valueFilter,
+                    projection, bufferSize);
+            parser = null;
+            handler = null;
+            in = null;
+            return;
+        }
+        utf8Parser = null;
         try {
             parser = XMLReaderFactory.createXMLReader();
             if (appender == null) {
                 handler = new SAXContentHandler(attachTypes, idProvider, false);
             } else {
-                List<SequenceType> childSequenceTypes = new ArrayList<SequenceType>();
-                for (int typeCode : childSeq) {
-                    childSequenceTypes.add(staticContext.lookupSequenceType(typeCode));
-                }
-                handler = new SAXContentHandler(attachTypes, idProvider, appender, childSequenceTypes);
+                handler = new SAXContentHandler(attachTypes, idProvider, appender, childSequenceTypes, valueFilter,
+                        projection);
             }
             parser.setContentHandler(handler);
             parser.setProperty("http://xml.org/sax/properties/lexical-handler", handler);
@@ -74,6 +114,10 @@ public class XMLParser implements IParser {
     }
 
     public int parse(Reader input, ArrayBackedValueStorage abvs) throws HyracksDataException {
+        if (utf8Parser != null) {
+            // Only for callers that have characters. Documents read from files are passed as bytes.
+            return parse(new ReaderInputStream(input, StandardCharsets.UTF_8), abvs);
+        }
         try {
             in.setCharacterStream(input);
             parser.parse(in);
@@ -86,13 +130,50 @@ public class XMLParser implements IParser {
         return 0;
     }
 
+    public int parse(InputStream input, ArrayBackedValueStorage abvs) throws HyracksDataException {
+        if (utf8Parser != null) {
+            try {
+                utf8Parser.parseDocument(input, abvs);
+                input.close();
+            } catch (Exception e) {
+                throw new HyracksDataException(e, nodeId);
+            }
+            return 0;
+        }
+        try {
+            // The SAX parser detects the encoding of the document from its bytes.
+            in.setCharacterStream(null);
+            in.setByteStream(input);
+            parser.parse(in);
+            handler.writeDocument(abvs);
+            input.close();
+        } catch (Exception e) {
+            throw new HyracksDataException(e, nodeId);
+        } finally {
+            in.setByteStream(null);
+        }
+        return 0;
+    }
+
     public void parseElements(File file, IFrameWriter writer, int tupleIndex) throws HyracksDataException {
+        if (utf8Parser != null) {
+            try (InputStream input = CompressionUtil.openInputStream(file)) {
+                utf8Parser.parseElements(input, writer, tupleIndex);
+            } catch (FileNotFoundException e) {
+                throw new VXQueryFileNotFoundException(e, file, nodeId);
+            } catch (SAXException e) {
+                throw new VXQueryParseException(e, file, nodeId);
+            } catch (IOException e) {
+                throw new HyracksDataException(e, nodeId);
+            }
+            return;
+        }
         try {
             Reader input;
             if (bufferSize > 0) {
-                input = new BufferedReader(new InputStreamReader(new FileInputStream(file)), bufferSize);
+                input = new BufferedReader(new InputStreamReader(CompressionUtil.openInputStream(file)), bufferSize);
             } else {
-                input = new InputStreamReader(new FileInputStream(file));
+                input = new InputStreamReader(CompressionUtil.openInputStream(file));
             }
             in.setCharacterStream(input);
             handler.setupElementWriter(writer, tupleIndex);
@@ -112,6 +193,15 @@ public class XMLParser implements IParser {
 
     public void parseHDFSElements(InputStream inputStream, IFrameWriter writer, FrameTupleAccessor fta, int tupleIndex)
             throws HyracksDataException {
+        if (utf8Parser != null) {
+            try {
+                utf8Parser.parseElements(inputStream, writer, tupleIndex);
+                inputStream.close();
+            } catch (Exception e) {
+                throw new HyracksDataException(e, nodeId);
+            }
+            return;
+        }
         try {
             Reader input;
             if (bufferSize > 0) {
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlquery.query;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.hyracks.api.client.NodeControllerInfo;
+import org.apache.vxquery.metadata.CollectionStatisticsCatalog;
+
+/**
+ * Least recently used cache of compiled query modules. The job specification of a module is reused for each
+ * execution of the query: only the dynamic context, which holds the values of the external variables, is set before
+ * a job is started. A key holds the query text, the compiler settings, the nodes of the cluster and the version of
+ * the collection statistics that the join rule reads, so a plan is not reused after any of them change.
+ */
+public class PreparedQueryCache {
+    public static final String CACHE_SIZE_PROPERTY = "vxquery.plan_cache_size";
+    private static final int DEFAULT_CACHE_SIZE = 16;
+
+    private final Map<String, Module> modules;
+
+    public PreparedQueryCache() {
+        this(Integer.parseInt(System.getProperty(CACHE_SIZE_PROPERTY, Integer.toString(DEFAULT_CACHE_SIZE))));
+    }
+
+    public PreparedQueryCache(final int capacity) {
+        modules = new LinkedHashMap<String, Module>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Module> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the compiled module or null if the query has not been compiled with the key.
+     */
+    public synchronized Module get(String key) {
+        return modules.get(key);
+    }
+
+    public synchronized void put(String key, Module module) {
+        modules.put(key, module);
+    }
+
+    public synchronized void clear() {
+        modules.clear();
+    }
+
+    /**
+     * Create the key of a query for the cluster with the settings that change its compiled plan. The key has to be
+     * created before the query is compiled, so statistics that change during the compilation miss the cache later.
+     */
+    public static String createKey(String query, Map<String, NodeControllerInfo> nodeControllerInfos,
+            Object... settings) {
+        StringBuilder key = new StringBuilder();
+        key.append(CollectionStatisticsCatalog.getInstance().getVersion()).append('\0');
+        for (Object setting : settings) {
+            key.append(setting).append('\0');
+        }
+        if (nodeControllerInfos != null) {
+            for (String node : new TreeSet<String>(nodeControllerInfos.keySet())) {
+                key.append(node).append(',');
+            }
+        }
+        return key.append('\0').append(query).toString();
+    }
+}
@@ -23,8 +23,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,6 +47,7 @@ import org.apache.hyracks.algebricks.core.algebra.expressions.ConstantExpression
 import org.apache.hyracks.algebricks.core.algebra.expressions.ScalarFunctionCallExpression;
 import org.apache.hyracks.algebricks.core.algebra.expressions.UnnestingFunctionCallExpression;
 import org.apache.hyracks.algebricks.core.algebra.expressions.VariableReferenceExpression;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractLogicalOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.AggregateOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.AssignOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.DistributeResultOperator;
@@ -54,6 +57,7 @@ import org.apache.hyracks.algebricks.core.algebra.operators.logical.OrderOperato
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.SelectOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.SubplanOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.UnnestOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.WriteOperator;
 import org.apache.hyracks.algebricks.core.algebra.plan.ALogicalPlanImpl;
 import org.apache.hyracks.data.std.primitive.DoublePointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
@@ -74,6 +78,7 @@ import org.apache.vxquery.functions.ExternalFunction;
 import org.apache.vxquery.functions.Function;
 import org.apache.vxquery.functions.Signature;
 import org.apache.vxquery.functions.UserDefinedXQueryFunction;
+import org.apache.vxquery.metadata.QueryResultFileDataSink;
 import org.apache.vxquery.metadata.QueryResultSetDataSink;
 import org.apache.vxquery.runtime.functions.cast.CastToDecimalOperation;
 import org.apache.vxquery.types.AnyItemType;
@@ -198,6 +203,8 @@ public class XMLQueryTranslator {
 
     private IVariableScope rootVarScope;
 
+    private final Set<XQueryVariable> externalVariables = new HashSet<XQueryVariable>();
+
     private StaticContext currCtx;
 
     private int varCounter;
@@ -380,6 +387,9 @@ public class XMLQueryTranslator {
                         LogicalVariable lVar = newLogicalVariable();
                         XQueryVariable var = new XQueryVariable(name, type, lVar);
                         moduleCtx.registerVariable(var);
+                        if (node.getValue() == null) {
+                            externalVariables.add(var);
+                        }
                         break;
                     }
 
@@ -433,8 +443,8 @@ public class XMLQueryTranslator {
             for (ASTNode d : decls) {
                 switch (d.getTag()) {
                     case VARIABLE_DECLARATION: {
-                        VarDeclNode node = (VarDeclNode) d;
-                        // TODO Support Global variables
+                        // External variables are read from the dynamic context where they are referenced.
+                        // TODO Support Global variables with a value
                         break;
                     }
 
@@ -667,8 +677,14 @@ public class XMLQueryTranslator {
         unnest.getInputs().add(mutable(tCtx.op));
         List<Mutable<ILogicalExpression>> exprs = new ArrayList<Mutable<ILogicalExpression>>();
         exprs.add(mutable(vre(iLVar)));
-        QueryResultSetDataSink sink = new QueryResultSetDataSink(ccb.getResultSetId(), null);
-        DistributeResultOperator op = new DistributeResultOperator(exprs, sink);
+        AbstractLogicalOperator op;
+        if (ccb.getResultDirectory() != null) {
+            // Each partition writes its part of the result to a file on its node.
+            op = new WriteOperator(exprs, new QueryResultFileDataSink(ccb.getResultDirectory()));
+        } else {
+            QueryResultSetDataSink sink = new QueryResultSetDataSink(ccb.getResultSetId(), null);
+            op = new DistributeResultOperator(exprs, sink);
+        }
         op.getInputs().add(mutable(unnest));
         ALogicalPlanImpl lp = new ALogicalPlanImpl(mutable(op));
 
@@ -1170,6 +1186,12 @@ public class XMLQueryTranslator {
         if (var == null) {
             throw new SystemException(ErrorCode.XPST0008, vrNode.getSourceLocation());
         }
+        if (externalVariables.contains(var)) {
+            // The value is bound for each execution, so it is not part of the plan.
+            ILogicalExpression name = ce(SequenceType.create(BuiltinTypeRegistry.XS_STRING, Quantifier.QUANT_ONE),
+                    vName.toString());
+            return createAssignment(treat(sfce(BuiltinOperators.EXTERNAL_VARIABLE, name), var.getType()), tCtx);
+        }
         LogicalVariable lVar = createAssignment(treat(vre(var.getLogicalVariable()), var.getType()), tCtx);
         return lVar;
     }
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.rewriter.rules;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalOperatorTag;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.DataSourceScanOperator;
+import org.apache.hyracks.api.client.NodeControllerInfo;
+import org.apache.hyracks.api.comm.NetworkAddress;
+import org.apache.hyracks.api.dataset.ResultSetId;
+import org.apache.vxquery.compiler.CompilerControlBlock;
+import org.apache.vxquery.context.RootStaticContextImpl;
+import org.apache.vxquery.context.StaticContextImpl;
+import org.apache.vxquery.metadata.VXQueryCollectionDataSource;
+import org.apache.vxquery.xmlquery.query.XMLQueryCompiler;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Value steps are pushed into the scan of a collection of JSON files, but not into a collection that also holds XML
+ * files or whose files are unknown.
+ */
+public class PushValueIntoDataScanRuleTest {
+    private static final String JSON = "{\"results\": [{\"value\": 1}, {\"value\": 2}]}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testJsonCollection() throws Exception {
+        File collection = folder.newFolder("json");
+        write(new File(collection, "sensors.json"), JSON);
+        Assert.assertEquals(Arrays.asList("results", null), compileValueSteps(collection));
+    }
+
+    @Test
+    public void testMixedCollection() throws Exception {
+        File collection = folder.newFolder("mixed");
+        write(new File(collection, "sensors.json"), JSON);
+        write(new File(collection, "sensors.xml"), "<results><value>1</value></results>");
+        Assert.assertTrue(compileValueSteps(collection).isEmpty());
+    }
+
+    @Test
+    public void testMissingCollection() throws Exception {
+        Assert.assertTrue(compileValueSteps(new File(folder.getRoot(), "missing")).isEmpty());
+    }
+
+    private static List<String> compileValueSteps(File collection) throws Exception {
+        String query = "for $i in collection('" + collection.getPath() + "')(\"results\")()\n" + "return $i";
+        Map<String, NodeControllerInfo> nodeControllerInfos = new HashMap<String, NodeControllerInfo>();
+        nodeControllerInfos.put("nc1",
+                new NodeControllerInfo("nc1", null, new NetworkAddress("127.0.0.1", 0), null, null, 1));
+        XMLQueryCompiler compiler = new XMLQueryCompiler(null, nodeControllerInfos, 65536);
+        CompilerControlBlock ccb = new CompilerControlBlock(new StaticContextImpl(RootStaticContextImpl.INSTANCE),
+                new ResultSetId(System.nanoTime()), null);
+        compiler.compile("value", new StringReader(query), ccb, Integer.MAX_VALUE);
+
+        List<ILogicalOperator> scans = new ArrayList<>();
+        for (Mutable<ILogicalOperator> root : compiler.getModule().getBody().getRoots()) {
+            collect(root.getValue(), LogicalOperatorTag.DATASOURCESCAN, scans);
+        }
+        Assert.assertEquals(1, scans.size());
+        return ((VXQueryCollectionDataSource) ((DataSourceScanOperator) scans.get(0)).getDataSource()).getValueSeq();
+    }
+
+    private static void collect(ILogicalOperator op, LogicalOperatorTag tag, List<ILogicalOperator> ops) {
+        if (op.getOperatorTag() == tag) {
+            ops.add(op);
+        }
+        for (Mutable<ILogicalOperator> input : op.getInputs()) {
+            collect(input.getValue(), tag, ops);
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+    }
+}
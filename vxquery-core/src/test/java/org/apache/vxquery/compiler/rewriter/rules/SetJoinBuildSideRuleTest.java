@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.rewriter.rules;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalOperatorTag;
+import org.apache.hyracks.algebricks.core.algebra.expressions.AbstractFunctionCallExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.BroadcastExpressionAnnotation;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractBinaryJoinOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.DataSourceScanOperator;
+import org.apache.hyracks.api.client.NodeControllerInfo;
+import org.apache.hyracks.api.comm.NetworkAddress;
+import org.apache.hyracks.api.dataset.ResultSetId;
+import org.apache.vxquery.compiler.CompilerControlBlock;
+import org.apache.vxquery.context.RootStaticContextImpl;
+import org.apache.vxquery.context.StaticContextImpl;
+import org.apache.vxquery.metadata.VXQueryCollectionDataSource;
+import org.apache.vxquery.xmlquery.query.XMLQueryCompiler;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The compiled plan of a join between a small and a large collection builds and broadcasts the small collection, no
+ * matter in which order the query names them.
+ */
+public class SetJoinBuildSideRuleTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSmallLeftInput() throws Exception {
+        File stations = createStations();
+        File sensors = createSensors();
+        AbstractBinaryJoinOperator join = compileJoin(stations, sensors);
+        Assert.assertEquals(sensors.getPath(), getScannedCollection(join.getInputs().get(0).getValue()));
+        Assert.assertEquals(stations.getPath(), getScannedCollection(join.getInputs().get(1).getValue()));
+        Assert.assertTrue(isBroadcast(join));
+    }
+
+    @Test
+    public void testSmallRightInput() throws Exception {
+        File stations = createStations();
+        File sensors = createSensors();
+        AbstractBinaryJoinOperator join = compileJoin(sensors, stations);
+        Assert.assertEquals(sensors.getPath(), getScannedCollection(join.getInputs().get(0).getValue()));
+        Assert.assertEquals(stations.getPath(), getScannedCollection(join.getInputs().get(1).getValue()));
+        Assert.assertTrue(isBroadcast(join));
+    }
+
+    @Test
+    public void testMissingCollection() throws Exception {
+        File stations = createStations();
+        File missing = new File(folder.getRoot(), "missing");
+        AbstractBinaryJoinOperator join = compileJoin(stations, missing);
+        Assert.assertEquals(stations.getPath(), getScannedCollection(join.getInputs().get(0).getValue()));
+        Assert.assertEquals(missing.getPath(), getScannedCollection(join.getInputs().get(1).getValue()));
+        Assert.assertFalse(isBroadcast(join));
+    }
+
+    private File createStations() throws IOException {
+        File stations = folder.newFolder("stations");
+        write(new File(stations, "stations.xml"), "<items><item><id>US1</id></item></items>");
+        return stations;
+    }
+
+    private File createSensors() throws IOException {
+        File sensors = folder.newFolder("sensors");
+        StringBuilder items = new StringBuilder("<items>");
+        for (int i = 0; i < 1000; ++i) {
+            items.append("<item><id>US").append(i).append("</id><value>").append(i).append("</value></item>");
+        }
+        write(new File(sensors, "sensors.xml"), items.append("</items>").toString());
+        return sensors;
+    }
+
+    /**
+     * Both collections are read as the same kind of element, so the join does not depend on which of them is first.
+     */
+    private static AbstractBinaryJoinOperator compileJoin(File first, File second) throws Exception {
+        String query = "for $a in collection('" + first.getPath() + "')/items/item\n" + "for $b in collection('"
+                + second.getPath() + "')/items/item\n" + "where $a/id eq $b/id\n" + "return $b";
+        Map<String, NodeControllerInfo> nodeControllerInfos = new HashMap<String, NodeControllerInfo>();
+        nodeControllerInfos.put("nc1",
+                new NodeControllerInfo("nc1", null, new NetworkAddress("127.0.0.1", 0), null, null, 1));
+        XMLQueryCompiler compiler = new XMLQueryCompiler(null, nodeControllerInfos, 65536);
+        CompilerControlBlock ccb = new CompilerControlBlock(new StaticContextImpl(RootStaticContextImpl.INSTANCE),
+                new ResultSetId(System.nanoTime()), null);
+        compiler.compile("join", new StringReader(query), ccb, Integer.MAX_VALUE);
+
+        List<ILogicalOperator> joins = new ArrayList<>();
+        for (Mutable<ILogicalOperator> root : compiler.getModule().getBody().getRoots()) {
+            collect(root.getValue(), LogicalOperatorTag.INNERJOIN, joins);
+        }
+        Assert.assertEquals(1, joins.size());
+        return (AbstractBinaryJoinOperator) joins.get(0);
+    }
+
+    private static String getScannedCollection(ILogicalOperator op) {
+        List<ILogicalOperator> scans = new ArrayList<>();
+        collect(op, LogicalOperatorTag.DATASOURCESCAN, scans);
+        Assert.assertEquals(1, scans.size());
+        VXQueryCollectionDataSource ds = (VXQueryCollectionDataSource) ((DataSourceScanOperator) scans.get(0))
+                .getDataSource();
+        return ds.getPartitions()[0];
+    }
+
+    private static boolean isBroadcast(AbstractBinaryJoinOperator join) {
+        AbstractFunctionCallExpression condition = (AbstractFunctionCallExpression) join.getCondition().getValue();
+        return condition.getAnnotations().containsKey(BroadcastExpressionAnnotation.BROADCAST_ANNOTATION_KEY);
+    }
+
+    private static void collect(ILogicalOperator op, LogicalOperatorTag tag, List<ILogicalOperator> ops) {
+        if (op.getOperatorTag() == tag) {
+            ops.add(op);
+        }
+        for (Mutable<ILogicalOperator> input : op.getInputs()) {
+            collect(input.getValue(), tag, ops);
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+    }
+}
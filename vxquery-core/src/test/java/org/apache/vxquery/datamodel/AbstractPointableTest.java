@@ -35,6 +35,10 @@ public abstract class AbstractPointableTest {
             writeLong((Long) value, abvsInput.getDataOutput());
         } else if (value instanceof java.lang.Double) {
             writeDouble((Double) value, abvsInput.getDataOutput());
+        } else if (value instanceof java.lang.Float) {
+            writeFloat((Float) value, abvsInput.getDataOutput());
+        } else if (value instanceof java.math.BigDecimal) {
+            writeDecimal((java.math.BigDecimal) value, abvsInput.getDataOutput());
         } else if (value instanceof java.lang.String) {
             writeString((String) value, abvsInput.getDataOutput());
         } else {
@@ -69,6 +73,21 @@ public abstract class AbstractPointableTest {
         dOut.writeDouble(value);
     }
 
+    protected void writeFloat(Float value, DataOutput dOut) throws IOException {
+        if (includeTag) {
+            dOut.write(ValueTag.XS_FLOAT_TAG);
+        }
+        dOut.writeFloat(value);
+    }
+
+    protected void writeDecimal(java.math.BigDecimal value, DataOutput dOut) throws IOException {
+        if (includeTag) {
+            dOut.write(ValueTag.XS_DECIMAL_TAG);
+        }
+        dOut.write(value.scale());
+        dOut.writeLong(value.unscaledValue().longValue());
+    }
+
     protected void writeString(String value, DataOutput dOut) throws IOException {
         if (includeTag) {
             dOut.write(ValueTag.XS_STRING_TAG);
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.datamodel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
+import org.apache.vxquery.datamodel.util.TaggedValueHash;
+import org.apache.vxquery.datamodel.util.TaggedValueOrder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.datamodel.values.XDMConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The order test checks that values of the same class are ordered by value, that the normalized keys never
+ * contradict the comparison and that equal values hash equally. The value equality promotes numbers.
+ */
+public class TaggedValueOrderTest extends AbstractPointableTest {
+    private final TaggedValuePointable tvp1 = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final TaggedValuePointable tvp2 = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final StringValueBuilder svb = new StringValueBuilder();
+
+    @Test
+    public void testNumbers() throws IOException {
+        assertOrdered(-5, 3L);
+        assertOrdered(3L, 3.5);
+        assertOrdered(-1000000L, -2.5);
+        assertOrdered(9, 10);
+        assertOrdered(99.0, 100L);
+        assertEqual(3, 3L);
+        assertEqual(4L, 4.0);
+    }
+
+    @Test
+    public void testExactNumbers() throws IOException {
+        assertOrdered(9007199254740992L, 9007199254740993L);
+        assertOrdered(new BigDecimal("9007199254740992.5"), 9007199254740993L);
+        assertOrdered(new BigDecimal("0.1"), 0.1);
+        assertOrdered(new BigDecimal("0.1"), 0.1f);
+        assertOrdered(0.1f, 0.2);
+        assertOrdered(new BigDecimal("-92233720368547758.07"), -1L);
+        assertEqual(new BigDecimal("2.50"), new BigDecimal("2.5"));
+        assertEqual(0.5f, new BigDecimal("0.5"));
+    }
+
+    @Test
+    public void testPromotion() throws IOException {
+        assertValueEqual(new BigDecimal("0.1"), 0.1f);
+        assertValueEqual(0.1, new BigDecimal("0.1"));
+        assertValueEqual(16777217L, 16777216.0f);
+        assertValueEqual(9007199254740993L, 9007199254740992.0);
+        assertValueNotEqual(9007199254740992L, 9007199254740993L);
+        assertValueNotEqual(0.1f, 0.1);
+    }
+
+    @Test
+    public void testDurations() throws IOException {
+        setDuration(ValueTag.XS_YEAR_MONTH_DURATION_TAG, 12, 0, tvp1);
+        setDuration(ValueTag.XS_DURATION_TAG, 12, 0, tvp2);
+        assertEqual(tvp1, tvp2);
+        setDuration(ValueTag.XS_DAY_TIME_DURATION_TAG, 0, 1000, tvp1);
+        assertOrdered(tvp1, tvp2);
+        setDuration(ValueTag.XS_DURATION_TAG, 0, 1000, tvp2);
+        assertEqual(tvp1, tvp2);
+    }
+
+    @Test
+    public void testQNames() throws IOException {
+        setQName("http://example.org", "a", "station", tvp1);
+        setQName("http://example.org", "b", "station", tvp2);
+        assertEqual(tvp1, tvp2);
+        setQName("http://example.org", "a", "sensor", tvp2);
+        assertOrdered(tvp2, tvp1);
+    }
+
+    @Test
+    public void testJoinKeys() throws IOException {
+        assertEqual(1, new BigDecimal("1.0"));
+        assertEqual(Double.NaN, Float.NaN);
+        getTaggedValuePointable(Double.NaN, tvp1);
+        getTaggedValuePointable(Double.NEGATIVE_INFINITY, tvp2);
+        assertOrdered(tvp1, tvp2);
+        setUntypedAtomic("USW00014771", tvp1);
+        getTaggedValuePointable("USW00014771", tvp2);
+        assertEqual(tvp1, tvp2);
+        getTaggedValuePointable("USW00014772", tvp2);
+        assertOrdered(tvp1, tvp2);
+    }
+
+    @Test
+    public void testStrings() throws IOException {
+        assertOrdered("", "a");
+        assertOrdered("TMAX", "TMIN");
+        assertOrdered("ab", "abc");
+        assertOrdered("Z", "a");
+        assertEqual("USW00014771", "USW00014771");
+    }
+
+    @Test
+    public void testClasses() throws IOException {
+        getTaggedValuePointable(Double.NaN, tvp2);
+        XDMConstants.setEmptySequence(tvp1);
+        assertOrdered(tvp1, tvp2);
+        getTaggedValuePointable(-1000.0, tvp1);
+        assertOrdered(tvp2, tvp1);
+        getTaggedValuePointable("1", tvp2);
+        assertOrdered(tvp1, tvp2);
+    }
+
+    private void assertOrdered(Object value1, Object value2) throws IOException {
+        getTaggedValuePointable(value1, tvp1);
+        getTaggedValuePointable(value2, tvp2);
+        assertOrdered(tvp1, tvp2);
+    }
+
+    private void assertOrdered(TaggedValuePointable first, TaggedValuePointable second) {
+        Assert.assertTrue(compare(first, second) < 0);
+        Assert.assertTrue(compare(second, first) > 0);
+        Assert.assertTrue(Integer.compareUnsigned(normalize(first), normalize(second)) <= 0);
+    }
+
+    private void assertEqual(Object value1, Object value2) throws IOException {
+        getTaggedValuePointable(value1, tvp1);
+        getTaggedValuePointable(value2, tvp2);
+        assertEqual(tvp1, tvp2);
+    }
+
+    private void assertEqual(TaggedValuePointable first, TaggedValuePointable second) {
+        Assert.assertEquals(0, compare(first, second));
+        Assert.assertTrue(equal(first, second));
+        Assert.assertEquals(normalize(first), normalize(second));
+        Assert.assertEquals(hash(first, false), hash(second, false));
+        Assert.assertEquals(hash(first, true), hash(second, true));
+    }
+
+    private void assertValueEqual(Object value1, Object value2) throws IOException {
+        getTaggedValuePointable(value1, tvp1);
+        getTaggedValuePointable(value2, tvp2);
+        Assert.assertTrue(equal(tvp1, tvp2));
+        Assert.assertTrue(equal(tvp2, tvp1));
+        Assert.assertEquals(hash(tvp1, true), hash(tvp2, true));
+    }
+
+    private void assertValueNotEqual(Object value1, Object value2) throws IOException {
+        getTaggedValuePointable(value1, tvp1);
+        getTaggedValuePointable(value2, tvp2);
+        Assert.assertFalse(equal(tvp1, tvp2));
+        Assert.assertFalse(equal(tvp2, tvp1));
+    }
+
+    private static void setDuration(int tag, int months, long millis, TaggedValuePointable tvp) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dOut = new DataOutputStream(bytes);
+        dOut.write(tag);
+        if (tag != ValueTag.XS_DAY_TIME_DURATION_TAG) {
+            dOut.writeInt(months);
+        }
+        if (tag != ValueTag.XS_YEAR_MONTH_DURATION_TAG) {
+            dOut.writeLong(millis);
+        }
+        tvp.set(bytes.toByteArray(), 0, bytes.size());
+    }
+
+    private void setUntypedAtomic(String value, TaggedValuePointable tvp) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dOut = new DataOutputStream(bytes);
+        dOut.write(ValueTag.XS_UNTYPED_ATOMIC_TAG);
+        svb.write(value, dOut);
+        tvp.set(bytes.toByteArray(), 0, bytes.size());
+    }
+
+    private void setQName(String uri, String prefix, String localName, TaggedValuePointable tvp) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dOut = new DataOutputStream(bytes);
+        dOut.write(ValueTag.XS_QNAME_TAG);
+        svb.write(uri, dOut);
+        svb.write(prefix, dOut);
+        svb.write(localName, dOut);
+        tvp.set(bytes.toByteArray(), 0, bytes.size());
+    }
+
+    private static int compare(TaggedValuePointable tvp1, TaggedValuePointable tvp2) {
+        return TaggedValueOrder.compare(tvp1.getByteArray(), tvp1.getStartOffset(), tvp1.getLength(),
+                tvp2.getByteArray(), tvp2.getStartOffset(), tvp2.getLength());
+    }
+
+    private static boolean equal(TaggedValuePointable tvp1, TaggedValuePointable tvp2) {
+        return TaggedValueOrder.equal(tvp1.getByteArray(), tvp1.getStartOffset(), tvp1.getLength(),
+                tvp2.getByteArray(), tvp2.getStartOffset(), tvp2.getLength());
+    }
+
+    private static int hash(TaggedValuePointable tvp, boolean floatPrecision) {
+        return TaggedValueHash.hash(tvp.getByteArray(), tvp.getStartOffset(), tvp.getLength(), 0, floatPrecision);
+    }
+
+    private static int normalize(TaggedValuePointable tvp) {
+        return TaggedValueOrder.normalize(tvp.getByteArray(), tvp.getStartOffset(), tvp.getLength());
+    }
+}
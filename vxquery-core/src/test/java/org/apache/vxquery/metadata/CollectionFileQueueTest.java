@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * With dynamic file splits the partitions of a node take the files of all collection directories from one queue.
+ * Each file is handed out once, the largest first, and the queues of a job are forgotten once its partitions closed
+ * or one of them failed.
+ */
+public class CollectionFileQueueTest {
+    private static final int PARTITIONS = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDynamicAssignment() throws Exception {
+        final List<File> directories = createCollection();
+        final String jobKey = "job-dynamic";
+        int jobs = CollectionFileQueue.getSharedJobCount();
+
+        final List<File> scanned = Collections.synchronizedList(new ArrayList<File>());
+        final CollectionFileQueue[] queues = new CollectionFileQueue[PARTITIONS];
+        Thread[] partitions = new Thread[PARTITIONS];
+        for (int p = 0; p < PARTITIONS; ++p) {
+            final int partition = p;
+            partitions[p] = new Thread() {
+                @Override
+                public void run() {
+                    queues[partition] = CollectionFileQueue.getSharedQueue(jobKey, 0, PARTITIONS, directories);
+                    File file;
+                    while ((file = queues[partition].next()) != null) {
+                        scanned.add(file);
+                    }
+                    CollectionFileQueue.closeSharedQueues(jobKey, PARTITIONS);
+                }
+            };
+            partitions[p].start();
+        }
+        for (Thread partition : partitions) {
+            partition.join();
+        }
+
+        Assert.assertSame(queues[0], queues[1]);
+        Assert.assertSame(queues[0], queues[2]);
+        Assert.assertEquals(6, scanned.size());
+        Assert.assertEquals(6, new HashSet<>(scanned).size());
+        Assert.assertEquals(jobs, CollectionFileQueue.getSharedJobCount());
+    }
+
+    @Test
+    public void testLargestFilesFirst() throws IOException {
+        List<File> directories = createCollection();
+        CollectionFileQueue queue = CollectionFileQueue.getSharedQueue("job-order", 0, 1, directories);
+        List<Long> lengths = new ArrayList<>();
+        File file;
+        while ((file = queue.next()) != null) {
+            lengths.add(file.length());
+        }
+        Assert.assertEquals(Arrays.asList(60L, 50L, 40L, 30L, 20L, 10L), lengths);
+        CollectionFileQueue.closeSharedQueues("job-order", 1);
+    }
+
+    @Test
+    public void testEachScanHasItsQueue() throws IOException {
+        List<File> directories = createCollection();
+        CollectionFileQueue first = CollectionFileQueue.getSharedQueue("job-scans", 0, 2, directories);
+        CollectionFileQueue second = CollectionFileQueue.getSharedQueue("job-scans", 1, 2, directories);
+        Assert.assertNotSame(first, second);
+        Assert.assertSame(first, CollectionFileQueue.getSharedQueue("job-scans", 0, 2, directories));
+        CollectionFileQueue.closeSharedQueues("job-scans", 2);
+        CollectionFileQueue.closeSharedQueues("job-scans", 2);
+    }
+
+    @Test
+    public void testShortJob() throws IOException {
+        List<File> directories = createCollection();
+        int jobs = CollectionFileQueue.getSharedJobCount();
+
+        // Only one of the partitions asks for the queue before all of them close.
+        CollectionFileQueue.getSharedQueue("job-short", 0, PARTITIONS, directories);
+        for (int p = 0; p < PARTITIONS; ++p) {
+            CollectionFileQueue.closeSharedQueues("job-short", PARTITIONS);
+        }
+        Assert.assertEquals(jobs, CollectionFileQueue.getSharedJobCount());
+    }
+
+    @Test
+    public void testFailedJob() throws IOException {
+        List<File> directories = createCollection();
+        int jobs = CollectionFileQueue.getSharedJobCount();
+
+        CollectionFileQueue queue = CollectionFileQueue.getSharedQueue("job-failed", 0, PARTITIONS, directories);
+        Assert.assertEquals(jobs + 1, CollectionFileQueue.getSharedJobCount());
+        CollectionFileQueue.failSharedQueues("job-failed");
+        Assert.assertEquals(jobs, CollectionFileQueue.getSharedJobCount());
+        Assert.assertNotSame(queue, CollectionFileQueue.getSharedQueue("job-failed", 0, PARTITIONS, directories));
+        CollectionFileQueue.failSharedQueues("job-failed");
+    }
+
+    private List<File> createCollection() throws IOException {
+        File partition1 = folder.newFolder();
+        File partition2 = folder.newFolder();
+        write(new File(partition1, "a.xml"), 10);
+        write(new File(partition1, "b/b.xml"), 60);
+        write(new File(partition1, "c.xml"), 30);
+        write(new File(partition2, "d.xml"), 50);
+        write(new File(partition2, "e.json"), 20);
+        write(new File(partition2, "f.xml"), 40);
+        write(new File(partition2, "notes.txt"), 70);
+        return Arrays.asList(partition1, partition2);
+    }
+
+    private static void write(File file, int length) throws IOException {
+        FileUtils.writeStringToFile(file, StringUtils.repeat('x', length), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The catalog counts the documents that a collection scan lists, including those in subdirectories, adds up the
+ * partitions of a collection, substitutes the node ids and lists a directory again once it changed.
+ */
+public class CollectionStatisticsCatalogTest {
+    private static final String[] NODES = new String[] { "nc1" };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CollectionStatisticsCatalog catalog = new CollectionStatisticsCatalog();
+
+    @Test
+    public void testStatistics() throws IOException {
+        File partition1 = folder.newFolder("partition1");
+        File partition2 = folder.newFolder("partition2");
+        write(new File(partition1, "a.xml"), "<a/>");
+        write(new File(partition1, "b/b.xml"), "<b>b</b>");
+        write(new File(partition1, "notes.txt"), "not a document");
+        write(new File(partition2, "c.json"), "{}");
+
+        CollectionStatistics statistics = catalog.getStatistics(partition1.getPath(), NODES);
+        Assert.assertEquals(2, statistics.getFileCount());
+        Assert.assertEquals(12, statistics.getByteSize());
+        Assert.assertEquals(2, statistics.getXmlFileCount());
+
+        statistics = catalog.getStatistics(new String[] { partition1.getPath(), partition2.getPath() }, NODES);
+        Assert.assertEquals(3, statistics.getFileCount());
+        Assert.assertEquals(14, statistics.getByteSize());
+        Assert.assertEquals(2, statistics.getXmlFileCount());
+        Assert.assertEquals(0, catalog.getStatistics(partition2.getPath(), NODES).getXmlFileCount());
+    }
+
+    @Test
+    public void testNodeIds() throws IOException {
+        write(new File(folder.getRoot(), "nc1/a.xml"), "<a/>");
+        write(new File(folder.getRoot(), "nc2/b.xml"), "<b>b</b>");
+        String partition = new File(folder.getRoot(), "${nodeId}").getPath();
+
+        CollectionStatistics statistics = catalog.getStatistics(partition, new String[] { "nc1", "nc2" });
+        Assert.assertEquals(2, statistics.getFileCount());
+        Assert.assertEquals(12, statistics.getByteSize());
+        Assert.assertEquals(4, catalog.getStatistics(partition, NODES).getByteSize());
+        Assert.assertNull(catalog.getStatistics(partition, new String[] { "nc1", "nc3" }));
+    }
+
+    @Test
+    public void testModifiedSubdirectory() throws IOException {
+        File partition = folder.newFolder("partition");
+        File subdirectory = new File(partition, "b");
+        write(new File(subdirectory, "b.xml"), "<b>b</b>");
+        Assert.assertEquals(1, catalog.getStatistics(partition.getPath(), NODES).getFileCount());
+        long version = catalog.getVersion();
+
+        write(new File(subdirectory, "c.xml"), "<c/>");
+        Assert.assertTrue(subdirectory.setLastModified(subdirectory.lastModified() + 10000));
+        Assert.assertNotEquals(version, catalog.getVersion());
+        version = catalog.getVersion();
+        Assert.assertEquals(2, catalog.getStatistics(partition.getPath(), NODES).getFileCount());
+        Assert.assertEquals(version, catalog.getVersion());
+    }
+
+    @Test
+    public void testMissingDirectory() throws IOException {
+        File missing = new File(folder.getRoot(), "missing");
+        Assert.assertNull(catalog.getStatistics(missing.getPath(), NODES));
+        Assert.assertNull(catalog.getStatistics(new String[] { folder.getRoot().getPath(), missing.getPath() }, NODES));
+        Assert.assertNull(catalog.getStatistics("hdfs://collection", NODES));
+
+        write(new File(missing, "a.xml"), "<a/>");
+        Assert.assertEquals(1, catalog.getStatistics(missing.getPath(), NODES).getFileCount());
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+    }
+}
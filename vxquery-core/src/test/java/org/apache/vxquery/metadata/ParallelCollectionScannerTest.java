@@ -0,0 +1,298 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.apache.hyracks.api.comm.IFrame;
+import org.apache.hyracks.api.comm.IFrameFieldAppender;
+import org.apache.hyracks.api.comm.IFrameWriter;
+import org.apache.hyracks.api.comm.VSizeFrame;
+import org.apache.hyracks.api.dataflow.value.ISerializerDeserializer;
+import org.apache.hyracks.api.dataflow.value.RecordDescriptor;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.control.nc.resources.memory.FrameManager;
+import org.apache.hyracks.dataflow.common.comm.io.FrameFixedFieldTupleAppender;
+import org.apache.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+import org.apache.vxquery.util.CompressionUtil;
+import org.apache.vxquery.util.CompressionUtilTest;
+import org.apache.vxquery.xmlparser.ValuePredicate;
+import org.apache.vxquery.xmlparser.XMLParser;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The parallel scan returns the tuples of the single-threaded scan, passes on the first failure and never waits for
+ * workers that were stopped. Compressed documents return the tuples of the uncompressed files.
+ */
+public class ParallelCollectionScannerTest {
+    private static final int FRAME_SIZE = 1024;
+    private static final String NODE_ID = "nc1";
+    private static final int FILE_COUNT = 200;
+    private static final String[] SUFFIXES = { "", CompressionUtil.GZIP_SUFFIX, CompressionUtil.BZIP2_SUFFIX,
+            CompressionUtil.ZSTD_SUFFIX };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSameTuplesAsSingleThreadedScan() throws IOException {
+        List<File> files = createFiles();
+        List<String> expected = scanSingleThreaded(files);
+        Assert.assertEquals(FILE_COUNT, expected.size());
+
+        // One worker parses the files in the order of the queue.
+        Assert.assertEquals(expected, scan(files, 1, new TupleCollector()));
+
+        // More workers return each tuple once, in any order of the files.
+        List<String> actual = scan(files, 4, new TupleCollector());
+        Assert.assertEquals(expected.size(), actual.size());
+        Collections.sort(expected);
+        Collections.sort(actual);
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test(timeout = 60000)
+    public void testParseFailure() throws IOException {
+        List<File> files = createFiles();
+        File broken = new File(folder.getRoot(), "broken.xml");
+        FileUtils.writeStringToFile(broken, "<doc><id>", StandardCharsets.UTF_8);
+        files.add(FILE_COUNT / 2, broken);
+        try {
+            scan(files, 4, new TupleCollector());
+            Assert.fail("The scan ignored a file that does not parse.");
+        } catch (HyracksDataException e) {
+            Assert.assertNotEquals("Collection scan cancelled.", e.getMessage());
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testWriterFailure() throws IOException {
+        final HyracksDataException writerFailure = new HyracksDataException("Writer failed.");
+        TupleCollector collector = new TupleCollector() {
+            @Override
+            public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+                if (tuples.size() > 10) {
+                    throw writerFailure;
+                }
+                super.nextFrame(buffer);
+            }
+        };
+        try {
+            scan(createFiles(), 4, collector);
+            Assert.fail("The scan ignored the failure of the writer.");
+        } catch (HyracksDataException e) {
+            Assert.assertSame(writerFailure, e);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testCloseDuringScan() throws Exception {
+        final List<File> files = createFiles();
+        final CountDownLatch writerBlocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final TupleCollector collector = new TupleCollector() {
+            @Override
+            public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+                writerBlocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new HyracksDataException(e);
+                }
+                super.nextFrame(buffer);
+            }
+        };
+        final ParallelCollectionScanner scanner = createScanner(4);
+        final AtomicReference<Throwable> result = new AtomicReference<>();
+        scanner.open();
+        Thread scanThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scanner.scan(new CollectionFileQueue(files), collector, 0);
+                    result.set(new AssertionError("The scan finished after it was closed."));
+                } catch (Throwable t) {
+                    result.set(t);
+                }
+            }
+        });
+        scanThread.start();
+        Assert.assertTrue(writerBlocked.await(10, TimeUnit.SECONDS));
+        // The workers fill the queue and wait while the writer is blocked, then they are interrupted.
+        Thread.sleep(200);
+        scanner.close();
+        release.countDown();
+        scanThread.join(TimeUnit.SECONDS.toMillis(30));
+        Assert.assertFalse("The scan waits for workers that were stopped.", scanThread.isAlive());
+        Assert.assertTrue(String.valueOf(result.get()), result.get() instanceof HyracksDataException);
+    }
+
+    @Test
+    public void testCompressedFiles() throws IOException {
+        File plain = folder.newFolder("plain");
+        File mixed = folder.newFolder("mixed");
+        for (int i = 0; i < 40; ++i) {
+            String suffix = SUFFIXES[i % SUFFIXES.length];
+            File xml = new File(plain, String.format("doc%03d.xml", i));
+            FileUtils.writeStringToFile(xml, "<doc><id>" + i + "</id><name>item " + i + "</name></doc>",
+                    StandardCharsets.UTF_8);
+            copy(xml, new File(mixed, xml.getName() + suffix));
+            File json = new File(plain, String.format("doc%03d.json", i));
+            FileUtils.writeStringToFile(json, "{\"id\": " + i + ", \"name\": \"item " + i + "\", \"values\": [" + i
+                    + ", " + 2 * i + "]}", StandardCharsets.UTF_8);
+            copy(json, new File(mixed, json.getName() + suffix));
+        }
+        FileUtils.writeStringToFile(new File(mixed, "notes.txt"), "Not a document.", StandardCharsets.UTF_8);
+
+        List<String> expected = scan(listFiles(plain), 1, new TupleCollector());
+        Assert.assertEquals(80, expected.size());
+        Collections.sort(expected);
+        for (int workers : new int[] { 1, 4 }) {
+            List<String> actual = scan(listFiles(mixed), workers, new TupleCollector());
+            Collections.sort(actual);
+            Assert.assertEquals(expected, actual);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testCorruptCompressedFiles() throws IOException {
+        for (String name : new String[] { "broken.xml", "broken.json" }) {
+            for (int s = 1; s < SUFFIXES.length; ++s) {
+                List<File> files = createFiles();
+                File source = new File(folder.getRoot(), name);
+                FileUtils.writeStringToFile(source, name.endsWith(".xml") ? "<doc><id>1</id></doc>" : "{\"id\": 1}",
+                        StandardCharsets.UTF_8);
+                File broken = new File(files.get(0).getParentFile(), name + SUFFIXES[s]);
+                CompressionUtilTest.compress(source, broken);
+                byte[] bytes = FileUtils.readFileToByteArray(broken);
+                FileUtils.writeByteArrayToFile(broken, Arrays.copyOf(bytes, bytes.length / 2));
+                files.add(FILE_COUNT / 2, broken);
+                for (int workers : new int[] { 1, 4 }) {
+                    try {
+                        scan(files, workers, new TupleCollector());
+                        Assert.fail("The scan returned the tuples of a damaged file " + broken.getName() + ".");
+                    } catch (HyracksDataException e) {
+                        // Expected.
+                    }
+                }
+            }
+        }
+    }
+
+    private static void copy(File source, File target) throws IOException {
+        if (CompressionUtil.isCompressed(target.getName())) {
+            CompressionUtilTest.compress(source, target);
+        } else {
+            FileUtils.copyFile(source, target);
+        }
+    }
+
+    private static List<File> listFiles(File directory) {
+        return new ArrayList<>(FileUtils.listFiles(directory, new VXQueryIOFileFilter(), TrueFileFilter.INSTANCE));
+    }
+
+    private List<File> createFiles() throws IOException {
+        File directory = folder.newFolder();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < FILE_COUNT; ++i) {
+            File file = new File(directory, String.format("doc%03d.xml", i));
+            FileUtils.writeStringToFile(file, "<doc><id>" + i + "</id><name>item " + i + "</name></doc>",
+                    StandardCharsets.UTF_8);
+            files.add(file);
+        }
+        return files;
+    }
+
+    private List<String> scanSingleThreaded(List<File> files) throws HyracksDataException {
+        TupleCollector collector = new TupleCollector();
+        IFrame frame = new VSizeFrame(new FrameManager(FRAME_SIZE));
+        IFrameFieldAppender appender = new FrameFixedFieldTupleAppender(1);
+        appender.reset(frame, true);
+        XMLParser parser = new XMLParser(false, null, NODE_ID, appender, new ArrayList<Integer>(),
+                new ArrayList<ValuePredicate>(), new ArrayList<List<Integer>>(), null);
+        for (File file : files) {
+            parser.parseElements(file, collector, 0);
+        }
+        if (appender.getTupleCount() > 0) {
+            appender.write(collector, true);
+        }
+        return collector.tuples;
+    }
+
+    private List<String> scan(List<File> files, int workers, TupleCollector collector) throws HyracksDataException {
+        ParallelCollectionScanner scanner = createScanner(workers);
+        scanner.open();
+        try {
+            scanner.scan(new CollectionFileQueue(files), collector, 0);
+        } finally {
+            scanner.close();
+        }
+        return collector.tuples;
+    }
+
+    private ParallelCollectionScanner createScanner(int workers) throws HyracksDataException {
+        // Without node ids the tuples of both scans have the same bytes.
+        return new ParallelCollectionScanner(new FrameManager(FRAME_SIZE), workers, 1, null, NODE_ID,
+                new ArrayList<Integer>(), new ArrayList<String>(), new ArrayList<ValuePredicate>(),
+                new ArrayList<List<Integer>>(), null);
+    }
+
+    private static class TupleCollector implements IFrameWriter {
+        private final FrameTupleAccessor fta = new FrameTupleAccessor(
+                new RecordDescriptor(new ISerializerDeserializer[1]));
+        protected final List<String> tuples = new ArrayList<>();
+
+        @Override
+        public void open() throws HyracksDataException {
+        }
+
+        @Override
+        public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+            fta.reset(buffer);
+            for (int t = 0; t < fta.getTupleCount(); ++t) {
+                int start = fta.getTupleStartOffset(t) + fta.getFieldSlotsLength() + fta.getFieldStartOffset(t, 0);
+                tuples.add(new String(buffer.array(), start, fta.getFieldLength(t, 0), StandardCharsets.ISO_8859_1));
+            }
+        }
+
+        public void flush() throws HyracksDataException {
+        }
+
+        @Override
+        public void fail() throws HyracksDataException {
+        }
+
+        @Override
+        public void close() throws HyracksDataException {
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hyracks.algebricks.data.IPrinterFactory;
+import org.apache.hyracks.algebricks.runtime.base.IPushRuntime;
+import org.apache.hyracks.api.comm.IFrame;
+import org.apache.hyracks.api.comm.IFrameFieldAppender;
+import org.apache.hyracks.api.comm.VSizeFrame;
+import org.apache.hyracks.api.dataflow.value.ISerializerDeserializer;
+import org.apache.hyracks.api.dataflow.value.RecordDescriptor;
+import org.apache.hyracks.control.nc.resources.memory.FrameManager;
+import org.apache.hyracks.dataflow.common.comm.io.FrameFixedFieldTupleAppender;
+import org.apache.hyracks.dataflow.common.comm.util.FrameUtils;
+import org.apache.vxquery.compiler.algebricks.VXQueryPrinterFactory;
+import org.apache.vxquery.datamodel.AbstractPointableTest;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The result file writer prints each item of a partition on its own line of the UTF-8 file part-N.
+ */
+public class QueryResultFileWriterRuntimeFactoryTest extends AbstractPointableTest {
+    private static final int FRAME_SIZE = 256;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+
+    @Test
+    public void testResultFile() throws IOException {
+        File directory = new File(folder.getRoot(), "result");
+        write(directory, 3, 42, "\u00e9t\u00e9 \u20ac", "a < b");
+
+        File file = new File(directory, "part-00003");
+        String nl = System.lineSeparator();
+        Assert.assertEquals("42" + nl + "\u00e9t\u00e9 \u20ac" + nl + "a &lt; b" + nl,
+                FileUtils.readFileToString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testManyFrames() throws IOException {
+        File directory = folder.getRoot();
+        Object[] items = new Object[100];
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < items.length; ++i) {
+            items[i] = "item " + i;
+            expected.append(items[i]).append(System.lineSeparator());
+        }
+        write(directory, 0, items);
+
+        Assert.assertEquals(expected.toString(),
+                FileUtils.readFileToString(new File(directory, "part-00000"), StandardCharsets.UTF_8));
+    }
+
+    private void write(File directory, int partition, Object... items) throws IOException {
+        QueryResultFileWriterRuntimeFactory factory = new QueryResultFileWriterRuntimeFactory(directory.getPath(),
+                new int[] { 0 }, new IPrinterFactory[] { new VXQueryPrinterFactory() },
+                new RecordDescriptor(new ISerializerDeserializer[1]));
+        IPushRuntime runtime = factory.createPushRuntime(partition);
+        IFrame frame = new VSizeFrame(new FrameManager(FRAME_SIZE));
+        IFrameFieldAppender appender = new FrameFixedFieldTupleAppender(1);
+        appender.reset(frame, true);
+        runtime.open();
+        for (Object item : items) {
+            getTaggedValuePointable(item, tvp);
+            FrameUtils.appendFieldToWriter(runtime, appender, tvp.getByteArray(), tvp.getStartOffset(),
+                    tvp.getLength());
+        }
+        if (appender.getTupleCount() > 0) {
+            appender.flush(runtime);
+        }
+        runtime.close();
+    }
+}
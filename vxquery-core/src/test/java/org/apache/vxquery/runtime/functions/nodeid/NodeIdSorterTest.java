@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.nodeid;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The sorter orders keys by unsigned tree id and local node id and keeps the input order of equal keys.
+ */
+public class NodeIdSorterTest {
+    private static void assertSorted(NodeIdSorter sorter) {
+        for (int i = 1; i < sorter.size(); ++i) {
+            int c = Long.compareUnsigned(sorter.getTreeId(i - 1), sorter.getTreeId(i));
+            if (c == 0) {
+                c = Integer.compare(sorter.getLocalId(i - 1), sorter.getLocalId(i));
+            }
+            Assert.assertTrue("Key " + i + " is out of order.", c <= 0);
+            if (c == 0) {
+                Assert.assertTrue("Equal keys changed order.", sorter.getPosition(i - 1) < sorter.getPosition(i));
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        NodeIdSorter sorter = new NodeIdSorter();
+        sorter.reset(0);
+        sorter.sort();
+        Assert.assertEquals(0, sorter.size());
+    }
+
+    @Test
+    public void testOneDocument() {
+        NodeIdSorter sorter = new NodeIdSorter();
+        int[] localIds = { 7, 3, 300, 3, 0, 65536, 12 };
+        sorter.reset(localIds.length);
+        for (int i = 0; i < localIds.length; ++i) {
+            sorter.add(5, localIds[i], i);
+        }
+        sorter.sort();
+        int[] expected = { 0, 3, 3, 7, 12, 300, 65536 };
+        int[] positions = { 4, 1, 3, 0, 6, 2, 5 };
+        for (int i = 0; i < expected.length; ++i) {
+            Assert.assertEquals(5, sorter.getTreeId(i));
+            Assert.assertEquals(expected[i], sorter.getLocalId(i));
+            Assert.assertEquals(positions[i], sorter.getPosition(i));
+        }
+    }
+
+    @Test
+    public void testTreesBeforeLocalIds() {
+        NodeIdSorter sorter = new NodeIdSorter();
+        sorter.reset(4);
+        sorter.add(2, 1, 0);
+        sorter.add(1, 1000, 1);
+        sorter.add(2, 0, 2);
+        sorter.add(1L << 40, 0, 3);
+        sorter.sort();
+        Assert.assertEquals(1, sorter.getPosition(0));
+        Assert.assertEquals(2, sorter.getPosition(1));
+        Assert.assertEquals(0, sorter.getPosition(2));
+        Assert.assertEquals(3, sorter.getPosition(3));
+    }
+
+    @Test
+    public void testUnsignedTreeIds() {
+        NodeIdSorter sorter = new NodeIdSorter();
+        sorter.reset(3);
+        sorter.add(-1L, 0, 0);
+        sorter.add(Long.MIN_VALUE, 0, 1);
+        sorter.add(Long.MAX_VALUE, 0, 2);
+        sorter.sort();
+        Assert.assertEquals(Long.MAX_VALUE, sorter.getTreeId(0));
+        Assert.assertEquals(Long.MIN_VALUE, sorter.getTreeId(1));
+        Assert.assertEquals(-1L, sorter.getTreeId(2));
+    }
+
+    @Test
+    public void testContains() {
+        NodeIdSorter sorter = new NodeIdSorter();
+        sorter.reset(3);
+        sorter.add(1L << 40, 7, 0);
+        sorter.add(3, 2, 1);
+        sorter.add(1L << 40, 2, 2);
+        sorter.sort();
+        Assert.assertTrue(sorter.contains(1L << 40, 2));
+        Assert.assertTrue(sorter.contains(3, 2));
+        Assert.assertFalse(sorter.contains(3, 7));
+        Assert.assertFalse(sorter.contains((1L << 40) | 3, 2));
+        Assert.assertTrue(sorter.isSameNode(1, 1));
+        Assert.assertFalse(sorter.isSameNode(1, 2));
+    }
+
+
+    @Test
+    public void testRandomKeys() {
+        Random random = new Random(42);
+        NodeIdSorter sorter = new NodeIdSorter();
+        for (int size : new int[] { 1, 10, 64, 65, 1000 }) {
+            sorter.reset(size);
+            for (int i = 0; i < size; ++i) {
+                sorter.add(random.nextInt(4) + ((long) random.nextInt(4) << 40), random.nextInt(50), i);
+            }
+            sorter.sort();
+            Assert.assertEquals(size, sorter.size());
+            assertSorted(sorter);
+        }
+    }
+
+    @Test
+    public void testResetKeepsLargerCapacity() {
+        NodeIdSorter sorter = new NodeIdSorter();
+        sorter.reset(200);
+        for (int i = 0; i < 200; ++i) {
+            sorter.add(0, 200 - i, i);
+        }
+        sorter.sort();
+        sorter.reset(2);
+        sorter.add(0, 9, 0);
+        sorter.add(0, 8, 1);
+        sorter.sort();
+        Assert.assertEquals(2, sorter.size());
+        Assert.assertEquals(8, sorter.getLocalId(0));
+        Assert.assertEquals(9, sorter.getLocalId(1));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import org.apache.vxquery.datamodel.AbstractPointableTest;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
+import org.apache.vxquery.datamodel.util.TaggedValueOrder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.SystemException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The sum keeps integers in a long until the first double or untyped atomic value and continues with the add
+ * operation once a decimal or float is added. The result has the type of the add operation in every state.
+ */
+public class SumHelperTest extends AbstractPointableTest {
+    private final SumHelper sum = new SumHelper(null);
+    private final TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final TaggedValuePointable result = (TaggedValuePointable) TaggedValuePointable.FACTORY
+            .createPointable();
+    private final StringValueBuilder svb = new StringValueBuilder();
+
+    @Test
+    public void testEmpty() throws IOException, SystemException {
+        sum.reset();
+        assertSum(ValueTag.XS_INTEGER_TAG, 0L);
+    }
+
+    @Test
+    public void testIntegers() throws IOException, SystemException {
+        sum.reset();
+        add(1L);
+        add(2);
+        add(Long.valueOf(Integer.MAX_VALUE));
+        assertSum(ValueTag.XS_INTEGER_TAG, Integer.MAX_VALUE + 3L);
+    }
+
+    @Test
+    public void testIntegerToDouble() throws IOException, SystemException {
+        sum.reset();
+        add(1L);
+        add(2.5);
+        add(3L);
+        assertSum(ValueTag.XS_DOUBLE_TAG, 6.5);
+    }
+
+    @Test
+    public void testUntypedAtomic() throws IOException, SystemException {
+        sum.reset();
+        add(1L);
+        addUntypedAtomic("2.5");
+        assertSum(ValueTag.XS_DOUBLE_TAG, 3.5);
+        addUntypedAtomic("1e1");
+        add(1L);
+        assertSum(ValueTag.XS_DOUBLE_TAG, 14.5);
+    }
+
+    @Test
+    public void testIntegerToDecimal() throws IOException, SystemException {
+        sum.reset();
+        add(1L);
+        add(2L);
+        add(new BigDecimal("0.25"));
+        add(3L);
+        assertSum(ValueTag.XS_DECIMAL_TAG, new BigDecimal("6.25"));
+    }
+
+    @Test
+    public void testDoubleToDecimal() throws IOException, SystemException {
+        sum.reset();
+        add(1L);
+        add(0.5);
+        add(new BigDecimal("1.25"));
+        add(1L);
+        assertSum(ValueTag.XS_DOUBLE_TAG, 3.75);
+    }
+
+    @Test
+    public void testIntegerToFloat() throws IOException, SystemException {
+        sum.reset();
+        add(1L);
+        add(0.5f);
+        assertSum(ValueTag.XS_FLOAT_TAG, 1.5f);
+    }
+
+    @Test
+    public void testSet() throws IOException, SystemException {
+        getTaggedValuePointable(2L, tvp);
+        sum.set(tvp);
+        add(0.5);
+        assertSum(ValueTag.XS_DOUBLE_TAG, 2.5);
+
+        getTaggedValuePointable(new BigDecimal("1.5"), tvp);
+        sum.set(tvp);
+        add(1L);
+        assertSum(ValueTag.XS_DECIMAL_TAG, new BigDecimal("2.5"));
+
+        setUntypedAtomic("1.5");
+        sum.set(tvp);
+        add(1L);
+        assertSum(ValueTag.XS_DOUBLE_TAG, 2.5);
+    }
+
+    private void add(Object value) throws IOException, SystemException {
+        getTaggedValuePointable(value, tvp);
+        sum.add(tvp);
+    }
+
+    private void addUntypedAtomic(String value) throws IOException, SystemException {
+        setUntypedAtomic(value);
+        sum.add(tvp);
+    }
+
+    private void setUntypedAtomic(String value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dOut = new DataOutputStream(bytes);
+        dOut.write(ValueTag.XS_UNTYPED_ATOMIC_TAG);
+        svb.write(value, dOut);
+        tvp.set(bytes.toByteArray(), 0, bytes.size());
+    }
+
+    private void assertSum(int tag, Object expected) throws IOException, SystemException {
+        sum.get(result);
+        Assert.assertEquals(tag, result.getTag());
+        TaggedValuePointable expectedTvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        getTaggedValuePointable(expected, expectedTvp);
+        Assert.assertEquals(0, TaggedValueOrder.compare(result.getByteArray(), result.getStartOffset(),
+                result.getLength(), expectedTvp.getByteArray(), expectedTvp.getStartOffset(), expectedTvp.getLength()));
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.vxquery.datamodel.AbstractPointableTest;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The serializer test checks the UTF-8 bytes written for escaped strings, characters outside of ASCII and numbers.
+ */
+public class XMLSerializerTest extends AbstractPointableTest {
+    private final TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final XMLSerializer serializer = new XMLSerializer();
+
+    @Test
+    public void testStrings() throws IOException {
+        assertSerialized("plain text", "plain text");
+        assertSerialized("a < b & 'c' > \"d\"", "a &lt; b &amp; &apos;c&apos; &gt; &quot;d&quot;");
+        assertSerialized("\u00e9t\u00e9 \u20ac", "\u00e9t\u00e9 \u20ac");
+        assertSerialized("\ud83d\ude00<", "\ud83d\ude00&lt;");
+        assertSerialized("", "");
+    }
+
+    @Test
+    public void testNumbers() throws IOException {
+        assertSerialized(42, "42");
+        assertSerialized(-2147483648, "-2147483648");
+        assertSerialized(Long.MIN_VALUE, "-9223372036854775808");
+        assertSerialized(1000000.0, "1000000");
+        assertSerialized(-3.0, "-3");
+        assertSerialized(2.5, "2.5");
+    }
+
+    private void assertSerialized(Object value, String expected) throws IOException {
+        getTaggedValuePointable(value, tvp);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        serializer.printTaggedValuePointable(baos, tvp);
+        Assert.assertEquals(expected, new String(baos.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
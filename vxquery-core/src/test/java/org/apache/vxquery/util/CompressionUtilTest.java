@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Compressed documents read back as the uncompressed files, and damaged ones fail instead of ending early.
+ */
+public class CompressionUtilTest {
+    private static final String[] SUFFIXES = { CompressionUtil.GZIP_SUFFIX, CompressionUtil.BZIP2_SUFFIX,
+            CompressionUtil.ZSTD_SUFFIX };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Write the source file compressed with the format of the target file suffix.
+     */
+    public static void compress(File source, File target) throws IOException {
+        String name = target.getName();
+        try (OutputStream out = new FileOutputStream(target)) {
+            OutputStream compressed;
+            if (name.endsWith(CompressionUtil.GZIP_SUFFIX)) {
+                compressed = new GZIPOutputStream(out);
+            } else if (name.endsWith(CompressionUtil.BZIP2_SUFFIX)) {
+                compressed = new BZip2CompressorOutputStream(out);
+            } else if (name.endsWith(CompressionUtil.ZSTD_SUFFIX)) {
+                compressed = new ZstdCompressorOutputStream(out);
+            } else {
+                throw new IllegalArgumentException(name);
+            }
+            FileUtils.copyFile(source, compressed);
+            compressed.close();
+        }
+    }
+
+    @Test
+    public void testFileNames() {
+        Assert.assertTrue(CompressionUtil.isXmlFile("sensors.xml"));
+        Assert.assertTrue(CompressionUtil.isXmlFile("sensors.xml.gz"));
+        Assert.assertTrue(CompressionUtil.isXmlFile("sensors.XML.BZ2"));
+        Assert.assertTrue(CompressionUtil.isJsonFile("stations.json.zst"));
+        Assert.assertFalse(CompressionUtil.isJsonFile("stations.json.zip"));
+        Assert.assertFalse(CompressionUtil.isXmlFile("sensors.gz"));
+        Assert.assertFalse(CompressionUtil.isXmlFile("sensors.xml.gz.txt"));
+        Assert.assertTrue(CompressionUtil.isCompressed("sensors.xml.zst"));
+        Assert.assertFalse(CompressionUtil.isCompressed("sensors.xml"));
+        Assert.assertEquals("stations.json", CompressionUtil.stripCompressionSuffix("stations.json.bz2"));
+    }
+
+    @Test
+    public void testSameContent() throws IOException {
+        File source = createDocument();
+        byte[] expected = FileUtils.readFileToByteArray(source);
+        for (String suffix : SUFFIXES) {
+            File target = new File(folder.getRoot(), "document.xml" + suffix);
+            compress(source, target);
+            try (InputStream in = CompressionUtil.openInputStream(target)) {
+                Assert.assertArrayEquals(suffix, expected, IOUtils.toByteArray(in));
+            }
+        }
+        try (InputStream in = CompressionUtil.openInputStream(source)) {
+            Assert.assertArrayEquals(expected, IOUtils.toByteArray(in));
+        }
+    }
+
+    @Test
+    public void testTruncatedFiles() throws IOException {
+        File source = createDocument();
+        for (String suffix : SUFFIXES) {
+            File target = new File(folder.getRoot(), "document.xml" + suffix);
+            compress(source, target);
+            byte[] bytes = FileUtils.readFileToByteArray(target);
+            FileUtils.writeByteArrayToFile(target, Arrays.copyOf(bytes, bytes.length / 2));
+            try (InputStream in = CompressionUtil.openInputStream(target)) {
+                IOUtils.toByteArray(in);
+                Assert.fail("A truncated " + suffix + " file was read without an error.");
+            } catch (IOException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotCompressed() throws IOException {
+        File target = new File(folder.getRoot(), "document.xml.gz");
+        FileUtils.writeStringToFile(target, "<doc/>", StandardCharsets.UTF_8);
+        try (InputStream in = CompressionUtil.openInputStream(target)) {
+            IOUtils.toByteArray(in);
+        }
+    }
+
+    private File createDocument() throws IOException {
+        File source = new File(folder.getRoot(), "document.xml");
+        StringBuilder sb = new StringBuilder("<doc>");
+        for (int i = 0; i < 10000; ++i) {
+            sb.append("<item id=\"").append(i).append("\">value ").append(i * 31 % 977).append("</item>");
+        }
+        sb.append("</doc>");
+        FileUtils.writeStringToFile(source, sb.toString(), StandardCharsets.UTF_8);
+        return source;
+    }
+}
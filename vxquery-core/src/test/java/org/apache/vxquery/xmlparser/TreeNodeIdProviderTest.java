@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TreeNodeIdProviderTest {
+    @Test
+    public void testDistinctPartitionsAndDataSources() throws HyracksDataException {
+        TreeNodeIdProvider[] providers = { new TreeNodeIdProvider((short) 0), new TreeNodeIdProvider((short) 1),
+                new TreeNodeIdProvider((short) 0, (short) 1), new TreeNodeIdProvider((short) 255, (short) 15),
+                new TreeNodeIdProvider((short) 256, (short) 16),
+                new TreeNodeIdProvider(Short.MAX_VALUE, Short.MAX_VALUE) };
+        long[][] ids = new long[providers.length][];
+        for (int p = 0; p < providers.length; ++p) {
+            ids[p] = new long[] { providers[p].getId(), providers[p].getId() };
+            Assert.assertTrue(ids[p][0] >= 0);
+            Assert.assertEquals(ids[p][0] + 1, ids[p][1]);
+        }
+        for (int p = 0; p < providers.length; ++p) {
+            for (int q = p + 1; q < providers.length; ++q) {
+                Assert.assertNotEquals(ids[p][0] >>> TreeNodeIdProvider.TREE_BITS,
+                        ids[q][0] >>> TreeNodeIdProvider.TREE_BITS);
+            }
+        }
+    }
+
+    @Test
+    public void testManyTrees() throws HyracksDataException {
+        TreeNodeIdProvider provider = new TreeNodeIdProvider((short) 3, (short) 2);
+        long first = provider.getId();
+        long last = first;
+        for (int i = 1; i < (1 << 21); ++i) {
+            long id = provider.getId();
+            Assert.assertTrue(id > last);
+            last = id;
+        }
+        Assert.assertEquals(first + (1 << 21) - 1, last);
+        Assert.assertTrue(last < new TreeNodeIdProvider((short) 3, (short) 3).getId());
+    }
+
+    @Test
+    public void testManyDataSources() throws HyracksDataException {
+        long previous = -1;
+        for (int dataSource = 0; dataSource <= 1000; ++dataSource) {
+            long id = new TreeNodeIdProvider((short) 7, (short) dataSource).getId();
+            Assert.assertTrue(id > previous);
+            previous = id;
+        }
+    }
+
+    @Test(expected = HyracksDataException.class)
+    public void testNegativePartition() throws HyracksDataException {
+        new TreeNodeIdProvider((short) -1, (short) 0).getId();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.types.SequenceType;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+/**
+ * The byte level parser must build the same node tree as the SAX parser, for any buffer size and for streams that
+ * return a few bytes per read, so tokens and multibyte characters are split across buffer refills.
+ */
+public class UTF8XMLParserTest {
+    private static final int[] BUFFER_SIZES = { -1, 16, 17, 18, 19, 20, 23, 64 };
+
+    @Test
+    public void testElementsAndText() throws Exception {
+        assertSameTree("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<stations>\n  <station id=\"GHCND:US000000001\">\n    <name>Station &amp; Co</name>\n"
+                + "    <empty/>\n  </station>\n</stations>\n");
+    }
+
+    @Test
+    public void testNamespacesAndAttributes() throws Exception {
+        assertSameTree("<a:root xmlns:a=\"http://a\" xmlns=\"http://default\" xml:lang=\"en\">"
+                + "<child a:attr='1' b=\"x&#10;y\tz\">text</child><a:child/></a:root>");
+    }
+
+    @Test
+    public void testCommentsCDataAndInstructions() throws Exception {
+        assertSameTree("<!DOCTYPE root>\r\n<!-- before -->\r\n<?target some data?>"
+                + "<root>line 1\r\nline 2<![CDATA[<not a tag>]]>&#x10437;<!-- inside --><?pi?>caf\u00e9</root>");
+    }
+
+    @Test
+    public void testMultibyteCharactersAcrossBuffers() throws Exception {
+        // Two, three and four byte characters start at every offset of the small buffers.
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 24; ++i) {
+            text.append("x\u00e9\u20ac\ud801\udc37");
+            for (int j = 0; j < i % 4; ++j) {
+                text.append('.');
+            }
+        }
+        assertSameTree("<root>" + text + "</root>");
+        assertSameTree("<root a=\"" + text + "\"><!--" + text + "--><![CDATA[" + text + "]]></root>");
+        assertSameTree("<root>" + text + "&amp;" + text + "\r\n" + text + "</root>");
+    }
+
+    @Test
+    public void testMultibyteNamesAcrossBuffers() throws Exception {
+        assertSameTree("<r\u00e9sum\u00e9 \u00e9t\u00e9=\"\u20ac\"><\u6587\u66f8\u540d\u524d\u00e9\u00e9\u00e9\u00e9>"
+                + "\u00e9</\u6587\u66f8\u540d\u524d\u00e9\u00e9\u00e9\u00e9><x\u00e9/></r\u00e9sum\u00e9>");
+    }
+
+    @Test
+    public void testLongTokensInSmallBuffers() throws Exception {
+        StringBuilder name = new StringBuilder("element");
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 10; ++i) {
+            name.append("Name").append(i);
+            value.append("value \u00e9 ").append(i).append(' ');
+        }
+        assertSameTree("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<" + name + " attribute=\"" + value + "\">" + value
+                + "<?target " + value + "?></" + name + ">");
+    }
+
+    @Test(expected = SAXException.class)
+    public void testMismatchedEndTag() throws Exception {
+        UTF8XMLParser parser = new UTF8XMLParser(false, null, null, Collections.<SequenceType> emptyList(), -1);
+        parser.parseDocument(new ByteArrayInputStream("<a><b></a></b>".getBytes(StandardCharsets.UTF_8)),
+                new ArrayBackedValueStorage());
+    }
+
+    private void assertSameTree(String xml) throws Exception {
+        ArrayBackedValueStorage expected = new ArrayBackedValueStorage();
+        XMLParser saxParser = new XMLParser(false, null, "test");
+        saxParser.parse(new StringReader(xml), expected);
+        byte[] expectedBytes = Arrays.copyOfRange(expected.getByteArray(), expected.getStartOffset(),
+                expected.getStartOffset() + expected.getLength());
+
+        byte[] xmlBytes = xml.getBytes(StandardCharsets.UTF_8);
+        ArrayBackedValueStorage saxBytes = new ArrayBackedValueStorage();
+        saxParser.parse(new ByteArrayInputStream(xmlBytes), saxBytes);
+        Assert.assertArrayEquals("SAX parser reading bytes", expectedBytes, Arrays.copyOfRange(
+                saxBytes.getByteArray(), saxBytes.getStartOffset(), saxBytes.getStartOffset() + saxBytes.getLength()));
+        for (int bufferSize : BUFFER_SIZES) {
+            Assert.assertArrayEquals("buffer size " + bufferSize, expectedBytes,
+                    parse(new ByteArrayInputStream(xmlBytes), bufferSize));
+            Assert.assertArrayEquals("buffer size " + bufferSize + " with short reads", expectedBytes,
+                    parse(new ShortReadInputStream(xmlBytes), bufferSize));
+        }
+    }
+
+    private static byte[] parse(InputStream in, int bufferSize) throws Exception {
+        ArrayBackedValueStorage result = new ArrayBackedValueStorage();
+        UTF8XMLParser parser = new UTF8XMLParser(false, null, null, Collections.<SequenceType> emptyList(),
+                bufferSize);
+        parser.parseDocument(in, result);
+        return Arrays.copyOfRange(result.getByteArray(), result.getStartOffset(),
+                result.getStartOffset() + result.getLength());
+    }
+
+    /**
+     * Returns one to three bytes per read.
+     */
+    private static class ShortReadInputStream extends ByteArrayInputStream {
+        private int reads;
+
+        ShortReadInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 1 + reads++ % 3));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.apache.vxquery.xmlparser.ValuePredicate.Comparison;
+import org.apache.vxquery.xmlparser.ValuePredicate.Operand;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ValuePredicateTest {
+
+    @Test
+    public void testString() {
+        ValuePredicate eq = ValuePredicate.createString(Collections.singletonList(1), Comparison.EQ, false, "TMIN");
+        Assert.assertTrue(test(eq, "TMIN"));
+        Assert.assertFalse(test(eq, "TMAX"));
+        Assert.assertFalse(test(eq, "TMIN "));
+        ValuePredicate lt = ValuePredicate.createString(Collections.singletonList(1), Comparison.LT, false, "b");
+        Assert.assertTrue(test(lt, "a"));
+        Assert.assertFalse(test(lt, "\u00e9"));
+    }
+
+    @Test
+    public void testNumber() {
+        ValuePredicate gt = ValuePredicate.createNumber(Collections.singletonList(1), Comparison.GT, false,
+                Operand.NUMBER, 491.744);
+        Assert.assertTrue(test(gt, " 500 "));
+        Assert.assertFalse(test(gt, "12"));
+        // Equal doubles and values the scan can not read are left to the query.
+        Assert.assertTrue(test(gt, "491.744"));
+        Assert.assertTrue(test(gt, "INF"));
+        Assert.assertTrue(test(gt, "abc"));
+    }
+
+    @Test
+    public void testDecimal() {
+        ValuePredicate lt = ValuePredicate.createNumber(Collections.singletonList(1), Comparison.LT, false,
+                Operand.DECIMAL, 5);
+        Assert.assertTrue(test(lt, "2"));
+        Assert.assertFalse(test(lt, "12.5"));
+        // Exponents are not valid decimals, so the cast of the query raises the error.
+        Assert.assertTrue(test(lt, "1e3"));
+        Assert.assertTrue(test(lt, "1E3"));
+        ValuePredicate number = ValuePredicate.createNumber(Collections.singletonList(1), Comparison.LT, false,
+                Operand.NUMBER, 5);
+        Assert.assertFalse(test(number, "1e3"));
+    }
+
+    @Test
+    public void testDateComponents() {
+        ValuePredicate year = ValuePredicate.createNumber(Collections.singletonList(1), Comparison.GT, false,
+                Operand.YEAR, 1960);
+        Assert.assertTrue(test(year, "1976-07-04T00:00:00.000"));
+        Assert.assertFalse(test(year, "1960-12-31T00:00:00.000"));
+        Assert.assertTrue(test(year, "1960-12-31T24:00:00"));
+        Assert.assertTrue(test(year, "07/04/1976"));
+        ValuePredicate month = ValuePredicate.createNumber(Collections.singletonList(1), Comparison.EQ, false,
+                Operand.MONTH, 12);
+        Assert.assertTrue(test(month, "2003-12-25"));
+        Assert.assertFalse(test(month, "2003-11-25"));
+        ValuePredicate day = ValuePredicate.createNumber(Collections.singletonList(1), Comparison.EQ, true,
+                Operand.DAY, 25);
+        Assert.assertTrue(test(day, "2003-12-25T00:00:00Z"));
+        Assert.assertFalse(test(day, "2003-12-24T00:00:00Z"));
+    }
+
+    private static boolean test(ValuePredicate predicate, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return predicate.test(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlquery.query;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hyracks.api.client.NodeControllerInfo;
+import org.apache.vxquery.metadata.CollectionStatisticsCatalog;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The cache drops the least recently used plan and misses once the settings, the nodes or the collection statistics
+ * of a query change.
+ */
+public class PreparedQueryCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLeastRecentlyUsed() {
+        PreparedQueryCache cache = new PreparedQueryCache(2);
+        Module module1 = new Module();
+        Module module2 = new Module();
+        cache.put("1", module1);
+        cache.put("2", module2);
+        Assert.assertSame(module1, cache.get("1"));
+        cache.put("3", new Module());
+        Assert.assertSame(module1, cache.get("1"));
+        Assert.assertNull(cache.get("2"));
+        Assert.assertNotNull(cache.get("3"));
+    }
+
+    @Test
+    public void testKey() {
+        Map<String, NodeControllerInfo> nodes = new LinkedHashMap<String, NodeControllerInfo>();
+        nodes.put("nc1", null);
+        nodes.put("nc2", null);
+        Map<String, NodeControllerInfo> reversedNodes = new LinkedHashMap<String, NodeControllerInfo>();
+        reversedNodes.put("nc2", null);
+        reversedNodes.put("nc1", null);
+        String key = PreparedQueryCache.createKey("1 + 1", nodes, 65536, 16777216L);
+        Assert.assertEquals(key, PreparedQueryCache.createKey("1 + 1", reversedNodes, 65536, 16777216L));
+        Assert.assertNotEquals(key, PreparedQueryCache.createKey("1 + 2", nodes, 65536, 16777216L));
+        Assert.assertNotEquals(key, PreparedQueryCache.createKey("1 + 1", nodes, 65536, 0L));
+        nodes.remove("nc2");
+        Assert.assertNotEquals(key, PreparedQueryCache.createKey("1 + 1", nodes, 65536, 16777216L));
+    }
+
+    @Test
+    public void testStatisticsVersion() throws IOException {
+        File collection = folder.newFolder("collection");
+        FileUtils.writeStringToFile(new File(collection, "a.xml"), "<a/>", StandardCharsets.UTF_8);
+        CollectionStatisticsCatalog.getInstance().getStatistics(collection.getPath(), new String[] { "nc1" });
+        String key = PreparedQueryCache.createKey("collection('" + collection.getPath() + "')", null);
+        Assert.assertEquals(key, PreparedQueryCache.createKey("collection('" + collection.getPath() + "')", null));
+
+        FileUtils.writeStringToFile(new File(collection, "b.xml"), "<b/>", StandardCharsets.UTF_8);
+        Assert.assertTrue(collection.setLastModified(collection.lastModified() + 10000));
+        Assert.assertNotEquals(key, PreparedQueryCache.createKey("collection('" + collection.getPath() + "')", null));
+    }
+}
@@ -96,6 +96,16 @@ public class SimpleXQueryTest {
         runTest("simple016", "string-length(doc('" + temp + "'))");
     }
 
+    @Test
+    public void simple017() {
+        runTest("simple017", "declare variable $x as xs:string external; for $y in (1, 2) return fn:concat($x, $y)");
+    }
+
+    @Test
+    public void simple018() {
+        runNegTest("simple018", "declare variable $x external; $y");
+    }
+
     private static String gunzip(String dir, String filename) {
         try {
             GZIPInputStream in = new GZIPInputStream(
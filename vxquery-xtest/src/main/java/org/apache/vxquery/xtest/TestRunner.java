@@ -117,10 +117,12 @@ public class TestRunner {
                 }
                 IFrameTupleAccessor frameTupleAccessor = new ResultFrameTupleAccessor();
                 res.result = "";
+                StringBuilder result = new StringBuilder();
                 while (reader.read(frame) > 0) {
-                    res.result += ResultUtils.getStringFromBuffer(frame.getBuffer(), frameTupleAccessor);
+                    result.append(ResultUtils.getStringFromBuffer(frame.getBuffer(), frameTupleAccessor));
                     frame.getBuffer().clear();
                 }
+                res.result = result.toString();
                 res.result.trim();
                 hcc.waitForCompletion(jobId);
             } catch (HyracksException e) {